@@ -0,0 +1,71 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次请求中fanOut个互相独立的hGetAll,同步依次执行和异步同时发出再join的对比
+ * 异步的执行方式由redis.async.mode决定,对比平台线程(pipeline)和虚拟线程(virtual,需要JDK 21):
+ * mvn -Pbenchmark verify -Dbenchmark.include=Async -Dbenchmark.threads=16,256
+ * mvn -Pbenchmark verify -Dbenchmark.include=Async -Dbenchmark.threads=16,256 -Dbenchmark.jvmArgs=-Dredis.async.mode=virtual
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AsyncBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int fanOut;
+
+    private String[] keys;
+
+    @Setup
+    public void setUp(RedisState state) {
+        keys = new String[fanOut];
+        for (int i = 0; i < fanOut; i++) {
+            keys[i] = "benchmark:async:" + i;
+            state.redisService.hmSet(keys[i], Collections.singletonMap("field", "value" + i));
+        }
+    }
+
+    @Benchmark
+    public int sync(RedisState state) {
+        int size = 0;
+        for (String key : keys) {
+            size += state.redisService.hGetAll(key).size();
+        }
+        return size;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public int async(RedisState state) {
+        CompletableFuture<Map<String, String>>[] futures = new CompletableFuture[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            futures[i] = state.asyncRedisService.hGetAll(keys[i]);
+        }
+        int size = 0;
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            size += future.join().size();
+        }
+        return size;
+    }
+
+}
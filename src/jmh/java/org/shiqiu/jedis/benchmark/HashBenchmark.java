@@ -0,0 +1,80 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hmSet/hGetAll以及对象和hash之间的转换(getProperty不访问redis)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class HashBenchmark {
+
+    private static final String KEY = "benchmark:hash";
+
+    private Order order;
+
+    private Map<String, String> hash;
+
+    @Setup
+    public void setUp(RedisState state) {
+        order = new Order();
+        order.id = 10086L;
+        order.userId = 42L;
+        order.title = "benchmark order";
+        order.amount = new BigDecimal("99.90");
+        order.quantity = 3;
+        order.paid = true;
+        order.remark = "nothing";
+        hash = state.redisService.getProperty(order);
+        state.redisService.hmSet(KEY, hash);
+    }
+
+    @Benchmark
+    public String hmSet(RedisState state) {
+        return state.redisService.hmSet(KEY, hash);
+    }
+
+    @Benchmark
+    public Map<String, String> hGetAll(RedisState state) {
+        return state.redisService.hGetAll(KEY);
+    }
+
+    @Benchmark
+    public Map<String, String> getProperty(RedisState state) {
+        return state.redisService.getProperty(order);
+    }
+
+    public static class Order {
+        private Long id;
+
+        private Long userId;
+
+        private String title;
+
+        private BigDecimal amount;
+
+        private int quantity;
+
+        private boolean paid;
+
+        private String remark;
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * lPush之后rPop,一次操作两条命令,list长度保持不变
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ListBenchmark {
+
+    private static final String KEY = "benchmark:list";
+
+    @Setup
+    public void setUp(RedisState state) {
+        state.redisService.del(KEY);
+    }
+
+    @Benchmark
+    public String pushPop(RedisState state) {
+        state.redisService.lPush(KEY, "message");
+        return state.redisService.rPop(KEY);
+    }
+
+}
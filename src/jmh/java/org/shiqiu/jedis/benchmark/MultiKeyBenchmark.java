@@ -0,0 +1,58 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同key数量下的mGet/mSet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class MultiKeyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int size;
+
+    private String[] keys;
+
+    private String[] keysValues;
+
+    @Setup
+    public void setUp(RedisState state) {
+        keys = new String[size];
+        keysValues = new String[size * 2];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "benchmark:multi:" + i;
+            keysValues[i * 2] = keys[i];
+            keysValues[i * 2 + 1] = "value" + i;
+        }
+        state.redisService.mSet(keysValues);
+    }
+
+    @Benchmark
+    public List<String> mGet(RedisState state) {
+        return state.redisService.mGet(keys);
+    }
+
+    @Benchmark
+    public String mSet(RedisState state) {
+        return state.redisService.mSet(keysValues);
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 依次用不同的线程数运行基准测试,每个线程数的结果写入target/jmh-result-{线程数}t.json
+ * -Dbenchmark.threads 线程数,逗号分隔,默认1,4,16
+ * -Dbenchmark.include 需要运行的基准测试(正则),默认全部
+ * 以redis.开头的系统属性会传给被测进程,例如 -Dredis.autoPipeline.enabled=true
+ */
+public class RedisBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("benchmark.include", ".*");
+        String[] jvmArgs = redisProperties();
+        for (String threads : System.getProperty("benchmark.threads", "1,4,16").split(",")) {
+            Options options = new OptionsBuilder()
+                    .include(RedisBenchmarkRunner.class.getPackage().getName() + "\\..*" + include)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .jvmArgsAppend(jvmArgs)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-" + threads.trim() + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static String[] redisProperties() {
+        List<String> jvmArgs = new ArrayList<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("redis.")) {
+                jvmArgs.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        return jvmArgs.toArray(new String[0]);
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.shiqiu.jedis.JedisApplication;
+import org.shiqiu.jedis.service.AsyncRedisService;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.RedisConfig;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * 基准测试共用的RedisService,通过spring容器创建,所以redis.*配置(例如自动pipeline)同样生效
+ * 配置的redis连不上时在该端口启动一个内嵌的redis
+ */
+@State(Scope.Benchmark)
+public class RedisState {
+
+    public RedisService redisService;
+
+    public AsyncRedisService asyncRedisService;
+
+    private ConfigurableApplicationContext context;
+
+    private RedisServer embeddedServer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        RedisConfig config = RedisConfig.load();
+        if (!reachable(config)) {
+            embeddedServer = new RedisServer(config.getPort());
+            embeddedServer.start();
+        }
+        context = new SpringApplicationBuilder(JedisApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run();
+        redisService = context.getBean(RedisService.class);
+        asyncRedisService = context.getBean(AsyncRedisService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        if (embeddedServer != null) {
+            embeddedServer.stop();
+        }
+    }
+
+    private static boolean reachable(RedisConfig config) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(config.getHost(), config.getPort()), config.getConnectionTimeout());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * getString/setString
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class StringBenchmark {
+
+    private static final String KEY = "benchmark:string";
+
+    @Param({"100", "10000"})
+    public int valueSize;
+
+    private String value;
+
+    @Setup
+    public void setUp(RedisState state) {
+        value = RandomStringUtils.randomAlphanumeric(valueSize);
+        state.redisService.setString(KEY, value);
+    }
+
+    @Benchmark
+    public String getString(RedisState state) {
+        return state.redisService.getString(KEY);
+    }
+
+    @Benchmark
+    public String setString(RedisState state) {
+        return state.redisService.setString(KEY, value);
+    }
+
+}
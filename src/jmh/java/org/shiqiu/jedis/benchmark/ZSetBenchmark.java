@@ -0,0 +1,50 @@
+package org.shiqiu.jedis.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.shiqiu.jedis.service.RedisBatch;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1000个元素的zSet上取不同长度的排行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ZSetBenchmark {
+
+    private static final String KEY = "benchmark:zset";
+
+    @Param({"10", "100"})
+    public int rangeSize;
+
+    @Setup
+    public void setUp(RedisState state) {
+        RedisBatch batch = state.redisService.batch();
+        batch.del(KEY);
+        for (int i = 0; i < 1000; i++) {
+            batch.zAdd(KEY, i, "member" + i);
+        }
+        batch.execute();
+    }
+
+    @Benchmark
+    public Set<String> zRevRange(RedisState state) {
+        return state.redisService.zRevRange(KEY, 0, rangeSize - 1);
+    }
+
+}
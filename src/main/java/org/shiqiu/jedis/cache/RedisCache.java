@@ -0,0 +1,242 @@
+package org.shiqiu.jedis.cache;
+
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.Codec;
+import org.shiqiu.jedis.util.KeyConcurrencyLimiter;
+import org.shiqiu.jedis.util.NearCache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 保存在redis中的Spring Cache
+ * redis的key为 前缀 + 缓存名 + "::" + key.toString(),值由Codec转换成字节,缓存的null保存为空字节
+ * 开启近端缓存且key匹配redis.nearCache.patterns时先读进程内缓存,进程内缓存的是同一个对象,取出后不要修改
+ */
+public class RedisCache extends AbstractValueAdaptingCache {
+    private static final byte[] NULL_BYTES = new byte[0];
+
+    private final String name;
+
+    private final String keyPrefix;
+
+    private final int ttlSeconds;
+
+    private final RedisService redisService;
+
+    private final BinaryRedisService binaryRedisService;
+
+    private final NearCache nearCache;
+
+    private final Codec<Object> codec;
+
+    private final KeyConcurrencyLimiter loadLimiter;
+
+    /**
+     * @param name               缓存名
+     * @param prefix             所有缓存共用的key前缀
+     * @param ttlSeconds         过期时间,0表示不过期
+     * @param allowNullValues    是否缓存null
+     * @param redisService       用于clear
+     * @param binaryRedisService 读写缓存的值
+     * @param nearCache          近端缓存,为null时不使用
+     * @param codec              值的转换方式
+     * @param loadLimiter        get(key, valueLoader)时同一个key只有一个线程加载
+     */
+    public RedisCache(String name, String prefix, int ttlSeconds, boolean allowNullValues, RedisService redisService,
+            BinaryRedisService binaryRedisService, NearCache nearCache, Codec<Object> codec,
+            KeyConcurrencyLimiter loadLimiter)
+    {
+        super(allowNullValues);
+        this.name = name;
+        this.keyPrefix = prefix + name + "::";
+        this.ttlSeconds = ttlSeconds;
+        this.redisService = redisService;
+        this.binaryRedisService = binaryRedisService;
+        this.nearCache = nearCache;
+        this.codec = codec;
+        this.loadLimiter = loadLimiter;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache()
+    {
+        return binaryRedisService;
+    }
+
+    @Override
+    protected Object lookup(Object key)
+    {
+        String redisKey = redisKey(key);
+        if (nearCache != null && nearCache.accepts(redisKey))
+        {
+            return nearCache.get(redisKey, NearCache.OBJECT, () -> load(redisKey));
+        }
+        return load(redisKey);
+    }
+
+    private Object load(String redisKey)
+    {
+        return decode(binaryRedisService.get(SafeEncoder.encode(redisKey)));
+    }
+
+    /**
+     * 同一个key同时只有一个线程调用valueLoader,其他线程等待后读取它写入的值
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader)
+    {
+        ValueWrapper cached = get(key);
+        if (cached != null)
+        {
+            return (T) cached.get();
+        }
+        return loadLimiter.call(redisKey(key), () -> {
+            ValueWrapper loaded = get(key);
+            if (loaded != null)
+            {
+                return (T) loaded.get();
+            }
+            T value;
+            try
+            {
+                value = valueLoader.call();
+            }
+            catch (Exception e)
+            {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            put(key, value);
+            return value;
+        });
+    }
+
+    /**
+     * 通过一条MGET读取多个key,不读近端缓存
+     *
+     * @param keys 缓存的key
+     * @return 命中的key和值,缓存的null对应null
+     */
+    public Map<Object, Object> getAll(Collection<?> keys)
+    {
+        List<Object> keyList = new ArrayList<>(keys);
+        byte[][] redisKeys = new byte[keyList.size()][];
+        for (int i = 0; i < redisKeys.length; i++)
+        {
+            redisKeys[i] = SafeEncoder.encode(redisKey(keyList.get(i)));
+        }
+        Map<Object, Object> result = new LinkedHashMap<>(redisKeys.length * 4 / 3 + 1);
+        if (redisKeys.length == 0)
+        {
+            return result;
+        }
+        List<byte[]> values = binaryRedisService.mGet(redisKeys);
+        for (int i = 0; i < redisKeys.length; i++)
+        {
+            Object storeValue = decode(values.get(i));
+            if (storeValue != null)
+            {
+                result.put(keyList.get(i), fromStoreValue(storeValue));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value)
+    {
+        byte[] redisKey = SafeEncoder.encode(redisKey(key));
+        byte[] bytes = encode(toStoreValue(value));
+        if (ttlSeconds > 0)
+        {
+            binaryRedisService.setEx(redisKey, ttlSeconds, bytes);
+        }
+        else
+        {
+            binaryRedisService.set(redisKey, bytes);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value)
+    {
+        byte[] redisKey = SafeEncoder.encode(redisKey(key));
+        byte[] bytes = encode(toStoreValue(value));
+        Long added = ttlSeconds > 0 ? binaryRedisService.setNxEx(redisKey, ttlSeconds, bytes)
+                : binaryRedisService.setNx(redisKey, bytes);
+        return added == 1 ? null : get(key);
+    }
+
+    @Override
+    public void evict(Object key)
+    {
+        binaryRedisService.del(SafeEncoder.encode(redisKey(key)));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key)
+    {
+        return binaryRedisService.del(SafeEncoder.encode(redisKey(key))) > 0;
+    }
+
+    /**
+     * 通过SCAN找到这个缓存的key,分批UNLINK,不会阻塞redis
+     */
+    @Override
+    public void clear()
+    {
+        redisService.deleteByPattern(escape(keyPrefix) + "*");
+    }
+
+    private String redisKey(Object key)
+    {
+        return keyPrefix + key;
+    }
+
+    private Object decode(byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            return null;
+        }
+        return bytes.length == 0 ? NullValue.INSTANCE : codec.decode(bytes);
+    }
+
+    private byte[] encode(Object storeValue)
+    {
+        return storeValue == NullValue.INSTANCE ? NULL_BYTES : codec.encode(storeValue);
+    }
+
+    /**
+     * 转义SCAN通配符中的特殊字符
+     */
+    private static String escape(String prefix)
+    {
+        StringBuilder builder = new StringBuilder(prefix.length() + 8);
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            char c = prefix.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\')
+            {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
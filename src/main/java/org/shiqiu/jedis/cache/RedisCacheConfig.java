@@ -0,0 +1,96 @@
+package org.shiqiu.jedis.cache;
+
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.service.impl.RedisServiceImpl;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.KeyConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * redis.cache.enabled=true时开启@Cacheable等注解,缓存保存在redis中
+ * redis.cache.ttls配置每个缓存的过期时间,格式为 缓存名:秒数,多个用逗号分隔
+ * 缓存的值使用只允许注册类的Kryo保存,redis.cache.classes配置缓存值用到的类(常用的JDK类型不需要配置),
+ * 顺序决定类的注册id,所有节点必须相同,新增的类只能加在最后
+ */
+@Configuration
+@EnableCaching
+@ConditionalOnProperty(name = "redis.cache.enabled", havingValue = "true")
+public class RedisCacheConfig {
+    @Value("${redis.cache.prefix:cache:}")
+    private String prefix;
+
+    @Value("${redis.cache.defaultTtlSeconds:600}")
+    private int defaultTtlSeconds;
+
+    @Value("${redis.cache.ttls:}")
+    private String[] ttls;
+
+    @Value("${redis.cache.classes:}")
+    private String[] classes;
+
+    @Value("${redis.cache.allowNullValues:true}")
+    private boolean allowNullValues;
+
+    @Value("${redis.cache.loadStripes:1024}")
+    private int loadStripes;
+
+    @Value("${redis.cache.loadWaitMillis:10000}")
+    private long loadWaitMillis;
+
+    @Bean
+    public RedisCacheManager cacheManager(RedisServiceImpl redisService, BinaryRedisService binaryRedisService)
+    {
+        return new RedisCacheManager(redisService, binaryRedisService, redisService.getNearCache(), Codecs.kryo(parseClasses()),
+                prefix, defaultTtlSeconds, parseTtls(), allowNullValues,
+                new KeyConcurrencyLimiter(loadStripes, 1, loadWaitMillis));
+    }
+
+    private List<Class<?>> parseClasses()
+    {
+        List<Class<?>> result = new ArrayList<>();
+        for (String name : classes)
+        {
+            if (name.trim().isEmpty())
+            {
+                continue;
+            }
+            try
+            {
+                result.add(Class.forName(name.trim()));
+            }
+            catch (ClassNotFoundException e)
+            {
+                throw new IllegalArgumentException("redis.cache.classes contains unknown class " + name, e);
+            }
+        }
+        return result;
+    }
+
+    private Map<String, Integer> parseTtls()
+    {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String ttl : ttls)
+        {
+            if (ttl.trim().isEmpty())
+            {
+                continue;
+            }
+            int separator = ttl.lastIndexOf(':');
+            if (separator <= 0)
+            {
+                throw new IllegalArgumentException("redis.cache.ttls must be name:seconds, but was " + ttl);
+            }
+            result.put(ttl.substring(0, separator).trim(), Integer.parseInt(ttl.substring(separator + 1).trim()));
+        }
+        return result;
+    }
+}
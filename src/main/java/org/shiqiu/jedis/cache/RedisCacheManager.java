@@ -0,0 +1,86 @@
+package org.shiqiu.jedis.cache;
+
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.Codec;
+import org.shiqiu.jedis.util.KeyConcurrencyLimiter;
+import org.shiqiu.jedis.util.NearCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractCacheManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 创建RedisCache,配置了过期时间的缓存在启动时创建,其他缓存在第一次使用时以默认过期时间创建
+ */
+public class RedisCacheManager extends AbstractCacheManager {
+    private final RedisService redisService;
+
+    private final BinaryRedisService binaryRedisService;
+
+    private final NearCache nearCache;
+
+    private final Codec<Object> codec;
+
+    private final String prefix;
+
+    private final int defaultTtlSeconds;
+
+    private final Map<String, Integer> ttls;
+
+    private final boolean allowNullValues;
+
+    private final KeyConcurrencyLimiter loadLimiter;
+
+    /**
+     * @param redisService       用于clear
+     * @param binaryRedisService 读写缓存的值
+     * @param nearCache          近端缓存,为null时不使用
+     * @param codec              值的转换方式
+     * @param prefix             所有缓存共用的key前缀
+     * @param defaultTtlSeconds  没有单独配置的缓存的过期时间,0表示不过期
+     * @param ttls               每个缓存的过期时间
+     * @param allowNullValues    是否缓存null
+     * @param loadLimiter        get(key, valueLoader)时同一个key只有一个线程加载
+     */
+    public RedisCacheManager(RedisService redisService, BinaryRedisService binaryRedisService, NearCache nearCache,
+            Codec<Object> codec, String prefix, int defaultTtlSeconds, Map<String, Integer> ttls,
+            boolean allowNullValues, KeyConcurrencyLimiter loadLimiter)
+    {
+        this.redisService = redisService;
+        this.binaryRedisService = binaryRedisService;
+        this.nearCache = nearCache;
+        this.codec = codec;
+        this.prefix = prefix;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        this.ttls = ttls;
+        this.allowNullValues = allowNullValues;
+        this.loadLimiter = loadLimiter;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches()
+    {
+        List<Cache> caches = new ArrayList<>(ttls.size());
+        for (Map.Entry<String, Integer> entry : ttls.entrySet())
+        {
+            caches.add(createCache(entry.getKey(), entry.getValue()));
+        }
+        return caches;
+    }
+
+    @Override
+    protected Cache getMissingCache(String name)
+    {
+        return createCache(name, defaultTtlSeconds);
+    }
+
+    private RedisCache createCache(String name, int ttlSeconds)
+    {
+        return new RedisCache(name, prefix, ttlSeconds, allowNullValues, redisService, binaryRedisService, nearCache,
+                codec, loadLimiter);
+    }
+}
@@ -0,0 +1,395 @@
+package org.shiqiu.jedis.service;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 异步的redis操作,方法和RedisService对应,立即返回CompletableFuture不阻塞调用线程
+ * redis.async.mode=pipeline时命令由固定数量的发送线程合并成pipeline发送,排队的命令过多时提交方会等待,
+ * 等待超时后返回的future以异常结束;redis.async.mode=virtual时(JDK 21)每条命令在一个虚拟线程上执行,
+ * 同一个key上同时执行的命令数受redis.async.permitsPerKey限制
+ * 多个互相独立的读取可以同时发出再一起join
+ * 读取不经过近端缓存,写入后会让近端缓存中的key失效
+ * redis.transport=cluster或sharded时不支持,提交命令时抛出UnsupportedOperationException
+ */
+public interface AsyncRedisService {
+    /**
+     * 提交一个自定义的pipeline命令
+     *
+     * @param command 在pipeline上执行的命令
+     * @param <T>     返回值类型
+     * @return CompletableFuture
+     */
+    <T> CompletableFuture<T> execute(Function<Pipeline, Response<T>> command);
+
+    /**
+     * 获取指定key的值
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> getString(String key);
+
+    /**
+     * 设置key的值为value
+     *
+     * @param key   键
+     * @param value 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> setString(String key, String value);
+
+    /**
+     * 删除指定的key
+     *
+     * @param keys 可变String类型的键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> del(String... keys);
+
+    /**
+     * 判断key是否存在
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Boolean> exists(String key);
+
+    /**
+     * 设置key value,如果key已经存在则返回0
+     *
+     * @param key   键
+     * @param value 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> setNx(String key, String value);
+
+    /**
+     * 设置key value并指定这个键值的有效期
+     *
+     * @param key     键
+     * @param seconds 超时时间
+     * @param value   值
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> setEx(String key, int seconds, String value);
+
+    /**
+     * 通过批量的key获取批量的value
+     *
+     * @param keys 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<List<String>> mGet(String... keys);
+
+    /**
+     * 批量的设置key:value
+     *
+     * @param keysValues 可变key
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> mSet(String... keysValues);
+
+    /**
+     * 通过key 对value进行加值+1操作
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> incr(String key);
+
+    /**
+     * 通过key给指定的value加值
+     *
+     * @param key     键
+     * @param integer 加值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> incrBy(String key, long integer);
+
+    /**
+     * 对key的值做减减操作
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> decr(String key);
+
+    /**
+     * 减去指定的值
+     *
+     * @param key     键
+     * @param integer 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> decrBy(String key, long integer);
+
+    /**
+     * 通过key给field设置指定的值,如果field已经存在,返回0
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> hSetNx(String key, String field, String value);
+
+    /**
+     * 通过key给field设置指定的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> hSet(String key, String field, String value);
+
+    /**
+     * 通过key同时设置 hash的多个field
+     *
+     * @param key  键
+     * @param hash map
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> hmSet(String key, Map<String, String> hash);
+
+    /**
+     * 通过key 和 field 获取指定的 value
+     *
+     * @param key   键
+     * @param field 属性
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> hGet(String key, String field);
+
+    /**
+     * 通过key 和 fields 获取指定的value
+     *
+     * @param key    键
+     * @param fields 属性
+     * @return CompletableFuture
+     */
+    CompletableFuture<List<String>> hmGet(String key, String... fields);
+
+    /**
+     * 通过key给指定的field的value加上给定的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> hIncrBy(String key, String field, long value);
+
+    /**
+     * 通过key 删除指定的 field
+     *
+     * @param key    键
+     * @param fields 属性
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> hDel(String key, String... fields);
+
+    /**
+     * 通过key和field判断是否有指定的value存在
+     *
+     * @param key   键
+     * @param field 属性
+     * @return CompletableFuture
+     */
+    CompletableFuture<Boolean> hExists(String key, String field);
+
+    /**
+     * 通过key获取所有的field和value
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Map<String, String>> hGetAll(String key);
+
+    /**
+     * 设置key的超时时间为seconds
+     *
+     * @param key     键
+     * @param seconds 超时时间
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> expire(String key, int seconds);
+
+    /**
+     * 通过key向list头部添加字符串
+     *
+     * @param key     键
+     * @param strings 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> lPush(String key, String... strings);
+
+    /**
+     * 通过key向list尾部添加字符串
+     *
+     * @param key     键
+     * @param strings 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> rPush(String key, String... strings);
+
+    /**
+     * 通过key从list的头部删除一个value,并返回该value
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> lPop(String key);
+
+    /**
+     * 通过key从list尾部删除一个value,并返回该元素
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> rPop(String key);
+
+    /**
+     * 通过key获取list指定下标位置的value
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return CompletableFuture
+     */
+    CompletableFuture<List<String>> lRange(String key, long start, long end);
+
+    /**
+     * 通过key保留list中从strat下标开始到end下标结束的value值
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return CompletableFuture
+     */
+    CompletableFuture<String> lTrim(String key, long start, long end);
+
+    /**
+     * 通过key返回list的长度
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> lLen(String key);
+
+    /**
+     * 通过key向指定的set中添加value
+     *
+     * @param key     键
+     * @param members 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> sAdd(String key, String... members);
+
+    /**
+     * 通过key删除set中对应的value值
+     *
+     * @param key     键
+     * @param members 值
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> sRem(String key, String... members);
+
+    /**
+     * 通过key获取set中所有的value
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Set<String>> sMembers(String key);
+
+    /**
+     * 通过key判断value是否是set中的元素
+     *
+     * @param key    键
+     * @param member 元素
+     * @return CompletableFuture
+     */
+    CompletableFuture<Boolean> sIsMember(String key, String member);
+
+    /**
+     * 通过key获取set中value的个数
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> sCard(String key);
+
+    /**
+     * 通过key向zset中添加value,score
+     *
+     * @param key    键
+     * @param score  排序值
+     * @param member 元素
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> zAdd(String key, double score, String member);
+
+    /**
+     * 通过key删除在zset中指定的value
+     *
+     * @param key     键
+     * @param members 元素
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> zRem(String key, String... members);
+
+    /**
+     * 通过key增加该zset中value的score的值
+     *
+     * @param key    键
+     * @param score  排序值
+     * @param member 元素
+     * @return CompletableFuture
+     */
+    CompletableFuture<Double> zIncrBy(String key, double score, String member);
+
+    /**
+     * 通过key获取zSet中value的score值
+     *
+     * @param key    键
+     * @param member 元素
+     * @return CompletableFuture
+     */
+    CompletableFuture<Double> zScore(String key, String member);
+
+    /**
+     * 通过key获取score从start到end中zSet的value,score从大到小排序
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return CompletableFuture
+     */
+    CompletableFuture<Set<String>> zRevRange(String key, long start, long end);
+
+    /**
+     * 通过key删除给定区间内的元素
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> zRemRangeByRank(String key, long start, long end);
+
+    /**
+     * 通过key返回zSet中的value个数
+     *
+     * @param key 键
+     * @return CompletableFuture
+     */
+    CompletableFuture<Long> zCard(String key);
+}
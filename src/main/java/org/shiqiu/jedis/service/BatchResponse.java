@@ -0,0 +1,30 @@
+package org.shiqiu.jedis.service;
+
+/**
+ * 批量执行中单条命令的结果,批量执行完成之前调用get会抛出异常
+ * 结果只能由批量执行设置
+ *
+ * @param <T> 命令返回值类型
+ */
+public interface BatchResponse<T> {
+    /**
+     * 获取命令的返回值,命令失败或者批量执行失败时抛出对应的异常
+     *
+     * @return T 返回值
+     */
+    T get();
+
+    /**
+     * 批量是否已经执行,以及该命令是否已经拿到结果
+     *
+     * @return boolean
+     */
+    boolean isDone();
+
+    /**
+     * 该命令是否执行失败
+     *
+     * @return boolean
+     */
+    boolean isFailed();
+}
@@ -0,0 +1,449 @@
+package org.shiqiu.jedis.service;
+
+import org.shiqiu.jedis.util.Codec;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 二进制的redis操作,值直接以byte[]读写,不经过String的编码和解码
+ * 带Codec的方法key仍然是String,值由Codec一次转换成字节写入,读取时由字节直接转换成值
+ * 读取不经过近端缓存,写入后会让近端缓存中的key失效
+ */
+public interface BinaryRedisService {
+    /**
+     * 获取指定key的值
+     *
+     * @param key 键
+     * @return byte[]
+     */
+    byte[] get(byte[] key);
+
+    /**
+     * 设置key的值为value
+     *
+     * @param key   键
+     * @param value 值
+     * @return String
+     */
+    String set(byte[] key, byte[] value);
+
+    /**
+     * 设置key的值并设置过期时间
+     *
+     * @param key     键
+     * @param seconds 过期时间,秒
+     * @param value   值
+     * @return String
+     */
+    String setEx(byte[] key, int seconds, byte[] value);
+
+    /**
+     * key不存在时设置值
+     *
+     * @param key   键
+     * @param value 值
+     * @return 成功返回1 如果存在 和 发生异常 返回 0
+     */
+    Long setNx(byte[] key, byte[] value);
+
+    /**
+     * key不存在时设置值和过期时间,一条SET NX EX命令
+     *
+     * @param key     键
+     * @param seconds 过期时间,秒
+     * @param value   值
+     * @return 成功返回1 如果存在返回 0
+     */
+    Long setNxEx(byte[] key, int seconds, byte[] value);
+
+    /**
+     * 设置key的值并返回旧值
+     *
+     * @param key   键
+     * @param value 值
+     * @return byte[]
+     */
+    byte[] getSet(byte[] key, byte[] value);
+
+    /**
+     * 通过批量的key获取批量的value
+     *
+     * @param keys 键
+     * @return List
+     */
+    List<byte[]> mGet(byte[]... keys);
+
+    /**
+     * 批量的设置key:value
+     *
+     * @param keysValues key,value交替
+     * @return String
+     */
+    String mSet(byte[]... keysValues);
+
+    /**
+     * 删除指定的key
+     *
+     * @param keys 键
+     * @return 删除的数量
+     */
+    Long del(byte[]... keys);
+
+    /**
+     * 获取hash中field的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @return byte[]
+     */
+    byte[] hGet(byte[] key, byte[] field);
+
+    /**
+     * 设置hash中field的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return 新增的属性返回1,覆盖返回0
+     */
+    Long hSet(byte[] key, byte[] field, byte[] value);
+
+    /**
+     * 同时设置hash的多个field
+     *
+     * @param key  键
+     * @param hash 属性和值
+     * @return String
+     */
+    String hmSet(byte[] key, Map<byte[], byte[]> hash);
+
+    /**
+     * 获取hash中多个field的值
+     *
+     * @param key    键
+     * @param fields 属性
+     * @return List
+     */
+    List<byte[]> hmGet(byte[] key, byte[]... fields);
+
+    /**
+     * 获取hash中所有的field和值
+     *
+     * @param key 键
+     * @return Map
+     */
+    Map<byte[], byte[]> hGetAll(byte[] key);
+
+    /**
+     * 删除hash中的field
+     *
+     * @param key    键
+     * @param fields 属性
+     * @return 删除的数量
+     */
+    Long hDel(byte[] key, byte[]... fields);
+
+    /**
+     * 从list的头部添加值
+     *
+     * @param key    键
+     * @param values 值
+     * @return list的长度
+     */
+    Long lPush(byte[] key, byte[]... values);
+
+    /**
+     * 从list的尾部添加值
+     *
+     * @param key    键
+     * @param values 值
+     * @return list的长度
+     */
+    Long rPush(byte[] key, byte[]... values);
+
+    /**
+     * 从list的头部取出一个值
+     *
+     * @param key 键
+     * @return byte[]
+     */
+    byte[] lPop(byte[] key);
+
+    /**
+     * 从list的尾部取出一个值
+     *
+     * @param key 键
+     * @return byte[]
+     */
+    byte[] rPop(byte[] key);
+
+    /**
+     * 获取list指定下标范围的值
+     *
+     * @param key   键
+     * @param start 开始位置
+     * @param end   结束位置,-1表示最后一个
+     * @return List
+     */
+    List<byte[]> lRange(byte[] key, long start, long end);
+
+    /**
+     * 向set添加成员
+     *
+     * @param key     键
+     * @param members 成员
+     * @return 新增的数量
+     */
+    Long sAdd(byte[] key, byte[]... members);
+
+    /**
+     * 删除set中的成员
+     *
+     * @param key     键
+     * @param members 成员
+     * @return 删除的数量
+     */
+    Long sRem(byte[] key, byte[]... members);
+
+    /**
+     * 获取set的所有成员
+     *
+     * @param key 键
+     * @return Set
+     */
+    Set<byte[]> sMembers(byte[] key);
+
+    /**
+     * 判断member是否是set的成员
+     *
+     * @param key    键
+     * @param member 成员
+     * @return Boolean
+     */
+    Boolean sIsMember(byte[] key, byte[] member);
+
+    /**
+     * 向zset添加成员,成员已存在时更新分数
+     *
+     * @param key    键
+     * @param score  分数
+     * @param member 成员
+     * @return 新增的数量
+     */
+    Long zAdd(byte[] key, double score, byte[] member);
+
+    /**
+     * 删除zset中的成员
+     *
+     * @param key     键
+     * @param members 成员
+     * @return 删除的数量
+     */
+    Long zRem(byte[] key, byte[]... members);
+
+    /**
+     * 按分数从小到大获取zset指定下标范围的成员
+     *
+     * @param key   键
+     * @param start 开始位置
+     * @param end   结束位置,-1表示最后一个
+     * @return Set
+     */
+    Set<byte[]> zRange(byte[] key, long start, long end);
+
+    /**
+     * 按分数从大到小获取zset指定下标范围的成员
+     *
+     * @param key   键
+     * @param start 开始位置
+     * @param end   结束位置,-1表示最后一个
+     * @return Set
+     */
+    Set<byte[]> zRevRange(byte[] key, long start, long end);
+
+    /**
+     * 获取zset中成员的分数
+     *
+     * @param key    键
+     * @param member 成员
+     * @return Double
+     */
+    Double zScore(byte[] key, byte[] member);
+
+    /**
+     * 获取指定key的值
+     *
+     * @param key   键
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return T
+     */
+    <T> T get(String key, Codec<T> codec);
+
+    /**
+     * 设置key的值为value
+     *
+     * @param key   键
+     * @param value 值
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return String
+     */
+    <T> String set(String key, T value, Codec<T> codec);
+
+    /**
+     * 设置key的值并设置过期时间
+     *
+     * @param key     键
+     * @param seconds 过期时间,秒
+     * @param value   值
+     * @param codec   值的转换方式
+     * @param <T>     值类型
+     * @return String
+     */
+    <T> String setEx(String key, int seconds, T value, Codec<T> codec);
+
+    /**
+     * 通过批量的key获取批量的value,不存在的key对应null
+     *
+     * @param codec 值的转换方式
+     * @param keys  键
+     * @param <T>   值类型
+     * @return List
+     */
+    <T> List<T> mGet(Codec<T> codec, String... keys);
+
+    /**
+     * 获取hash中field的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return T
+     */
+    <T> T hGet(String key, String field, Codec<T> codec);
+
+    /**
+     * 设置hash中field的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return 新增的属性返回1,覆盖返回0
+     */
+    <T> Long hSet(String key, String field, T value, Codec<T> codec);
+
+    /**
+     * 获取hash中所有的field和值
+     *
+     * @param key   键
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return Map
+     */
+    <T> Map<String, T> hGetAll(String key, Codec<T> codec);
+
+    /**
+     * 从list的头部添加值
+     *
+     * @param key   键
+     * @param value 值
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return list的长度
+     */
+    <T> Long lPush(String key, T value, Codec<T> codec);
+
+    /**
+     * 从list的尾部添加值
+     *
+     * @param key   键
+     * @param value 值
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return list的长度
+     */
+    <T> Long rPush(String key, T value, Codec<T> codec);
+
+    /**
+     * 从list的头部取出一个值
+     *
+     * @param key   键
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return T
+     */
+    <T> T lPop(String key, Codec<T> codec);
+
+    /**
+     * 从list的尾部取出一个值
+     *
+     * @param key   键
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return T
+     */
+    <T> T rPop(String key, Codec<T> codec);
+
+    /**
+     * 获取list指定下标范围的值
+     *
+     * @param key   键
+     * @param start 开始位置
+     * @param end   结束位置,-1表示最后一个
+     * @param codec 值的转换方式
+     * @param <T>   值类型
+     * @return List
+     */
+    <T> List<T> lRange(String key, long start, long end, Codec<T> codec);
+
+    /**
+     * 向set添加成员
+     *
+     * @param key    键
+     * @param member 成员
+     * @param codec  成员的转换方式
+     * @param <T>    成员类型
+     * @return 新增的数量
+     */
+    <T> Long sAdd(String key, T member, Codec<T> codec);
+
+    /**
+     * 获取set的所有成员
+     *
+     * @param key   键
+     * @param codec 成员的转换方式
+     * @param <T>   成员类型
+     * @return List
+     */
+    <T> List<T> sMembers(String key, Codec<T> codec);
+
+    /**
+     * 向zset添加成员,成员已存在时更新分数
+     *
+     * @param key    键
+     * @param score  分数
+     * @param member 成员
+     * @param codec  成员的转换方式
+     * @param <T>    成员类型
+     * @return 新增的数量
+     */
+    <T> Long zAdd(String key, double score, T member, Codec<T> codec);
+
+    /**
+     * 按分数从小到大获取zset指定下标范围的成员
+     *
+     * @param key   键
+     * @param start 开始位置
+     * @param end   结束位置,-1表示最后一个
+     * @param codec 成员的转换方式
+     * @param <T>   成员类型
+     * @return 按分数排序的List
+     */
+    <T> List<T> zRange(String key, long start, long end, Codec<T> codec);
+}
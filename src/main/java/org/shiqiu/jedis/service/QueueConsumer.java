@@ -0,0 +1,159 @@
+package org.shiqiu.jedis.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于BLPOP/BRPOP的队列消费者,多个工作线程同时阻塞等待多个list
+ * 没有消息时阻塞在redis上而不是轮询,拿到一条消息后再从同一个list非阻塞地批量弹出,
+ * 凑够batchSize或者list为空时交给handler处理
+ */
+public class QueueConsumer implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(QueueConsumer.class);
+
+    private static final long CLOSE_WAIT_MILLIS = 5000;
+
+    private final RedisService redisService;
+
+    private final QueueHandler handler;
+
+    private final boolean fromHead;
+
+    private final int batchSize;
+
+    private final int timeoutSeconds;
+
+    private final String[] keys;
+
+    private final Thread[] workers;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param redisService   用于弹出消息
+     * @param handler        消息处理
+     * @param fromHead       true从头部弹出(BLPOP),false从尾部弹出(BRPOP)
+     * @param threads        工作线程数,每个线程阻塞时占用一个连接
+     * @param batchSize      每次交给handler的最大消息数
+     * @param timeoutSeconds 每次阻塞等待的秒数,也是close之后线程退出的最长时间
+     * @param keys           消费的list,靠前的key优先
+     */
+    public QueueConsumer(RedisService redisService, QueueHandler handler, boolean fromHead, int threads,
+            int batchSize, int timeoutSeconds, String... keys)
+    {
+        if (threads <= 0 || batchSize <= 0 || timeoutSeconds <= 0 || keys.length == 0)
+        {
+            throw new IllegalArgumentException("threads, batchSize and timeoutSeconds must be positive and keys must not be empty");
+        }
+        this.redisService = redisService;
+        this.handler = handler;
+        this.fromHead = fromHead;
+        this.batchSize = batchSize;
+        this.timeoutSeconds = timeoutSeconds;
+        this.keys = keys.clone();
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            Thread worker = new Thread(this::consumeLoop, "redis-queue-consumer-" + i);
+            worker.setDaemon(true);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    private void consumeLoop()
+    {
+        while (running)
+        {
+            try
+            {
+                List<String> popped = fromHead ? redisService.bLPop(timeoutSeconds, keys)
+                        : redisService.bRPop(timeoutSeconds, keys);
+                if (popped == null || popped.size() < 2)
+                {
+                    continue;
+                }
+                String key = popped.get(0);
+                List<String> values = new ArrayList<>(batchSize);
+                values.add(popped.get(1));
+                if (batchSize > 1)
+                {
+                    values.addAll(fromHead ? redisService.lPop(key, batchSize - 1)
+                            : redisService.rPop(key, batchSize - 1));
+                }
+                handle(key, values);
+            }
+            catch (RuntimeException e)
+            {
+                if (running)
+                {
+                    LOGGER.warn("pop from {} fail, retry in 1s", Arrays.toString(keys), e);
+                    sleep();
+                }
+            }
+        }
+    }
+
+    private void handle(String key, List<String> values)
+    {
+        try
+        {
+            handler.handle(key, values);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("handle {} messages from {} fail", values.size(), key, e);
+        }
+    }
+
+    private void sleep()
+    {
+        try
+        {
+            TimeUnit.SECONDS.sleep(1);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * 停止消费,等待正在处理的消息处理完,阻塞中的线程最多在timeoutSeconds之后退出
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        long deadline = System.currentTimeMillis() + Math.max(CLOSE_WAIT_MILLIS, TimeUnit.SECONDS.toMillis(timeoutSeconds) + 1000);
+        for (Thread worker : workers)
+        {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+            {
+                break;
+            }
+            try
+            {
+                worker.join(wait);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.shiqiu.jedis.service;
+
+import java.util.List;
+
+/**
+ * 队列消费者处理一批消息的回调
+ */
+@FunctionalInterface
+public interface QueueHandler {
+    /**
+     * 处理从同一个list中弹出的一批消息,抛出异常时这批消息不会重新入队
+     *
+     * @param key    消息所在的list
+     * @param values 消息,按弹出顺序排列,至少一条
+     */
+    void handle(String key, List<String> values);
+}
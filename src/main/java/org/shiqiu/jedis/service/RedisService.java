@@ -1,19 +1,55 @@
 package org.shiqiu.jedis.service;
 
+import org.shiqiu.jedis.util.ReliableQueue;
+import org.shiqiu.jedis.util.ScanCursor;
 import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.Tuple;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 public interface RedisService {
     /**
      * 对象封装成一个<String,String>的map
+     * 包含父类的字段,忽略static和transient字段,值为null的字段不放入map
      *
      * @param object 对象
      * @return Map<String, String>
      */
     Map<String, String> getProperty(Object object);
 
+    /**
+     * 把对象的字段写入key对应的hash
+     *
+     * @param key    键
+     * @param object 对象
+     * @return String
+     */
+    String hmSetObject(String key, Object object);
+
+    /**
+     * 只把发生变化的字段写入key对应的hash,变为null的字段从hash中删除
+     *
+     * @param key    键
+     * @param before 修改前的对象,为null时写入所有非null字段
+     * @param after  修改后的对象
+     * @return 变化的字段数
+     */
+    Long hmSetChanged(String key, Object before, Object after);
+
+    /**
+     * 读取key对应的hash并转换成对象,对象需要有无参构造方法
+     *
+     * @param key  键
+     * @param type 对象类型
+     * @param <T>  对象类型
+     * @return key不存在时返回null
+     */
+    <T> T hGetAllObject(String key, Class<T> type);
+
     /**
      * 获取指定key的值,如果key不存在返回null，如果该Key存储的不是字符串，会抛出一个错误
      *
@@ -22,6 +58,18 @@ public interface RedisService {
      */
     String getString(String key);
 
+    /**
+     * 读取key,不存在时调用loader加载并写入,用于防止热点key过期时大量线程同时加载
+     * 同一进程内同一个key同时只有一个线程加载,其他线程等待结果;redis.loader.lockMillis大于0时不同进程之间通过redis锁合并加载;
+     * 快过期时按概率提前在后台刷新;写入的过期时间加上随机抖动
+     *
+     * @param key     键
+     * @param seconds 过期时间
+     * @param loader  加载值,返回null时不写入
+     * @return String
+     */
+    String getOrLoad(String key, int seconds, Supplier<String> loader);
+
     /**
      * 设置key的值为value
      *
@@ -39,8 +87,36 @@ public interface RedisService {
      */
     Long del(String... keys);
 
+    /**
+     * 删除指定的key,和del相同但是value在redis的后台线程中释放,删除大的hash/zset时不会阻塞redis
+     * 需要redis 4.0以上
+     *
+     * @param keys 键
+     * @return 删除的数量
+     */
+    Long unlink(String... keys);
+
+    /**
+     * 通过SCAN找到匹配pattern的key,按redis.delete.batchSize分批UNLINK,每秒最多删除redis.delete.maxKeysPerSecond个
+     *
+     * @param pattern 通配符
+     * @return 删除的数量
+     */
+    long deleteByPattern(String pattern);
+
+    /**
+     * 通过SCAN找到匹配pattern的key,分批UNLINK,不会阻塞redis,线程被中断时停止
+     *
+     * @param pattern          通配符
+     * @param batchSize        每批删除的key数量,也是SCAN的COUNT
+     * @param maxKeysPerSecond 每秒最多删除的key数量,0表示不限制
+     * @return 删除的数量
+     */
+    long deleteByPattern(String pattern, int batchSize, int maxKeysPerSecond);
+
     /**
      * 通过key向指定的value值追加值
+     * 这个命令按字节操作存储的值,开启压缩时对压缩存储的值抛出JedisDataException
      *
      * @param key         键
      * @param appendValue 追加值
@@ -77,6 +153,7 @@ public interface RedisService {
 
     /**
      * 通过key 和offset 从指定的位置开始将原先value替换
+     * 这个命令按字节操作存储的值,开启压缩时对压缩存储的值抛出JedisDataException
      *
      * @param key    键
      * @param offset 指定位置索引
@@ -87,14 +164,33 @@ public interface RedisService {
 
     /**
      * 通过批量的key获取批量的value
+     * key的数量超过redis.multiKey.chunkSize时拆成多条MGET并行执行,结果仍然和keys一一对应
      *
      * @param keys 键
      * @return List
      */
     List<String> mGet(String... keys);
 
+    /**
+     * 通过批量的key获取批量的value,按keys的顺序放入Map,不存在的key不放入
+     *
+     * @param keys 键
+     * @return Map
+     */
+    Map<String, String> mGetMap(String... keys);
+
+    /**
+     * 按keys的顺序惰性返回(key, value),每次只读取redis.multiKey.chunkSize个key并预取后面几块,
+     * 不会把所有结果同时放在内存中,不存在的key的value为null
+     *
+     * @param keys 键
+     * @return Stream
+     */
+    Stream<Map.Entry<String, String>> mGetStream(String... keys);
+
     /**
      * 批量的设置key:value,也可以一个
+     * key的数量超过redis.multiKey.chunkSize时拆成多条MSET并行执行,此时整体不再是原子的
      *
      * @param keysValues 可变key
      * @return String
@@ -118,8 +214,19 @@ public interface RedisService {
      */
     String getSet(String key, String value);
 
+    /**
+     * 当前值等于expected时设置为value,保留原来的过期时间,一次往返完成比较和设置
+     *
+     * @param key      键
+     * @param expected 期望的当前值,null表示期望key不存在
+     * @param value    新值
+     * @return 设置成功返回true
+     */
+    Boolean compareAndSet(String key, String expected, String value);
+
     /**
      * 通过下标 和key 获取指定下标位置的 value
+     * 这个命令按字节操作存储的值,开启压缩时对压缩存储的值抛出JedisDataException
      *
      * @param key         键
      * @param startOffset 开始下标
@@ -145,6 +252,14 @@ public interface RedisService {
      */
     Long incrBy(String key, long integer);
 
+    /**
+     * 给key的值加上integer,不返回结果,开启redis.counterBuffer时增量在内存中累加后批量写入
+     *
+     * @param key     键
+     * @param integer 加值
+     */
+    void incrByLater(String key, long integer);
+
     /**
      * 对key的值做减减操作,如果key不存在,则设置key为-1
      *
@@ -164,6 +279,7 @@ public interface RedisService {
 
     /**
      * 通过key获取value值的长度
+     * 这个命令按字节操作存储的值,开启压缩时对压缩存储的值抛出JedisDataException
      *
      * @param key 键
      * @return Long 长度
@@ -199,6 +315,16 @@ public interface RedisService {
      */
     String hmSet(String key, Map<String, String> hash);
 
+    /**
+     * 同时设置hash的多个field并设置key的过期时间,一次往返并且是原子的
+     *
+     * @param key     键
+     * @param seconds 过期时间,秒
+     * @param hash    属性和值
+     * @return 新增的field数
+     */
+    Long hSetEx(String key, int seconds, Map<String, String> hash);
+
     /**
      * 通过key 和 field 获取指定的 value
      *
@@ -236,6 +362,15 @@ public interface RedisService {
      */
     Long hIncrBy(String key, String field, Long value);
 
+    /**
+     * 给key中field的值加上value,不返回结果,开启redis.counterBuffer时增量在内存中累加后批量写入
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     */
+    void hIncrByLater(String key, String field, long value);
+
     /**
      * 通过key和field判断是否有指定的value存在
      *
@@ -295,6 +430,16 @@ public interface RedisService {
      */
     Long lPush(String key, String... strings);
 
+    /**
+     * 从list的头部添加值,只保留头部的maxLength个,用于最近N条记录
+     *
+     * @param key       键
+     * @param maxLength 最多保留的个数
+     * @param strings   值
+     * @return 修剪后list的长度
+     */
+    Long lPushCapped(String key, int maxLength, String... strings);
+
     /**
      * 通过key向list尾部添加字符串
      *
@@ -372,6 +517,65 @@ public interface RedisService {
      */
     String rpoplpush(String srcKey, String dstKey);
 
+    /**
+     * 通过key从list的头部一次删除最多count个value,并按顺序返回,整个操作是原子的
+     *
+     * @param key   键
+     * @param count 最多删除的个数
+     * @return list为空时返回空的List
+     */
+    List<String> lPop(String key, int count);
+
+    /**
+     * 通过key从list的尾部一次删除最多count个value,按弹出顺序(从尾部开始)返回,整个操作是原子的
+     *
+     * @param key   键
+     * @param count 最多删除的个数
+     * @return list为空时返回空的List
+     */
+    List<String> rPop(String key, int count);
+
+    /**
+     * 阻塞地从多个list的头部弹出一个value,按keys的顺序检查,没有数据时最多等待timeout秒
+     *
+     * @param timeout 等待秒数,0表示一直等待
+     * @param keys    键
+     * @return [key, value],超时返回null
+     */
+    List<String> bLPop(int timeout, String... keys);
+
+    /**
+     * 阻塞地从多个list的尾部弹出一个value,按keys的顺序检查,没有数据时最多等待timeout秒
+     *
+     * @param timeout 等待秒数,0表示一直等待
+     * @param keys    键
+     * @return [key, value],超时返回null
+     */
+    List<String> bRPop(int timeout, String... keys);
+
+    /**
+     * 启动一个队列消费者,threads个线程通过BLPOP(fromHead)或BRPOP等待keys中的消息,
+     * 每次最多把batchSize条同一个list的消息交给handler,不再需要的时候调用close
+     * 阻塞等待的秒数由redis.queue.blockSeconds配置
+     *
+     * @param handler   消息处理
+     * @param fromHead  true从头部弹出,false从尾部弹出
+     * @param threads   工作线程数
+     * @param batchSize 每批最多的消息数
+     * @param keys      键,靠前的key优先
+     * @return QueueConsumer
+     */
+    QueueConsumer consume(QueueHandler handler, boolean fromHead, int threads, int batchSize, String... keys);
+
+    /**
+     * 创建一个可靠队列,取出的消息在ack之前保存在本进程的处理中列表,进程挂掉后由其他进程放回队列
+     * 消费者id为当前进程(pid@host)加随机的后缀,每次创建都不同,心跳过期时间由redis.reliableQueue.visibilitySeconds配置,集群和分片模式下不支持
+     *
+     * @param name 队列名称
+     * @return ReliableQueue 不再使用时调用close
+     */
+    ReliableQueue reliableQueue(String name);
+
     /**
      * 通过key获取list中指定下标位置的value
      *
@@ -533,6 +737,17 @@ public interface RedisService {
      */
     Long zAdd(String key, double score, String member);
 
+    /**
+     * 向zset添加成员,只保留分数最高的maxSize个,用于排行榜
+     *
+     * @param key     键
+     * @param maxSize 最多保留的个数
+     * @param score   分数
+     * @param member  成员
+     * @return 新增的数量,加入后被淘汰时仍然是1
+     */
+    Long zAddCapped(String key, int maxSize, double score, String member);
+
     /**
      * 通过key删除在zset中指定的value
      *
@@ -675,12 +890,53 @@ public interface RedisService {
      * 返回满足pattern表达式的所有key
      * keys(*)
      * 返回所有的key
+     * KEYS会阻塞redis直到遍历完整个keyspace,key数量大时使用scanKeys
      *
      * @param pattern 正则表达式
      * @return Set
      */
     Set<String> keys(String pattern);
 
+    /**
+     * 通过SCAN惰性遍历满足pattern表达式的key,每次只取一页,不会阻塞redis
+     * 遍历期间被修改的key可能重复返回或者不返回
+     *
+     * @param pattern 通配符,为null时返回所有的key
+     * @param count   每页大约返回的数量
+     * @return ScanCursor 可以直接迭代,也可以通过stream()转成流
+     */
+    ScanCursor<String> scanKeys(String pattern, int count);
+
+    /**
+     * 通过HSCAN惰性遍历hash中的field和value
+     *
+     * @param key     键
+     * @param pattern field的通配符,为null时返回所有的field
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
+     */
+    ScanCursor<Map.Entry<String, String>> hScan(String key, String pattern, int count);
+
+    /**
+     * 通过SSCAN惰性遍历set中的value
+     *
+     * @param key     键
+     * @param pattern value的通配符,为null时返回所有的value
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
+     */
+    ScanCursor<String> sScan(String key, String pattern, int count);
+
+    /**
+     * 通过ZSCAN惰性遍历zSet中的value和score,不保证按score排序
+     *
+     * @param key     键
+     * @param pattern value的通配符,为null时返回所有的value
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
+     */
+    ScanCursor<Tuple> zScan(String key, String pattern, int count);
+
     /**
      * 通过key判断值得类型
      *
@@ -690,8 +946,72 @@ public interface RedisService {
     String type(String key);
 
     /**
-     * 清除所有数据
+     * 清除所有数据,会阻塞redis直到删除完成,数据量大时使用flushAllAsync
      * @return String OK
      */
     String flushAll();
+
+    /**
+     * 清除所有数据,FLUSHALL ASYNC在redis的后台线程中释放内存,需要redis 4.0以上
+     *
+     * @return String OK
+     */
+    String flushAllAsync();
+
+    /**
+     * 清除当前数据库的数据,FLUSHDB ASYNC在redis的后台线程中释放内存,需要redis 4.0以上
+     *
+     * @return String OK
+     */
+    String flushDbAsync();
+
+    /**
+     * 注册一个lua脚本,之后通过evalScript按名称执行
+     *
+     * @param name   名称
+     * @param script lua脚本
+     */
+    void registerScript(String name, String script);
+
+    /**
+     * 按名称执行注册的lua脚本,第一次执行时加载,之后通过EVALSHA执行
+     * 集群和分片模式下按第一个key路由,所有key需要在同一个slot
+     *
+     * @param name 名称
+     * @param keys KEYS
+     * @param args ARGV
+     * @return 脚本的返回值
+     */
+    Object evalScript(String name, List<String> keys, List<String> args);
+
+    /**
+     * redis.transport=sharded时增加一个分片节点,在线迁移属于新节点的key,迁移期间读不到的key会再读旧节点
+     *
+     * @param node host:port
+     * @return 迁移的key数
+     */
+    long addShard(String node);
+
+    /**
+     * 配置了redis.replica.nodes时只读命令发到从节点,action中的读取仍然发到主节点,
+     * 用于写入后马上读取自己写入的值
+     *
+     * @param action 操作
+     * @param <T>    返回值类型
+     * @return action的返回值
+     */
+    <T> T onMaster(Supplier<T> action);
+
+    /**
+     * 马上写入计数器写缓冲中累加的增量,没有开启redis.counterBuffer时什么也不做
+     */
+    void flushCounters();
+
+    /**
+     * 创建一个批量命令,放入的命令在execute时通过pipeline一次发送
+     * 每次pipeline同步的最大命令数由redis.pipeline.maxBatchSize配置
+     *
+     * @return RedisBatch
+     */
+    RedisBatch batch();
 }
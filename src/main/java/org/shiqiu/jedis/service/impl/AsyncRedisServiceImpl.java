@@ -0,0 +1,546 @@
+package org.shiqiu.jedis.service.impl;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.shiqiu.jedis.service.AsyncRedisService;
+import org.shiqiu.jedis.util.AutoPipeliner;
+import org.shiqiu.jedis.util.Codec;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.KeyConcurrencyLimiter;
+import org.shiqiu.jedis.util.RedisMetrics;
+import org.shiqiu.jedis.util.VirtualThreads;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+@Service
+public class AsyncRedisServiceImpl implements AsyncRedisService {
+    private static final Logger LOGGER = LogManager.getLogger(AsyncRedisServiceImpl.class);
+
+    /**
+     * 命令合并成pipeline由固定的发送线程发送
+     */
+    public static final String MODE_PIPELINE = "pipeline";
+
+    /**
+     * 每条命令一个虚拟线程,借连接单独执行,需要JDK 21
+     */
+    public static final String MODE_VIRTUAL = "virtual";
+
+    @Value("${redis.async.mode:pipeline}")
+    private String mode;
+
+    @Value("${redis.async.keyStripes:1024}")
+    private int keyStripes;
+
+    @Value("${redis.async.permitsPerKey:8}")
+    private int permitsPerKey;
+
+    @Value("${redis.async.connections:4}")
+    private int connections;
+
+    @Value("${redis.async.maxBatchSize:128}")
+    private int maxBatchSize;
+
+    @Value("${redis.async.windowMicros:0}")
+    private long windowMicros;
+
+    @Value("${redis.async.maxPending:10000}")
+    private int maxPending;
+
+    @Value("${redis.async.maxWaitMillis:1000}")
+    private long maxWaitMillis;
+
+    /**
+     * 用于写入后让近端缓存失效,以及共用命令的监控指标
+     */
+    @Resource
+    private RedisServiceImpl redisService;
+
+    private AutoPipeliner pipeliner;
+
+    private ExecutorService virtualExecutor;
+
+    private KeyConcurrencyLimiter limiter;
+
+    /**
+     * 集群和分片模式下的异步命令不会按slot路由,提交时直接失败而不是发到redis.host
+     */
+    private boolean unsupported;
+
+    @PostConstruct
+    public void init()
+    {
+        if (redisService.getCluster() != null)
+        {
+            unsupported = true;
+            return;
+        }
+        if (MODE_VIRTUAL.equals(mode))
+        {
+            virtualExecutor = VirtualThreads.newExecutor("redis-async-");
+            limiter = new KeyConcurrencyLimiter(keyStripes, permitsPerKey, maxWaitMillis);
+            LOGGER.info("async redis commands run on virtual threads, {} permits per key stripe", permitsPerKey);
+        }
+        else if (MODE_PIPELINE.equals(mode))
+        {
+            pipeliner = new AutoPipeliner("redis-async-", connections, maxBatchSize, windowMicros, maxPending);
+        }
+        else
+        {
+            throw new IllegalArgumentException("unknown redis.async.mode: " + mode);
+        }
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        if (pipeliner != null)
+        {
+            pipeliner.close();
+        }
+        if (virtualExecutor != null)
+        {
+            virtualExecutor.shutdown();
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> execute(Function<Pipeline, Response<T>> command)
+    {
+        checkSupported();
+        if (virtualExecutor != null)
+        {
+            return CompletableFuture.supplyAsync(() -> executeAlone(command), virtualExecutor);
+        }
+        return pipeliner.submit(command, maxWaitMillis);
+    }
+
+    /**
+     * 提交命令并在完成时记录耗时和错误
+     *
+     * @param keys 命令涉及的key,虚拟线程模式下按第一个key限制并发
+     */
+    private <T> CompletableFuture<T> submit(Command command, Function<Pipeline, Response<T>> pipelined,
+            String... keys)
+    {
+        return submit(command, pipelined, false, keys);
+    }
+
+    /**
+     * 提交写入命令,成功后让近端缓存中的keys失效
+     */
+    private <T> CompletableFuture<T> invalidating(Command command, Function<Pipeline, Response<T>> pipelined,
+            String... keys)
+    {
+        return submit(command, pipelined, true, keys);
+    }
+
+    private <T> CompletableFuture<T> submit(Command command, Function<Pipeline, Response<T>> pipelined,
+            boolean invalidate, String... keys)
+    {
+        checkSupported();
+        RedisMetrics metrics = redisService.getMetrics();
+        long start = System.nanoTime();
+        CompletableFuture<T> future = virtualExecutor == null ? pipeliner.submit(pipelined, maxWaitMillis)
+                : CompletableFuture.supplyAsync(() -> limiter.call(keys.length == 0 ? null : keys[0],
+                        () -> executeAlone(pipelined)), virtualExecutor);
+        return future.whenComplete((result, error) -> {
+            metrics.recordLatency(command, System.nanoTime() - start);
+            if (error != null)
+            {
+                metrics.recordError(command, error);
+            }
+            else if (invalidate)
+            {
+                redisService.invalidate(result, keys);
+            }
+        });
+    }
+
+    private void checkSupported()
+    {
+        if (unsupported)
+        {
+            throw new UnsupportedOperationException("async commands are not supported by redis.transport="
+                    + redisService.getTransport());
+        }
+    }
+
+    /**
+     * 在当前(虚拟)线程上借一个连接单独执行一条命令
+     */
+    private static <T> T executeAlone(Function<Pipeline, Response<T>> pipelined)
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            Pipeline pipeline = jedis.pipelined();
+            Response<T> response = pipelined.apply(pipeline);
+            pipeline.sync();
+            return response.get();
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getString(String key)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            return submit(Command.GET, p -> p.get(rawKey), key).thenApply(codec::decode);
+        }
+        return submit(Command.GET, p -> p.get(key), key);
+    }
+
+    @Override
+    public CompletableFuture<String> setString(String key, String value)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] stored = codec.encode(value);
+            return invalidating(Command.SET, p -> p.set(rawKey, stored), key);
+        }
+        return invalidating(Command.SET, p -> p.set(key, value), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> del(String... keys)
+    {
+        return invalidating(Command.DEL, p -> p.del(keys), keys);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(String key)
+    {
+        return submit(Command.EXISTS, p -> p.exists(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> setNx(String key, String value)
+    {
+        return invalidating(Command.SETNX, p -> p.setnx(key, value), key);
+    }
+
+    @Override
+    public CompletableFuture<String> setEx(String key, int seconds, String value)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] stored = codec.encode(value);
+            return invalidating(Command.SETEX, p -> p.setex(rawKey, seconds, stored), key);
+        }
+        return invalidating(Command.SETEX, p -> p.setex(key, seconds, value), key);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> mGet(String... keys)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[][] rawKeys = encode(keys);
+            return submit(Command.MGET, p -> p.mget(rawKeys), keys).thenApply(values -> decodeAll(values, codec));
+        }
+        return submit(Command.MGET, p -> p.mget(keys), keys);
+    }
+
+    @Override
+    public CompletableFuture<String> mSet(String... keysValues)
+    {
+        return invalidating(Command.MSET, p -> p.mset(keysValues), RedisServiceImpl.keysOf(keysValues));
+    }
+
+    @Override
+    public CompletableFuture<Long> incr(String key)
+    {
+        return invalidating(Command.INCR, p -> p.incr(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> incrBy(String key, long integer)
+    {
+        return invalidating(Command.INCRBY, p -> p.incrBy(key, integer), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> decr(String key)
+    {
+        return invalidating(Command.DECR, p -> p.decr(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> decrBy(String key, long integer)
+    {
+        return invalidating(Command.DECRBY, p -> p.decrBy(key, integer), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> hSetNx(String key, String field, String value)
+    {
+        return invalidating(Command.HSETNX, p -> p.hsetnx(key, field, value), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> hSet(String key, String field, String value)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] rawField = SafeEncoder.encode(field);
+            byte[] stored = codec.encode(value);
+            return invalidating(Command.HSET, p -> p.hset(rawKey, rawField, stored), key);
+        }
+        return invalidating(Command.HSET, p -> p.hset(key, field, value), key);
+    }
+
+    @Override
+    public CompletableFuture<String> hmSet(String key, Map<String, String> hash)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            Map<byte[], byte[]> stored = new LinkedHashMap<>(hash.size() * 4 / 3 + 1);
+            for (Map.Entry<String, String> entry : hash.entrySet())
+            {
+                stored.put(SafeEncoder.encode(entry.getKey()), codec.encode(entry.getValue()));
+            }
+            return invalidating(Command.HMSET, p -> p.hmset(rawKey, stored), key);
+        }
+        return invalidating(Command.HMSET, p -> p.hmset(key, hash), key);
+    }
+
+    @Override
+    public CompletableFuture<String> hGet(String key, String field)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] rawField = SafeEncoder.encode(field);
+            return submit(Command.HGET, p -> p.hget(rawKey, rawField), key).thenApply(codec::decode);
+        }
+        return submit(Command.HGET, p -> p.hget(key, field), key);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> hmGet(String key, String... fields)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[][] rawFields = encode(fields);
+            return submit(Command.HMGET, p -> p.hmget(rawKey, rawFields), key)
+                    .thenApply(values -> decodeAll(values, codec));
+        }
+        return submit(Command.HMGET, p -> p.hmget(key, fields), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> hIncrBy(String key, String field, long value)
+    {
+        return invalidating(Command.HINCRBY, p -> p.hincrBy(key, field, value), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> hDel(String key, String... fields)
+    {
+        return invalidating(Command.HDEL, p -> p.hdel(key, fields), key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> hExists(String key, String field)
+    {
+        return submit(Command.HEXISTS, p -> p.hexists(key, field), key);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> hGetAll(String key)
+    {
+        Codec<String> codec = redisService.getStringCodec();
+        if (codec != Codecs.STRING)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            return submit(Command.HGETALL, p -> p.hgetAll(rawKey), key).thenApply(stored -> {
+                Map<String, String> hash = new HashMap<>(stored.size() * 4 / 3 + 1);
+                for (Map.Entry<byte[], byte[]> entry : stored.entrySet())
+                {
+                    hash.put(SafeEncoder.encode(entry.getKey()), codec.decode(entry.getValue()));
+                }
+                return hash;
+            });
+        }
+        return submit(Command.HGETALL, p -> p.hgetAll(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(String key, int seconds)
+    {
+        return invalidating(Command.EXPIRE, p -> p.expire(key, seconds), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> lPush(String key, String... strings)
+    {
+        return submit(Command.LPUSH, p -> p.lpush(key, strings), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> rPush(String key, String... strings)
+    {
+        return submit(Command.RPUSH, p -> p.rpush(key, strings), key);
+    }
+
+    @Override
+    public CompletableFuture<String> lPop(String key)
+    {
+        return submit(Command.LPOP, p -> p.lpop(key), key);
+    }
+
+    @Override
+    public CompletableFuture<String> rPop(String key)
+    {
+        return submit(Command.RPOP, p -> p.rpop(key), key);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> lRange(String key, long start, long end)
+    {
+        return submit(Command.LRANGE, p -> p.lrange(key, start, end), key);
+    }
+
+    @Override
+    public CompletableFuture<String> lTrim(String key, long start, long end)
+    {
+        return submit(Command.LTRIM, p -> p.ltrim(key, start, end), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> lLen(String key)
+    {
+        return submit(Command.LLEN, p -> p.llen(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> sAdd(String key, String... members)
+    {
+        return invalidating(Command.SADD, p -> p.sadd(key, members), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> sRem(String key, String... members)
+    {
+        return invalidating(Command.SREM, p -> p.srem(key, members), key);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> sMembers(String key)
+    {
+        return submit(Command.SMEMBERS, p -> p.smembers(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> sIsMember(String key, String member)
+    {
+        return submit(Command.SISMEMBER, p -> p.sismember(key, member), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> sCard(String key)
+    {
+        return submit(Command.SCARD, p -> p.scard(key), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> zAdd(String key, double score, String member)
+    {
+        return submit(Command.ZADD, p -> p.zadd(key, score, member), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> zRem(String key, String... members)
+    {
+        return submit(Command.ZREM, p -> p.zrem(key, members), key);
+    }
+
+    @Override
+    public CompletableFuture<Double> zIncrBy(String key, double score, String member)
+    {
+        return submit(Command.ZINCRBY, p -> p.zincrby(key, score, member), key);
+    }
+
+    @Override
+    public CompletableFuture<Double> zScore(String key, String member)
+    {
+        return submit(Command.ZSCORE, p -> p.zscore(key, member), key);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> zRevRange(String key, long start, long end)
+    {
+        return submit(Command.ZREVRANGE, p -> p.zrevrange(key, start, end), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> zRemRangeByRank(String key, long start, long end)
+    {
+        return submit(Command.ZREMRANGEBYRANK, p -> p.zremrangeByRank(key, start, end), key);
+    }
+
+    @Override
+    public CompletableFuture<Long> zCard(String key)
+    {
+        return submit(Command.ZCARD, p -> p.zcard(key), key);
+    }
+
+    private static byte[][] encode(String... values)
+    {
+        byte[][] result = new byte[values.length][];
+        for (int i = 0; i < values.length; i++)
+        {
+            result[i] = SafeEncoder.encode(values[i]);
+        }
+        return result;
+    }
+
+    private static List<String> decodeAll(List<byte[]> stored, Codec<String> codec)
+    {
+        List<String> values = new ArrayList<>(stored.size());
+        for (byte[] value : stored)
+        {
+            values.add(codec.decode(value));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,411 @@
+package org.shiqiu.jedis.service.impl;
+
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.util.Codec;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.RedisCluster;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class BinaryRedisServiceImpl implements BinaryRedisService {
+    private static final byte[] NX = SafeEncoder.encode("NX");
+
+    private static final byte[] EX = SafeEncoder.encode("EX");
+
+    /**
+     * 共用命令的发送方式,监控指标和近端缓存的失效
+     */
+    @Resource
+    private RedisServiceImpl redisService;
+
+    @Override
+    public byte[] get(byte[] key)
+    {
+        return redisService.pipelined(Command.GET, key, p -> p.get(key), jedis -> jedis.get(key));
+    }
+
+    @Override
+    public String set(byte[] key, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.SET, value);
+        return redisService.invalidate(redisService.pipelined(Command.SET, key, p -> p.set(key, value),
+                jedis -> jedis.set(key, value)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public String setEx(byte[] key, int seconds, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.SETEX, value);
+        return redisService.invalidate(redisService.pipelined(Command.SETEX, key, p -> p.setex(key, seconds, value),
+                jedis -> jedis.setex(key, seconds, value)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Long setNx(byte[] key, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.SETNX, value);
+        return redisService.invalidate(redisService.pipelined(Command.SETNX, key, p -> p.setnx(key, value),
+                jedis -> jedis.setnx(key, value)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Long setNxEx(byte[] key, int seconds, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.SET, value);
+        String reply = redisService.invalidate(redisService.pipelined(Command.SET, key,
+                p -> p.set(key, value, NX, EX, seconds), jedis -> jedis.set(key, value, NX, EX, seconds)),
+                SafeEncoder.encode(key));
+        return "OK".equals(reply) ? 1L : 0L;
+    }
+
+    @Override
+    public byte[] getSet(byte[] key, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.GETSET, value);
+        return redisService.invalidate(redisService.multiplexed(Command.GETSET, key, p -> p.getSet(key, value),
+                jedis -> jedis.getSet(key, value)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public List<byte[]> mGet(byte[]... keys)
+    {
+        if (redisService.crossSlot(keys))
+        {
+            Map<Integer, List<byte[]>> replies = redisService.bySlot(Command.MGET,
+                    RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                    (p, group) -> p.mget(group.toArray(new byte[0][])),
+                    (jedis, group) -> jedis.mget(group.toArray(new byte[0][])));
+            return RedisCluster.mergeBySlot(keys, RedisCluster::slot, replies);
+        }
+        return redisService.multiplexed(Command.MGET, RedisServiceImpl.first(keys), p -> p.mget(keys),
+                jedis -> jedis.mget(keys));
+    }
+
+    @Override
+    public String mSet(byte[]... keysValues)
+    {
+        String[] keys = new String[keysValues.length / 2];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = SafeEncoder.encode(keysValues[i * 2]);
+        }
+        if (redisService.crossSlot(keys))
+        {
+            redisService.bySlot(Command.MSET, RedisCluster.groupBySlot(keysValues, 2, RedisCluster::slot),
+                    (p, group) -> p.mset(group.toArray(new byte[0][])),
+                    (jedis, group) -> jedis.mset(group.toArray(new byte[0][])));
+            return redisService.invalidate("OK", keys);
+        }
+        return redisService.invalidate(redisService.multiplexed(Command.MSET, RedisServiceImpl.first(keysValues),
+                p -> p.mset(keysValues), jedis -> jedis.mset(keysValues)), keys);
+    }
+
+    @Override
+    public Long del(byte[]... keys)
+    {
+        String[] stringKeys = encodeKeys(keys);
+        if (redisService.crossSlot(stringKeys))
+        {
+            Map<Integer, Long> deleted = redisService.bySlot(Command.DEL,
+                    RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                    (p, group) -> p.del(group.toArray(new byte[0][])),
+                    (jedis, group) -> jedis.del(group.toArray(new byte[0][])));
+            long total = 0;
+            for (Long count : deleted.values())
+            {
+                total += count;
+            }
+            return redisService.invalidate(total, stringKeys);
+        }
+        return redisService.invalidate(redisService.multiplexed(Command.DEL, RedisServiceImpl.first(keys),
+                p -> p.del(keys), jedis -> jedis.del(keys)), stringKeys);
+    }
+
+    @Override
+    public byte[] hGet(byte[] key, byte[] field)
+    {
+        return redisService.pipelined(Command.HGET, key, p -> p.hget(key, field), jedis -> jedis.hget(key, field));
+    }
+
+    @Override
+    public Long hSet(byte[] key, byte[] field, byte[] value)
+    {
+        redisService.getMetrics().recordRequest(Command.HSET, value);
+        return redisService.invalidate(redisService.pipelined(Command.HSET, key, p -> p.hset(key, field, value),
+                jedis -> jedis.hset(key, field, value)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public String hmSet(byte[] key, Map<byte[], byte[]> hash)
+    {
+        return redisService.invalidate(redisService.multiplexed(Command.HMSET, key, p -> p.hmset(key, hash),
+                jedis -> jedis.hmset(key, hash)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public List<byte[]> hmGet(byte[] key, byte[]... fields)
+    {
+        return redisService.multiplexed(Command.HMGET, key, p -> p.hmget(key, fields),
+                jedis -> jedis.hmget(key, fields));
+    }
+
+    @Override
+    public Map<byte[], byte[]> hGetAll(byte[] key)
+    {
+        return redisService.multiplexed(Command.HGETALL, key, p -> p.hgetAll(key), jedis -> jedis.hgetAll(key));
+    }
+
+    @Override
+    public Long hDel(byte[] key, byte[]... fields)
+    {
+        return redisService.invalidate(redisService.multiplexed(Command.HDEL, key, p -> p.hdel(key, fields),
+                jedis -> jedis.hdel(key, fields)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Long lPush(byte[] key, byte[]... values)
+    {
+        return redisService.multiplexed(Command.LPUSH, key, p -> p.lpush(key, values),
+                jedis -> jedis.lpush(key, values));
+    }
+
+    @Override
+    public Long rPush(byte[] key, byte[]... values)
+    {
+        return redisService.multiplexed(Command.RPUSH, key, p -> p.rpush(key, values),
+                jedis -> jedis.rpush(key, values));
+    }
+
+    @Override
+    public byte[] lPop(byte[] key)
+    {
+        return redisService.multiplexed(Command.LPOP, key, p -> p.lpop(key), jedis -> jedis.lpop(key));
+    }
+
+    @Override
+    public byte[] rPop(byte[] key)
+    {
+        return redisService.multiplexed(Command.RPOP, key, p -> p.rpop(key), jedis -> jedis.rpop(key));
+    }
+
+    @Override
+    public List<byte[]> lRange(byte[] key, long start, long end)
+    {
+        return redisService.multiplexed(Command.LRANGE, key, p -> p.lrange(key, start, end),
+                jedis -> jedis.lrange(key, start, end));
+    }
+
+    @Override
+    public Long sAdd(byte[] key, byte[]... members)
+    {
+        return redisService.invalidate(redisService.multiplexed(Command.SADD, key, p -> p.sadd(key, members),
+                jedis -> jedis.sadd(key, members)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Long sRem(byte[] key, byte[]... members)
+    {
+        return redisService.invalidate(redisService.multiplexed(Command.SREM, key, p -> p.srem(key, members),
+                jedis -> jedis.srem(key, members)), SafeEncoder.encode(key));
+    }
+
+    @Override
+    public Set<byte[]> sMembers(byte[] key)
+    {
+        return redisService.multiplexed(Command.SMEMBERS, key, p -> p.smembers(key), jedis -> jedis.smembers(key));
+    }
+
+    @Override
+    public Boolean sIsMember(byte[] key, byte[] member)
+    {
+        return redisService.pipelined(Command.SISMEMBER, key, p -> p.sismember(key, member),
+                jedis -> jedis.sismember(key, member));
+    }
+
+    @Override
+    public Long zAdd(byte[] key, double score, byte[] member)
+    {
+        return redisService.multiplexed(Command.ZADD, key, p -> p.zadd(key, score, member),
+                jedis -> jedis.zadd(key, score, member));
+    }
+
+    @Override
+    public Long zRem(byte[] key, byte[]... members)
+    {
+        return redisService.multiplexed(Command.ZREM, key, p -> p.zrem(key, members),
+                jedis -> jedis.zrem(key, members));
+    }
+
+    @Override
+    public Set<byte[]> zRange(byte[] key, long start, long end)
+    {
+        return redisService.multiplexed(Command.ZRANGE, key, p -> p.zrange(key, start, end),
+                jedis -> jedis.zrange(key, start, end));
+    }
+
+    @Override
+    public Set<byte[]> zRevRange(byte[] key, long start, long end)
+    {
+        return redisService.multiplexed(Command.ZREVRANGE, key, p -> p.zrevrange(key, start, end),
+                jedis -> jedis.zrevrange(key, start, end));
+    }
+
+    @Override
+    public Double zScore(byte[] key, byte[] member)
+    {
+        return redisService.pipelined(Command.ZSCORE, key, p -> p.zscore(key, member),
+                jedis -> jedis.zscore(key, member));
+    }
+
+    @Override
+    public <T> T get(String key, Codec<T> codec)
+    {
+        return decode(get(SafeEncoder.encode(key)), stored(codec));
+    }
+
+    @Override
+    public <T> String set(String key, T value, Codec<T> codec)
+    {
+        return set(SafeEncoder.encode(key), stored(codec).encode(value));
+    }
+
+    @Override
+    public <T> String setEx(String key, int seconds, T value, Codec<T> codec)
+    {
+        return setEx(SafeEncoder.encode(key), seconds, stored(codec).encode(value));
+    }
+
+    @Override
+    public <T> List<T> mGet(Codec<T> codec, String... keys)
+    {
+        byte[][] binaryKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++)
+        {
+            binaryKeys[i] = SafeEncoder.encode(keys[i]);
+        }
+        return decodeAll(mGet(binaryKeys), stored(codec));
+    }
+
+    @Override
+    public <T> T hGet(String key, String field, Codec<T> codec)
+    {
+        return decode(hGet(SafeEncoder.encode(key), SafeEncoder.encode(field)), stored(codec));
+    }
+
+    @Override
+    public <T> Long hSet(String key, String field, T value, Codec<T> codec)
+    {
+        return hSet(SafeEncoder.encode(key), SafeEncoder.encode(field), stored(codec).encode(value));
+    }
+
+    @Override
+    public <T> Map<String, T> hGetAll(String key, Codec<T> codec)
+    {
+        Map<byte[], byte[]> hash = hGetAll(SafeEncoder.encode(key));
+        Codec<T> valueCodec = stored(codec);
+        Map<String, T> result = new LinkedHashMap<>(hash.size() * 4 / 3 + 1);
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet())
+        {
+            result.put(SafeEncoder.encode(entry.getKey()), valueCodec.decode(entry.getValue()));
+        }
+        return result;
+    }
+
+    @Override
+    public <T> Long lPush(String key, T value, Codec<T> codec)
+    {
+        return lPush(SafeEncoder.encode(key), codec.encode(value));
+    }
+
+    @Override
+    public <T> Long rPush(String key, T value, Codec<T> codec)
+    {
+        return rPush(SafeEncoder.encode(key), codec.encode(value));
+    }
+
+    @Override
+    public <T> T lPop(String key, Codec<T> codec)
+    {
+        return decode(lPop(SafeEncoder.encode(key)), codec);
+    }
+
+    @Override
+    public <T> T rPop(String key, Codec<T> codec)
+    {
+        return decode(rPop(SafeEncoder.encode(key)), codec);
+    }
+
+    @Override
+    public <T> List<T> lRange(String key, long start, long end, Codec<T> codec)
+    {
+        return decodeAll(lRange(SafeEncoder.encode(key), start, end), codec);
+    }
+
+    @Override
+    public <T> Long sAdd(String key, T member, Codec<T> codec)
+    {
+        return sAdd(SafeEncoder.encode(key), codec.encode(member));
+    }
+
+    @Override
+    public <T> List<T> sMembers(String key, Codec<T> codec)
+    {
+        return decodeAll(sMembers(SafeEncoder.encode(key)), codec);
+    }
+
+    @Override
+    public <T> Long zAdd(String key, double score, T member, Codec<T> codec)
+    {
+        return zAdd(SafeEncoder.encode(key), score, codec.encode(member));
+    }
+
+    @Override
+    public <T> List<T> zRange(String key, long start, long end, Codec<T> codec)
+    {
+        return decodeAll(zRange(SafeEncoder.encode(key), start, end), codec);
+    }
+
+    /**
+     * 字符串和hash的值用Codecs.STRING读写时和RedisService的格式相同,开启压缩时压缩大值并解压读出的值
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Codec<T> stored(Codec<T> codec)
+    {
+        return codec == Codecs.STRING ? (Codec<T>) redisService.getStringCodec() : codec;
+    }
+
+    private static <T> T decode(byte[] bytes, Codec<T> codec)
+    {
+        return bytes == null ? null : codec.decode(bytes);
+    }
+
+    private static <T> List<T> decodeAll(Collection<byte[]> values, Codec<T> codec)
+    {
+        List<T> result = new ArrayList<>(values.size());
+        for (byte[] value : values)
+        {
+            result.add(decode(value, codec));
+        }
+        return result;
+    }
+
+    private static String[] encodeKeys(byte[]... keys)
+    {
+        String[] result = new String[keys.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            result[i] = SafeEncoder.encode(keys[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,414 @@
+package org.shiqiu.jedis.service.impl;
+
+import org.shiqiu.jedis.service.BatchResponse;
+import org.shiqiu.jedis.service.RedisBatch;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+public class RedisBatchImpl implements RedisBatch {
+    private final int maxBatchSize;
+
+    private final List<BatchCommand<?>> commands = new ArrayList<>();
+
+    public RedisBatchImpl(int maxBatchSize)
+    {
+        if (maxBatchSize <= 0)
+        {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public <T> BatchResponse<T> add(Function<Pipeline, Response<T>> command)
+    {
+        BatchCommand<T> batchCommand = new BatchCommand<>(command);
+        commands.add(batchCommand);
+        return batchCommand;
+    }
+
+    @Override
+    public int size()
+    {
+        return commands.size();
+    }
+
+    @Override
+    public void execute()
+    {
+        if (commands.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            Jedis jedis = getJedis();
+            try
+            {
+                Pipeline pipeline = jedis.pipelined();
+                int from = 0;
+                while (from < commands.size())
+                {
+                    int to = Math.min(from + maxBatchSize, commands.size());
+                    for (int i = from; i < to; i++)
+                    {
+                        commands.get(i).send(pipeline);
+                    }
+                    pipeline.sync();
+                    for (int i = from; i < to; i++)
+                    {
+                        commands.get(i).complete();
+                    }
+                    from = to;
+                }
+            }
+            finally
+            {
+                jedis.close();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            // 没有拿到结果的命令都以连接的错误失败,而不是停留在未执行的状态
+            for (BatchCommand<?> command : commands)
+            {
+                if (!command.isDone())
+                {
+                    command.fail(e);
+                }
+            }
+            throw e;
+        }
+        finally
+        {
+            commands.clear();
+        }
+    }
+
+    @Override
+    public BatchResponse<String> getString(String key)
+    {
+        return add(p -> p.get(key));
+    }
+
+    @Override
+    public BatchResponse<String> setString(String key, String value)
+    {
+        return add(p -> p.set(key, value));
+    }
+
+    @Override
+    public BatchResponse<Long> del(String... keys)
+    {
+        return add(p -> p.del(keys));
+    }
+
+    @Override
+    public BatchResponse<Boolean> exists(String key)
+    {
+        return add(p -> p.exists(key));
+    }
+
+    @Override
+    public BatchResponse<Long> setNx(String key, String value)
+    {
+        return add(p -> p.setnx(key, value));
+    }
+
+    @Override
+    public BatchResponse<String> setEx(String key, int seconds, String value)
+    {
+        return add(p -> p.setex(key, seconds, value));
+    }
+
+    @Override
+    public BatchResponse<List<String>> mGet(String... keys)
+    {
+        return add(p -> p.mget(keys));
+    }
+
+    @Override
+    public BatchResponse<String> mSet(String... keysValues)
+    {
+        return add(p -> p.mset(keysValues));
+    }
+
+    @Override
+    public BatchResponse<Long> incr(String key)
+    {
+        return add(p -> p.incr(key));
+    }
+
+    @Override
+    public BatchResponse<Long> incrBy(String key, long integer)
+    {
+        return add(p -> p.incrBy(key, integer));
+    }
+
+    @Override
+    public BatchResponse<Long> decr(String key)
+    {
+        return add(p -> p.decr(key));
+    }
+
+    @Override
+    public BatchResponse<Long> decrBy(String key, long integer)
+    {
+        return add(p -> p.decrBy(key, integer));
+    }
+
+    @Override
+    public BatchResponse<Long> hSetNx(String key, String field, String value)
+    {
+        return add(p -> p.hsetnx(key, field, value));
+    }
+
+    @Override
+    public BatchResponse<Long> hSet(String key, String field, String value)
+    {
+        return add(p -> p.hset(key, field, value));
+    }
+
+    @Override
+    public BatchResponse<String> hmSet(String key, Map<String, String> hash)
+    {
+        return add(p -> p.hmset(key, hash));
+    }
+
+    @Override
+    public BatchResponse<String> hGet(String key, String field)
+    {
+        return add(p -> p.hget(key, field));
+    }
+
+    @Override
+    public BatchResponse<List<String>> hmGet(String key, String... fields)
+    {
+        return add(p -> p.hmget(key, fields));
+    }
+
+    @Override
+    public BatchResponse<Long> hIncrBy(String key, String field, long value)
+    {
+        return add(p -> p.hincrBy(key, field, value));
+    }
+
+    @Override
+    public BatchResponse<Long> hDel(String key, String... fields)
+    {
+        return add(p -> p.hdel(key, fields));
+    }
+
+    @Override
+    public BatchResponse<Boolean> hExists(String key, String field)
+    {
+        return add(p -> p.hexists(key, field));
+    }
+
+    @Override
+    public BatchResponse<Map<String, String>> hGetAll(String key)
+    {
+        return add(p -> p.hgetAll(key));
+    }
+
+    @Override
+    public BatchResponse<Long> expire(String key, int seconds)
+    {
+        return add(p -> p.expire(key, seconds));
+    }
+
+    @Override
+    public BatchResponse<Long> lPush(String key, String... strings)
+    {
+        return add(p -> p.lpush(key, strings));
+    }
+
+    @Override
+    public BatchResponse<Long> rPush(String key, String... strings)
+    {
+        return add(p -> p.rpush(key, strings));
+    }
+
+    @Override
+    public BatchResponse<String> lPop(String key)
+    {
+        return add(p -> p.lpop(key));
+    }
+
+    @Override
+    public BatchResponse<String> rPop(String key)
+    {
+        return add(p -> p.rpop(key));
+    }
+
+    @Override
+    public BatchResponse<List<String>> lRange(String key, long start, long end)
+    {
+        return add(p -> p.lrange(key, start, end));
+    }
+
+    @Override
+    public BatchResponse<String> lTrim(String key, long start, long end)
+    {
+        return add(p -> p.ltrim(key, start, end));
+    }
+
+    @Override
+    public BatchResponse<Long> lLen(String key)
+    {
+        return add(p -> p.llen(key));
+    }
+
+    @Override
+    public BatchResponse<Long> sAdd(String key, String... members)
+    {
+        return add(p -> p.sadd(key, members));
+    }
+
+    @Override
+    public BatchResponse<Long> sRem(String key, String... members)
+    {
+        return add(p -> p.srem(key, members));
+    }
+
+    @Override
+    public BatchResponse<Set<String>> sMembers(String key)
+    {
+        return add(p -> p.smembers(key));
+    }
+
+    @Override
+    public BatchResponse<Boolean> sIsMember(String key, String member)
+    {
+        return add(p -> p.sismember(key, member));
+    }
+
+    @Override
+    public BatchResponse<Long> sCard(String key)
+    {
+        return add(p -> p.scard(key));
+    }
+
+    @Override
+    public BatchResponse<Long> zAdd(String key, double score, String member)
+    {
+        return add(p -> p.zadd(key, score, member));
+    }
+
+    @Override
+    public BatchResponse<Long> zRem(String key, String... members)
+    {
+        return add(p -> p.zrem(key, members));
+    }
+
+    @Override
+    public BatchResponse<Double> zIncrBy(String key, double score, String member)
+    {
+        return add(p -> p.zincrby(key, score, member));
+    }
+
+    @Override
+    public BatchResponse<Double> zScore(String key, String member)
+    {
+        return add(p -> p.zscore(key, member));
+    }
+
+    @Override
+    public BatchResponse<Set<String>> zRevRange(String key, long start, long end)
+    {
+        return add(p -> p.zrevrange(key, start, end));
+    }
+
+    @Override
+    public BatchResponse<Long> zRemRangeByRank(String key, long start, long end)
+    {
+        return add(p -> p.zremrangeByRank(key, start, end));
+    }
+
+    @Override
+    public BatchResponse<Long> zCard(String key)
+    {
+        return add(p -> p.zcard(key));
+    }
+
+    /**
+     * 队列中的一条命令,发送时才在pipeline上生成Response
+     */
+    private static final class BatchCommand<T> implements BatchResponse<T> {
+        private final Function<Pipeline, Response<T>> command;
+
+        private Response<T> pending;
+
+        private T result;
+
+        private RuntimeException error;
+
+        private boolean done;
+
+        private BatchCommand(Function<Pipeline, Response<T>> command)
+        {
+            this.command = command;
+        }
+
+        private void send(Pipeline pipeline)
+        {
+            pending = command.apply(pipeline);
+        }
+
+        private void complete()
+        {
+            try
+            {
+                result = pending.get();
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+            done = true;
+            pending = null;
+        }
+
+        private void fail(RuntimeException e)
+        {
+            error = e;
+            done = true;
+            pending = null;
+        }
+
+        @Override
+        public T get()
+        {
+            if (!done)
+            {
+                throw new IllegalStateException("batch has not been executed yet");
+            }
+            if (error != null)
+            {
+                throw error;
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isDone()
+        {
+            return done;
+        }
+
+        @Override
+        public boolean isFailed()
+        {
+            return error != null;
+        }
+    }
+}
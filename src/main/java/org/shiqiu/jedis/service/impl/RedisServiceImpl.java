@@ -1,17 +1,72 @@
 package org.shiqiu.jedis.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.shiqiu.jedis.service.QueueConsumer;
+import org.shiqiu.jedis.service.QueueHandler;
+import org.shiqiu.jedis.service.RedisBatch;
 import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.AutoPipeliner;
+import org.shiqiu.jedis.util.Codec;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.CommandClient;
+import org.shiqiu.jedis.util.CounterBuffer;
+import org.shiqiu.jedis.util.HashMapper;
+import org.shiqiu.jedis.util.LoadingCache;
+import org.shiqiu.jedis.util.LuaScript;
+import org.shiqiu.jedis.util.MultiKeyChunker;
+import org.shiqiu.jedis.util.NearCache;
+import org.shiqiu.jedis.util.NearCacheInvalidator;
+import org.shiqiu.jedis.util.NioRedisClient;
+import org.shiqiu.jedis.util.RedisCluster;
+import org.shiqiu.jedis.util.RedisFactory;
+import org.shiqiu.jedis.util.RedisMetrics;
+import org.shiqiu.jedis.util.ReplicaRouter;
+import org.shiqiu.jedis.util.ReliableQueue;
+import org.shiqiu.jedis.util.ScanCursor;
+import org.shiqiu.jedis.util.ScriptRegistry;
+import org.shiqiu.jedis.util.ValueCompressor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import redis.clients.jedis.BinaryClient;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
-
-import java.lang.reflect.Field;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.Tuple;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.shiqiu.jedis.util.RedisFactory.getJedis;
 
@@ -19,8 +74,386 @@ import static org.shiqiu.jedis.util.RedisFactory.getJedis;
 public class RedisServiceImpl implements RedisService {
     private static final Logger LOGGER = LogManager.getLogger(RedisServiceImpl.class);
 
+    private static final LuaScript UNLINK = new LuaScript("return redis.call('unlink', unpack(KEYS))");
+
+    /**
+     * 开启压缩时执行按字节操作的字符串命令,值以压缩头0xC1开头时返回错误而不是读写压缩后的字节,
+     * ARGV[1]是命令,之后是命令的参数
+     */
+    private static final LuaScript RAW_STRING = new LuaScript(
+            "if redis.call('getrange', KEYS[1], 0, 0) == '\\193' then\n"
+                    + "  return redis.error_reply('ERR ' .. ARGV[1] .. ' is not supported on compressed value of ' .. KEYS[1])\n"
+                    + "end\n"
+                    + "return redis.call(ARGV[1], KEYS[1], unpack(ARGV, 2))");
+
+    /**
+     * 内置的组合操作和registerScript注册的脚本
+     */
+    private final ScriptRegistry scripts = new ScriptRegistry();
+
+    /**
+     * lua的unpack能展开的参数有限,每次脚本最多删除的key数量
+     */
+    private static final int UNLINK_BATCH = 1000;
+
+    @Value("${redis.transport:pool}")
+    private String transport;
+
+    @Value("${redis.cluster.nodes:}")
+    private String clusterNodes;
+
+    @Value("${redis.cluster.maxRedirects:5}")
+    private int clusterMaxRedirects;
+
+    @Value("${redis.cluster.parallelism:4}")
+    private int clusterParallelism;
+
+    @Value("${redis.sharded.nodes:}")
+    private String shardedNodes;
+
+    @Value("${redis.sharded.virtualNodes:160}")
+    private int shardedVirtualNodes;
+
+    @Value("${redis.sharded.migrateBatch:500}")
+    private int shardedMigrateBatch;
+
+    @Value("${redis.replica.nodes:}")
+    private String replicaNodes;
+
+    @Value("${redis.replica.policy:round-robin}")
+    private String replicaPolicy;
+
+    @Value("${redis.replica.maxLagBytes:0}")
+    private long replicaMaxLagBytes;
+
+    @Value("${redis.replica.checkMillis:1000}")
+    private long replicaCheckMillis;
+
+    @Value("${redis.nio.connections:2}")
+    private int nioConnections;
+
+    @Value("${redis.nio.bufferSize:65536}")
+    private int nioBufferSize;
+
+    @Value("${redis.multiKey.chunkSize:500}")
+    private int multiKeyChunkSize;
+
+    @Value("${redis.multiKey.parallelism:4}")
+    private int multiKeyParallelism;
+
+    @Value("${redis.delete.batchSize:500}")
+    private int deleteBatchSize;
+
+    @Value("${redis.delete.maxKeysPerSecond:0}")
+    private int deleteMaxKeysPerSecond;
+
+    @Value("${redis.pipeline.maxBatchSize:1000}")
+    private int pipelineMaxBatchSize;
+
+    @Value("${redis.autoPipeline.enabled:false}")
+    private boolean autoPipelineEnabled;
+
+    @Value("${redis.autoPipeline.connections:4}")
+    private int autoPipelineConnections;
+
+    @Value("${redis.autoPipeline.maxBatchSize:128}")
+    private int autoPipelineMaxBatchSize;
+
+    @Value("${redis.autoPipeline.windowMicros:50}")
+    private long autoPipelineWindowMicros;
+
+    @Value("${redis.counterBuffer.enabled:false}")
+    private boolean counterBufferEnabled;
+
+    @Value("${redis.counterBuffer.flushMillis:1000}")
+    private long counterBufferFlushMillis;
+
+    @Value("${redis.counterBuffer.maxKeys:10000}")
+    private int counterBufferMaxKeys;
+
+    @Value("${redis.counterBuffer.stripes:8}")
+    private int counterBufferStripes;
+
+    @Value("${redis.queue.blockSeconds:1}")
+    private int queueBlockSeconds;
+
+    @Value("${redis.reliableQueue.visibilitySeconds:30}")
+    private int reliableQueueVisibilitySeconds;
+
+    @Value("${redis.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    @Value("${redis.compression.algorithm:lz4}")
+    private String compressionAlgorithm;
+
+    @Value("${redis.compression.threshold:1024}")
+    private int compressionThreshold;
+
+    @Value("${redis.compression.level:3}")
+    private int compressionLevel;
+
+    @Value("${redis.compression.dictionary:}")
+    private String compressionDictionary;
+
+    @Value("${redis.loader.lockMillis:3000}")
+    private long loaderLockMillis;
+
+    @Value("${redis.loader.pollMillis:50}")
+    private long loaderPollMillis;
+
+    @Value("${redis.loader.ttlJitter:0.1}")
+    private double loaderTtlJitter;
+
+    @Value("${redis.loader.earlyRefreshBeta:1.0}")
+    private double loaderEarlyRefreshBeta;
+
+    @Value("${redis.loader.refreshThreads:2}")
+    private int loaderRefreshThreads;
+
+    @Value("${redis.nearCache.enabled:false}")
+    private boolean nearCacheEnabled;
+
+    @Value("${redis.nearCache.maxSize:10000}")
+    private int nearCacheMaxSize;
+
+    @Value("${redis.nearCache.ttlSeconds:60}")
+    private long nearCacheTtlSeconds;
+
+    @Value("${redis.nearCache.patterns:*}")
+    private String[] nearCachePatterns;
+
+    @Value("${redis.nearCache.invalidation:tracking}")
+    private String nearCacheInvalidation;
+
+    @Value("${redis.nearCache.channel:__near_cache__:invalidate}")
+    private String nearCacheChannel;
+
+    /**
+     * redis.transport=nio时,普通命令通过少量多路复用的NIO连接发送,阻塞命令,事务,SCAN和批量仍然使用连接池
+     */
+    private NioRedisClient nioClient;
+
+    /**
+     * redis.transport=cluster时,命令按key的slot发到负责的主节点,多key命令按slot拆开;
+     * redis.transport=sharded时连接多个独立的redis,slot由一致性哈希分配,其他和集群相同
+     */
+    private RedisCluster cluster;
+
+    /**
+     * 配置了redis.replica.nodes时,只读命令发到从节点
+     */
+    private ReplicaRouter replicaRouter;
+
+    /**
+     * 拆分大量key的mGet/mSet
+     */
+    private MultiKeyChunker multiKeyChunker;
+
+    /**
+     * 开启自动pipeline时,单key命令会和其他线程的命令合并发送
+     */
+    private AutoPipeliner autoPipeliner;
+
+    /**
+     * 开启近端缓存时,getString/hGet/hGetAll/sMembers先读进程内缓存
+     * 失效通知只来自单节点,redis.transport=cluster或sharded时不能开启
+     */
+    private NearCache nearCache;
+
+    private NearCacheInvalidator nearCacheInvalidator;
+
+    /**
+     * 开启压缩时,setString/setEx/hSet/hmSet写入的大值会被压缩,
+     * getString/hGet/hmGet/hGetAll/mGet读取时自动解压
+     */
+    private ValueCompressor compressor;
+
+    /**
+     * 字符串值的存储格式,开启压缩时经过compressor
+     */
+    private Codec<String> stringCodec = Codecs.STRING;
+
+    /**
+     * getOrLoad的合并加载和提前刷新
+     */
+    private LoadingCache loadingCache;
+
+    /**
+     * 开启计数器写缓冲时,incrByLater/hIncrByLater的增量在内存中累加后批量写入
+     */
+    private CounterBuffer counterBuffer;
+
+    @Value("${redis.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistryProvider;
+
+    /**
+     * 命令耗时,连接池等指标,没有MeterRegistry或者关闭时不记录
+     */
+    private RedisMetrics metrics = RedisMetrics.DISABLED;
+
+    @PostConstruct
+    public void init()
+    {
+        if ("nio".equals(transport))
+        {
+            nioClient = new NioRedisClient(RedisFactory.getConfig(), nioConnections, nioBufferSize);
+        }
+        else if ("cluster".equals(transport))
+        {
+            if (autoPipelineEnabled)
+            {
+                throw new IllegalArgumentException("redis.autoPipeline is not supported by redis.transport=cluster");
+            }
+            cluster = new RedisCluster(RedisFactory.getConfig(), clusterNodes, clusterMaxRedirects, clusterParallelism);
+        }
+        else if ("sharded".equals(transport))
+        {
+            if (autoPipelineEnabled)
+            {
+                throw new IllegalArgumentException("redis.autoPipeline is not supported by redis.transport=sharded");
+            }
+            cluster = RedisCluster.sharded(RedisFactory.getConfig(), shardedNodes, shardedVirtualNodes,
+                    clusterParallelism);
+        }
+        else if (!"pool".equals(transport))
+        {
+            throw new IllegalArgumentException("unknown redis.transport: " + transport);
+        }
+        if (!replicaNodes.isEmpty())
+        {
+            if (cluster != null)
+            {
+                throw new IllegalArgumentException("redis.replica.nodes is not supported by redis.transport=" + transport);
+            }
+            replicaRouter = new ReplicaRouter(RedisFactory.getConfig(), replicaNodes,
+                    ReplicaRouter.Policy.of(replicaPolicy), replicaMaxLagBytes, replicaCheckMillis,
+                    RedisFactory::getJedis);
+        }
+        multiKeyChunker = new MultiKeyChunker(multiKeyChunkSize, multiKeyParallelism);
+        if (autoPipelineEnabled)
+        {
+            autoPipeliner = new AutoPipeliner(autoPipelineConnections, autoPipelineMaxBatchSize, autoPipelineWindowMicros);
+        }
+        if (nearCacheEnabled)
+        {
+            if (cluster != null)
+            {
+                // 失效消息只来自单节点的主节点,其他节点上的写入不会让近端缓存失效
+                throw new IllegalArgumentException("redis.nearCache is not supported by redis.transport=" + transport);
+            }
+            nearCache = new NearCache(nearCacheMaxSize, nearCacheTtlSeconds, nearCachePatterns);
+            nearCacheInvalidator = new NearCacheInvalidator(nearCache, nearCacheInvalidation, nearCacheChannel,
+                    nearCachePatterns);
+        }
+        MeterRegistry meterRegistry = meterRegistryProvider.getIfAvailable();
+        if (metricsEnabled && meterRegistry != null)
+        {
+            metrics = new RedisMetrics(meterRegistry);
+            metrics.bindPool();
+            if (nearCache != null)
+            {
+                metrics.bindNearCache(nearCache);
+            }
+        }
+        if (counterBufferEnabled)
+        {
+            counterBuffer = new CounterBuffer(this::writeCounters, counterBufferFlushMillis, counterBufferMaxKeys,
+                    counterBufferStripes);
+        }
+        if (compressionEnabled)
+        {
+            compressor = new ValueCompressor(compressionAlgorithm, compressionThreshold, compressionLevel,
+                    loadDictionary(), metrics);
+            stringCodec = new Codec<String>() {
+                @Override
+                public byte[] encode(String value)
+                {
+                    return compressor.encode(value);
+                }
+
+                @Override
+                public String decode(byte[] bytes)
+                {
+                    return compressor.decode(bytes);
+                }
+            };
+        }
+        loadingCache = new LoadingCache(new LoadingCache.Store() {
+            @Override
+            public LoadingCache.Cached read(String key)
+            {
+                return readWithTtl(key);
+            }
+
+            @Override
+            public void setEx(String key, int seconds, String value)
+            {
+                RedisServiceImpl.this.setEx(key, seconds, value);
+            }
+
+            @Override
+            public <T> T execute(String key, Function<Jedis, T> action)
+            {
+                return cluster != null ? cluster.execute(RedisCluster.slot(key), action)
+                        : LoadingCache.Store.super.execute(key, action);
+            }
+        }, loaderLockMillis, loaderPollMillis, loaderTtlJitter, loaderEarlyRefreshBeta, loaderRefreshThreads);
+    }
+
+    private byte[] loadDictionary()
+    {
+        if (compressionDictionary.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            return Files.readAllBytes(Paths.get(compressionDictionary));
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("read compression dictionary " + compressionDictionary + " fail", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        // 先写入缓冲的计数器,之后连接才会关闭
+        if (counterBuffer != null)
+        {
+            counterBuffer.close();
+        }
+        multiKeyChunker.close();
+        loadingCache.close();
+        if (nioClient != null)
+        {
+            nioClient.close();
+        }
+        if (autoPipeliner != null)
+        {
+            autoPipeliner.close();
+        }
+        if (nearCacheInvalidator != null)
+        {
+            nearCacheInvalidator.close();
+        }
+        if (cluster != null)
+        {
+            cluster.close();
+        }
+        if (replicaRouter != null)
+        {
+            replicaRouter.close();
+        }
+    }
+
     /**
      * 对象封装成一个<String,String>的map
+     * 包含父类的字段,忽略static和transient字段,值为null的字段不放入map
      *
      * @param object 对象
      * @return Map<String, String>
@@ -28,27 +461,57 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Map<String, String> getProperty(Object object)
     {
-        Map<String, String> resultMap = new HashMap<>(16);
-        Field[] fields = object.getClass().getDeclaredFields();
-        for (Field field : fields)
-        {
-            String propertyName = field.getName();
-            boolean accessFlag = field.isAccessible();
-            field.setAccessible(true);
-            Object o;
-            try
-            {
-                o = field.get(object);
-                resultMap.put(propertyName, o.toString());
+        return HashMapper.toHash(object);
+    }
 
-            }
-            catch (IllegalAccessException e)
-            {
-                LOGGER.error(e.getMessage());
-            }
-            field.setAccessible(accessFlag);
+    /**
+     * 把对象的字段写入key对应的hash
+     *
+     * @param key    键
+     * @param object 对象
+     * @return String
+     */
+    @Override
+    public String hmSetObject(String key, Object object)
+    {
+        return hmSet(key, HashMapper.toHash(object));
+    }
+
+    /**
+     * 只把发生变化的字段写入key对应的hash,变为null的字段从hash中删除
+     *
+     * @param key    键
+     * @param before 修改前的对象,为null时写入所有非null字段
+     * @param after  修改后的对象
+     * @return 变化的字段数
+     */
+    @Override
+    public Long hmSetChanged(String key, Object before, Object after)
+    {
+        HashMapper.Changes changes = HashMapper.diff(before, after);
+        if (!changes.getUpdated().isEmpty())
+        {
+            hmSet(key, changes.getUpdated());
         }
-        return resultMap;
+        if (!changes.getRemoved().isEmpty())
+        {
+            hDel(key, changes.getRemoved().toArray(new String[0]));
+        }
+        return (long) (changes.getUpdated().size() + changes.getRemoved().size());
+    }
+
+    /**
+     * 读取key对应的hash并转换成对象,对象需要有无参构造方法
+     *
+     * @param key  键
+     * @param type 对象类型
+     * @param <T>  对象类型
+     * @return key不存在时返回null
+     */
+    @Override
+    public <T> T hGetAllObject(String key, Class<T> type)
+    {
+        return HashMapper.fromHash(hGetAll(key), type);
     }
 
     /**
@@ -60,10 +523,55 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public String getString(String key)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.get(key);
-        jedis.close();
-        return result;
+        if (nearCache != null && nearCache.accepts(key))
+        {
+            return nearCache.get(key, NearCache.STRING, () -> onMaster(() -> loadString(key)));
+        }
+        return loadString(key);
+    }
+
+    /**
+     * 读取key,不存在时加载并写入,同一个key同时只有一个加载,快过期时按概率提前在后台刷新
+     *
+     * @param key     键
+     * @param seconds 过期时间,会随机增加redis.loader.ttlJitter的比例
+     * @param loader  加载值,返回null时不写入
+     * @return String
+     */
+    @Override
+    public String getOrLoad(String key, int seconds, Supplier<String> loader)
+    {
+        return loadingCache.get(key, seconds, loader);
+    }
+
+    /**
+     * 在一个pipeline中读取值和剩余过期时间
+     */
+    private LoadingCache.Cached readWithTtl(String key)
+    {
+        byte[] rawKey = SafeEncoder.encode(key);
+        return execute(Command.GET, key, jedis -> {
+            Pipeline pipeline = jedis.pipelined();
+            Response<byte[]> value = pipeline.get(rawKey);
+            Response<Long> ttl = pipeline.pttl(rawKey);
+            pipeline.sync();
+            if (value.get() == null)
+            {
+                return null;
+            }
+            String decoded = compressor != null ? compressor.decode(value.get()) : SafeEncoder.encode(value.get());
+            return new LoadingCache.Cached(decoded, ttl.get());
+        });
+    }
+
+    private String loadString(String key)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            return compressor.decode(pipelined(Command.GET, rawKey, p -> p.get(rawKey), jedis -> jedis.get(rawKey)));
+        }
+        return pipelined(Command.GET, key, p -> p.get(key), jedis -> jedis.get(key));
     }
 
     /**
@@ -76,10 +584,14 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public String setString(String key, String value)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.set(key, value);
-        jedis.close();
-        return result;
+        metrics.recordRequest(Command.SET, value);
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] stored = compressor.encode(value);
+            return invalidate(pipelined(Command.SET, rawKey, p -> p.set(rawKey, stored), jedis -> jedis.set(rawKey, stored)), key);
+        }
+        return invalidate(pipelined(Command.SET, key, p -> p.set(key, value), jedis -> jedis.set(key, value)), key);
     }
 
     /**
@@ -91,10 +603,14 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long del(String... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.del(keys);
-        jedis.close();
-        return result;
+        if (crossSlot(keys))
+        {
+            Map<Integer, Long> deleted = bySlot(Command.DEL, RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                    (p, group) -> p.del(group.toArray(new String[0])),
+                    (jedis, group) -> jedis.del(group.toArray(new String[0])));
+            return invalidate(sum(deleted), keys);
+        }
+        return invalidate(multiplexed(Command.DEL, first(keys), p -> p.del(keys), jedis -> jedis.del(keys)), keys);
     }
 
     /**
@@ -107,1134 +623,2245 @@ public class RedisServiceImpl implements RedisService {
     @Override
     public Long appendString(String key, String appendValue)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.append(key, appendValue);
-        jedis.close();
-        return result;
+        metrics.recordRequest(Command.APPEND, appendValue);
+        if (compressor != null)
+        {
+            return invalidate((Long) rawString(Command.APPEND, key, appendValue), key);
+        }
+        return invalidate(multiplexed(Command.APPEND, key, p -> p.append(key, appendValue), jedis -> jedis.append(key, appendValue)), key);
+    }
+
+    /**
+     * 判断key是否存在
+     *
+     * @param key 键
+     * @return 存在为true 不存在为false
+     */
+    @Override
+    public Boolean exists(String key)
+    {
+        return pipelined(Command.EXISTS, key, p -> p.exists(key), jedis -> jedis.exists(key));
+    }
+
+    /**
+     * 设置key value,如果key已经存在则返回0
+     *
+     * @param key   键
+     * @param value 值
+     * @return Long
+     */
+    @Override
+    public Long setNx(String key, String value)
+    {
+        metrics.recordRequest(Command.SETNX, value);
+        return invalidate(pipelined(Command.SETNX, key, p -> p.setnx(key, value), jedis -> jedis.setnx(key, value)), key);
+    }
+
+    /**
+     * 删除指定的key,value在redis的后台线程中释放
+     * Jedis 2.9没有UNLINK命令,通过lua脚本调用
+     *
+     * @param keys 键
+     * @return Long
+     */
+    @Override
+    public Long unlink(String... keys)
+    {
+        if (keys.length == 0)
+        {
+            return 0L;
+        }
+        if (cluster != null)
+        {
+            // 每个slot一条脚本,同一个节点的slot在一个pipeline中发送
+            byte[] script = SafeEncoder.encode(UNLINK.getScript());
+            Map<Integer, Object> unlinked = bySlot(Command.DEL, RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                    (p, group) -> p.eval(script, encode(group), Collections.emptyList()),
+                    (jedis, group) -> UNLINK.eval(jedis, group, Collections.emptyList()));
+            long total = 0;
+            for (Object count : unlinked.values())
+            {
+                total += (Long) count;
+            }
+            return invalidate(total, keys);
+        }
+        if (keys.length <= UNLINK_BATCH)
+        {
+            return invalidate(execute(Command.DEL,
+                    jedis -> (Long) UNLINK.eval(jedis, Arrays.asList(keys), Collections.emptyList())), keys);
+        }
+        return invalidate(execute(Command.DEL, jedis -> {
+            // 超过一个脚本能展开的数量时拆成多次EVALSHA,通过pipeline一次发送
+            byte[] sha = SafeEncoder.encode(UNLINK.load(jedis));
+            Pipeline pipeline = jedis.pipelined();
+            List<Response<Object>> replies = new ArrayList<>(keys.length / UNLINK_BATCH + 1);
+            for (int from = 0; from < keys.length; from += UNLINK_BATCH)
+            {
+                List<byte[]> batch = new ArrayList<>(UNLINK_BATCH);
+                for (int i = from; i < Math.min(from + UNLINK_BATCH, keys.length); i++)
+                {
+                    batch.add(SafeEncoder.encode(keys[i]));
+                }
+                replies.add(pipeline.evalsha(sha, batch, Collections.emptyList()));
+            }
+            pipeline.sync();
+            long unlinked = 0;
+            for (Response<Object> reply : replies)
+            {
+                unlinked += (Long) reply.get();
+            }
+            return unlinked;
+        }), keys);
+    }
+
+    @Override
+    public long deleteByPattern(String pattern)
+    {
+        return deleteByPattern(pattern, deleteBatchSize, deleteMaxKeysPerSecond);
+    }
+
+    /**
+     * 通过SCAN找到匹配pattern的key,分批UNLINK,超过速率时等待
+     *
+     * @param pattern          通配符
+     * @param batchSize        每批删除的key数量,也是SCAN的COUNT
+     * @param maxKeysPerSecond 每秒最多删除的key数量,0表示不限制
+     * @return 删除的数量
+     */
+    @Override
+    public long deleteByPattern(String pattern, int batchSize, int maxKeysPerSecond)
+    {
+        ScanCursor<String> cursor = scanKeys(pattern, batchSize);
+        List<String> batch = new ArrayList<>(batchSize);
+        long start = System.nanoTime();
+        long scanned = 0;
+        long deleted = 0;
+        while (cursor.hasNext())
+        {
+            batch.add(cursor.next());
+            if (batch.size() >= batchSize || !cursor.hasNext())
+            {
+                deleted += unlink(batch.toArray(new String[0]));
+                scanned += batch.size();
+                batch.clear();
+                if (!throttle(start, scanned, maxKeysPerSecond))
+                {
+                    LOGGER.warn("delete {} interrupted after {} keys", pattern, deleted);
+                    break;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除速度超过maxKeysPerSecond时等待
+     *
+     * @return 被中断时返回false
+     */
+    private static boolean throttle(long start, long keys, int maxKeysPerSecond)
+    {
+        if (maxKeysPerSecond <= 0)
+        {
+            return !Thread.currentThread().isInterrupted();
+        }
+        long aheadNanos = keys * TimeUnit.SECONDS.toNanos(1) / maxKeysPerSecond - (System.nanoTime() - start);
+        if (aheadNanos > 0)
+        {
+            try
+            {
+                TimeUnit.NANOSECONDS.sleep(aheadNanos);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 设置key value并指定这个键值的有效期
+     *
+     * @param key     键
+     * @param seconds 超时时间
+     * @param value   值
+     * @return String
+     */
+    @Override
+    public String setEx(String key, int seconds, String value)
+    {
+        metrics.recordRequest(Command.SETEX, value);
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] stored = compressor.encode(value);
+            return invalidate(pipelined(Command.SETEX, rawKey, p -> p.setex(rawKey, seconds, stored), jedis -> jedis.setex(rawKey, seconds, stored)), key);
+        }
+        return invalidate(pipelined(Command.SETEX, key, p -> p.setex(key, seconds, value), jedis -> jedis.setex(key, seconds, value)), key);
+    }
+
+    /**
+     * 通过key 和offset 从指定的位置开始将原先value替换
+     *
+     * @param key    键
+     * @param offset 指定位置索引
+     * @param str    替换值
+     * @return Long
+     */
+    @Override
+    public Long setRange(String key, int offset, String str)
+    {
+        if (compressor != null)
+        {
+            return invalidate((Long) rawString(Command.SETRANGE, key, String.valueOf(offset), str), key);
+        }
+        return invalidate(multiplexed(Command.SETRANGE, key, p -> p.setrange(key, offset, str), jedis -> jedis.setrange(key, offset, str)), key);
+    }
+
+    /**
+     * 通过批量的key获取批量的value
+     *
+     * @param keys 键
+     * @return List
+     */
+    @Override
+    public List<String> mGet(String... keys)
+    {
+        if (multiKeyChunker.needsSplit(keys.length))
+        {
+            return multiKeyChunker.get(keys, this::mGetChunk);
+        }
+        return mGetChunk(keys);
+    }
+
+    private List<String> mGetChunk(String... keys)
+    {
+        if (compressor != null)
+        {
+            byte[][] rawKeys = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++)
+            {
+                rawKeys[i] = SafeEncoder.encode(keys[i]);
+            }
+            if (crossSlot(keys))
+            {
+                Map<Integer, List<byte[]>> replies = bySlot(Command.MGET,
+                        RedisCluster.groupBySlot(rawKeys, 1, RedisCluster::slot),
+                        (p, group) -> p.mget(group.toArray(new byte[0][])),
+                        (jedis, group) -> jedis.mget(group.toArray(new byte[0][])));
+                return decodeAll(RedisCluster.mergeBySlot(rawKeys, RedisCluster::slot, replies));
+            }
+            return decodeAll(multiplexed(Command.MGET, first(rawKeys), p -> p.mget(rawKeys), jedis -> jedis.mget(rawKeys)));
+        }
+        if (crossSlot(keys))
+        {
+            Map<Integer, List<String>> replies = bySlot(Command.MGET, RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                    (p, group) -> p.mget(group.toArray(new String[0])),
+                    (jedis, group) -> jedis.mget(group.toArray(new String[0])));
+            return RedisCluster.mergeBySlot(keys, RedisCluster::slot, replies);
+        }
+        return multiplexed(Command.MGET, first(keys), p -> p.mget(keys), jedis -> jedis.mget(keys));
+    }
+
+    /**
+     * 通过批量的key获取批量的value,按keys的顺序放入Map,不存在的key不放入
+     *
+     * @param keys 键
+     * @return Map
+     */
+    @Override
+    public Map<String, String> mGetMap(String... keys)
+    {
+        List<String> values = mGet(keys);
+        Map<String, String> result = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (values.get(i) != null)
+            {
+                result.put(keys[i], values.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按keys的顺序惰性返回(key, value),每次只读取一块并预取后面几块
+     *
+     * @param keys 键
+     * @return Stream
+     */
+    @Override
+    public Stream<Map.Entry<String, String>> mGetStream(String... keys)
+    {
+        return multiKeyChunker.stream(keys, this::mGetChunk);
+    }
+
+    /**
+     * 批量的设置key:value,也可以一个
+     *
+     * @param keysValues 可变key
+     * @return String
+     */
+    @Override
+    public String mSet(String... keysValues)
+    {
+        if (multiKeyChunker.needsSplit(keysValues.length / 2))
+        {
+            multiKeyChunker.set(keysValues, this::mSetChunk);
+            return "OK";
+        }
+        return mSetChunk(keysValues);
+    }
+
+    private String mSetChunk(String... keysValues)
+    {
+        String[] keys = keysOf(keysValues);
+        if (crossSlot(keys))
+        {
+            bySlot(Command.MSET, RedisCluster.groupBySlot(keysValues, 2, RedisCluster::slot),
+                    (p, group) -> p.mset(group.toArray(new String[0])),
+                    (jedis, group) -> jedis.mset(group.toArray(new String[0])));
+            return invalidate("OK", keys);
+        }
+        return invalidate(multiplexed(Command.MSET, first(keys), p -> p.mset(keysValues), jedis -> jedis.mset(keysValues)), keys);
+    }
+
+    /**
+     * 批量的设置key:value,可以一个,如果key已经存在则会失败,操作会回滚
+     * 集群模式下不能拆开执行,所有key需要在同一个slot(可以用{hash tag})
+     *
+     * @param keysValues 可变keyvalue
+     * @return Long
+     */
+    @Override
+    public Long mSetNx(String... keysValues)
+    {
+        return invalidate(multiplexed(Command.MSETNX, first(keysValues), p -> p.msetnx(keysValues), jedis -> jedis.msetnx(keysValues)), keysOf(keysValues));
+    }
+
+    /**
+     * 设置key的值,并返回一个旧值
+     *
+     * @param key   键
+     * @param value 覆盖的值
+     * @return String 旧值
+     */
+    @Override
+    public String getSet(String key, String value)
+    {
+        metrics.recordRequest(Command.GETSET, value);
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] stored = compressor.encode(value);
+            return invalidate(compressor.decode(multiplexed(Command.GETSET, rawKey, p -> p.getSet(rawKey, stored), jedis -> jedis.getSet(rawKey, stored))), key);
+        }
+        return invalidate(multiplexed(Command.GETSET, key, p -> p.getSet(key, value), jedis -> jedis.getSet(key, value)), key);
+    }
+
+    /**
+     * 当前值等于expected时设置为value,保留原来的过期时间
+     * 开启压缩时expected和value按写入时的方式压缩后再比较和写入
+     *
+     * @param key      键
+     * @param expected 期望的当前值,null表示期望key不存在
+     * @param value    新值
+     * @return 设置成功返回true
+     */
+    @Override
+    public Boolean compareAndSet(String key, String expected, String value)
+    {
+        metrics.recordRequest(Command.SET, value);
+        List<byte[]> args = Arrays.asList(SafeEncoder.encode(expected == null ? "0" : "1"),
+                expected == null ? new byte[0] : stored(expected), stored(value));
+        return invalidate(Long.valueOf(1).equals(script(ScriptRegistry.COMPARE_AND_SET, key, args)), key);
+    }
+
+    /**
+     * 通过下标 和key 获取指定下标位置的 value
+     *
+     * @param key         键
+     * @param startOffset 开始下标
+     * @param endOffset   结束下标
+     * @return String
+     */
+    @Override
+    public String getRange(String key, int startOffset, int endOffset)
+    {
+        if (compressor != null)
+        {
+            return (String) rawString(Command.GETRANGE, key, String.valueOf(startOffset), String.valueOf(endOffset));
+        }
+        return multiplexed(Command.GETRANGE, key, p -> p.getrange(key, startOffset, endOffset), jedis -> jedis.getrange(key, startOffset, endOffset));
+    }
+
+    /**
+     * 通过key 对value进行加值+1操作,当value不是int类型时会返回错误,当key不存在是则value为1
+     *
+     * @param key 键
+     * @return Long
+     */
+    @Override
+    public Long incr(String key)
+    {
+        return invalidate(pipelined(Command.INCR, key, p -> p.incr(key), jedis -> jedis.incr(key)), key);
+    }
+
+    /**
+     * 通过key给指定的value加值,如果key不存在,则这是value为该值
+     *
+     * @param key     键
+     * @param integer 加值
+     * @return Long
+     */
+    @Override
+    public Long incrBy(String key, long integer)
+    {
+        return invalidate(pipelined(Command.INCRBY, key, p -> p.incrBy(key, integer), jedis -> jedis.incrBy(key, integer)), key);
+    }
+
+    /**
+     * 对key的值做减减操作,如果key不存在,则设置key为-1
+     *
+     * @param key 键
+     * @return Long
+     */
+    @Override
+    public Long decr(String key)
+    {
+        return invalidate(pipelined(Command.DECR, key, p -> p.decr(key), jedis -> jedis.decr(key)), key);
+    }
+
+    /**
+     * 减去指定的值
+     *
+     * @param key     键
+     * @param integer 值
+     * @return Long
+     */
+    @Override
+    public Long decrBy(String key, long integer)
+    {
+        return invalidate(pipelined(Command.DECRBY, key, p -> p.decrBy(key, integer), jedis -> jedis.decrBy(key, integer)), key);
+    }
+
+    /**
+     * 给key的值加上integer,不返回结果
+     * 开启计数器写缓冲时只在内存中累加,由redis.counterBuffer配置的周期或数量触发批量写入,否则马上执行INCRBY
+     *
+     * @param key     键
+     * @param integer 加值
+     */
+    @Override
+    public void incrByLater(String key, long integer)
+    {
+        if (counterBuffer != null)
+        {
+            counterBuffer.add(key, null, integer);
+        }
+        else
+        {
+            incrBy(key, integer);
+        }
+    }
+
+    /**
+     * 通过key获取value值的长度
+     *
+     * @param key 键
+     * @return Long 长度
+     */
+    @Override
+    public Long strLen(String key)
+    {
+        if (compressor != null)
+        {
+            return (Long) rawString(Command.STRLEN, key);
+        }
+        return multiplexed(Command.STRLEN, key, p -> p.strlen(key), jedis -> jedis.strlen(key));
+    }
+
+    /**
+     * 通过key给field设置指定的值,如果key不存在则先创建,如果field已经存在,返回0
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return Long
+     */
+    @Override
+    public Long hSetNx(String key, String field, String value)
+    {
+        metrics.recordRequest(Command.HSETNX, value);
+        return invalidate(pipelined(Command.HSETNX, key, p -> p.hsetnx(key, field, value), jedis -> jedis.hsetnx(key, field, value)), key);
+    }
+
+    /**
+     * 通过key给field设置指定的值,如果key不存在,则先创建
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return Long
+     */
+    @Override
+    public Long hSet(String key, String field, String value)
+    {
+        metrics.recordRequest(Command.HSET, value);
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] rawField = SafeEncoder.encode(field);
+            byte[] stored = compressor.encode(value);
+            return invalidate(pipelined(Command.HSET, rawKey, p -> p.hset(rawKey, rawField, stored), jedis -> jedis.hset(rawKey, rawField, stored)), key);
+        }
+        return invalidate(pipelined(Command.HSET, key, p -> p.hset(key, field, value), jedis -> jedis.hset(key, field, value)), key);
+    }
+
+    /**
+     * 通过key同时设置 hash的多个field
+     *
+     * @param key  键
+     * @param hash map
+     * @return String
+     */
+    @Override
+    public String hmSet(String key, Map<String, String> hash)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            Map<byte[], byte[]> stored = new HashMap<>(hash.size() * 4 / 3 + 1);
+            for (Map.Entry<String, String> entry : hash.entrySet())
+            {
+                stored.put(SafeEncoder.encode(entry.getKey()), compressor.encode(entry.getValue()));
+            }
+            return invalidate(multiplexed(Command.HMSET, rawKey, p -> p.hmset(rawKey, stored), jedis -> jedis.hmset(rawKey, stored)), key);
+        }
+        return invalidate(multiplexed(Command.HMSET, key, p -> p.hmset(key, hash), jedis -> jedis.hmset(key, hash)), key);
+    }
+
+    /**
+     * 同时设置hash的多个field并设置过期时间,开启压缩时大值压缩后写入
+     *
+     * @param key     键
+     * @param seconds 过期时间,秒
+     * @param hash    属性和值
+     * @return 新增的field数
+     */
+    @Override
+    public Long hSetEx(String key, int seconds, Map<String, String> hash)
+    {
+        List<byte[]> args = new ArrayList<>(hash.size() * 2 + 1);
+        args.add(Protocol.toByteArray(seconds));
+        for (Map.Entry<String, String> entry : hash.entrySet())
+        {
+            args.add(SafeEncoder.encode(entry.getKey()));
+            args.add(stored(entry.getValue()));
+        }
+        return invalidate((Long) script(ScriptRegistry.HSET_EX, key, args), key);
+    }
+
+    /**
+     * 通过key 和 field 获取指定的 value
+     *
+     * @param key   键
+     * @param field 属性
+     * @return String 属性值
+     */
+    @Override
+    public String hGet(String key, String field)
+    {
+        if (nearCache != null && nearCache.accepts(key))
+        {
+            return nearCache.get(key, NearCache.field(field), () -> onMaster(() -> loadHashField(key, field)));
+        }
+        return loadHashField(key, field);
+    }
+
+    private String loadHashField(String key, String field)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[] rawField = SafeEncoder.encode(field);
+            return compressor.decode(pipelined(Command.HGET, rawKey, p -> p.hget(rawKey, rawField), jedis -> jedis.hget(rawKey, rawField)));
+        }
+        return pipelined(Command.HGET, key, p -> p.hget(key, field), jedis -> jedis.hget(key, field));
+    }
+
+    /**
+     * 设置key的超时时间为seconds
+     *
+     * @param key     键
+     * @param seconds 超时时间
+     * @return Long
+     */
+    @Override
+    public Long expire(String key, int seconds)
+    {
+        return invalidate(pipelined(Command.EXPIRE, key, p -> p.expire(key, seconds), jedis -> jedis.expire(key, seconds)), key);
+    }
+
+    /**
+     * 通过key 和 fields 获取指定的value 如果没有对应的value则返回null
+     *
+     * @param key    键
+     * @param fields 可以是 一个String 也可以是 String数组
+     * @return List
+     */
+    @Override
+    public List<String> hmGet(String key, String... fields)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            byte[][] rawFields = new byte[fields.length][];
+            for (int i = 0; i < fields.length; i++)
+            {
+                rawFields[i] = SafeEncoder.encode(fields[i]);
+            }
+            return decodeAll(multiplexed(Command.HMGET, rawKey, p -> p.hmget(rawKey, rawFields), jedis -> jedis.hmget(rawKey, rawFields)));
+        }
+        return multiplexed(Command.HMGET, key, p -> p.hmget(key, fields), jedis -> jedis.hmget(key, fields));
+    }
+
+    /**
+     * 通过key给指定的field的value加上给定的值
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     * @return Long
+     */
+    @Override
+    public Long hIncrBy(String key, String field, Long value)
+    {
+        return invalidate(pipelined(Command.HINCRBY, key, p -> p.hincrBy(key, field, value), jedis -> jedis.hincrBy(key, field, value)), key);
+    }
+
+    /**
+     * 给key中field的值加上value,不返回结果
+     * 开启计数器写缓冲时只在内存中累加,否则马上执行HINCRBY
+     *
+     * @param key   键
+     * @param field 属性
+     * @param value 值
+     */
+    @Override
+    public void hIncrByLater(String key, String field, long value)
+    {
+        if (counterBuffer != null)
+        {
+            counterBuffer.add(key, field, value);
+        }
+        else
+        {
+            hIncrBy(key, field, value);
+        }
+    }
+
+    /**
+     * 通过key和field判断是否有指定的value存在
+     *
+     * @param key   键
+     * @param field 属性
+     * @return Boolean
+     */
+    @Override
+    public Boolean hExists(String key, String field)
+    {
+        return pipelined(Command.HEXISTS, key, p -> p.hexists(key, field), jedis -> jedis.hexists(key, field));
+    }
+
+    /**
+     * 通过key返回field的数量
+     *
+     * @param key 键
+     * @return Long
+     */
+    @Override
+    public Long hLen(String key)
+    {
+        return multiplexed(Command.HLEN, key, p -> p.hlen(key), jedis -> jedis.hlen(key));
+    }
+
+    /**
+     * 通过key 删除指定的 field
+     *
+     * @param key    键
+     * @param fields 可以是 一个 field 也可以是 一个数组
+     * @return Long
+     */
+    @Override
+    public Long hDel(String key, String... fields)
+    {
+        return invalidate(multiplexed(Command.HDEL, key, p -> p.hdel(key, fields), jedis -> jedis.hdel(key, fields)), key);
+    }
+
+    /**
+     * 通过key返回所有的field
+     *
+     * @param key 键
+     * @return Set
+     */
+    @Override
+    public Set<String> hKeys(String key)
+    {
+        return multiplexed(Command.HKEYS, key, p -> p.hkeys(key), jedis -> jedis.hkeys(key));
+    }
+
+    /**
+     * 通过key返回所有和key有关的value
+     *
+     * @param key 键
+     * @return List
+     */
+    @Override
+    public List<String> hVals(String key)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            return decodeAll(new ArrayList<>(multiplexed(Command.HVALS, rawKey, p -> p.hvals(rawKey), jedis -> jedis.hvals(rawKey))));
+        }
+        return multiplexed(Command.HVALS, key, p -> p.hvals(key), jedis -> jedis.hvals(key));
+    }
+
+    /**
+     * 通过key获取所有的field和value
+     *
+     * @param key 键
+     * @return Map
+     */
+    @Override
+    public Map<String, String> hGetAll(String key)
+    {
+        if (nearCache != null && nearCache.accepts(key))
+        {
+            return nearCache.get(key, NearCache.HASH, () -> onMaster(() -> Collections.unmodifiableMap(loadHash(key))));
+        }
+        return loadHash(key);
+    }
+
+    private Map<String, String> loadHash(String key)
+    {
+        if (compressor != null)
+        {
+            byte[] rawKey = SafeEncoder.encode(key);
+            Map<byte[], byte[]> stored = multiplexed(Command.HGETALL, rawKey, p -> p.hgetAll(rawKey), jedis -> jedis.hgetAll(rawKey));
+            Map<String, String> hash = new HashMap<>(stored.size() * 4 / 3 + 1);
+            for (Map.Entry<byte[], byte[]> entry : stored.entrySet())
+            {
+                hash.put(SafeEncoder.encode(entry.getKey()), compressor.decode(entry.getValue()));
+            }
+            return hash;
+        }
+        return multiplexed(Command.HGETALL, key, p -> p.hgetAll(key), jedis -> jedis.hgetAll(key));
+    }
+
+    /**
+     * 通过key向list头部添加字符串
+     *
+     * @param key     键
+     * @param strings 可以是一个string 也可以是string数组
+     * @return 返回list的value个数
+     */
+    @Override
+    public Long lPush(String key, String... strings)
+    {
+        return multiplexed(Command.LPUSH, key, p -> p.lpush(key, strings), jedis -> jedis.lpush(key, strings));
+    }
+
+    /**
+     * 从list的头部添加值,只保留头部的maxLength个
+     *
+     * @param key       键
+     * @param maxLength 最多保留的个数
+     * @param strings   值
+     * @return 修剪后list的长度
+     */
+    @Override
+    public Long lPushCapped(String key, int maxLength, String... strings)
+    {
+        List<byte[]> args = new ArrayList<>(strings.length + 1);
+        args.add(Protocol.toByteArray(maxLength));
+        for (String value : strings)
+        {
+            args.add(SafeEncoder.encode(value));
+        }
+        return (Long) script(ScriptRegistry.CAPPED_LPUSH, key, args);
+    }
+
+    /**
+     * 通过key向list尾部添加字符串
+     *
+     * @param key     键
+     * @param strings 可以是一个string 也可以是string数组
+     * @return 返回list的value个数
+     */
+    @Override
+    public Long rPush(String key, String... strings)
+    {
+        return multiplexed(Command.RPUSH, key, p -> p.rpush(key, strings), jedis -> jedis.rpush(key, strings));
+    }
+
+    /**
+     * 通过key在list指定的位置之前或者之后 添加字符串元素
+     *
+     * @param key   键
+     * @param where LIST_POSITION枚举类型
+     * @param pivot list里面的value
+     * @param value 添加的value
+     * @return Long
+     */
+    @Override
+    public Long lInsert(String key, BinaryClient.LIST_POSITION where, String pivot, String value)
+    {
+        return multiplexed(Command.LINSERT, key, p -> p.linsert(key, where, pivot, value), jedis -> jedis.linsert(key, where, pivot, value));
+    }
+
+    /**
+     * 通过key设置list指定下标位置的value
+     * 如果下标超过list里面value的个数则报错
+     *
+     * @param key   键
+     * @param index 从0开始
+     * @param value 值
+     * @return 成功返回OK
+     */
+    @Override
+    public String lSet(String key, Long index, String value)
+    {
+        return multiplexed(Command.LSET, key, p -> p.lset(key, index, value), jedis -> jedis.lset(key, index, value));
+    }
+
+    /**
+     * 通过key从对应的list中删除指定的count个 和 value相同的元素
+     *
+     * @param key   键
+     * @param count 当count为0时删除全部
+     * @param value 值
+     * @return 返回被删除的个数
+     */
+    @Override
+    public Long lRem(String key, long count, String value)
+    {
+        return multiplexed(Command.LREM, key, p -> p.lrem(key, count, value), jedis -> jedis.lrem(key, count, value));
+    }
+
+    /**
+     * 通过key保留list中从strat下标开始到end下标结束的value值
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return 成功返回OK
+     */
+    @Override
+    public String lTrim(String key, long start, long end)
+    {
+        return multiplexed(Command.LTRIM, key, p -> p.ltrim(key, start, end), jedis -> jedis.ltrim(key, start, end));
+    }
+
+    /**
+     * 通过key从list的头部删除一个value,并返回该value
+     *
+     * @param key 键
+     * @return 值
+     */
+    @Override
+    public String lPop(String key)
+    {
+        return multiplexed(Command.LPOP, key, p -> p.lpop(key), jedis -> jedis.lpop(key));
+    }
+
+    /**
+     * 通过key从list尾部删除一个value,并返回该元素
+     *
+     * @param key 键
+     * @return 值
+     */
+    @Override
+    public String rPop(String key)
+    {
+        return multiplexed(Command.RPOP, key, p -> p.rpop(key), jedis -> jedis.rpop(key));
+    }
+
+    /**
+     * 通过key从一个list的尾部删除一个value并添加到另一个list的头部,并返回该value
+     * 如果第一个list为空或者不存在则返回null
+     *
+     * @param srcKey String
+     * @param dstKey String
+     * @return String
+     */
+    @Override
+    public String rpoplpush(String srcKey, String dstKey)
+    {
+        return multiplexed(Command.RPOPLPUSH, srcKey, p -> p.rpoplpush(srcKey, dstKey), jedis -> jedis.rpoplpush(srcKey, dstKey));
+    }
+
+    /**
+     * 通过key从list的头部一次删除最多count个value,并按顺序返回,整个操作是原子的
+     *
+     * @param key   键
+     * @param count 最多删除的个数
+     * @return list为空时返回空的List
+     */
+    @Override
+    public List<String> lPop(String key, int count)
+    {
+        if (count <= 0)
+        {
+            return new ArrayList<>();
+        }
+        return execute(Command.LPOP, key, jedis -> popRange(jedis, key, 0, count - 1, count, -1));
+    }
+
+    /**
+     * 通过key从list的尾部一次删除最多count个value,按弹出顺序(从尾部开始)返回,整个操作是原子的
+     *
+     * @param key   键
+     * @param count 最多删除的个数
+     * @return list为空时返回空的List
+     */
+    @Override
+    public List<String> rPop(String key, int count)
+    {
+        if (count <= 0)
+        {
+            return new ArrayList<>();
+        }
+        List<String> values = execute(Command.RPOP, key, jedis -> popRange(jedis, key, -count, -1, 0, -count - 1));
+        Collections.reverse(values);
+        return values;
+    }
+
+    /**
+     * 在一个事务中读取并删除list的一段,redis 6.2以下没有LPOP count,用LRANGE+LTRIM代替
+     */
+    private static List<String> popRange(Jedis jedis, String key, long start, long end, long keepStart,
+            long keepEnd)
+    {
+        Transaction transaction = jedis.multi();
+        Response<List<String>> values = transaction.lrange(key, start, end);
+        transaction.ltrim(key, keepStart, keepEnd);
+        transaction.exec();
+        return values.get();
+    }
+
+    /**
+     * 阻塞地从多个list的头部弹出一个value,按keys的顺序检查,没有数据时最多等待timeout秒
+     *
+     * @param timeout 等待秒数,0表示一直等待
+     * @param keys    键
+     * @return [key, value],超时返回null
+     */
+    @Override
+    public List<String> bLPop(int timeout, String... keys)
+    {
+        return emptyToNull(execute(Command.BLPOP, first(keys), jedis -> jedis.blpop(timeout, keys)));
+    }
+
+    /**
+     * 阻塞地从多个list的尾部弹出一个value,按keys的顺序检查,没有数据时最多等待timeout秒
+     *
+     * @param timeout 等待秒数,0表示一直等待
+     * @param keys    键
+     * @return [key, value],超时返回null
+     */
+    @Override
+    public List<String> bRPop(int timeout, String... keys)
+    {
+        return emptyToNull(execute(Command.BRPOP, first(keys), jedis -> jedis.brpop(timeout, keys)));
+    }
+
+    private static List<String> emptyToNull(List<String> reply)
+    {
+        return reply == null || reply.isEmpty() ? null : reply;
+    }
+
+    /**
+     * 启动一个队列消费者,threads个线程通过BLPOP(fromHead)或BRPOP等待keys中的消息,
+     * 每次最多把batchSize条同一个list的消息交给handler,不再需要的时候调用close
+     *
+     * @param handler   消息处理
+     * @param fromHead  true从头部弹出,false从尾部弹出
+     * @param threads   工作线程数
+     * @param batchSize 每批最多的消息数
+     * @param keys      键,靠前的key优先
+     * @return QueueConsumer
+     */
+    @Override
+    public QueueConsumer consume(QueueHandler handler, boolean fromHead, int threads, int batchSize, String... keys)
+    {
+        return new QueueConsumer(this, handler, fromHead, threads, batchSize, queueBlockSeconds, keys);
+    }
+
+    /**
+     * 创建一个可靠队列,消费者id为当前进程(pid@host)加随机的后缀
+     * 容器重启后pid和主机名通常不变,不加后缀时新进程马上续上旧进程的心跳,旧进程处理中的消息永远不会放回队列
+     * 队列的几个key不在同一个slot,并且只使用单机的连接池,集群和分片模式下不支持
+     *
+     * @param name 队列名称
+     * @return ReliableQueue 不再使用时调用close
+     */
+    @Override
+    public ReliableQueue reliableQueue(String name)
+    {
+        if (cluster != null)
+        {
+            throw new UnsupportedOperationException("reliableQueue is not supported by redis.transport=" + transport);
+        }
+        return new ReliableQueue(name, ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID(),
+                reliableQueueVisibilitySeconds);
+    }
+
+    /**
+     * 通过key获取list中指定下标位置的value
+     *
+     * @param key   键
+     * @param index 下标
+     * @return 如果没有返回null
+     */
+    @Override
+    public String lIndex(String key, long index)
+    {
+        return multiplexed(Command.LINDEX, key, p -> p.lindex(key, index), jedis -> jedis.lindex(key, index));
+    }
+
+    /**
+     * 通过key返回list的长度
+     *
+     * @param key 键
+     * @return 长度
+     */
+    @Override
+    public Long lLen(String key)
+    {
+        return multiplexed(Command.LLEN, key, p -> p.llen(key), jedis -> jedis.llen(key));
+    }
+
+    /**
+     * 通过key获取list指定下标位置的value
+     * 如果start 为 0 end 为 -1 则返回全部的list中的value
+     *
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return List
+     */
+    @Override
+    public List<String> lRange(String key, long start, long end)
+    {
+        return multiplexed(Command.LRANGE, key, p -> p.lrange(key, start, end), jedis -> jedis.lrange(key, start, end));
     }
 
     /**
-     * 判断key是否存在
+     * 通过key向指定的set中添加value
      *
-     * @param key 键
-     * @return 存在为true 不存在为false
+     * @param key     键
+     * @param members 可以是一个String 也可以是一个String数组
+     * @return 添加成功的个数
      */
     @Override
-    public Boolean exists(String key)
+    public Long sAdd(String key, String... members)
     {
-        Jedis jedis = getJedis();
-        Boolean result = jedis.exists(key);
-        jedis.close();
-        return result;
+        return invalidate(multiplexed(Command.SADD, key, p -> p.sadd(key, members), jedis -> jedis.sadd(key, members)), key);
     }
 
     /**
-     * 设置key value,如果key已经存在则返回0
+     * 通过key删除set中对应的value值
      *
-     * @param key   键
-     * @param value 值
-     * @return Long
+     * @param key     键
+     * @param members 可以是一个String 也可以是一个String数组
+     * @return 删除的个数
      */
     @Override
-    public Long setNx(String key, String value)
+    public Long sRem(String key, String... members)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.setnx(key, value);
-        jedis.close();
-        return result;
+        return invalidate(multiplexed(Command.SREM, key, p -> p.srem(key, members), jedis -> jedis.srem(key, members)), key);
     }
 
     /**
-     * 设置key value并指定这个键值的有效期
+     * 通过key随机删除一个set中的value并返回该值
      *
-     * @param key     键
-     * @param seconds 超时时间
-     * @param value   值
-     * @return String
+     * @param key 键
+     * @return 值
      */
     @Override
-    public String setEx(String key, int seconds, String value)
+    public String sPop(String key)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.setex(key, seconds, value);
-        jedis.close();
-        return result;
+        return invalidate(multiplexed(Command.SPOP, key, p -> p.spop(key), jedis -> jedis.spop(key)), key);
     }
 
     /**
-     * 通过key 和offset 从指定的位置开始将原先value替换
+     * 通过key获取set中的差集
+     * 以第一个set为标准
      *
-     * @param key    键
-     * @param offset 指定位置索引
-     * @param str    替换值
-     * @return Long
+     * @param keys 可以 是一个string 则返回set中所有的value 也可以是string数组
+     * @return Set
      */
     @Override
-    public Long setRange(String key, int offset, String str)
+    public Set<String> sDiff(String... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.setrange(key, offset, str);
-        jedis.close();
-        return result;
+        if (crossSlot(keys))
+        {
+            Set<String> diff = new HashSet<>(sMembers(keys[0]));
+            diff.removeAll(combineBySlot(Command.SUNION, Arrays.copyOfRange(keys, 1, keys.length), false));
+            return diff;
+        }
+        return multiplexed(Command.SDIFF, first(keys), p -> p.sdiff(keys), jedis -> jedis.sdiff(keys));
     }
 
     /**
-     * 通过批量的key获取批量的value
+     * 通过key获取set中的差集并存入到另一个key中
+     * 以第一个set为标准
      *
-     * @param keys 键
-     * @return List
+     * @param dstKey 差集存入的key
+     * @param keys   可以 是一个string 则返回set中所有的value 也可以是string数组
+     * @return Long
      */
     @Override
-    public List<String> mGet(String... keys)
+    public Long sDiffStore(String dstKey, String... keys)
     {
-        Jedis jedis = getJedis();
-        List<String> result = jedis.mget(keys);
-        jedis.close();
-        return result;
+        if (crossSlot(withKey(dstKey, keys)))
+        {
+            return invalidate(store(dstKey, sDiff(keys)), dstKey);
+        }
+        return invalidate(multiplexed(Command.SDIFFSTORE, dstKey, p -> p.sdiffstore(dstKey, keys), jedis -> jedis.sdiffstore(dstKey, keys)), dstKey);
     }
 
     /**
-     * 批量的设置key:value,也可以一个
+     * 通过key获取指定set中的交集
      *
-     * @param keysValues 可变key
-     * @return String
+     * @param keys 可以 是一个string 也可以是一个string数组
+     * @return Set
      */
     @Override
-    public String mSet(String... keysValues)
+    public Set<String> sInter(String... keys)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.mset(keysValues);
-        jedis.close();
-        return result;
+        if (crossSlot(keys))
+        {
+            return combineBySlot(Command.SINTER, keys, true);
+        }
+        return multiplexed(Command.SINTER, first(keys), p -> p.sinter(keys), jedis -> jedis.sinter(keys));
     }
 
     /**
-     * 批量的设置key:value,可以一个,如果key已经存在则会失败,操作会回滚
+     * 通过key获取指定set中的交集 并将结果存入新的set中
      *
-     * @param keysValues 可变keyvalue
+     * @param dstKey String
+     * @param keys   可以是一个string 也可以是一个string数组
      * @return Long
      */
     @Override
-    public Long mSetNx(String... keysValues)
+    public Long sInterStore(String dstKey, String... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.msetnx(keysValues);
-        jedis.close();
-        return result;
+        if (crossSlot(withKey(dstKey, keys)))
+        {
+            return invalidate(store(dstKey, sInter(keys)), dstKey);
+        }
+        return invalidate(multiplexed(Command.SINTERSTORE, dstKey, p -> p.sinterstore(dstKey, keys), jedis -> jedis.sinterstore(dstKey, keys)), dstKey);
     }
 
     /**
-     * 设置key的值,并返回一个旧值
+     * 通过key返回所有set的并集
      *
-     * @param key   键
-     * @param value 覆盖的值
-     * @return String 旧值
+     * @param keys 可以 是一个string 也可以是一个string数组
+     * @return Set
      */
     @Override
-    public String getSet(String key, String value)
+    public Set<String> sUnion(String... keys)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.getSet(key, value);
-        jedis.close();
-        return result;
+        if (crossSlot(keys))
+        {
+            return combineBySlot(Command.SUNION, keys, false);
+        }
+        return multiplexed(Command.SUNION, first(keys), p -> p.sunion(keys), jedis -> jedis.sunion(keys));
     }
 
     /**
-     * 通过下标 和key 获取指定下标位置的 value
+     * 通过key返回所有set的并集,并存入到新的set中
      *
-     * @param key         键
-     * @param startOffset 开始下标
-     * @param endOffset   结束下标
-     * @return String
+     * @param dstKey 添加的
+     * @param keys   可以 是一个string 也可以是一个string数组
+     * @return Long
      */
     @Override
-    public String getRange(String key, int startOffset, int endOffset)
+    public Long sUnionStore(String dstKey, String... keys)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.getrange(key, startOffset, endOffset);
-        jedis.close();
-        return result;
+        if (crossSlot(withKey(dstKey, keys)))
+        {
+            return invalidate(store(dstKey, sUnion(keys)), dstKey);
+        }
+        return invalidate(multiplexed(Command.SUNIONSTORE, dstKey, p -> p.sunionstore(dstKey, keys), jedis -> jedis.sunionstore(dstKey, keys)), dstKey);
     }
 
     /**
-     * 通过key 对value进行加值+1操作,当value不是int类型时会返回错误,当key不存在是则value为1
+     * 通过key将set中的value移除并添加到第二个set中
      *
-     * @param key 键
+     * @param srcKey 需要移除的
+     * @param dstKey 添加的
+     * @param member set中的value
      * @return Long
      */
     @Override
-    public Long incr(String key)
+    public Long smove(String srcKey, String dstKey, String member)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.incr(key);
-        jedis.close();
-        return result;
+        return invalidate(multiplexed(Command.SMOVE, srcKey, p -> p.smove(srcKey, dstKey, member), jedis -> jedis.smove(srcKey, dstKey, member)), srcKey, dstKey);
     }
 
     /**
-     * 通过key给指定的value加值,如果key不存在,则这是value为该值
+     * 通过key获取set中value的个数
      *
-     * @param key     键
-     * @param integer 加值
-     * @return Long
+     * @param key 键
+     * @return 个数
      */
     @Override
-    public Long incrBy(String key, long integer)
+    public Long sCard(String key)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.incrBy(key, integer);
-        jedis.close();
-        return result;
+        return multiplexed(Command.SCARD, key, p -> p.scard(key), jedis -> jedis.scard(key));
     }
 
     /**
-     * 对key的值做减减操作,如果key不存在,则设置key为-1
+     * 通过key判断value是否是set中的元素
      *
-     * @param key 键
-     * @return Long
+     * @param key    键
+     * @param member 元素
+     * @return Boolean
      */
     @Override
-    public Long decr(String key)
+    public Boolean sIsMember(String key, String member)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.decr(key);
-        jedis.close();
-        return result;
+        return pipelined(Command.SISMEMBER, key, p -> p.sismember(key, member), jedis -> jedis.sismember(key, member));
     }
 
     /**
-     * 减去指定的值
+     * 通过key获取set中随机的value,不删除元素
      *
-     * @param key     键
-     * @param integer 值
-     * @return Long
+     * @param key 键
+     * @return String
      */
     @Override
-    public Long decrBy(String key, long integer)
+    public String sRandMember(String key)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.decrBy(key, integer);
-        jedis.close();
-        return result;
+        return multiplexed(Command.SRANDMEMBER, key, p -> p.srandmember(key), jedis -> jedis.srandmember(key));
     }
 
     /**
-     * 通过key获取value值的长度
+     * 通过key获取set中所有的value
      *
      * @param key 键
-     * @return Long 长度
+     * @return Set
      */
     @Override
-    public Long strLen(String key)
+    public Set<String> sMembers(String key)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.strlen(key);
-        jedis.close();
-        return result;
+        if (nearCache != null && nearCache.accepts(key))
+        {
+            return nearCache.get(key, NearCache.SET, () -> onMaster(() -> Collections.unmodifiableSet(loadSet(key))));
+        }
+        return loadSet(key);
+    }
+
+    private Set<String> loadSet(String key)
+    {
+        return multiplexed(Command.SMEMBERS, key, p -> p.smembers(key), jedis -> jedis.smembers(key));
     }
 
     /**
-     * 通过key给field设置指定的值,如果key不存在则先创建,如果field已经存在,返回0
+     * 通过key向zset中添加value,score,其中score就是用来排序的
+     * 如果该value已经存在则根据score更新元素
      *
-     * @param key   键
-     * @param field 属性
-     * @param value 值
+     * @param key    键
+     * @param score  排序值
+     * @param member 元素
      * @return Long
      */
     @Override
-    public Long hSetNx(String key, String field, String value)
+    public Long zAdd(String key, double score, String member)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.hsetnx(key, field, value);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZADD, key, p -> p.zadd(key, score, member), jedis -> jedis.zadd(key, score, member));
     }
 
     /**
-     * 通过key给field设置指定的值,如果key不存在,则先创建
+     * 向zset添加成员,只保留分数最高的maxSize个
      *
-     * @param key   键
-     * @param field 属性
-     * @param value 值
-     * @return Long
+     * @param key     键
+     * @param maxSize 最多保留的个数
+     * @param score   分数
+     * @param member  成员
+     * @return 新增的数量
      */
     @Override
-    public Long hSet(String key, String field, String value)
+    public Long zAddCapped(String key, int maxSize, double score, String member)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.hset(key, field, value);
-        jedis.close();
-        return result;
+        return (Long) script(ScriptRegistry.CAPPED_ZADD, key, Arrays.asList(Protocol.toByteArray(maxSize),
+                Protocol.toByteArray(score), SafeEncoder.encode(member)));
     }
 
     /**
-     * 通过key同时设置 hash的多个field
+     * 通过key删除在zset中指定的value
      *
-     * @param key  键
-     * @param hash map
-     * @return String
+     * @param key     键
+     * @param members 可以 是一个string 也可以是一个string数组
+     * @return Long
      */
     @Override
-    public String hmSet(String key, Map<String, String> hash)
+    public Long zRem(String key, String... members)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.hmset(key, hash);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREM, key, p -> p.zrem(key, members), jedis -> jedis.zrem(key, members));
     }
 
     /**
-     * 通过key 和 field 获取指定的 value
+     * 通过key增加该zset中value的score的值
      *
-     * @param key   键
-     * @param field 属性
-     * @return String 属性值
+     * @param key    键
+     * @param score  排序值
+     * @param member String
+     * @return Double
      */
     @Override
-    public String hGet(String key, String field)
+    public Double zIncrBy(String key, double score, String member)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.hget(key, field);
-        jedis.close();
-        return result;
+        return pipelined(Command.ZINCRBY, key, p -> p.zincrby(key, score, member), jedis -> jedis.zincrby(key, score, member));
     }
 
     /**
-     * 设置key的超时时间为seconds
+     * 通过key返回zSet中value的排名
+     * 下标从小到大排序
      *
-     * @param key     键
-     * @param seconds 超时时间
+     * @param key    键
+     * @param member value
      * @return Long
      */
     @Override
-    public Long expire(String key, int seconds)
+    public Long zRank(String key, String member)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.expire(key, seconds);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZRANK, key, p -> p.zrank(key, member), jedis -> jedis.zrank(key, member));
     }
 
     /**
-     * 通过key 和 fields 获取指定的value 如果没有对应的value则返回null
+     * 通过key返回zSet中value的排名
+     * 下标从大到小排序
      *
      * @param key    键
-     * @param fields 可以是 一个String 也可以是 String数组
-     * @return List
+     * @param member 值
+     * @return Long
      */
     @Override
-    public List<String> hmGet(String key, String... fields)
+    public Long zRevRank(String key, String member)
     {
-        Jedis jedis = getJedis();
-        List<String> result = jedis.hmget(key, fields);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREVRANK, key, p -> p.zrevrank(key, member), jedis -> jedis.zrevrank(key, member));
     }
 
     /**
-     * 通过key给指定的field的value加上给定的值
+     * 通过key将获取score从start到end中zSet的value
+     * score从大到小排序
+     * 当start为0 end为-1时返回全部
      *
      * @param key   键
-     * @param field 属性
-     * @param value 值
-     * @return Long
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return Set
      */
     @Override
-    public Long hIncrBy(String key, String field, Long value)
+    public Set<String> zRevRange(String key, long start, long end)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.hincrBy(key, field, value);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREVRANGE, key, p -> p.zrevrange(key, start, end), jedis -> jedis.zrevrange(key, start, end));
+    }
+
+    @Override
+    public Set<String> zRangeByScore(String key, String max, String min)
+    {
+        return multiplexed(Command.ZRANGEBYSCORE, key, p -> p.zrangeByScore(key, max, min), jedis -> jedis.zrangeByScore(key, max, min));
+    }
+
+    @Override
+    public Set<String> zRangeByScore(String key, Double min, Double max)
+    {
+        return multiplexed(Command.ZRANGEBYSCORE, key, p -> p.zrangeByScore(key, max, min), jedis -> jedis.zrangeByScore(key, max, min));
     }
 
     /**
-     * 通过key和field判断是否有指定的value存在
+     * 通过key返回指定score内zSet中的value
      *
-     * @param key   键
-     * @param field 属性
-     * @return Boolean
+     * @param key 键
+     * @param max 范围上限
+     * @param min 范围下限
+     * @return Set
      */
     @Override
-    public Boolean hExists(String key, String field)
+    public Set<String> zRevRangeByScore(String key, String max, String min)
     {
-        Jedis jedis = getJedis();
-        Boolean result = jedis.hexists(key, field);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREVRANGEBYSCORE, key, p -> p.zrevrangeByScore(key, max, min), jedis -> jedis.zrevrangeByScore(key, max, min));
     }
 
     /**
-     * 通过key返回field的数量
+     * 通过key返回指定score内zSet中的value
      *
      * @param key 键
-     * @return Long
+     * @param max 范围上限
+     * @param min 范围下限
+     * @return Set
      */
     @Override
-    public Long hLen(String key)
+    public Set<String> zRevRangeByScore(String key, double max, double min)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.hlen(key);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREVRANGEBYSCORE, key, p -> p.zrevrangeByScore(key, max, min), jedis -> jedis.zrevrangeByScore(key, max, min));
     }
 
     /**
-     * 通过key 删除指定的 field
+     * 返回指定区间内zset中value的数量
      *
-     * @param key    键
-     * @param fields 可以是 一个 field 也可以是 一个数组
+     * @param key 键
+     * @param min 范围下限
+     * @param max 范围上限
      * @return Long
      */
     @Override
-    public Long hDel(String key, String... fields)
+    public Long zCount(String key, String min, String max)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.hdel(key, fields);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZCOUNT, key, p -> p.zcount(key, min, max), jedis -> jedis.zcount(key, min, max));
     }
 
     /**
-     * 通过key返回所有的field
+     * 通过key返回zSet中的value个数
      *
      * @param key 键
-     * @return Set
+     * @return Long
      */
     @Override
-    public Set<String> hKeys(String key)
+    public Long zCard(String key)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.hkeys(key);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZCARD, key, p -> p.zcard(key), jedis -> jedis.zcard(key));
     }
 
     /**
-     * 通过key返回所有和key有关的value
+     * 通过key获取zSet中value的score值
      *
-     * @param key 键
-     * @return List
+     * @param key    键
+     * @param member value
+     * @return Double
      */
     @Override
-    public List<String> hVals(String key)
+    public Double zScore(String key, String member)
     {
-        Jedis jedis = getJedis();
-        List<String> result = jedis.hvals(key);
-        jedis.close();
-        return result;
+        return pipelined(Command.ZSCORE, key, p -> p.zscore(key, member), jedis -> jedis.zscore(key, member));
     }
 
     /**
-     * 通过key获取所有的field和value
+     * 通过key删除给定区间内的元素
      *
-     * @param key 键
-     * @return Map
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return Long
      */
     @Override
-    public Map<String, String> hGetAll(String key)
+    public Long zRemRangeByRank(String key, long start, long end)
     {
-        Jedis jedis = getJedis();
-        Map<String, String> result = jedis.hgetAll(key);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREMRANGEBYRANK, key, p -> p.zremrangeByRank(key, start, end), jedis -> jedis.zremrangeByRank(key, start, end));
     }
 
     /**
-     * 通过key向list头部添加字符串
+     * 通过key删除指定score内的元素
      *
-     * @param key     键
-     * @param strings 可以是一个string 也可以是string数组
-     * @return 返回list的value个数
+     * @param key   键
+     * @param start 开始下标
+     * @param end   结束下标
+     * @return Long
      */
     @Override
-    public Long lPush(String key, String... strings)
+    public Long zRemRangeByScore(String key, double start, double end)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.lpush(key, strings);
-        jedis.close();
-        return result;
+        return multiplexed(Command.ZREMRANGEBYSCORE, key, p -> p.zremrangeByScore(key, start, end), jedis -> jedis.zremrangeByScore(key, start, end));
     }
 
     /**
-     * 通过key向list尾部添加字符串
+     * 返回满足pattern表达式的所有key
+     * keys(*)
+     * 返回所有的key
+     * KEYS会阻塞redis直到遍历完整个keyspace,key数量大时使用scanKeys
      *
-     * @param key     键
-     * @param strings 可以是一个string 也可以是string数组
-     * @return 返回list的value个数
+     * @param pattern 正则表达式
+     * @return Set
      */
     @Override
-    public Long rPush(String key, String... strings)
+    public Set<String> keys(String pattern)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.rpush(key, strings);
-        jedis.close();
-        return result;
+        if (cluster != null)
+        {
+            Set<String> keys = new HashSet<>();
+            for (Set<String> nodeKeys : record(Command.KEYS, () -> cluster.executeOnMasters(jedis -> jedis.keys(pattern))))
+            {
+                keys.addAll(nodeKeys);
+            }
+            return keys;
+        }
+        return multiplexed(Command.KEYS, p -> p.keys(pattern), jedis -> jedis.keys(pattern));
     }
 
     /**
-     * 通过key在list指定的位置之前或者之后 添加字符串元素
+     * 通过SCAN惰性遍历满足pattern表达式的key,每次只取一页,不会阻塞redis
      *
-     * @param key   键
-     * @param where LIST_POSITION枚举类型
-     * @param pivot list里面的value
-     * @param value 添加的value
-     * @return Long
+     * @param pattern 通配符,为null时返回所有的key
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
      */
     @Override
-    public Long lInsert(String key, BinaryClient.LIST_POSITION where, String pivot, String value)
+    public ScanCursor<String> scanKeys(String pattern, int count)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.linsert(key, where, pivot, value);
-        jedis.close();
-        return result;
+        ScanParams params = ScanCursor.params(pattern, count);
+        if (cluster != null)
+        {
+            List<Supplier<Jedis>> masters = new ArrayList<>();
+            for (HostAndPort node : cluster.masters())
+            {
+                masters.add(() -> cluster.getResource(node));
+            }
+            return new ScanCursor<>(masters, (jedis, cursor) -> jedis.scan(cursor, params));
+        }
+        return new ScanCursor<>((jedis, cursor) -> jedis.scan(cursor, params));
     }
 
     /**
-     * 通过key设置list指定下标位置的value
-     * 如果下标超过list里面value的个数则报错
+     * 通过HSCAN惰性遍历hash中的field和value
      *
-     * @param key   键
-     * @param index 从0开始
-     * @param value 值
-     * @return 成功返回OK
+     * @param key     键
+     * @param pattern field的通配符,为null时返回所有的field
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
      */
     @Override
-    public String lSet(String key, Long index, String value)
+    public ScanCursor<Map.Entry<String, String>> hScan(String key, String pattern, int count)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.lset(key, index, value);
-        jedis.close();
-        return result;
+        ScanParams params = ScanCursor.params(pattern, count);
+        return new ScanCursor<>(nodeOf(key), (jedis, cursor) -> jedis.hscan(key, cursor, params));
     }
 
     /**
-     * 通过key从对应的list中删除指定的count个 和 value相同的元素
+     * 通过SSCAN惰性遍历set中的value
      *
-     * @param key   键
-     * @param count 当count为0时删除全部
-     * @param value 值
-     * @return 返回被删除的个数
+     * @param key     键
+     * @param pattern value的通配符,为null时返回所有的value
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
      */
     @Override
-    public Long lRem(String key, long count, String value)
+    public ScanCursor<String> sScan(String key, String pattern, int count)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.lrem(key, count, value);
-        jedis.close();
-        return result;
+        ScanParams params = ScanCursor.params(pattern, count);
+        return new ScanCursor<>(nodeOf(key), (jedis, cursor) -> jedis.sscan(key, cursor, params));
     }
 
     /**
-     * 通过key保留list中从strat下标开始到end下标结束的value值
+     * 通过ZSCAN惰性遍历zSet中的value和score
      *
-     * @param key   键
-     * @param start 开始下标
-     * @param end   结束下标
-     * @return 成功返回OK
+     * @param key     键
+     * @param pattern value的通配符,为null时返回所有的value
+     * @param count   每页大约返回的数量
+     * @return ScanCursor
      */
     @Override
-    public String lTrim(String key, long start, long end)
+    public ScanCursor<Tuple> zScan(String key, String pattern, int count)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.ltrim(key, start, end);
-        jedis.close();
-        return result;
+        ScanParams params = ScanCursor.params(pattern, count);
+        return new ScanCursor<>(nodeOf(key), (jedis, cursor) -> jedis.zscan(key, cursor, params));
     }
 
     /**
-     * 通过key从list的头部删除一个value,并返回该value
+     * 通过key判断值得类型
      *
      * @param key 键
-     * @return 值
+     * @return String 类型
      */
     @Override
-    public synchronized String lPop(String key)
+    public String type(String key)
     {
+        return multiplexed(Command.TYPE, key, p -> p.type(key), jedis -> jedis.type(key));
+    }
 
-        Jedis jedis = getJedis();
-        String result = jedis.lpop(key);
-        jedis.close();
+    @Override
+    public String flushAll()
+    {
+        String result = cluster != null
+                ? record(Command.FLUSHALL, () -> cluster.executeOnMasters(jedis -> jedis.flushAll())).get(0)
+                : execute(Command.FLUSHALL, jedis -> jedis.flushAll());
+        clearNearCache();
         return result;
     }
 
-    /**
-     * 通过key从list尾部删除一个value,并返回该元素
-     *
-     * @param key 键
-     * @return 值
-     */
     @Override
-    public synchronized String rPop(String key)
+    public String flushAllAsync()
     {
-        Jedis jedis = getJedis();
-        String result = jedis.rpop(key);
-        jedis.close();
-        return result;
+        return flushAsync(Command.FLUSHALL);
     }
 
-    /**
-     * 通过key从一个list的尾部删除一个value并添加到另一个list的头部,并返回该value
-     * 如果第一个list为空或者不存在则返回null
-     *
-     * @param srcKey String
-     * @param dstKey String
-     * @return String
-     */
     @Override
-    public String rpoplpush(String srcKey, String dstKey)
+    public String flushDbAsync()
     {
-        Jedis jedis = getJedis();
-        String result = jedis.rpoplpush(srcKey, dstKey);
-        jedis.close();
-        return result;
+        return flushAsync(Command.FLUSHDB);
     }
 
     /**
-     * 通过key获取list中指定下标位置的value
-     *
-     * @param key   键
-     * @param index 下标
-     * @return 如果没有返回null
+     * Jedis 2.9的flushAll/flushDB不能带ASYNC参数,通过单独的连接发送,集群模式下发给每个主节点
      */
-    @Override
-    public String lIndex(String key, long index)
+    private String flushAsync(Command command)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.lindex(key, index);
-        jedis.close();
+        List<HostAndPort> nodes = cluster != null ? cluster.masters()
+                : Collections.singletonList(RedisFactory.getMaster());
+        String result = null;
+        for (HostAndPort node : nodes)
+        {
+            result = record(command, () -> {
+                CommandClient client = new CommandClient(RedisFactory.getConfig(), node);
+                try
+                {
+                    client.connect();
+                    return client.command(command, "ASYNC").getStatusCodeReply();
+                }
+                finally
+                {
+                    client.close();
+                }
+            });
+        }
+        clearNearCache();
         return result;
     }
 
+    private void clearNearCache()
+    {
+        if (nearCache != null)
+        {
+            nearCache.clear();
+            nearCacheInvalidator.publishClear();
+        }
+    }
+
     /**
-     * 通过key返回list的长度
+     * 集群和分片模式下在负责key的节点上执行,配置了从节点时只读命令在从节点上执行,否则和execute相同
      *
-     * @param key 键
-     * @return 长度
+     * @param command 命令,用于统计
+     * @param key     决定发到哪个节点的key,多key命令时为第一个key
+     * @param action  在连接上执行的操作
+     * @return 命令的返回值
      */
-    @Override
-    public Long lLen(String key)
+    private <T> T execute(Command command, String key, Function<Jedis, T> action)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.llen(key);
-        jedis.close();
-        return result;
+        if (cluster != null)
+        {
+            int slot = RedisCluster.slot(key);
+            return record(command, () -> ReplicaRouter.readOnly(command) ? cluster.read(slot, action)
+                    : cluster.execute(slot, action));
+        }
+        if (replicaRouter != null)
+        {
+            return replicaRouter.execute(command, jedis -> record(command, () -> action.apply(jedis)),
+                    () -> execute(command, action));
+        }
+        return execute(command, action);
     }
 
     /**
-     * 通过key获取list指定下标位置的value
-     * 如果start 为 0 end 为 -1 则返回全部的list中的value
+     * 借一个连接执行命令,执行完归还,记录耗时,借连接的等待时间和错误
+     * 用于没有key的命令,集群模式下由调用方在每个主节点上执行
      *
-     * @param key   键
-     * @param start 开始下标
-     * @param end   结束下标
-     * @return List
+     * @param command 命令,用于统计
+     * @param action  在连接上执行的操作
+     * @return 命令的返回值
      */
-    @Override
-    public List<String> lRange(String key, long start, long end)
+    private <T> T execute(Command command, Function<Jedis, T> action)
     {
-        Jedis jedis = getJedis();
-        List<String> result = jedis.lrange(key, start, end);
-        jedis.close();
-        return result;
+        long start = System.nanoTime();
+        try
+        {
+            Jedis jedis = getJedis();
+            metrics.recordBorrow(System.nanoTime() - start);
+            try
+            {
+                T result = action.apply(jedis);
+                metrics.recordReply(command, result);
+                return result;
+            }
+            finally
+            {
+                jedis.close();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            metrics.recordError(command, e);
+            throw e;
+        }
+        finally
+        {
+            metrics.recordLatency(command, System.nanoTime() - start);
+        }
     }
 
     /**
-     * 通过key向指定的set中添加value
+     * 开启自动pipeline时和其他线程的命令合并发送,使用NIO连接时通过多路复用连接发送,否则和execute相同
      *
-     * @param key     键
-     * @param members 可以是一个String 也可以是一个String数组
-     * @return 添加成功的个数
+     * @param command   命令,用于统计
+     * @param key       集群模式下决定发到哪个节点的key
+     * @param pipelined 在pipeline上执行的操作
+     * @param action    在连接上执行的操作
+     * @return 命令的返回值
      */
-    @Override
-    public Long sAdd(String key, String... members)
+    <T> T pipelined(Command command, String key, Function<Pipeline, Response<T>> pipelined, Function<Jedis, T> action)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.sadd(key, members);
-        jedis.close();
-        return result;
+        if (replicaRouter != null && replicaRouter.routes(command))
+        {
+            return execute(command, key, action);
+        }
+        if (nioClient != null)
+        {
+            return record(command, () -> nioClient.execute(pipelined));
+        }
+        if (autoPipeliner != null)
+        {
+            return record(command, () -> autoPipeliner.execute(pipelined));
+        }
+        return execute(command, key, action);
+    }
+
+    <T> T pipelined(Command command, byte[] key, Function<Pipeline, Response<T>> pipelined, Function<Jedis, T> action)
+    {
+        return pipelined(command, cluster != null ? SafeEncoder.encode(key) : null, pipelined, action);
     }
 
     /**
-     * 通过key删除set中对应的value值
+     * 使用NIO连接时通过多路复用连接发送,否则和execute相同
      *
-     * @param key     键
-     * @param members 可以是一个String 也可以是一个String数组
-     * @return 删除的个数
+     * @param command   命令,用于统计
+     * @param key       集群模式下决定发到哪个节点的key
+     * @param pipelined 在pipeline上执行的操作
+     * @param action    在连接上执行的操作
+     * @return 命令的返回值
      */
-    @Override
-    public Long sRem(String key, String... members)
+    <T> T multiplexed(Command command, String key, Function<Pipeline, Response<T>> pipelined, Function<Jedis, T> action)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.srem(key, members);
-        jedis.close();
-        return result;
+        if (replicaRouter != null && replicaRouter.routes(command))
+        {
+            return execute(command, key, action);
+        }
+        if (nioClient != null)
+        {
+            return record(command, () -> nioClient.execute(pipelined));
+        }
+        return execute(command, key, action);
+    }
+
+    <T> T multiplexed(Command command, byte[] key, Function<Pipeline, Response<T>> pipelined, Function<Jedis, T> action)
+    {
+        return multiplexed(command, cluster != null ? SafeEncoder.encode(key) : null, pipelined, action);
     }
 
     /**
-     * 通过key随机删除一个set中的value并返回该值
-     *
-     * @param key 键
-     * @return 值
+     * 没有key的命令,只在单节点时使用
      */
-    @Override
-    public String sPop(String key)
+    private <T> T multiplexed(Command command, Function<Pipeline, Response<T>> pipelined, Function<Jedis, T> action)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.spop(key);
-        jedis.close();
-        return result;
+        if (nioClient != null)
+        {
+            return record(command, () -> nioClient.execute(pipelined));
+        }
+        return execute(command, action);
     }
 
     /**
-     * 通过key获取set中的差集
-     * 以第一个set为标准
+     * 集群模式下按slot拆开执行多key命令,同一个节点的slot在一个pipeline中发送,不同节点并行执行
      *
-     * @param keys 可以 是一个string 则返回set中所有的value 也可以是string数组
-     * @return Set
+     * @param command   命令,用于统计
+     * @param groups    slot -> 这个slot的参数
+     * @param pipelined 在pipeline上执行一组
+     * @param action    在连接上执行一组
+     * @return slot -> 返回值
      */
-    @Override
-    public Set<String> sDiff(String... keys)
+    <A, T> Map<Integer, T> bySlot(Command command, Map<Integer, A> groups, BiFunction<Pipeline, A, Response<T>> pipelined,
+            BiFunction<Jedis, A, T> action)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.sdiff(keys);
-        jedis.close();
-        return result;
+        return record(command, () -> cluster.executeBySlot(groups, pipelined, action));
     }
 
     /**
-     * 通过key获取set中的差集并存入到另一个key中
-     * 以第一个set为标准
+     * 集群模式下keys不在同一个slot,需要按slot拆开
      *
-     * @param dstKey 差集存入的key
-     * @param keys   可以 是一个string 则返回set中所有的value 也可以是string数组
-     * @return Long
+     * @param keys 键
+     * @return boolean
      */
-    @Override
-    public Long sDiffStore(String dstKey, String... keys)
+    boolean crossSlot(String... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.sdiffstore(dstKey, keys);
-        jedis.close();
-        return result;
+        if (cluster == null || keys.length < 2)
+        {
+            return false;
+        }
+        int slot = RedisCluster.slot(keys[0]);
+        for (int i = 1; i < keys.length; i++)
+        {
+            if (RedisCluster.slot(keys[i]) != slot)
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * 通过key获取指定set中的交集
-     *
-     * @param keys 可以 是一个string 也可以是一个string数组
-     * @return Set
+     * 每个slot执行一次SINTER/SUNION,结果在本地求交集或并集
      */
-    @Override
-    public Set<String> sInter(String... keys)
+    private Set<String> combineBySlot(Command command, String[] keys, boolean intersect)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.sinter(keys);
-        jedis.close();
-        return result;
+        Map<Integer, Set<String>> replies = bySlot(command, RedisCluster.groupBySlot(keys, 1, RedisCluster::slot),
+                (p, group) -> intersect ? p.sinter(group.toArray(new String[0])) : p.sunion(group.toArray(new String[0])),
+                (jedis, group) -> intersect ? jedis.sinter(group.toArray(new String[0]))
+                        : jedis.sunion(group.toArray(new String[0])));
+        Set<String> result = null;
+        for (Set<String> members : replies.values())
+        {
+            if (result == null)
+            {
+                result = new HashSet<>(members);
+            }
+            else if (intersect)
+            {
+                result.retainAll(members);
+            }
+            else
+            {
+                result.addAll(members);
+            }
+        }
+        return result == null ? new HashSet<>() : result;
     }
 
     /**
-     * 通过key获取指定set中的交集 并将结果存入新的set中
-     *
-     * @param dstKey String
-     * @param keys   可以是一个string 也可以是一个string数组
-     * @return Long
+     * 在一个事务中用members替换dstKey,用于集群中跨slot的SINTERSTORE/SUNIONSTORE/SDIFFSTORE
      */
-    @Override
-    public Long sInterStore(String dstKey, String... keys)
+    private Long store(String dstKey, Set<String> members)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.sinterstore(dstKey, keys);
-        jedis.close();
-        return result;
+        return execute(Command.SADD, dstKey, jedis -> {
+            Transaction transaction = jedis.multi();
+            transaction.del(dstKey);
+            if (!members.isEmpty())
+            {
+                transaction.sadd(dstKey, members.toArray(new String[0]));
+            }
+            transaction.exec();
+            return (long) members.size();
+        });
     }
 
     /**
-     * 通过key返回所有set的并集
-     *
-     * @param keys 可以 是一个string 也可以是一个string数组
-     * @return Set
+     * 多key命令在集群模式下按第一个key路由,没有key时交给redis报错
      */
-    @Override
-    public Set<String> sUnion(String... keys)
+    static <K> K first(K[] keys)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.sunion(keys);
-        jedis.close();
-        return result;
+        return keys.length == 0 ? null : keys[0];
     }
 
     /**
-     * 通过key返回所有set的并集,并存入到新的set中
+     * 集群模式下keys不在同一个slot,需要按slot拆开
      *
-     * @param dstKey 添加的
-     * @param keys   可以 是一个string 也可以是一个string数组
-     * @return Long
+     * @param keys 键
+     * @return boolean
      */
-    @Override
-    public Long sUnionStore(String dstKey, String... keys)
+    boolean crossSlot(byte[]... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.sunionstore(dstKey, keys);
-        jedis.close();
-        return result;
+        if (cluster == null || keys.length < 2)
+        {
+            return false;
+        }
+        int slot = RedisCluster.slot(keys[0]);
+        for (int i = 1; i < keys.length; i++)
+        {
+            if (RedisCluster.slot(keys[i]) != slot)
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
-    /**
-     * 通过key将set中的value移除并添加到第二个set中
-     *
-     * @param srcKey 需要移除的
-     * @param dstKey 添加的
-     * @param member set中的value
-     * @return Long
-     */
-    @Override
-    public Long smove(String srcKey, String dstKey, String member)
+    private static String[] withKey(String key, String... keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.smove(srcKey, dstKey, member);
-        jedis.close();
+        String[] result = new String[keys.length + 1];
+        result[0] = key;
+        System.arraycopy(keys, 0, result, 1, keys.length);
         return result;
     }
 
-    /**
-     * 通过key获取set中value的个数
-     *
-     * @param key 键
-     * @return 个数
-     */
-    @Override
-    public Long sCard(String key)
+    private static long sum(Map<Integer, Long> counts)
+    {
+        long total = 0;
+        for (Long count : counts.values())
+        {
+            total += count;
+        }
+        return total;
+    }
+
+    private static List<byte[]> encode(List<String> keys)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.scard(key);
-        jedis.close();
+        List<byte[]> result = new ArrayList<>(keys.size());
+        for (String key : keys)
+        {
+            result.add(SafeEncoder.encode(key));
+        }
         return result;
     }
 
     /**
-     * 通过key判断value是否是set中的元素
-     *
-     * @param key    键
-     * @param member 元素
-     * @return Boolean
+     * HSCAN/SSCAN/ZSCAN借连接的节点,集群模式下为负责key的主节点
      */
-    @Override
-    public Boolean sIsMember(String key, String member)
+    private List<Supplier<Jedis>> nodeOf(String key)
     {
-        Jedis jedis = getJedis();
-        Boolean result = jedis.sismember(key, member);
-        jedis.close();
-        return result;
+        if (cluster == null)
+        {
+            return Collections.singletonList(RedisFactory::getJedis);
+        }
+        int slot = RedisCluster.slot(key);
+        return Collections.singletonList(() -> cluster.getResource(slot));
     }
 
     /**
-     * 通过key获取set中随机的value,不删除元素
-     *
-     * @param key 键
-     * @return String
+     * 执行不需要从连接池借连接的命令,记录耗时和错误
      */
-    @Override
-    public String sRandMember(String key)
+    private <T> T record(Command command, Supplier<T> call)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.srandmember(key);
-        jedis.close();
-        return result;
+        long start = System.nanoTime();
+        try
+        {
+            T result = call.get();
+            metrics.recordReply(command, result);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            metrics.recordError(command, e);
+            throw e;
+        }
+        finally
+        {
+            metrics.recordLatency(command, System.nanoTime() - start);
+        }
     }
 
     /**
-     * 通过key获取set中所有的value
+     * 写入之后让近端缓存中的key失效
      *
-     * @param key 键
-     * @return Set
+     * @param result 写入命令的返回值
+     * @param keys   写入的key
+     * @return 写入命令的返回值
      */
-    @Override
-    public Set<String> sMembers(String key)
+    <T> T invalidate(T result, String... keys)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.smembers(key);
-        jedis.close();
+        if (nearCache != null)
+        {
+            nearCache.invalidate(keys);
+            nearCacheInvalidator.publish(keys);
+        }
         return result;
     }
 
     /**
-     * 通过key向zset中添加value,score,其中score就是用来排序的
-     * 如果该value已经存在则根据score更新元素
-     *
-     * @param key    键
-     * @param score  排序值
-     * @param member 元素
-     * @return Long
+     * 开启压缩时通过RAW_STRING执行APPEND,SETRANGE,GETRANGE,STRLEN,压缩存储的值上返回错误
      */
-    @Override
-    public Long zAdd(String key, double score, String member)
+    private Object rawString(Command command, String key, String... args)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zadd(key, score, member);
-        jedis.close();
-        return result;
+        List<String> argv = new ArrayList<>(args.length + 1);
+        argv.add(command.name().toLowerCase());
+        argv.addAll(Arrays.asList(args));
+        return execute(command, key, jedis -> RAW_STRING.eval(jedis, Collections.singletonList(key), argv));
     }
 
     /**
-     * 通过key删除在zset中指定的value
-     *
-     * @param key     键
-     * @param members 可以 是一个string 也可以是一个string数组
-     * @return Long
+     * 解压读出的多个值
      */
-    @Override
-    public Long zRem(String key, String... members)
+    private List<String> decodeAll(List<byte[]> stored)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zrem(key, members);
-        jedis.close();
-        return result;
+        List<String> values = new ArrayList<>(stored.size());
+        for (byte[] value : stored)
+        {
+            values.add(compressor.decode(value));
+        }
+        return values;
     }
 
     /**
-     * 通过key增加该zset中value的score的值
-     *
-     * @param key    键
-     * @param score  排序值
-     * @param member String
-     * @return Double
+     * 从key,value交替的参数中取出key
      */
-    @Override
-    public Double zIncrBy(String key, double score, String member)
+    static String[] keysOf(String... keysValues)
     {
-        Jedis jedis = getJedis();
-        Double result = jedis.zincrby(key, score, member);
-        jedis.close();
-        return result;
+        String[] keys = new String[keysValues.length / 2];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = keysValues[i * 2];
+        }
+        return keys;
     }
 
     /**
-     * 通过key返回zSet中value的排名
-     * 下标从小到大排序
+     * 字符串值和hash值的存储格式,开启压缩时和setString/getString一样压缩大值并解压读出的值,
+     * 供AsyncRedisService和BinaryRedisService的字符串读写使用
      *
-     * @param key    键
-     * @param member value
-     * @return Long
+     * @return Codec
      */
-    @Override
-    public Long zRank(String key, String member)
+    Codec<String> getStringCodec()
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zrank(key, member);
-        jedis.close();
-        return result;
+        return stringCodec;
     }
 
     /**
-     * 通过key返回zSet中value的排名
-     * 下标从大到小排序
+     * 命令的监控指标,未开启时不记录
      *
-     * @param key    键
-     * @param member 值
-     * @return Long
+     * @return RedisMetrics
      */
-    @Override
-    public Long zRevRank(String key, String member)
+    RedisMetrics getMetrics()
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zrevrank(key, member);
-        jedis.close();
-        return result;
+        return metrics;
     }
 
     /**
-     * 通过key将获取score从start到end中zSet的value
-     * score从大到小排序
-     * 当start为0 end为-1时返回全部
+     * 集群连接,redis.transport不是cluster或sharded时为null
      *
-     * @param key   键
-     * @param start 开始下标
-     * @param end   结束下标
-     * @return Set
+     * @return RedisCluster
      */
-    @Override
-    public Set<String> zRevRange(String key, long start, long end)
+    RedisCluster getCluster()
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.zrevrange(key, start, end);
-        jedis.close();
-        return result;
+        return cluster;
     }
 
-    @Override
-    public Set<String> zRangeByScore(String key, String max, String min)
+    /**
+     * redis.transport
+     *
+     * @return String
+     */
+    String getTransport()
     {
-        Jedis jedis =getJedis();
-        Set<String> result = jedis.zrangeByScore(key, max, min);
-        jedis.close();
-        return result;
+        return transport;
     }
 
-    @Override
-    public Set<String> zRangeByScore(String key, Double min, Double max)
+    /**
+     * 近端缓存,未开启时为null
+     *
+     * @return NearCache
+     */
+    public NearCache getNearCache()
     {
-        Jedis jedis =getJedis();
-        Set<String> result = jedis.zrangeByScore(key, max, min);
-        jedis.close();
-        return result;
+        return nearCache;
     }
 
     /**
-     * 通过key返回指定score内zSet中的value
+     * action中的读取都发到主节点,用于写入后马上读取自己写入的值,没有配置从节点时直接执行
      *
-     * @param key 键
-     * @param max 范围上限
-     * @param min 范围下限
-     * @return Set
+     * @param action 操作
+     * @param <T>    返回值类型
+     * @return action的返回值
      */
     @Override
-    public Set<String> zRevRangeByScore(String key, String max, String min)
+    public <T> T onMaster(Supplier<T> action)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.zrevrangeByScore(key, max, min);
-        jedis.close();
-        return result;
+        return replicaRouter != null ? replicaRouter.onMaster(action) : action.get();
     }
 
     /**
-     * 通过key返回指定score内zSet中的value
+     * 注册一个lua脚本
      *
-     * @param key 键
-     * @param max 范围上限
-     * @param min 范围下限
-     * @return Set
+     * @param name   名称
+     * @param script lua脚本
      */
     @Override
-    public Set<String> zRevRangeByScore(String key, double max, double min)
+    public void registerScript(String name, String script)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.zrevrangeByScore(key, max, min);
-        jedis.close();
-        return result;
+        scripts.register(name, script);
     }
 
     /**
-     * 返回指定区间内zset中value的数量
+     * 按名称执行注册的lua脚本,脚本可能写入任何一个key,执行后让所有key在近端缓存中失效
      *
-     * @param key 键
-     * @param min 范围下限
-     * @param max 范围上限
-     * @return Long
+     * @param name 名称
+     * @param keys KEYS
+     * @param args ARGV
+     * @return 脚本的返回值
      */
     @Override
-    public Long zCount(String key, String min, String max)
+    public Object evalScript(String name, List<String> keys, List<String> args)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zcount(key, min, max);
-        jedis.close();
-        return result;
+        LuaScript script = scripts.get(name);
+        return invalidate(execute(Command.EVALSHA, keys.isEmpty() ? null : keys.get(0),
+                jedis -> script.eval(jedis, keys, args)), keys.toArray(new String[0]));
     }
 
     /**
-     * 通过key返回zSet中的value个数
-     *
-     * @param key 键
-     * @return Long
+     * 在负责key的节点上执行只有一个key的注册脚本
      */
-    @Override
-    public Long zCard(String key)
+    private Object script(String name, String key, List<byte[]> args)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zcard(key);
-        jedis.close();
-        return result;
+        LuaScript script = scripts.get(name);
+        List<byte[]> keys = Collections.singletonList(SafeEncoder.encode(key));
+        return execute(Command.EVALSHA, key, jedis -> script.evalBinary(jedis, keys, args));
     }
 
     /**
-     * 通过key获取zSet中value的score值
-     *
-     * @param key    键
-     * @param member value
-     * @return Double
+     * 写入字符串值时的字节,开启压缩时和setString一样压缩大值
      */
-    @Override
-    public Double zScore(String key, String member)
+    private byte[] stored(String value)
     {
-        Jedis jedis = getJedis();
-        Double result = jedis.zscore(key, member);
-        jedis.close();
-        return result;
+        return compressor != null ? compressor.encode(value) : SafeEncoder.encode(value);
     }
 
     /**
-     * 通过key删除给定区间内的元素
+     * 分片模式下增加一个节点,按redis.sharded.migrateBatch分批把属于新节点的key迁移过去
      *
-     * @param key   键
-     * @param start 开始下标
-     * @param end   结束下标
-     * @return Long
+     * @param node host:port
+     * @return 迁移的key数
      */
     @Override
-    public Long zRemRangeByRank(String key, long start, long end)
+    public long addShard(String node)
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zremrangeByRank(key, start, end);
-        jedis.close();
-        return result;
+        if (!"sharded".equals(transport))
+        {
+            throw new UnsupportedOperationException("addShard is only supported by redis.transport=sharded");
+        }
+        return cluster.addShard(HostAndPort.parseString(node), shardedMigrateBatch);
     }
 
     /**
-     * 通过key删除指定score内的元素
-     *
-     * @param key   键
-     * @param start 开始下标
-     * @param end   结束下标
-     * @return Long
+     * 马上写入计数器写缓冲中累加的增量,没有开启时什么也不做
      */
     @Override
-    public Long zRemRangeByScore(String key, double start, double end)
+    public void flushCounters()
     {
-        Jedis jedis = getJedis();
-        Long result = jedis.zremrangeByScore(key, start, end);
-        jedis.close();
-        return result;
+        if (counterBuffer != null)
+        {
+            counterBuffer.flush();
+        }
     }
 
     /**
-     * 返回满足pattern表达式的所有key
-     * keys(*)
-     * 返回所有的key
+     * 把累加的增量通过pipeline写入,每个pipeline最多redis.pipeline.maxBatchSize条命令,
+     * 集群和分片模式下按slot分组,同一个节点的slot在一个pipeline中发送
      *
-     * @param pattern 正则表达式
-     * @return Set
+     * @param deltas 计数器 -> 增量
+     * @return 没有写入的计数器 -> 增量
      */
-    @Override
-    public Set<String> keys(String pattern)
+    private Map<CounterBuffer.Counter, Long> writeCounters(Map<CounterBuffer.Counter, Long> deltas)
     {
-        Jedis jedis = getJedis();
-        Set<String> result = jedis.keys(pattern);
-        jedis.close();
-        return result;
+        Map<CounterBuffer.Counter, Long> unwritten = new LinkedHashMap<>();
+        if (cluster != null)
+        {
+            Map<Integer, List<Map.Entry<CounterBuffer.Counter, Long>>> groups = new HashMap<>();
+            for (Map.Entry<CounterBuffer.Counter, Long> entry : deltas.entrySet())
+            {
+                groups.computeIfAbsent(RedisCluster.slot(entry.getKey().getKey()), slot -> new ArrayList<>()).add(entry);
+            }
+            for (List<Integer> nodeSlots : cluster.slotsByNode(groups.keySet()))
+            {
+                List<Map.Entry<CounterBuffer.Counter, Long>> entries = new ArrayList<>();
+                for (Integer slot : nodeSlots)
+                {
+                    entries.addAll(groups.get(slot));
+                }
+                writeCounters(entries, unwritten, action -> record(Command.INCRBY, () -> {
+                    try (Jedis jedis = cluster.getResource(nodeSlots.get(0)))
+                    {
+                        return action.apply(jedis);
+                    }
+                }));
+            }
+        }
+        else
+        {
+            writeCounters(new ArrayList<>(deltas.entrySet()), unwritten, action -> execute(Command.INCRBY, action));
+        }
+        Set<String> keys = new HashSet<>();
+        for (CounterBuffer.Counter counter : deltas.keySet())
+        {
+            keys.add(counter.getKey());
+        }
+        invalidate(null, keys.toArray(new String[0]));
+        return unwritten;
     }
 
     /**
-     * 通过key判断值得类型
+     * 在一个节点上分批写入增量,逐条检查回复
+     * 值不是整数等错误重试也不会成功,只记录;slot迁移(MOVED/ASK)的命令没有执行,放入unwritten下次再写;
+     * 连接失败时不知道正在发送的一批有没有执行,和之后还没有发送的批一起放入unwritten,这一批可能会重复写入
      *
-     * @param key 键
-     * @return String 类型
+     * @param entries   同一个节点上的计数器 -> 增量
+     * @param unwritten 没有写入的计数器 -> 增量
+     * @param node      在节点的连接上执行pipeline
      */
-    @Override
-    public String type(String key)
+    private void writeCounters(List<Map.Entry<CounterBuffer.Counter, Long>> entries,
+            Map<CounterBuffer.Counter, Long> unwritten, Function<Function<Jedis, List<Object>>, List<Object>> node)
     {
-        Jedis jedis = getJedis();
-        String result = jedis.type(key);
-        jedis.close();
-        return result;
+        for (int from = 0; from < entries.size(); from += pipelineMaxBatchSize)
+        {
+            List<Map.Entry<CounterBuffer.Counter, Long>> batch = entries.subList(from,
+                    Math.min(from + pipelineMaxBatchSize, entries.size()));
+            List<Object> replies;
+            try
+            {
+                replies = node.apply(jedis -> {
+                    Pipeline pipeline = jedis.pipelined();
+                    for (Map.Entry<CounterBuffer.Counter, Long> entry : batch)
+                    {
+                        increment(pipeline, entry.getKey(), entry.getValue());
+                    }
+                    return pipeline.syncAndReturnAll();
+                });
+            }
+            catch (JedisException e)
+            {
+                LOGGER.warn("write {} counters fail, retry later: {}", entries.size() - from, e.getMessage());
+                for (Map.Entry<CounterBuffer.Counter, Long> entry : entries.subList(from, entries.size()))
+                {
+                    unwritten.put(entry.getKey(), entry.getValue());
+                }
+                return;
+            }
+            for (int i = 0; i < replies.size(); i++)
+            {
+                Object reply = replies.get(i);
+                if (reply instanceof JedisRedirectionException && cluster != null)
+                {
+                    unwritten.put(batch.get(i).getKey(), batch.get(i).getValue());
+                    cluster.refreshAsync();
+                }
+                else if (reply instanceof JedisDataException)
+                {
+                    LOGGER.warn("write counter {} fail: {}", batch.get(i).getKey(), ((JedisDataException) reply).getMessage());
+                }
+            }
+        }
+    }
+
+    private static Response<Long> increment(Pipeline pipeline, CounterBuffer.Counter counter, long delta)
+    {
+        return counter.getField() == null ? pipeline.incrBy(counter.getKey(), delta)
+                : pipeline.hincrBy(counter.getKey(), counter.getField(), delta);
     }
 
+    /**
+     * 创建一个批量命令,放入的命令在execute时通过pipeline一次发送
+     * 每次pipeline同步的最大命令数由redis.pipeline.maxBatchSize配置,集群模式下不支持
+     *
+     * @return RedisBatch
+     */
     @Override
-    public String flushAll()
+    public RedisBatch batch()
     {
-        Jedis jedis = getJedis();
-        String result = jedis.flushAll();
-        jedis.close();
-        return result;
+        if (cluster != null)
+        {
+            throw new UnsupportedOperationException("batch is not supported by redis.transport=" + transport);
+        }
+        return new RedisBatchImpl(pipelineMaxBatchSize);
     }
 }
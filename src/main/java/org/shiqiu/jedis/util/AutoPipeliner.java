@@ -0,0 +1,302 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+/**
+ * 自动pipeline,把多个线程同时发出的命令合并起来,通过少量连接以pipeline的方式发送
+ * 调用方线程阻塞等待自己那条命令的结果
+ */
+public class AutoPipeliner implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(AutoPipeliner.class);
+
+    /**
+     * 等待队列的长度为 maxBatchSize * connections * QUEUE_FACTOR,队列满时调用方会阻塞
+     */
+    private static final int QUEUE_FACTOR = 16;
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final BlockingQueue<PendingCommand<?>> queue;
+
+    private final int maxBatchSize;
+
+    private final long windowNanos;
+
+    private final Thread[] flushers;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param connections  同时用于发送pipeline的连接数(也就是发送线程数)
+     * @param maxBatchSize 单个pipeline最多合并的命令数
+     * @param windowMicros 拿到第一条命令后最多再等待多少微秒凑批,0表示不等待
+     */
+    public AutoPipeliner(int connections, int maxBatchSize, long windowMicros)
+    {
+        this("redis-auto-pipeline-", connections, maxBatchSize, windowMicros, maxBatchSize * connections * QUEUE_FACTOR);
+    }
+
+    /**
+     * @param threadPrefix 发送线程名称的前缀
+     * @param connections  同时用于发送pipeline的连接数(也就是发送线程数)
+     * @param maxBatchSize 单个pipeline最多合并的命令数
+     * @param windowMicros 拿到第一条命令后最多再等待多少微秒凑批,0表示不等待
+     * @param maxPending   最多排队等待发送的命令数,超过时提交方等待
+     */
+    public AutoPipeliner(String threadPrefix, int connections, int maxBatchSize, long windowMicros, int maxPending)
+    {
+        if (connections <= 0 || maxBatchSize <= 0 || windowMicros < 0 || maxPending <= 0)
+        {
+            throw new IllegalArgumentException("connections, maxBatchSize and maxPending must be positive, windowMicros must not be negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.queue = new LinkedBlockingQueue<>(maxPending);
+        this.flushers = new Thread[connections];
+        for (int i = 0; i < connections; i++)
+        {
+            Thread flusher = new Thread(this::flushLoop, threadPrefix + i);
+            flusher.setDaemon(true);
+            flushers[i] = flusher;
+            flusher.start();
+        }
+    }
+
+    /**
+     * 提交一条命令并阻塞等待结果,最多等待soTimeout毫秒
+     *
+     * @param command 在pipeline上执行的命令
+     * @param <T>     返回值类型
+     * @return T
+     */
+    public <T> T execute(Function<Pipeline, Response<T>> command)
+    {
+        if (!running)
+        {
+            throw new JedisException("auto pipeline is closed");
+        }
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        long timeoutMillis = RedisFactory.getConfig().getSoTimeout();
+        try
+        {
+            queue.put(pending);
+            if (!running && queue.remove(pending))
+            {
+                throw new JedisException("auto pipeline is closed");
+            }
+            return pending.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JedisException("interrupted while waiting for pipelined reply", e);
+        }
+        catch (TimeoutException e)
+        {
+            // 还没有被发送线程取走时不再发送
+            queue.remove(pending);
+            throw new JedisConnectionException("pipelined reply timed out after " + timeoutMillis + "ms", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new JedisException(cause);
+        }
+    }
+
+    /**
+     * 提交一条命令,不等待结果
+     * 排队的命令已满时最多等待maxWaitMillis,仍然放不进去时返回的future以异常结束,以此限制提交速度
+     *
+     * @param command       在pipeline上执行的命令
+     * @param maxWaitMillis 队列满时的最长等待时间
+     * @param <T>           返回值类型
+     * @return CompletableFuture
+     */
+    public <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command, long maxWaitMillis)
+    {
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        if (!running)
+        {
+            pending.future.completeExceptionally(new JedisException("auto pipeline is closed"));
+            return pending.future;
+        }
+        try
+        {
+            if (!queue.offer(pending, maxWaitMillis, TimeUnit.MILLISECONDS))
+            {
+                pending.future.completeExceptionally(
+                        new JedisException("too many pending commands, waited " + maxWaitMillis + "ms"));
+            }
+            else if (!running && queue.remove(pending))
+            {
+                pending.future.completeExceptionally(new JedisException("auto pipeline is closed"));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(new JedisException("interrupted while submitting command", e));
+        }
+        return pending.future;
+    }
+
+    private void flushLoop()
+    {
+        List<PendingCommand<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running)
+        {
+            try
+            {
+                PendingCommand<?> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            }
+            catch (InterruptedException e)
+            {
+                // close()只处理还在队列中的命令,已经取出还没有发送的命令在这里结束
+                for (PendingCommand<?> pending : batch)
+                {
+                    pending.future.completeExceptionally(new JedisException("auto pipeline is closed"));
+                }
+                Thread.currentThread().interrupt();
+                break;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void collect(List<PendingCommand<?>> batch) throws InterruptedException
+    {
+        queue.drainTo(batch, maxBatchSize - batch.size());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize)
+        {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+            {
+                break;
+            }
+            PendingCommand<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null)
+            {
+                break;
+            }
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void flush(List<PendingCommand<?>> batch)
+    {
+        Jedis jedis = null;
+        try
+        {
+            jedis = getJedis();
+            Pipeline pipeline = jedis.pipelined();
+            for (PendingCommand<?> pending : batch)
+            {
+                pending.send(pipeline);
+            }
+            pipeline.sync();
+            for (PendingCommand<?> pending : batch)
+            {
+                pending.complete();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("auto pipeline flush of {} commands failed", batch.size(), e);
+            for (PendingCommand<?> pending : batch)
+            {
+                pending.future.completeExceptionally(e);
+            }
+        }
+        finally
+        {
+            if (jedis != null)
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 停止发送线程,还在队列中的命令会以异常结束
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        for (Thread flusher : flushers)
+        {
+            flusher.interrupt();
+        }
+        PendingCommand<?> pending;
+        while ((pending = queue.poll()) != null)
+        {
+            pending.future.completeExceptionally(new JedisException("auto pipeline is closed"));
+        }
+    }
+
+    private static final class PendingCommand<T> {
+        private final Function<Pipeline, Response<T>> command;
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Response<T> response;
+
+        private PendingCommand(Function<Pipeline, Response<T>> command)
+        {
+            this.command = command;
+        }
+
+        private void send(Pipeline pipeline)
+        {
+            response = command.apply(pipeline);
+        }
+
+        private void complete()
+        {
+            try
+            {
+                future.complete(response.get());
+            }
+            catch (RuntimeException e)
+            {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.shiqiu.jedis.util;
+
+/**
+ * 值和redis中保存的字节之间的转换
+ * 实现需要是线程安全的,null由调用方处理,不会传给encode和decode
+ *
+ * @param <T> 值类型
+ */
+public interface Codec<T> {
+    /**
+     * 值转换成字节
+     *
+     * @param value 值
+     * @return byte[]
+     */
+    byte[] encode(T value);
+
+    /**
+     * 字节转换成值
+     *
+     * @param bytes 字节
+     * @return T
+     */
+    T decode(byte[] bytes);
+}
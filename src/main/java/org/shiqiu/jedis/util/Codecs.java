@@ -0,0 +1,300 @@
+package org.shiqiu.jedis.util;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 常用的Codec
+ * STRING   UTF-8字符串
+ * BYTES    原样保存字节,适合已经序列化好的数据(例如protobuf)
+ * json     Jackson直接读写字节,不经过String
+ * kryo     Kryo二进制,比json更小更快,但只能由Java读取,类的字段变化后旧数据可能无法读取;
+ *          不指定类型时写入类名,可以保存任意对象;指定注册的类时只读写这些类和常用的JDK类型
+ */
+public final class Codecs {
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public byte[] encode(String value)
+        {
+            return SafeEncoder.encode(value);
+        }
+
+        @Override
+        public String decode(byte[] bytes)
+        {
+            return SafeEncoder.encode(bytes);
+        }
+    };
+
+    public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+        @Override
+        public byte[] encode(byte[] value)
+        {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes)
+        {
+            return bytes;
+        }
+    };
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private static final int KRYO_POOL_SIZE = 64;
+
+    private static final int KRYO_BUFFER_SIZE = 256;
+
+    /**
+     * 写入过大的值后Output的缓冲区不再放回池中复用
+     */
+    private static final int KRYO_MAX_POOLED_BUFFER = 64 * 1024;
+
+    /**
+     * Kryo和Output都不是线程安全的,借出使用后归还
+     */
+    private static final Pool<Kryo> KRYOS = new Pool<Kryo>(true, false, KRYO_POOL_SIZE) {
+        @Override
+        protected Kryo create()
+        {
+            Kryo kryo = new Kryo();
+            // 不需要预先注册类,没有无参构造方法的类也可以读取
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(true);
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            return kryo;
+        }
+    };
+
+    /**
+     * 注册的Kryo默认可以读写的JDK类型,注册id按顺序分配,只能在最后添加
+     */
+    private static final List<Class<?>> KRYO_JDK_TYPES = Arrays.asList(byte[].class, int[].class, long[].class,
+            String[].class, Object[].class, ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class,
+            TreeMap.class, HashSet.class, LinkedHashSet.class, TreeSet.class, Arrays.asList().getClass(),
+            Collections.emptyList().getClass(), Collections.emptyMap().getClass(), Collections.emptySet().getClass(),
+            Collections.singletonList(null).getClass(), Collections.singletonMap(null, null).getClass(),
+            Collections.singleton(null).getClass(), Date.class, BigDecimal.class, BigInteger.class, UUID.class,
+            LocalDate.class, LocalTime.class, LocalDateTime.class, Instant.class, Duration.class);
+
+    private static final Pool<Output> OUTPUTS = new Pool<Output>(true, false, KRYO_POOL_SIZE) {
+        @Override
+        protected Output create()
+        {
+            return new Output(KRYO_BUFFER_SIZE, -1);
+        }
+    };
+
+    /**
+     * 使用Jackson转换成json
+     *
+     * @param type 值类型
+     * @param <T>  值类型
+     * @return Codec
+     */
+    public static <T> Codec<T> json(Class<T> type)
+    {
+        return json(MAPPER.constructType(type));
+    }
+
+    /**
+     * 使用Jackson转换成json,用于List<User>这类泛型类型
+     *
+     * @param type 值类型,例如new TypeReference<List<User>>() {}
+     * @param <T>  值类型
+     * @return Codec
+     */
+    public static <T> Codec<T> json(TypeReference<T> type)
+    {
+        return json(MAPPER.getTypeFactory().constructType(type));
+    }
+
+    private static <T> Codec<T> json(JavaType type)
+    {
+        return new Codec<T>() {
+            @Override
+            public byte[] encode(T value)
+            {
+                try
+                {
+                    return MAPPER.writeValueAsBytes(value);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalArgumentException("encode " + type + " to json fail", e);
+                }
+            }
+
+            @Override
+            public T decode(byte[] bytes)
+            {
+                try
+                {
+                    return MAPPER.readValue(bytes, type);
+                }
+                catch (IOException e)
+                {
+                    throw new IllegalArgumentException("decode " + type + " from json fail", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 使用Kryo转换成二进制,写入类名,读取时按写入的类读取
+     *
+     * @return Codec
+     */
+    public static Codec<Object> kryo()
+    {
+        return kryo(KRYOS);
+    }
+
+    /**
+     * 使用Kryo转换成二进制,写入类的注册id,只能读写registered中的类和常用的JDK类型,
+     * 读取redis中的数据时不会创建其他类的对象
+     * 注册id按顺序分配,所有节点的registered顺序必须相同,新增的类只能加在最后
+     *
+     * @param registered 允许读写的类
+     * @return Codec
+     */
+    public static Codec<Object> kryo(List<Class<?>> registered)
+    {
+        return kryo(new Pool<Kryo>(true, false, KRYO_POOL_SIZE) {
+            @Override
+            protected Kryo create()
+            {
+                Kryo kryo = new Kryo();
+                kryo.setRegistrationRequired(true);
+                kryo.setReferences(true);
+                kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+                KRYO_JDK_TYPES.forEach(kryo::register);
+                registered.forEach(kryo::register);
+                return kryo;
+            }
+        });
+    }
+
+    private static Codec<Object> kryo(Pool<Kryo> kryos)
+    {
+        return new Codec<Object>() {
+            @Override
+            public byte[] encode(Object value)
+            {
+                return kryoEncode(kryos, value, true);
+            }
+
+            @Override
+            public Object decode(byte[] bytes)
+            {
+                Kryo kryo = kryos.obtain();
+                try
+                {
+                    return kryo.readClassAndObject(new Input(bytes));
+                }
+                finally
+                {
+                    kryos.free(kryo);
+                }
+            }
+        };
+    }
+
+    /**
+     * 使用Kryo转换成二进制,不写入类名,读取时按type读取
+     *
+     * @param type 值类型
+     * @param <T>  值类型
+     * @return Codec
+     */
+    public static <T> Codec<T> kryo(Class<T> type)
+    {
+        return new Codec<T>() {
+            @Override
+            public byte[] encode(T value)
+            {
+                return kryoEncode(KRYOS, value, false);
+            }
+
+            @Override
+            public T decode(byte[] bytes)
+            {
+                Kryo kryo = KRYOS.obtain();
+                try
+                {
+                    return kryo.readObject(new Input(bytes), type);
+                }
+                finally
+                {
+                    KRYOS.free(kryo);
+                }
+            }
+        };
+    }
+
+    private static byte[] kryoEncode(Pool<Kryo> kryos, Object value, boolean withClass)
+    {
+        Kryo kryo = kryos.obtain();
+        Output output = OUTPUTS.obtain();
+        try
+        {
+            if (withClass)
+            {
+                kryo.writeClassAndObject(output, value);
+            }
+            else
+            {
+                kryo.writeObject(output, value);
+            }
+            return output.toBytes();
+        }
+        finally
+        {
+            if (output.getBuffer().length > KRYO_MAX_POOLED_BUFFER)
+            {
+                output.setBuffer(new byte[KRYO_BUFFER_SIZE], -1);
+            }
+            output.reset();
+            OUTPUTS.free(output);
+            kryos.free(kryo);
+        }
+    }
+
+    private Codecs()
+    {
+    }
+}
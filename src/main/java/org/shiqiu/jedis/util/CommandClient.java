@@ -0,0 +1,63 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Protocol;
+
+/**
+ * 独占的redis连接,可以发送Jedis没有封装的命令参数(例如CLIENT TRACKING),
+ * 用于订阅等需要长期占用连接的场景,不从连接池中借用
+ */
+public class CommandClient extends Client {
+
+    /**
+     * 连接RedisFactory当前的主节点,配置了sentinel时是sentinel查到的主节点
+     *
+     * @param config 配置
+     */
+    public CommandClient(RedisConfig config)
+    {
+        this(config, RedisFactory.getMaster());
+    }
+
+    /**
+     * 连接指定的节点,例如集群中的一个主节点,超时和密码使用config中的配置
+     *
+     * @param config 配置
+     * @param node   节点
+     */
+    public CommandClient(RedisConfig config, HostAndPort node)
+    {
+        super(node.getHost(), node.getPort());
+        setConnectionTimeout(config.getConnectionTimeout());
+        setSoTimeout(config.getSoTimeout());
+        setPassword(config.getPassword());
+        setDb(config.getDatabase());
+    }
+
+    /**
+     * 发送一条命令,需要再调用getXxxReply读取回复
+     *
+     * @param command 命令
+     * @param args    参数
+     * @return CommandClient
+     */
+    public CommandClient command(Protocol.Command command, String... args)
+    {
+        sendCommand(command, args);
+        return this;
+    }
+
+    /**
+     * 发送一条参数是二进制的命令,例如key不是UTF-8的MIGRATE
+     *
+     * @param command 命令
+     * @param args    参数
+     * @return CommandClient
+     */
+    public CommandClient command(Protocol.Command command, byte[]... args)
+    {
+        sendCommand(command, args);
+        return this;
+    }
+}
@@ -0,0 +1,85 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.util.Hashing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 客户端分片用的一致性哈希环,每个节点在环上有virtualNodes个点
+ * 分配的单位是slot而不是key: key先按redis集群的规则算出slot({hash tag}相同的key在同一个slot),
+ * slot的哈希值在环上顺时针找到的第一个点就是负责的节点;
+ * 增加一个节点只会移动落在新节点区间内的slot,大约是1/(N+1)
+ */
+public class ConsistentHashRing {
+    private final List<HostAndPort> nodes;
+
+    private final int virtualNodes;
+
+    private final TreeMap<Long, HostAndPort> ring = new TreeMap<>();
+
+    /**
+     * @param nodes        节点
+     * @param virtualNodes 每个节点在环上的点数,越多分布越均匀
+     */
+    public ConsistentHashRing(Collection<HostAndPort> nodes, int virtualNodes)
+    {
+        if (nodes.isEmpty() || virtualNodes <= 0)
+        {
+            throw new IllegalArgumentException("nodes must not be empty and virtualNodes must be positive");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.virtualNodes = virtualNodes;
+        for (HostAndPort node : nodes)
+        {
+            for (int i = 0; i < virtualNodes; i++)
+            {
+                ring.put(Hashing.MURMUR_HASH.hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * 负责slot的节点
+     *
+     * @param slot 0~16383
+     * @return HostAndPort
+     */
+    public HostAndPort node(int slot)
+    {
+        Map.Entry<Long, HostAndPort> entry = ring.ceilingEntry(Hashing.MURMUR_HASH.hash("slot-" + slot));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * 所有节点,按创建时的顺序
+     *
+     * @return List
+     */
+    public List<HostAndPort> nodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * 增加一个节点后的环,虚拟节点数不变
+     *
+     * @param node 新节点
+     * @return ConsistentHashRing
+     */
+    public ConsistentHashRing with(HostAndPort node)
+    {
+        if (nodes.contains(node))
+        {
+            throw new IllegalArgumentException(node + " is already in the ring");
+        }
+        List<HostAndPort> added = new ArrayList<>(nodes);
+        added.add(node);
+        return new ConsistentHashRing(added, virtualNodes);
+    }
+}
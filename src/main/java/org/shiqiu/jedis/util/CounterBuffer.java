@@ -0,0 +1,278 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计数器的写缓冲: INCRBY/HINCRBY的增量先在内存中按key(和field)累加,定时或者缓冲的计数器数达到maxKeys时
+ * 把累加的结果一次写入,同一个key在一个周期内的多次增加只产生一条命令
+ * 每个计数器按线程分成stripes份,热点key的并发增加落在不同的AtomicLong上;
+ * 写入时先把计数器从map中移除再取出它的值,之后的增加会创建新的计数器,增量不会丢失,空闲的key也不会一直占用内存
+ * 进程崩溃时还没有写入的增量会丢失
+ */
+public class CounterBuffer implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(CounterBuffer.class);
+
+    /**
+     * 已经被取走的计数器的值,看到这个值的线程重新创建计数器
+     */
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    /**
+     * 一个计数器,field为null时是字符串key的INCRBY,否则是hash的HINCRBY
+     */
+    public static final class Counter {
+        private final String key;
+
+        private final String field;
+
+        public Counter(String key, String field)
+        {
+            this.key = key;
+            this.field = field;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public String getField()
+        {
+            return field;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Counter))
+            {
+                return false;
+            }
+            Counter other = (Counter) o;
+            return key.equals(other.key) && Objects.equals(field, other.field);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * key.hashCode() + Objects.hashCode(field);
+        }
+
+        @Override
+        public String toString()
+        {
+            return field == null ? key : key + "." + field;
+        }
+    }
+
+    /**
+     * 计数器的一份
+     */
+    private static final class Stripe {
+        private final Counter counter;
+
+        private final int index;
+
+        private Stripe(Counter counter, int index)
+        {
+            this.counter = counter;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Stripe && index == ((Stripe) o).index && counter.equals(((Stripe) o).counter);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * counter.hashCode() + index;
+        }
+    }
+
+    /**
+     * 写入累加的增量
+     */
+    public interface Writer {
+        /**
+         * 写入增量,返回没有写入的部分,这部分放回缓冲下次再写;抛出异常表示没有写入任何增量
+         *
+         * @param deltas 计数器 -> 增量,不包含为0的增量
+         * @return 没有写入的计数器 -> 增量
+         */
+        Map<Counter, Long> write(Map<Counter, Long> deltas);
+    }
+
+    private final ConcurrentHashMap<Stripe, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private final Writer writer;
+
+    private final int maxKeys;
+
+    private final int stripes;
+
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * 已经因为达到maxKeys提交了一次写入,避免重复提交
+     */
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    /**
+     * @param writer      写入累加的增量,在写入线程中调用
+     * @param flushMillis 定时写入的间隔
+     * @param maxKeys     缓冲的计数器数(每一份单独计算)达到这个值时马上写入
+     * @param stripes     每个计数器分成的份数
+     */
+    public CounterBuffer(Writer writer, long flushMillis, int maxKeys, int stripes)
+    {
+        if (flushMillis <= 0 || maxKeys <= 0 || stripes <= 0)
+        {
+            throw new IllegalArgumentException("flushMillis, maxKeys and stripes must be positive");
+        }
+        this.writer = writer;
+        this.maxKeys = maxKeys;
+        this.stripes = stripes;
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-counter-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 增加一个计数器,不访问redis
+     *
+     * @param key   键
+     * @param field hash的field,字符串key为null
+     * @param delta 增量
+     */
+    public void add(String key, String field, long delta)
+    {
+        if (delta == 0)
+        {
+            return;
+        }
+        Stripe stripe = new Stripe(new Counter(key, field), (int) (Thread.currentThread().getId() % stripes));
+        for (; ; )
+        {
+            AtomicLong counter = counters.computeIfAbsent(stripe, s -> new AtomicLong());
+            long current = counter.get();
+            if (current != RETIRED && counter.compareAndSet(current, current + delta))
+            {
+                break;
+            }
+        }
+        if (counters.size() >= maxKeys && !flusher.isShutdown() && flushPending.compareAndSet(false, true))
+        {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * 缓冲的计数器数
+     *
+     * @return int
+     */
+    public int size()
+    {
+        return counters.size();
+    }
+
+    /**
+     * 取出所有累加的增量并写入,Writer报告没有写入的增量放回缓冲,下次再写
+     */
+    public synchronized void flush()
+    {
+        flushPending.set(false);
+        Map<Counter, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<Stripe, AtomicLong> entry : counters.entrySet())
+        {
+            if (counters.remove(entry.getKey(), entry.getValue()))
+            {
+                long delta = entry.getValue().getAndSet(RETIRED);
+                if (delta != 0)
+                {
+                    deltas.merge(entry.getKey().counter, delta, Long::sum);
+                }
+            }
+        }
+        deltas.values().removeIf(delta -> delta == 0);
+        if (deltas.isEmpty())
+        {
+            return;
+        }
+        Map<Counter, Long> unwritten;
+        try
+        {
+            unwritten = writer.write(deltas);
+        }
+        catch (RuntimeException e)
+        {
+            putBack(deltas);
+            throw e;
+        }
+        if (!unwritten.isEmpty())
+        {
+            LOGGER.warn("{} of {} counters are not written, retry later", unwritten.size(), deltas.size());
+            putBack(unwritten);
+        }
+    }
+
+    private void putBack(Map<Counter, Long> deltas)
+    {
+        for (Map.Entry<Counter, Long> entry : deltas.entrySet())
+        {
+            add(entry.getKey().key, entry.getKey().field, entry.getValue());
+        }
+    }
+
+    private void flushQuietly()
+    {
+        try
+        {
+            flush();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.warn("flush {} counters fail, retry later: {}", counters.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * 停止定时写入并写入剩余的增量
+     */
+    @Override
+    public void close()
+    {
+        flusher.shutdown();
+        try
+        {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
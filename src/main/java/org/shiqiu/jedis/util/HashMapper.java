@@ -0,0 +1,348 @@
+package org.shiqiu.jedis.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 对象和hash(Map<String, String>)之间的转换
+ * 每个类只在第一次使用时反射一次,生成字段的MethodHandle并缓存,之后的转换不再反射
+ * 包含父类的字段,忽略static和transient字段,值为null的字段不写入hash
+ */
+public class HashMapper {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final Map<Class<?>, Function<String, Object>> DECODERS = new HashMap<>(32);
+
+    static
+    {
+        DECODERS.put(String.class, value -> value);
+        DECODERS.put(int.class, Integer::valueOf);
+        DECODERS.put(Integer.class, Integer::valueOf);
+        DECODERS.put(long.class, Long::valueOf);
+        DECODERS.put(Long.class, Long::valueOf);
+        DECODERS.put(short.class, Short::valueOf);
+        DECODERS.put(Short.class, Short::valueOf);
+        DECODERS.put(byte.class, Byte::valueOf);
+        DECODERS.put(Byte.class, Byte::valueOf);
+        DECODERS.put(double.class, Double::valueOf);
+        DECODERS.put(Double.class, Double::valueOf);
+        DECODERS.put(float.class, Float::valueOf);
+        DECODERS.put(Float.class, Float::valueOf);
+        DECODERS.put(boolean.class, Boolean::valueOf);
+        DECODERS.put(Boolean.class, Boolean::valueOf);
+        DECODERS.put(char.class, value -> value.charAt(0));
+        DECODERS.put(Character.class, value -> value.charAt(0));
+        DECODERS.put(BigDecimal.class, BigDecimal::new);
+        DECODERS.put(BigInteger.class, BigInteger::new);
+        DECODERS.put(Date.class, value -> new Date(Long.parseLong(value)));
+        DECODERS.put(Instant.class, Instant::parse);
+        DECODERS.put(LocalDate.class, LocalDate::parse);
+        DECODERS.put(LocalDateTime.class, LocalDateTime::parse);
+    }
+
+    private static final ClassValue<ClassMapping> MAPPINGS = new ClassValue<ClassMapping>() {
+        @Override
+        protected ClassMapping computeValue(Class<?> type)
+        {
+            return new ClassMapping(type);
+        }
+    };
+
+    /**
+     * 对象转换成hash,值为null的字段不写入
+     *
+     * @param object 对象
+     * @return Map<String, String>
+     */
+    public static Map<String, String> toHash(Object object)
+    {
+        FieldMapping[] fields = MAPPINGS.get(object.getClass()).fields;
+        Map<String, String> hash = new HashMap<>(fields.length * 4 / 3 + 1);
+        for (FieldMapping field : fields)
+        {
+            String value = field.read(object);
+            if (value != null)
+            {
+                hash.put(field.name, value);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * hash转换成对象,对象需要有无参构造方法,hash中没有的字段保持默认值
+     *
+     * @param hash hash,为空时返回null
+     * @param type 对象类型
+     * @param <T>  对象类型
+     * @return T
+     */
+    public static <T> T fromHash(Map<String, String> hash, Class<T> type)
+    {
+        if (hash == null || hash.isEmpty())
+        {
+            return null;
+        }
+        ClassMapping mapping = MAPPINGS.get(type);
+        T object = type.cast(mapping.newInstance());
+        for (FieldMapping field : mapping.fields)
+        {
+            String value = hash.get(field.name);
+            if (value != null)
+            {
+                field.write(object, value);
+            }
+        }
+        return object;
+    }
+
+    /**
+     * 比较同一类型的两个对象,只返回变化的字段
+     *
+     * @param before 修改前的对象,为null时所有非null字段都算变化
+     * @param after  修改后的对象
+     * @return Changes
+     */
+    public static Changes diff(Object before, Object after)
+    {
+        if (before != null && before.getClass() != after.getClass())
+        {
+            throw new IllegalArgumentException("can not diff " + before.getClass() + " with " + after.getClass());
+        }
+        Changes changes = new Changes();
+        for (FieldMapping field : MAPPINGS.get(after.getClass()).fields)
+        {
+            String newValue = field.read(after);
+            String oldValue = before == null ? null : field.read(before);
+            if (Objects.equals(oldValue, newValue))
+            {
+                continue;
+            }
+            if (newValue == null)
+            {
+                changes.removed.add(field.name);
+            }
+            else
+            {
+                changes.updated.put(field.name, newValue);
+            }
+        }
+        return changes;
+    }
+
+    private HashMapper()
+    {
+    }
+
+    /**
+     * 两个对象之间的差异
+     */
+    public static final class Changes {
+        private final Map<String, String> updated = new LinkedHashMap<>();
+
+        private final List<String> removed = new ArrayList<>();
+
+        /**
+         * 值发生变化的字段,需要hmSet
+         *
+         * @return Map<String, String>
+         */
+        public Map<String, String> getUpdated()
+        {
+            return updated;
+        }
+
+        /**
+         * 变为null的字段,需要hDel
+         *
+         * @return List<String>
+         */
+        public List<String> getRemoved()
+        {
+            return removed;
+        }
+
+        public boolean isEmpty()
+        {
+            return updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static final class ClassMapping {
+        private final Class<?> type;
+
+        private final FieldMapping[] fields;
+
+        private final MethodHandle constructor;
+
+        private ClassMapping(Class<?> type)
+        {
+            this.type = type;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            List<FieldMapping> mappings = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass())
+            {
+                for (Field field : current.getDeclaredFields())
+                {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                            || names.contains(field.getName()))
+                    {
+                        continue;
+                    }
+                    names.add(field.getName());
+                    mappings.add(new FieldMapping(lookup, field));
+                }
+            }
+            this.fields = mappings.toArray(new FieldMapping[0]);
+            this.constructor = findConstructor(lookup, type);
+        }
+
+        private static MethodHandle findConstructor(MethodHandles.Lookup lookup, Class<?> type)
+        {
+            try
+            {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return lookup.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+            }
+            catch (NoSuchMethodException | IllegalAccessException | RuntimeException e)
+            {
+                return null;
+            }
+        }
+
+        private Object newInstance()
+        {
+            if (constructor == null)
+            {
+                throw new IllegalArgumentException(type + " has no accessible no-arg constructor");
+            }
+            try
+            {
+                return (Object) constructor.invokeExact();
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException("create " + type + " fail", e);
+            }
+        }
+    }
+
+    private static final class FieldMapping {
+        private final String name;
+
+        private final MethodHandle getter;
+
+        /**
+         * final字段或者不支持转换的类型为null,只写入hash不从hash读取
+         */
+        private final MethodHandle setter;
+
+        private final Function<String, Object> decoder;
+
+        private FieldMapping(MethodHandles.Lookup lookup, Field field)
+        {
+            this.name = field.getName();
+            field.setAccessible(true);
+            Function<String, Object> fieldDecoder = DECODERS.get(field.getType());
+            if (fieldDecoder == null && field.getType().isEnum())
+            {
+                fieldDecoder = enumDecoder(field.getType());
+            }
+            this.decoder = fieldDecoder;
+            try
+            {
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                this.setter = Modifier.isFinal(field.getModifiers()) || decoder == null
+                        ? null : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw new IllegalStateException("can not access field " + field, e);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Function<String, Object> enumDecoder(Class<?> type)
+        {
+            return value -> Enum.valueOf((Class<? extends Enum>) type, value);
+        }
+
+        private String read(Object object)
+        {
+            Object value;
+            try
+            {
+                value = (Object) getter.invokeExact(object);
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException("read field " + name + " fail", e);
+            }
+            if (value == null)
+            {
+                return null;
+            }
+            if (value instanceof Date)
+            {
+                return String.valueOf(((Date) value).getTime());
+            }
+            if (value instanceof Enum)
+            {
+                return ((Enum<?>) value).name();
+            }
+            return value.toString();
+        }
+
+        private void write(Object object, String value)
+        {
+            if (setter == null)
+            {
+                return;
+            }
+            try
+            {
+                setter.invokeExact(object, decoder.apply(value));
+            }
+            catch (RuntimeException | Error e)
+            {
+                throw e;
+            }
+            catch (Throwable e)
+            {
+                throw new IllegalStateException("write field " + name + " fail", e);
+            }
+        }
+    }
+}
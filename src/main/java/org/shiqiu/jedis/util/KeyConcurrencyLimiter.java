@@ -0,0 +1,91 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 按key限制同时执行的命令数,key按hash分到固定数量的条带上,每个条带一个Semaphore
+ * 热点key上的大量并发只会在自己的条带上排队,不会占满整个连接池让其他key也等待
+ * Semaphore等待时虚拟线程会让出载体线程
+ */
+public class KeyConcurrencyLimiter {
+    private final Semaphore[] stripes;
+
+    private final long maxWaitMillis;
+
+    /**
+     * @param stripes       条带数,会向上取整为2的幂
+     * @param permitsPerKey 每个条带同时执行的命令数
+     * @param maxWaitMillis 等待许可的最长时间
+     */
+    public KeyConcurrencyLimiter(int stripes, int permitsPerKey, long maxWaitMillis)
+    {
+        if (stripes <= 0 || permitsPerKey <= 0)
+        {
+            throw new IllegalArgumentException("stripes and permitsPerKey must be positive");
+        }
+        int size = 1;
+        while (size < stripes)
+        {
+            size <<= 1;
+        }
+        this.stripes = new Semaphore[size];
+        for (int i = 0; i < this.stripes.length; i++)
+        {
+            this.stripes[i] = new Semaphore(permitsPerKey);
+        }
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * 拿到key的许可之后执行action,key为null时不限制
+     *
+     * @param key    键
+     * @param action 要执行的操作
+     * @param <T>    返回值类型
+     * @return T
+     */
+    public <T> T call(String key, Supplier<T> action)
+    {
+        if (key == null)
+        {
+            return action.get();
+        }
+        Semaphore semaphore = stripe(key);
+        try
+        {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS))
+            {
+                throw new JedisException("too many concurrent commands on key " + key + ", waited " + maxWaitMillis + "ms");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JedisException("interrupted while waiting for key " + key, e);
+        }
+        try
+        {
+            return action.get();
+        }
+        finally
+        {
+            semaphore.release();
+        }
+    }
+
+    private Semaphore stripe(String key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    public int getStripes()
+    {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,371 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Jedis;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+/**
+ * 防止缓存击穿的加载
+ * 同一进程内同一个key同时只有一个线程调用loader,其他线程等待它的结果;
+ * lockMillis大于0时加载前在redis中加锁(key:lock),其他进程等待写入而不是同时加载,锁超时后各自加载;
+ * 命中时按XFetch算法提前刷新: 剩余过期时间越短,上次加载越慢,提前在后台刷新的概率越大;
+ * 写入的过期时间加上随机抖动,避免同时写入的key同时过期
+ */
+public class LoadingCache implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(LoadingCache.class);
+
+    private static final LuaScript UNLOCK = new LuaScript(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end");
+
+    private static final String LOCK_SUFFIX = ":lock";
+
+    /**
+     * 记录加载耗时的key数量上限,超过时清空重新统计
+     */
+    private static final int MAX_TRACKED_KEYS = 10000;
+
+    private final Store store;
+
+    private final long lockMillis;
+
+    private final long pollMillis;
+
+    private final double ttlJitter;
+
+    private final double earlyRefreshBeta;
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 每个key上次加载的耗时(毫秒),用于计算提前刷新的概率
+     */
+    private final ConcurrentHashMap<String, Long> loadMillis = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor refresher;
+
+    /**
+     * @param store            读写缓存的值
+     * @param lockMillis       redis锁的过期时间,也是等待其他进程加载的最长时间,0表示不加锁
+     * @param pollMillis       等待其他进程加载时检查的间隔
+     * @param ttlJitter        过期时间随机增加的比例,例如0.1表示增加0~10%
+     * @param earlyRefreshBeta 提前刷新的系数,越大越早刷新,0表示不提前刷新
+     * @param refreshThreads   后台刷新的线程数
+     */
+    public LoadingCache(Store store, long lockMillis, long pollMillis, double ttlJitter, double earlyRefreshBeta,
+            int refreshThreads)
+    {
+        if (lockMillis < 0 || pollMillis <= 0 || ttlJitter < 0 || earlyRefreshBeta < 0 || refreshThreads <= 0)
+        {
+            throw new IllegalArgumentException("invalid loading cache settings");
+        }
+        this.store = store;
+        this.lockMillis = lockMillis;
+        this.pollMillis = pollMillis;
+        this.ttlJitter = ttlJitter;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        AtomicInteger threads = new AtomicInteger();
+        // 刷新只是优化,队列满时直接丢弃,值过期后由读取的线程加载
+        this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshThreads * 64), r -> {
+                    Thread thread = new Thread(r, "redis-cache-refresh-" + threads.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 读取key,不存在时加载并写入
+     *
+     * @param key     键
+     * @param seconds 过期时间,会随机增加ttlJitter的比例
+     * @param loader  加载值,返回null时不写入
+     * @return String
+     */
+    public String get(String key, int seconds, Supplier<String> loader)
+    {
+        Cached cached = store.read(key);
+        if (cached != null)
+        {
+            if (shouldRefresh(key, cached.ttlMillis) && !refreshing.contains(key))
+            {
+                refresher.execute(() -> refresh(key, seconds, loader));
+            }
+            return cached.value;
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> existing = loading.putIfAbsent(key, future);
+        if (existing != null)
+        {
+            return await(existing);
+        }
+        try
+        {
+            String value = loadExclusively(key, seconds, loader);
+            future.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            loading.remove(key, future);
+        }
+    }
+
+    private static String await(CompletableFuture<String> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * XFetch: -加载耗时 * beta * ln(random) >= 剩余过期时间 时刷新
+     */
+    private boolean shouldRefresh(String key, long ttlMillis)
+    {
+        if (earlyRefreshBeta == 0 || ttlMillis < 0)
+        {
+            return false;
+        }
+        Long delta = loadMillis.get(key);
+        if (delta == null)
+        {
+            return false;
+        }
+        return -delta * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble()) >= ttlMillis;
+    }
+
+    /**
+     * 在redis中加锁后加载,其他进程持有锁时等待它写入,等待超过lockMillis后自己加载
+     */
+    private String loadExclusively(String key, int seconds, Supplier<String> loader)
+    {
+        if (lockMillis == 0)
+        {
+            return load(key, seconds, loader);
+        }
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        long deadline = System.currentTimeMillis() + lockMillis;
+        while (true)
+        {
+            if (lock(lockKey, token))
+            {
+                try
+                {
+                    // 拿到锁之前其他进程可能刚写入
+                    Cached cached = store.read(key);
+                    return cached != null ? cached.value : load(key, seconds, loader);
+                }
+                finally
+                {
+                    unlock(lockKey, token);
+                }
+            }
+            sleep();
+            Cached cached = store.read(key);
+            if (cached != null)
+            {
+                return cached.value;
+            }
+            if (System.currentTimeMillis() >= deadline)
+            {
+                LOGGER.warn("wait for {} loaded by another node timeout, load it locally", key);
+                return load(key, seconds, loader);
+            }
+        }
+    }
+
+    /**
+     * 后台刷新,本进程或其他进程正在刷新时跳过
+     */
+    private void refresh(String key, int seconds, Supplier<String> loader)
+    {
+        if (!refreshing.add(key))
+        {
+            return;
+        }
+        String lockKey = key + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        try
+        {
+            if (lockMillis == 0 || lock(lockKey, token))
+            {
+                try
+                {
+                    load(key, seconds, loader);
+                }
+                finally
+                {
+                    if (lockMillis > 0)
+                    {
+                        unlock(lockKey, token);
+                    }
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.warn("refresh {} fail", key, e);
+        }
+        finally
+        {
+            refreshing.remove(key);
+        }
+    }
+
+    private String load(String key, int seconds, Supplier<String> loader)
+    {
+        long start = System.nanoTime();
+        String value = loader.get();
+        if (loadMillis.size() >= MAX_TRACKED_KEYS)
+        {
+            loadMillis.clear();
+        }
+        loadMillis.put(key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (value != null)
+        {
+            store.setEx(key, jitter(seconds), value);
+        }
+        return value;
+    }
+
+    private int jitter(int seconds)
+    {
+        int max = (int) (seconds * ttlJitter);
+        return max <= 0 ? seconds : seconds + ThreadLocalRandom.current().nextInt(max + 1);
+    }
+
+    private boolean lock(String lockKey, String token)
+    {
+        return store.execute(lockKey, jedis -> "OK".equals(jedis.set(lockKey, token, "NX", "PX", lockMillis)));
+    }
+
+    private void unlock(String lockKey, String token)
+    {
+        store.execute(lockKey,
+                jedis -> UNLOCK.eval(jedis, Collections.singletonList(lockKey), Collections.singletonList(token)));
+    }
+
+    private void sleep()
+    {
+        try
+        {
+            Thread.sleep(pollMillis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for another node to load", e);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        refresher.shutdown();
+    }
+
+    /**
+     * 缓存的值的读写
+     */
+    public interface Store {
+        /**
+         * 读取值和剩余过期时间
+         *
+         * @param key 键
+         * @return 不存在时返回null
+         */
+        Cached read(String key);
+
+        /**
+         * 写入值并设置过期时间
+         *
+         * @param key     键
+         * @param seconds 过期时间
+         * @param value   值
+         */
+        void setEx(String key, int seconds, String value);
+
+        /**
+         * 在负责key的节点上执行加锁和解锁,默认使用RedisFactory的连接
+         *
+         * @param key    键
+         * @param action 在连接上执行的操作
+         * @param <T>    返回值类型
+         * @return 操作的返回值
+         */
+        default <T> T execute(String key, Function<Jedis, T> action)
+        {
+            Jedis jedis = getJedis();
+            try
+            {
+                return action.apply(jedis);
+            }
+            finally
+            {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * 读取到的值
+     */
+    public static final class Cached {
+        private final String value;
+
+        /**
+         * 剩余过期时间,没有过期时间时为负数
+         */
+        private final long ttlMillis;
+
+        public Cached(String value, long ttlMillis)
+        {
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+
+        public long getTtlMillis()
+        {
+            return ttlMillis;
+        }
+    }
+}
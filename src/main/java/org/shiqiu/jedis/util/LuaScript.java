@@ -0,0 +1,90 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.List;
+
+/**
+ * 一段lua脚本,第一次执行时SCRIPT LOAD并缓存sha,之后通过EVALSHA执行,
+ * redis重启或者SCRIPT FLUSH之后收到NOSCRIPT时重新加载
+ */
+public class LuaScript {
+    private final String script;
+
+    private volatile String sha;
+
+    public LuaScript(String script)
+    {
+        this.script = script;
+    }
+
+    /**
+     * 执行脚本
+     *
+     * @param jedis 连接
+     * @param keys  KEYS
+     * @param args  ARGV
+     * @return 脚本的返回值
+     */
+    public Object eval(Jedis jedis, List<String> keys, List<String> args)
+    {
+        String current = sha;
+        if (current == null)
+        {
+            current = load(jedis);
+        }
+        try
+        {
+            return jedis.evalsha(current, keys, args);
+        }
+        catch (JedisNoScriptException e)
+        {
+            return jedis.evalsha(load(jedis), keys, args);
+        }
+    }
+
+    /**
+     * 执行脚本,KEYS和ARGV是二进制,用于写入压缩后的值
+     *
+     * @param jedis 连接
+     * @param keys  KEYS
+     * @param args  ARGV
+     * @return 脚本的返回值
+     */
+    public Object evalBinary(Jedis jedis, List<byte[]> keys, List<byte[]> args)
+    {
+        String current = sha;
+        if (current == null)
+        {
+            current = load(jedis);
+        }
+        try
+        {
+            return jedis.evalsha(SafeEncoder.encode(current), keys, args);
+        }
+        catch (JedisNoScriptException e)
+        {
+            return jedis.evalsha(SafeEncoder.encode(load(jedis)), keys, args);
+        }
+    }
+
+    /**
+     * SCRIPT LOAD并缓存sha,在pipeline中通过EVALSHA执行之前调用
+     *
+     * @param jedis 连接
+     * @return sha
+     */
+    public String load(Jedis jedis)
+    {
+        String loaded = jedis.scriptLoad(script);
+        sha = loaded;
+        return loaded;
+    }
+
+    public String getScript()
+    {
+        return script;
+    }
+}
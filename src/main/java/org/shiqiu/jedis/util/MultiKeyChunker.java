@@ -0,0 +1,217 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 把包含大量key的MGET/MSET拆成每块chunkSize个key的命令,最多parallelism块同时在不同的连接上执行
+ * 单条命令不会太大,redis也不会被一条命令阻塞太久
+ * 拆开之后的MSET不再是原子的
+ */
+public class MultiKeyChunker implements Closeable {
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param chunkSize   每块的key数量,0表示不拆分
+     * @param parallelism 同时执行的块数
+     */
+    public MultiKeyChunker(int chunkSize, int parallelism)
+    {
+        if (chunkSize < 0 || parallelism <= 0)
+        {
+            throw new IllegalArgumentException("chunkSize must not be negative and parallelism must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        AtomicInteger threads = new AtomicInteger();
+        // 队列满时由提交方自己执行,避免无限堆积
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4), r -> {
+                    Thread thread = new Thread(r, "redis-multi-key-" + threads.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * key数量是否超过了一块
+     *
+     * @param keys key的数量
+     * @return boolean
+     */
+    public boolean needsSplit(int keys)
+    {
+        return chunkSize > 0 && keys > chunkSize;
+    }
+
+    /**
+     * 分块读取,返回值和keys一一对应
+     *
+     * @param keys   键
+     * @param loader 读取一块
+     * @param <T>    值类型
+     * @return List
+     */
+    public <T> List<T> get(String[] keys, Function<String[], List<T>> loader)
+    {
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+        for (int from = 0; from < keys.length; from += chunkSize)
+        {
+            String[] chunk = Arrays.copyOfRange(keys, from, Math.min(from + chunkSize, keys.length));
+            futures.add(CompletableFuture.supplyAsync(() -> loader.apply(chunk), executor));
+        }
+        List<T> values = new ArrayList<>(keys.length);
+        for (CompletableFuture<List<T>> future : futures)
+        {
+            values.addAll(join(future));
+        }
+        return values;
+    }
+
+    /**
+     * 分块惰性读取,按keys的顺序返回(key, value),同时最多预取parallelism块,
+     * 只有正在消费和预取的块保存在内存中
+     *
+     * @param keys   键
+     * @param loader 读取一块
+     * @param <T>    值类型
+     * @return Stream
+     */
+    public <T> Stream<Map.Entry<String, T>> stream(String[] keys, Function<String[], List<T>> loader)
+    {
+        int size = chunkSize > 0 ? chunkSize : Math.max(keys.length, 1);
+        Iterator<Map.Entry<String, T>> iterator = new Iterator<Map.Entry<String, T>>() {
+            private final Deque<Chunk<T>> prefetched = new ArrayDeque<>();
+
+            private int nextChunk;
+
+            private Chunk<T> current;
+
+            private int index;
+
+            @Override
+            public boolean hasNext()
+            {
+                while (current == null || index >= current.values.size())
+                {
+                    while (prefetched.size() < parallelism && nextChunk < keys.length)
+                    {
+                        String[] chunk = Arrays.copyOfRange(keys, nextChunk, Math.min(nextChunk + size, keys.length));
+                        prefetched.add(new Chunk<>(chunk, CompletableFuture.supplyAsync(() -> loader.apply(chunk), executor)));
+                        nextChunk += size;
+                    }
+                    Chunk<T> chunk = prefetched.poll();
+                    if (chunk == null)
+                    {
+                        return false;
+                    }
+                    chunk.values = join(chunk.future);
+                    current = chunk;
+                    index = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, T> next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<String, T> entry = new AbstractMap.SimpleImmutableEntry<>(current.keys[index],
+                        current.values.get(index));
+                index++;
+                return entry;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(iterator, keys.length,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 分块写入key,value交替的参数,每块chunkSize对key
+     *
+     * @param keysValues key,value交替
+     * @param writer     写入一块
+     */
+    public void set(String[] keysValues, Consumer<String[]> writer)
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        int step = chunkSize * 2;
+        for (int from = 0; from < keysValues.length; from += step)
+        {
+            String[] chunk = Arrays.copyOfRange(keysValues, from, Math.min(from + step, keysValues.length));
+            futures.add(CompletableFuture.runAsync(() -> writer.accept(chunk), executor));
+        }
+        for (CompletableFuture<Void> future : futures)
+        {
+            join(future);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new JedisException(cause);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+    }
+
+    private static final class Chunk<T> {
+        private final String[] keys;
+
+        private final CompletableFuture<List<T>> future;
+
+        private List<T> values = Collections.emptyList();
+
+        private Chunk(String[] keys, CompletableFuture<List<T>> future)
+        {
+            this.keys = keys;
+            this.future = future;
+        }
+    }
+}
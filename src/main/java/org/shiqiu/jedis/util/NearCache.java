@@ -0,0 +1,300 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内的近端缓存(L1),按redis的key保存读到的值
+ * 只缓存匹配patterns的key,条目数超过maxSize时淘汰,写入ttl后过期,
+ * 失效消息由NearCacheInvalidator从redis推送过来
+ */
+public class NearCache {
+    /**
+     * getString缓存的值
+     */
+    public static final String STRING = "string";
+    /**
+     * hGetAll缓存的值
+     */
+    public static final String HASH = "hash";
+    /**
+     * sMembers缓存的值
+     */
+    public static final String SET = "set";
+    /**
+     * RedisCache缓存的对象
+     */
+    public static final String OBJECT = "object";
+
+    private static final String FIELD_PREFIX = "field:";
+
+    /**
+     * 缓存不存在的key,避免反复穿透
+     */
+    private static final Object NULL = new Object();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final String[] patterns;
+
+    /**
+     * 每次失效都加一,用于发现加载期间发生的失效
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * 失效通道断开时不可用,此时所有读取都直接访问redis
+     */
+    private volatile boolean available;
+
+    /**
+     * @param maxSize    最多缓存的key数量
+     * @param ttlSeconds 写入后多少秒过期
+     * @param patterns   需要缓存的key的通配符,例如 user:*
+     */
+    public NearCache(int maxSize, long ttlSeconds, String... patterns)
+    {
+        if (maxSize <= 0 || ttlSeconds <= 0)
+        {
+            throw new IllegalArgumentException("maxSize and ttlSeconds must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.patterns = patterns;
+    }
+
+    /**
+     * hGet某个field缓存的值
+     *
+     * @param field 属性
+     * @return String
+     */
+    public static String field(String field)
+    {
+        return FIELD_PREFIX + field;
+    }
+
+    /**
+     * key是否匹配需要缓存的通配符
+     *
+     * @param key 键
+     * @return boolean
+     */
+    public boolean accepts(String key)
+    {
+        for (String pattern : patterns)
+        {
+            if (FilenameUtils.wildcardMatch(key, pattern))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从缓存读取,没有命中时通过loader从redis读取并放入缓存
+     *
+     * @param key    redis的key
+     * @param type   缓存的值的类型,STRING/HASH/SET或field(field)
+     * @param loader 从redis读取
+     * @param <T>    值类型
+     * @return T
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, String type, Supplier<T> loader)
+    {
+        if (!available)
+        {
+            misses.increment();
+            return loader.get();
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null)
+        {
+            if (now - entry.expireAt >= 0)
+            {
+                entries.remove(key, entry);
+            }
+            else
+            {
+                Object value = entry.values.get(type);
+                if (value != null)
+                {
+                    hits.increment();
+                    return value == NULL ? null : (T) value;
+                }
+            }
+        }
+        misses.increment();
+        long loadSequence = sequence.get();
+        T value = loader.get();
+        put(key, type, value, loadSequence, now);
+        return value;
+    }
+
+    private void put(String key, String type, Object value, long loadSequence, long now)
+    {
+        if (!available)
+        {
+            return;
+        }
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(now + ttlNanos));
+        entry.values.put(type, value == null ? NULL : value);
+        if (sequence.get() != loadSequence)
+        {
+            // 加载期间有失效消息,读到的值可能已经过期,不能留在缓存中
+            entries.remove(key, entry);
+        }
+        if (entries.size() > maxSize)
+        {
+            evict(now);
+        }
+    }
+
+    /**
+     * 先淘汰过期的条目,仍然超过上限时淘汰约十分之一的条目
+     */
+    private void evict(long now)
+    {
+        if (!evicting.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            int target = maxSize - maxSize / 10;
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                if (now - iterator.next().getValue().expireAt >= 0)
+                {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+            iterator = entries.entrySet().iterator();
+            while (entries.size() > target && iterator.hasNext())
+            {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+        finally
+        {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 让指定的key失效
+     *
+     * @param keys 键
+     */
+    public void invalidate(String... keys)
+    {
+        sequence.incrementAndGet();
+        for (String key : keys)
+        {
+            if (entries.remove(key) != null)
+            {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear()
+    {
+        sequence.incrementAndGet();
+        entries.clear();
+    }
+
+    public void setAvailable(boolean available)
+    {
+        this.available = available;
+        if (!available)
+        {
+            clear();
+        }
+    }
+
+    public boolean isAvailable()
+    {
+        return available;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount()
+    {
+        return invalidations.sum();
+    }
+
+    /**
+     * 命中率,没有读取时为0
+     *
+     * @return double
+     */
+    public double getHitRate()
+    {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private static final class Entry {
+        private final long expireAt;
+
+        private final Map<String, Object> values = new ConcurrentHashMap<>(4);
+
+        private Entry(long expireAt)
+        {
+            this.expireAt = expireAt;
+        }
+    }
+}
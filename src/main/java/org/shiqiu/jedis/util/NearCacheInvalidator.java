@@ -0,0 +1,306 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+/**
+ * 通过独占的订阅连接接收失效消息并清理NearCache
+ * tracking模式使用redis 6的CLIENT TRACKING BCAST,任何客户端的写入都会收到失效消息;
+ * pubsub模式用于低版本redis,只有通过本服务写入的key会在各个进程间失效
+ */
+public class NearCacheInvalidator implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(NearCacheInvalidator.class);
+
+    public static final String MODE_TRACKING = "tracking";
+
+    public static final String MODE_PUBSUB = "pubsub";
+
+    private static final String TRACKING_CHANNEL = "__redis__:invalidate";
+
+    private static final String MESSAGE = "message";
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private final NearCache nearCache;
+
+    private final boolean tracking;
+
+    private final String channel;
+
+    private final String[] prefixes;
+
+    private final Thread listener;
+
+    private volatile boolean running = true;
+
+    private volatile CommandClient subscriber;
+
+    private volatile CommandClient tracker;
+
+    /**
+     * @param nearCache 需要失效的缓存
+     * @param mode      tracking或pubsub
+     * @param channel   pubsub模式下使用的频道
+     * @param patterns  需要缓存的key的通配符,tracking模式下据此生成PREFIX
+     */
+    public NearCacheInvalidator(NearCache nearCache, String mode, String channel, String... patterns)
+    {
+        if (!MODE_TRACKING.equals(mode) && !MODE_PUBSUB.equals(mode))
+        {
+            throw new IllegalArgumentException("unknown near cache invalidation mode: " + mode);
+        }
+        this.nearCache = nearCache;
+        this.tracking = MODE_TRACKING.equals(mode);
+        this.channel = tracking ? TRACKING_CHANNEL : channel;
+        this.prefixes = toPrefixes(patterns);
+        this.listener = new Thread(this::listen, "redis-near-cache-invalidator");
+        this.listener.setDaemon(true);
+        this.listener.start();
+    }
+
+    /**
+     * 通配符第一个*或?之前的部分作为BCAST的前缀,有任何一个通配符没有前缀时跟踪所有key
+     */
+    private static String[] toPrefixes(String... patterns)
+    {
+        List<String> result = new ArrayList<>();
+        for (String pattern : patterns)
+        {
+            int wildcard = pattern.length();
+            for (int i = 0; i < pattern.length(); i++)
+            {
+                char c = pattern.charAt(i);
+                if (c == '*' || c == '?')
+                {
+                    wildcard = i;
+                    break;
+                }
+            }
+            if (wildcard == 0)
+            {
+                return new String[0];
+            }
+            result.add(pattern.substring(0, wildcard));
+        }
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * 本进程写入key之后通知其他进程,tracking模式由redis自动通知,不需要调用
+     *
+     * @param keys 写入的key
+     */
+    public void publish(String... keys)
+    {
+        if (tracking)
+        {
+            return;
+        }
+        List<String> cached = new ArrayList<>(keys.length);
+        for (String key : keys)
+        {
+            if (nearCache.accepts(key))
+            {
+                cached.add(key);
+            }
+        }
+        if (cached.isEmpty())
+        {
+            return;
+        }
+        Jedis jedis = getJedis();
+        try
+        {
+            if (cached.size() == 1)
+            {
+                jedis.publish(channel, cached.get(0));
+            }
+            else
+            {
+                Pipeline pipeline = jedis.pipelined();
+                for (String key : cached)
+                {
+                    pipeline.publish(channel, key);
+                }
+                pipeline.sync();
+            }
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 通知其他进程清空缓存,pubsub模式下用空消息表示
+     */
+    public void publishClear()
+    {
+        if (tracking)
+        {
+            return;
+        }
+        Jedis jedis = getJedis();
+        try
+        {
+            jedis.publish(channel, "");
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    private void listen()
+    {
+        while (running)
+        {
+            try
+            {
+                subscribe();
+                nearCache.clear();
+                nearCache.setAvailable(true);
+                LOGGER.info("near cache invalidation subscribed, mode={}, channel={}",
+                        tracking ? MODE_TRACKING : MODE_PUBSUB, channel);
+                while (running)
+                {
+                    onReply(subscriber.getRawObjectMultiBulkReply());
+                }
+            }
+            catch (RuntimeException e)
+            {
+                if (running)
+                {
+                    LOGGER.warn("near cache invalidation connection lost, retry in {}ms", RECONNECT_MILLIS, e);
+                }
+            }
+            finally
+            {
+                // 断开期间可能漏掉失效消息,缓存不可用直到重新订阅
+                nearCache.setAvailable(false);
+                disconnect();
+            }
+            if (running)
+            {
+                try
+                {
+                    Thread.sleep(RECONNECT_MILLIS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void subscribe()
+    {
+        RedisConfig config = RedisFactory.getConfig();
+        subscriber = new CommandClient(config);
+        subscriber.connect();
+        subscriber.setTimeoutInfinite();
+        if (tracking)
+        {
+            long subscriberId = subscriber.command(Protocol.Command.CLIENT, "ID").getIntegerReply();
+            subscriber.subscribe(channel);
+            subscriber.getRawObjectMultiBulkReply();
+
+            List<String> args = new ArrayList<>();
+            args.add("TRACKING");
+            args.add("ON");
+            args.add("REDIRECT");
+            args.add(String.valueOf(subscriberId));
+            args.add("BCAST");
+            for (String prefix : prefixes)
+            {
+                args.add("PREFIX");
+                args.add(prefix);
+            }
+            tracker = new CommandClient(config);
+            tracker.connect();
+            tracker.command(Protocol.Command.CLIENT, args.toArray(new String[0])).getStatusCodeReply();
+        }
+        else
+        {
+            subscriber.subscribe(channel);
+            subscriber.getRawObjectMultiBulkReply();
+        }
+    }
+
+    /**
+     * 处理订阅消息,tracking模式的消息内容是key的数组,为空时表示FLUSHALL
+     */
+    private void onReply(List<Object> reply)
+    {
+        if (reply.size() < 3 || !MESSAGE.equals(SafeEncoder.encode((byte[]) reply.get(0))))
+        {
+            return;
+        }
+        Object payload = reply.get(2);
+        if (payload == null)
+        {
+            nearCache.clear();
+        }
+        else if (payload instanceof List)
+        {
+            List<?> keys = (List<?>) payload;
+            String[] invalidated = new String[keys.size()];
+            for (int i = 0; i < invalidated.length; i++)
+            {
+                invalidated[i] = SafeEncoder.encode((byte[]) keys.get(i));
+            }
+            nearCache.invalidate(invalidated);
+        }
+        else
+        {
+            String key = SafeEncoder.encode((byte[]) payload);
+            if (key.isEmpty())
+            {
+                nearCache.clear();
+            }
+            else
+            {
+                nearCache.invalidate(key);
+            }
+        }
+    }
+
+    private void disconnect()
+    {
+        CommandClient currentTracker = tracker;
+        if (currentTracker != null)
+        {
+            currentTracker.close();
+            tracker = null;
+        }
+        CommandClient currentSubscriber = subscriber;
+        if (currentSubscriber != null)
+        {
+            currentSubscriber.close();
+            subscriber = null;
+        }
+    }
+
+    /**
+     * 停止接收失效消息,缓存随之不可用
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        disconnect();
+        listener.interrupt();
+    }
+}
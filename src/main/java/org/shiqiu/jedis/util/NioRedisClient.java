@@ -0,0 +1,610 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 基于NIO的多路复用连接,少量连接承载所有线程的命令,不再是每条执行中的命令占用一个连接
+ * 所有连接由一个IO线程通过Selector读写,命令按提交顺序写入连接,回复按FIFO顺序交给对应的调用方
+ * 读写使用固定的direct ByteBuffer,命令直接编码进写缓冲区
+ * 阻塞命令(BLPOP等)和事务会占住连接,不能通过这里执行
+ */
+public class NioRedisClient implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(NioRedisClient.class);
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private static final long SELECT_MILLIS = 1000;
+
+    private final RedisConfig config;
+
+    private final int bufferSize;
+
+    private final Selector selector;
+
+    private final Channel[] channels;
+
+    private final Thread ioThread;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * 已经唤醒过Selector还没有处理时不再重复唤醒
+     */
+    private final AtomicBoolean wakeup = new AtomicBoolean();
+
+    /**
+     * 把jedis Pipeline上的调用转换成命令,每个线程复用一个
+     */
+    private final ThreadLocal<CapturingPipeline> pipelines = ThreadLocal.withInitial(CapturingPipeline::new);
+
+    private volatile boolean running = true;
+
+    /**
+     * @param config      连接地址,认证,数据库和超时
+     * @param connections 连接数
+     * @param bufferSize  每个连接读写缓冲区的初始大小
+     */
+    public NioRedisClient(RedisConfig config, int connections, int bufferSize)
+    {
+        if (connections <= 0 || bufferSize <= 0)
+        {
+            throw new IllegalArgumentException("connections and bufferSize must be positive");
+        }
+        this.config = config;
+        this.bufferSize = bufferSize;
+        try
+        {
+            this.selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new JedisConnectionException("open selector fail", e);
+        }
+        this.channels = new Channel[connections];
+        for (int i = 0; i < connections; i++)
+        {
+            channels[i] = new Channel();
+        }
+        this.ioThread = new Thread(this::ioLoop, "redis-nio-io");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * 提交一条命令,不等待回复
+     *
+     * @param command 命令
+     * @param args    参数
+     * @return 原始回复,格式和jedis的Protocol.read一致
+     */
+    public CompletableFuture<Object> send(Protocol.Command command, byte[]... args)
+    {
+        PendingReply pending = new PendingReply(command.raw, args);
+        if (!running)
+        {
+            pending.future.completeExceptionally(new JedisConnectionException("nio client is closed"));
+            return pending.future;
+        }
+        Channel channel = channels[(next.getAndIncrement() & Integer.MAX_VALUE) % channels.length];
+        channel.submitted.offer(pending);
+        if (wakeup.compareAndSet(false, true))
+        {
+            selector.wakeup();
+        }
+        return pending.future;
+    }
+
+    /**
+     * 执行一条写在jedis Pipeline上的命令并等待结果,和AutoPipeliner.execute的用法相同
+     * 最多等待soTimeout毫秒
+     *
+     * @param command 在pipeline上执行的命令
+     * @param <T>     返回值类型
+     * @return T
+     */
+    public <T> T execute(Function<Pipeline, Response<T>> command)
+    {
+        CapturingPipeline pipeline = pipelines.get();
+        Response<T> response;
+        Protocol.Command captured;
+        byte[][] args;
+        try
+        {
+            response = command.apply(pipeline);
+            captured = pipeline.capturing.command;
+            args = pipeline.capturing.args;
+        }
+        finally
+        {
+            pipeline.reset();
+        }
+        if (captured == null)
+        {
+            throw new JedisException("pipeline function did not send a command");
+        }
+        response.set(await(send(captured, args)));
+        return response.get();
+    }
+
+    private Object await(CompletableFuture<Object> future)
+    {
+        try
+        {
+            return future.get(config.getSoTimeout(), TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new JedisException("interrupted while waiting for reply", e);
+        }
+        catch (TimeoutException e)
+        {
+            throw new JedisConnectionException("read timed out after " + config.getSoTimeout() + "ms", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new JedisConnectionException(cause);
+        }
+    }
+
+    private void ioLoop()
+    {
+        while (running)
+        {
+            try
+            {
+                selector.select(SELECT_MILLIS);
+                wakeup.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((Channel) key.attachment()).onReady(key);
+                }
+                for (Channel channel : channels)
+                {
+                    channel.flush();
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                LOGGER.error("nio io loop error", e);
+            }
+        }
+        JedisConnectionException closed = new JedisConnectionException("nio client is closed");
+        for (Channel channel : channels)
+        {
+            channel.fail(closed);
+        }
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("close selector fail", e);
+        }
+    }
+
+    /**
+     * 关闭所有连接,未完成的命令以异常结束
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        selector.wakeup();
+        try
+        {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一个连接,除了submitted之外的所有字段只在IO线程中访问
+     */
+    private final class Channel {
+        private final Queue<PendingReply> submitted = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 连接建立后最先发送的AUTH/SELECT
+         */
+        private final Queue<PendingReply> handshake = new ArrayDeque<>();
+
+        /**
+         * 已经写入连接等待回复的命令,回复按这个顺序到达
+         */
+        private final Queue<PendingReply> inflight = new ArrayDeque<>();
+
+        private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+
+        private ByteBuffer readBuffer = ByteBuffer.allocateDirect(bufferSize);
+
+        /**
+         * 比写缓冲区还大的命令单独编码
+         */
+        private ByteBuffer oversized;
+
+        private SocketChannel socket;
+
+        /**
+         * 连接的节点,每次重新连接时取RedisFactory当前的主节点,sentinel切换后连到新的主节点
+         */
+        private HostAndPort node;
+
+        private SelectionKey key;
+
+        private boolean connected;
+
+        private long retryAt;
+
+        private void flush()
+        {
+            if (socket == null)
+            {
+                if (submitted.isEmpty())
+                {
+                    return;
+                }
+                if (System.currentTimeMillis() < retryAt)
+                {
+                    failSubmitted(new JedisConnectionException("redis connection lost, reconnecting"));
+                    return;
+                }
+                connect();
+                return;
+            }
+            if (connected)
+            {
+                try
+                {
+                    write();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    fail(e);
+                }
+            }
+        }
+
+        private void connect()
+        {
+            try
+            {
+                socket = SocketChannel.open();
+                socket.configureBlocking(false);
+                socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                socket.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+                node = RedisFactory.getMaster();
+                boolean done = socket.connect(new InetSocketAddress(node.getHost(), node.getPort()));
+                key = socket.register(selector, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                if (done)
+                {
+                    onConnected();
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                fail(e);
+            }
+        }
+
+        private void onConnected() throws IOException
+        {
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+            if (config.getPassword() != null)
+            {
+                handshake(Protocol.Command.AUTH, config.getPassword());
+            }
+            if (config.getDatabase() != 0)
+            {
+                handshake(Protocol.Command.SELECT, String.valueOf(config.getDatabase()));
+            }
+            if (config.getClientName() != null)
+            {
+                handshake(Protocol.Command.CLIENT, "SETNAME", config.getClientName());
+            }
+            write();
+        }
+
+        private void handshake(Protocol.Command command, String... args)
+        {
+            byte[][] raw = new byte[args.length][];
+            for (int i = 0; i < args.length; i++)
+            {
+                raw[i] = SafeEncoder.encode(args[i]);
+            }
+            PendingReply pending = new PendingReply(command.raw, raw);
+            pending.future.whenComplete((reply, error) -> {
+                if (error != null)
+                {
+                    LOGGER.error("redis {} fail on nio connection", command, error);
+                }
+            });
+            handshake.add(pending);
+        }
+
+        private void onReady(SelectionKey readyKey)
+        {
+            try
+            {
+                if (readyKey.isConnectable())
+                {
+                    socket.finishConnect();
+                    onConnected();
+                }
+                if (readyKey.isValid() && readyKey.isReadable())
+                {
+                    read();
+                }
+                if (readyKey.isValid() && readyKey.isWritable())
+                {
+                    write();
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                fail(e);
+            }
+        }
+
+        private PendingReply peek()
+        {
+            PendingReply pending = handshake.peek();
+            return pending != null ? pending : submitted.peek();
+        }
+
+        private void poll()
+        {
+            if (handshake.poll() == null)
+            {
+                submitted.poll();
+            }
+        }
+
+        /**
+         * 把等待发送的命令编码进写缓冲区,放不下时停止
+         */
+        private void fill()
+        {
+            PendingReply pending;
+            while (oversized == null && (pending = peek()) != null)
+            {
+                int length = RespCodec.encodedLength(pending.command, pending.args);
+                if (length > writeBuffer.remaining())
+                {
+                    if (writeBuffer.position() == 0)
+                    {
+                        oversized = ByteBuffer.allocate(length);
+                        RespCodec.encode(oversized, pending.command, pending.args);
+                        oversized.flip();
+                        poll();
+                        inflight.add(pending);
+                    }
+                    return;
+                }
+                RespCodec.encode(writeBuffer, pending.command, pending.args);
+                poll();
+                inflight.add(pending);
+            }
+        }
+
+        private void write() throws IOException
+        {
+            while (true)
+            {
+                fill();
+                writeBuffer.flip();
+                socket.write(writeBuffer);
+                boolean drained = !writeBuffer.hasRemaining();
+                writeBuffer.compact();
+                if (drained && oversized != null)
+                {
+                    socket.write(oversized);
+                    if (!oversized.hasRemaining())
+                    {
+                        oversized = null;
+                    }
+                }
+                if (!drained || oversized != null)
+                {
+                    // 内核发送缓冲区已满,等待可写
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (peek() == null)
+                {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        private void read() throws IOException
+        {
+            if (socket.read(readBuffer) < 0)
+            {
+                throw new EOFException("redis closed the connection");
+            }
+            readBuffer.flip();
+            while (readBuffer.hasRemaining())
+            {
+                int start = readBuffer.position();
+                Object reply = RespCodec.decode(readBuffer);
+                if (reply == RespCodec.INCOMPLETE)
+                {
+                    readBuffer.position(start);
+                    break;
+                }
+                PendingReply pending = inflight.poll();
+                if (pending == null)
+                {
+                    throw new JedisConnectionException("unexpected reply without pending command");
+                }
+                pending.future.complete(reply);
+            }
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining())
+            {
+                // 一个回复比读缓冲区还大
+                ByteBuffer larger = ByteBuffer.allocateDirect(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        /**
+         * 连接出错,已经发送和等待发送的命令都以异常结束,下一次有命令时重新连接
+         */
+        private void fail(Throwable cause)
+        {
+            if (running && socket != null)
+            {
+                LOGGER.warn("nio connection to {} failed, {} commands in flight", node, inflight.size(), cause);
+            }
+            JedisConnectionException error = cause instanceof JedisConnectionException
+                    ? (JedisConnectionException) cause : new JedisConnectionException(cause);
+            if (socket != null)
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.debug("close socket fail", e);
+                }
+            }
+            socket = null;
+            key = null;
+            connected = false;
+            retryAt = System.currentTimeMillis() + RECONNECT_MILLIS;
+            oversized = null;
+            writeBuffer.clear();
+            readBuffer.clear();
+            PendingReply pending;
+            while ((pending = inflight.poll()) != null)
+            {
+                pending.future.completeExceptionally(error);
+            }
+            handshake.clear();
+            failSubmitted(error);
+        }
+
+        private void failSubmitted(JedisConnectionException error)
+        {
+            PendingReply pending;
+            while ((pending = submitted.poll()) != null)
+            {
+                pending.future.completeExceptionally(error);
+            }
+        }
+    }
+
+    private static final class PendingReply {
+        private final byte[] command;
+
+        private final byte[][] args;
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        private PendingReply(byte[] command, byte[][] args)
+        {
+            this.command = command;
+            this.args = args;
+        }
+    }
+
+    /**
+     * 记录jedis Client发出的命令而不是写入socket
+     */
+    private static final class CapturingClient extends Client {
+        private Protocol.Command command;
+
+        private byte[][] args;
+
+        @Override
+        protected Connection sendCommand(Protocol.Command cmd, byte[]... args)
+        {
+            if (this.command != null)
+            {
+                throw new JedisException("only one command can be sent per call");
+            }
+            this.command = cmd;
+            this.args = args;
+            return this;
+        }
+    }
+
+    private static final class CapturingPipeline extends Pipeline {
+        private final CapturingClient capturing = new CapturingClient();
+
+        private CapturingPipeline()
+        {
+            // 多key命令直接使用MultiKeyPipelineBase中的client
+            setClient(capturing);
+        }
+
+        @Override
+        protected Client getClient(String key)
+        {
+            return capturing;
+        }
+
+        @Override
+        protected Client getClient(byte[] key)
+        {
+            return capturing;
+        }
+
+        private void reset()
+        {
+            capturing.command = null;
+            capturing.args = null;
+            clean();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.URL;
@@ -42,12 +43,18 @@ public class PropertiesUtils {
                 LOGGER.info("read file from jar:{}", newPath);
                 in = clazz.getClassLoader().getResourceAsStream(newPath);
             }
-            else
+            else if (new File(prefix + filePath).exists())
             {
                 newPath = prefix + filePath;
                 LOGGER.info("read file from dir:{}", newPath);
                 in = new FileInputStream(newPath);
             }
+            else
+            {
+                //根路径下没有该文件时(例如测试时根路径是test-classes)从classpath中读取
+                LOGGER.info("read file from classpath:{}", newPath);
+                in = clazz.getClassLoader().getResourceAsStream(newPath);
+            }
             properties.load(in);
             LOGGER.info("PropertiesUtils.getFile end! filePath is:{}", newPath);
         }
@@ -0,0 +1,834 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * redis集群的连接,按key的slot(CRC16,只计算{hash tag}中的部分)把命令发到负责的主节点,
+ * 每个主节点一个连接池,slot到连接池的映射保存在AtomicReferenceArray中,读取不加锁;
+ * 收到MOVED时只更新这一个slot,在后台重新读取CLUSTER SLOTS,
+ * 同时只有一个线程刷新,其他线程不等待;
+ * 收到ASK时在目标节点先发ASKING再执行一次,不更新映射
+ * 通过sharded创建时连接的是多个独立的redis,slot由一致性哈希环分配给节点,不会有重定向,
+ * 多key命令的拆分和按节点并行执行和集群相同
+ */
+public class RedisCluster implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(RedisCluster.class);
+
+    public static final int SLOTS = 16384;
+
+    private final RedisConfig config;
+
+    private final Set<HostAndPort> seeds;
+
+    private final int maxRedirects;
+
+    private final AtomicReferenceArray<JedisPool> slots = new AtomicReferenceArray<>(SLOTS);
+
+    private final ConcurrentHashMap<HostAndPort, JedisPool> pools = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 客户端分片时slot的分配,为null时是redis集群
+     */
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * 分片增加节点迁移key期间,slot -> 迁移前负责这个slot的节点
+     */
+    private final AtomicReferenceArray<JedisPool> migrating = new AtomicReferenceArray<>(SLOTS);
+
+    /**
+     * @param config       连接池大小,超时和密码,每个节点一个这样的连接池
+     * @param nodes        初始节点,host:port以逗号分隔,只用于读取拓扑,不需要列出所有节点
+     * @param maxRedirects 一条命令最多跟随MOVED/ASK或者连接失败后重试的次数
+     * @param parallelism  多key命令按节点拆开后同时执行的节点数
+     */
+    public RedisCluster(RedisConfig config, String nodes, int maxRedirects, int parallelism)
+    {
+        this(config, parseNodes(nodes), null, maxRedirects, parallelism);
+    }
+
+    private RedisCluster(RedisConfig config, Set<HostAndPort> seeds, ConsistentHashRing ring, int maxRedirects,
+            int parallelism)
+    {
+        if (maxRedirects < 0 || parallelism <= 0)
+        {
+            throw new IllegalArgumentException("maxRedirects must not be negative and parallelism must be positive");
+        }
+        this.config = config;
+        this.seeds = seeds;
+        this.ring = ring;
+        this.maxRedirects = maxRedirects;
+        AtomicInteger threads = new AtomicInteger();
+        // 队列满时由提交方自己执行,避免无限堆积
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4), r -> {
+                    Thread thread = new Thread(r, "redis-cluster-" + threads.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        if (!refresh())
+        {
+            close();
+            throw new JedisClusterException("no reachable cluster node in " + seeds);
+        }
+        LOGGER.info("redis {} connected: {} masters", ring == null ? "cluster" : "shards", masters().size());
+    }
+
+    /**
+     * 客户端分片: 多个独立的redis按一致性哈希分配slot,节点不可用时不重试
+     *
+     * @param config       连接池大小,超时和密码,每个节点一个这样的连接池
+     * @param nodes        所有节点,host:port以逗号分隔
+     * @param virtualNodes 每个节点在哈希环上的点数
+     * @param parallelism  多key命令按节点拆开后同时执行的节点数
+     * @return RedisCluster
+     */
+    public static RedisCluster sharded(RedisConfig config, String nodes, int virtualNodes, int parallelism)
+    {
+        Set<HostAndPort> seeds = parseNodes(nodes);
+        return new RedisCluster(config, seeds, new ConsistentHashRing(seeds, virtualNodes), 0, parallelism);
+    }
+
+    private static Set<HostAndPort> parseNodes(String nodes)
+    {
+        Set<HostAndPort> result = new LinkedHashSet<>();
+        for (String node : nodes.split(","))
+        {
+            String trimmed = node.trim();
+            if (trimmed.isEmpty())
+            {
+                continue;
+            }
+            int colon = trimmed.lastIndexOf(':');
+            if (colon <= 0)
+            {
+                throw new IllegalArgumentException("cluster node must be host:port: " + trimmed);
+            }
+            result.add(new HostAndPort(trimmed.substring(0, colon), Integer.parseInt(trimmed.substring(colon + 1))));
+        }
+        if (result.isEmpty())
+        {
+            throw new IllegalArgumentException("redis nodes must not be empty");
+        }
+        return result;
+    }
+
+    /**
+     * key所在的slot,key中有{hash tag}时只计算tag,tag相同的key在同一个slot
+     *
+     * @param key 键
+     * @return 0~16383
+     */
+    public static int slot(String key)
+    {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * key所在的slot
+     *
+     * @param key 键
+     * @return 0~16383
+     */
+    public static int slot(byte[] key)
+    {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    /**
+     * 按slot给多key命令的参数分组,每stride个参数的第一个是key,例如MSET的stride是2
+     * 同一组内保持原来的顺序
+     *
+     * @param args   参数
+     * @param stride 每个key占的参数个数
+     * @param slotOf 计算key的slot
+     * @param <K>    参数类型
+     * @return slot -> 参数
+     */
+    public static <K> Map<Integer, List<K>> groupBySlot(K[] args, int stride, ToIntFunction<K> slotOf)
+    {
+        Map<Integer, List<K>> groups = new LinkedHashMap<>();
+        for (int i = 0; i + stride <= args.length; i += stride)
+        {
+            List<K> group = groups.computeIfAbsent(slotOf.applyAsInt(args[i]), s -> new ArrayList<>());
+            for (int j = i; j < i + stride; j++)
+            {
+                group.add(args[j]);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * 按keys原来的顺序合并每个slot返回的列表,每个slot的列表和分组时这个slot的key一一对应
+     *
+     * @param keys    键
+     * @param slotOf  计算key的slot
+     * @param replies slot -> 返回的列表
+     * @param <K>     键类型
+     * @param <V>     值类型
+     * @return 和keys一一对应的值
+     */
+    public static <K, V> List<V> mergeBySlot(K[] keys, ToIntFunction<K> slotOf, Map<Integer, List<V>> replies)
+    {
+        Map<Integer, Iterator<V>> iterators = new HashMap<>(replies.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, List<V>> entry : replies.entrySet())
+        {
+            iterators.put(entry.getKey(), entry.getValue().iterator());
+        }
+        List<V> values = new ArrayList<>(keys.length);
+        for (K key : keys)
+        {
+            values.add(iterators.get(slotOf.applyAsInt(key)).next());
+        }
+        return values;
+    }
+
+    /**
+     * 在负责slot的主节点上执行,跟随MOVED/ASK,连接失败时刷新拓扑后重试,最多maxRedirects次
+     *
+     * @param slot   slot
+     * @param action 在连接上执行的操作
+     * @param <T>    返回值类型
+     * @return 操作的返回值
+     */
+    public <T> T execute(int slot, Function<Jedis, T> action)
+    {
+        JedisPool pool = poolOf(slot);
+        boolean asking = false;
+        for (int attempt = 0; ; attempt++)
+        {
+            Jedis jedis = null;
+            try
+            {
+                jedis = pool.getResource();
+                if (asking)
+                {
+                    jedis.asking();
+                }
+                return action.apply(jedis);
+            }
+            catch (JedisRedirectionException e)
+            {
+                if (attempt >= maxRedirects)
+                {
+                    throw new JedisClusterMaxRedirectionsException("too many cluster redirections: " + e.getMessage());
+                }
+                pool = pool(e.getTargetNode());
+                asking = e instanceof JedisAskDataException;
+                if (!asking)
+                {
+                    slots.set(e.getSlot(), pool);
+                    refreshAsync();
+                }
+            }
+            catch (JedisConnectionException e)
+            {
+                if (attempt >= maxRedirects)
+                {
+                    throw e;
+                }
+                LOGGER.warn("cluster node of slot {} is unreachable, refresh topology and retry", slot, e);
+                refresh();
+                pool = poolOf(slot);
+                asking = false;
+            }
+            finally
+            {
+                if (jedis != null)
+                {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 和execute相同,用于只读命令: 分片迁移期间在新节点上没有读到时再读一次迁移前的节点
+     * 返回null,空集合或空Map都认为没有读到
+     *
+     * @param slot   slot
+     * @param action 在连接上执行的只读操作
+     * @param <T>    返回值类型
+     * @return 操作的返回值
+     */
+    public <T> T read(int slot, Function<Jedis, T> action)
+    {
+        T result = execute(slot, action);
+        JedisPool source = migrating.get(slot);
+        if (source == null || !missing(result))
+        {
+            return result;
+        }
+        Jedis jedis = source.getResource();
+        try
+        {
+            return action.apply(jedis);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    private static boolean missing(Object result)
+    {
+        return result == null || result instanceof Collection && ((Collection<?>) result).isEmpty()
+                || result instanceof Map && ((Map<?, ?>) result).isEmpty();
+    }
+
+    /**
+     * 按slot分组执行多key命令: 同一个节点的slot在一个pipeline中发送,不同节点并行执行,
+     * pipeline中收到MOVED/ASK的slot再通过execute单独执行
+     *
+     * @param groups    slot -> 这个slot的参数
+     * @param pipelined 在pipeline上执行一组
+     * @param action    在连接上执行一组
+     * @param <A>       参数类型
+     * @param <T>       返回值类型
+     * @return slot -> 返回值
+     */
+    public <A, T> Map<Integer, T> executeBySlot(Map<Integer, A> groups, BiFunction<Pipeline, A, Response<T>> pipelined,
+            BiFunction<Jedis, A, T> action)
+    {
+        if (groups.size() == 1)
+        {
+            Map.Entry<Integer, A> only = groups.entrySet().iterator().next();
+            return Collections.singletonMap(only.getKey(),
+                    execute(only.getKey(), jedis -> action.apply(jedis, only.getValue())));
+        }
+        Map<JedisPool, List<Integer>> byNode = new IdentityHashMap<>();
+        for (Integer slot : groups.keySet())
+        {
+            byNode.computeIfAbsent(poolOf(slot), p -> new ArrayList<>()).add(slot);
+        }
+        List<Supplier<Map<Integer, T>>> tasks = new ArrayList<>(byNode.size());
+        for (Map.Entry<JedisPool, List<Integer>> node : byNode.entrySet())
+        {
+            tasks.add(() -> executeOnNode(node.getKey(), node.getValue(), groups, pipelined, action));
+        }
+        Map<Integer, T> results = new HashMap<>(groups.size() * 4 / 3 + 1);
+        for (Map<Integer, T> result : parallel(tasks))
+        {
+            results.putAll(result);
+        }
+        return results;
+    }
+
+    private <A, T> Map<Integer, T> executeOnNode(JedisPool pool, List<Integer> nodeSlots, Map<Integer, A> groups,
+            BiFunction<Pipeline, A, Response<T>> pipelined, BiFunction<Jedis, A, T> action)
+    {
+        Map<Integer, Response<T>> responses = new LinkedHashMap<>(nodeSlots.size() * 4 / 3 + 1);
+        try
+        {
+            Jedis jedis = pool.getResource();
+            try
+            {
+                Pipeline pipeline = jedis.pipelined();
+                for (Integer slot : nodeSlots)
+                {
+                    responses.put(slot, pipelined.apply(pipeline, groups.get(slot)));
+                }
+                pipeline.sync();
+            }
+            finally
+            {
+                jedis.close();
+            }
+        }
+        catch (JedisConnectionException e)
+        {
+            // 节点不可用时每个slot由execute刷新拓扑后重试
+            responses.clear();
+        }
+        Map<Integer, T> results = new HashMap<>(nodeSlots.size() * 4 / 3 + 1);
+        for (Integer slot : nodeSlots)
+        {
+            Response<T> response = responses.get(slot);
+            try
+            {
+                if (response != null)
+                {
+                    results.put(slot, response.get());
+                    continue;
+                }
+            }
+            catch (JedisRedirectionException e)
+            {
+                // 交给execute跟随重定向
+            }
+            A args = groups.get(slot);
+            results.put(slot, execute(slot, jedis -> action.apply(jedis, args)));
+        }
+        return results;
+    }
+
+    /**
+     * 在每个主节点上执行没有key的命令,例如FLUSHALL,KEYS,不同节点并行执行
+     *
+     * @param action 在连接上执行的操作
+     * @param <T>    返回值类型
+     * @return 每个主节点的返回值
+     */
+    public <T> List<T> executeOnMasters(Function<Jedis, T> action)
+    {
+        List<Supplier<T>> tasks = new ArrayList<>();
+        for (HostAndPort node : masters())
+        {
+            tasks.add(() -> {
+                Jedis jedis = getResource(node);
+                try
+                {
+                    return action.apply(jedis);
+                }
+                finally
+                {
+                    jedis.close();
+                }
+            });
+        }
+        return parallel(tasks);
+    }
+
+    /**
+     * 除最后一个以外的任务提交到线程池,最后一个在当前线程执行
+     */
+    private <T> List<T> parallel(List<Supplier<T>> tasks)
+    {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size() - 1; i++)
+        {
+            futures.add(CompletableFuture.supplyAsync(tasks.get(i), executor));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        T last = tasks.isEmpty() ? null : tasks.get(tasks.size() - 1).get();
+        try
+        {
+            for (CompletableFuture<T> future : futures)
+            {
+                results.add(future.join());
+            }
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new JedisException(e.getCause());
+        }
+        if (!tasks.isEmpty())
+        {
+            results.add(last);
+        }
+        return results;
+    }
+
+    /**
+     * 按当前的拓扑把slot分到负责的主节点,同一组的slot可以通过getResource(组内任一slot)在一个连接上发送
+     *
+     * @param slots slot
+     * @return 每个主节点负责的slot
+     */
+    public List<List<Integer>> slotsByNode(Collection<Integer> slots)
+    {
+        Map<JedisPool, List<Integer>> byNode = new IdentityHashMap<>();
+        for (Integer slot : slots)
+        {
+            byNode.computeIfAbsent(poolOf(slot), p -> new ArrayList<>()).add(slot);
+        }
+        return new ArrayList<>(byNode.values());
+    }
+
+    /**
+     * 从负责slot的主节点借一个连接,不跟随重定向,用于SCAN等需要自己控制连接的场景
+     *
+     * @param slot slot
+     * @return Jedis
+     */
+    public Jedis getResource(int slot)
+    {
+        return poolOf(slot).getResource();
+    }
+
+    /**
+     * 从指定节点借一个连接
+     *
+     * @param node 节点
+     * @return Jedis
+     */
+    public Jedis getResource(HostAndPort node)
+    {
+        return pool(node).getResource();
+    }
+
+    /**
+     * 当前所有的主节点,按负责的第一个slot排序
+     *
+     * @return List
+     */
+    public List<HostAndPort> masters()
+    {
+        Map<JedisPool, HostAndPort> nodes = new IdentityHashMap<>();
+        for (Map.Entry<HostAndPort, JedisPool> entry : pools.entrySet())
+        {
+            nodes.put(entry.getValue(), entry.getKey());
+        }
+        Set<JedisPool> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<HostAndPort> result = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            JedisPool pool = slots.get(slot);
+            if (pool != null && seen.add(pool) && nodes.containsKey(pool))
+            {
+                result.add(nodes.get(pool));
+            }
+        }
+        return result;
+    }
+
+    private JedisPool poolOf(int slot)
+    {
+        JedisPool pool = slots.get(slot);
+        if (pool == null)
+        {
+            refresh();
+            pool = slots.get(slot);
+            if (pool == null)
+            {
+                throw new JedisClusterException("slot " + slot + " is not served by any node");
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 集群只有0号库,分片时使用配置的库
+     */
+    private JedisPool pool(HostAndPort node)
+    {
+        return pools.computeIfAbsent(node, n -> new JedisPool(config.toPoolConfig(), n.getHost(), n.getPort(),
+                config.getConnectionTimeout(), config.getSoTimeout(), config.getPassword(),
+                ring == null ? 0 : config.getDatabase(), config.getClientName(), false, null, null, null));
+    }
+
+    /**
+     * 在后台刷新拓扑,已经在刷新时忽略
+     */
+    public void refreshAsync()
+    {
+        if (!refreshing.get())
+        {
+            executor.execute(this::refresh);
+        }
+    }
+
+    /**
+     * 从已知的节点读取CLUSTER SLOTS并更新slot的映射,其他线程正在刷新时直接返回
+     *
+     * @return 读取成功或者其他线程正在刷新时返回true
+     */
+    public boolean refresh()
+    {
+        ConsistentHashRing current = ring;
+        if (current != null)
+        {
+            apply(current);
+            return true;
+        }
+        if (!refreshing.compareAndSet(false, true))
+        {
+            return true;
+        }
+        try
+        {
+            Set<HostAndPort> candidates = new LinkedHashSet<>(pools.keySet());
+            candidates.addAll(seeds);
+            for (HostAndPort node : candidates)
+            {
+                try
+                {
+                    List<Object> clusterSlots;
+                    Jedis jedis = pool(node).getResource();
+                    try
+                    {
+                        clusterSlots = jedis.clusterSlots();
+                    }
+                    finally
+                    {
+                        jedis.close();
+                    }
+                    apply(clusterSlots, node.getHost());
+                    return true;
+                }
+                catch (JedisException e)
+                {
+                    LOGGER.warn("read cluster slots from {} fail", node, e);
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * CLUSTER SLOTS的每一项: [开始slot, 结束slot, [主节点host, port, id], [从节点...]...]
+     * 不再负责任何slot的节点的连接池在替换后关闭
+     */
+    @SuppressWarnings("unchecked")
+    private void apply(List<Object> clusterSlots, String fallbackHost)
+    {
+        JedisPool[] assigned = new JedisPool[SLOTS];
+        for (Object entry : clusterSlots)
+        {
+            List<Object> range = (List<Object>) entry;
+            List<Object> master = (List<Object>) range.get(2);
+            String host = SafeEncoder.encode((byte[]) master.get(0));
+            HostAndPort node = new HostAndPort(host.isEmpty() ? fallbackHost : host,
+                    ((Long) master.get(1)).intValue());
+            JedisPool pool = pool(node);
+            for (int slot = ((Long) range.get(0)).intValue(); slot <= ((Long) range.get(1)).intValue(); slot++)
+            {
+                assigned[slot] = pool;
+            }
+        }
+        apply(assigned);
+    }
+
+    private void apply(ConsistentHashRing current)
+    {
+        JedisPool[] assigned = new JedisPool[SLOTS];
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            assigned[slot] = pool(current.node(slot));
+        }
+        apply(assigned);
+    }
+
+    private void apply(JedisPool[] assigned)
+    {
+        Set<JedisPool> used = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            slots.set(slot, assigned[slot]);
+            if (assigned[slot] != null)
+            {
+                used.add(assigned[slot]);
+            }
+        }
+        for (Map.Entry<HostAndPort, JedisPool> entry : pools.entrySet())
+        {
+            if (!used.contains(entry.getValue()) && pools.remove(entry.getKey(), entry.getValue()))
+            {
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /**
+     * 分片时增加一个节点并在线迁移key
+     * 先切换到新的哈希环,之后的命令都发到新的负责节点,移动的slot在迁移期间读不到时再读旧节点;
+     * 然后对每个旧节点SCAN,每批中属于新节点的key用一条MIGRATE ... KEYS移过去,
+     * 新节点上已经有的key是切换后写入的,保留新节点的值并删除旧节点上的key
+     * 迁移期间对还没有移动的key做INCR,LPUSH等修改会从空值开始,建议在写入较少时执行
+     *
+     * @param node      新节点
+     * @param batchSize 每次SCAN和MIGRATE的key数
+     * @return 迁移的key数
+     */
+    public synchronized long addShard(HostAndPort node, int batchSize)
+    {
+        ConsistentHashRing before = ring;
+        if (before == null)
+        {
+            throw new UnsupportedOperationException("addShard is only supported by sharded mode");
+        }
+        ConsistentHashRing after = before.with(node);
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            HostAndPort owner = before.node(slot);
+            if (!owner.equals(after.node(slot)))
+            {
+                migrating.set(slot, pool(owner));
+            }
+        }
+        ring = after;
+        apply(after);
+        LOGGER.info("redis shard {} added, migrating keys", node);
+        long moved = 0;
+        try
+        {
+            for (HostAndPort source : before.nodes())
+            {
+                moved += migrate(source, after, batchSize);
+            }
+        }
+        finally
+        {
+            for (int slot = 0; slot < SLOTS; slot++)
+            {
+                migrating.set(slot, null);
+            }
+        }
+        LOGGER.info("redis shard {} added, {} keys migrated", node, moved);
+        return moved;
+    }
+
+    private long migrate(HostAndPort source, ConsistentHashRing target, int batchSize)
+    {
+        long moved = 0;
+        CommandClient client = new CommandClient(config, source);
+        try
+        {
+            client.connect();
+            byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+            do
+            {
+                List<Object> page = client.command(Protocol.Command.SCAN, cursor, Protocol.Keyword.COUNT.raw,
+                        Protocol.toByteArray(batchSize)).getObjectMultiBulkReply();
+                cursor = (byte[]) page.get(0);
+                Map<HostAndPort, List<byte[]>> byOwner = new HashMap<>();
+                for (Object key : (List<?>) page.get(1))
+                {
+                    HostAndPort owner = target.node(slot((byte[]) key));
+                    if (!owner.equals(source))
+                    {
+                        byOwner.computeIfAbsent(owner, o -> new ArrayList<>()).add((byte[]) key);
+                    }
+                }
+                for (Map.Entry<HostAndPort, List<byte[]>> entry : byOwner.entrySet())
+                {
+                    moved += migrate(client, entry.getKey(), entry.getValue());
+                }
+            }
+            while (!Arrays.equals(cursor, ScanParams.SCAN_POINTER_START_BINARY));
+        }
+        finally
+        {
+            client.close();
+        }
+        return moved;
+    }
+
+    /**
+     * MIGRATE host port "" db timeout [AUTH password] KEYS key...
+     * 有key在目标节点上已经存在时整条命令返回BUSYKEY,其他key仍然会移动,剩下的key逐个处理
+     */
+    private int migrate(CommandClient client, HostAndPort owner, List<byte[]> keys)
+    {
+        try
+        {
+            client.command(Protocol.Command.MIGRATE, migrateArgs(owner, keys)).getStatusCodeReply();
+            return keys.size();
+        }
+        catch (JedisDataException e)
+        {
+            if (!e.getMessage().startsWith("BUSYKEY"))
+            {
+                throw e;
+            }
+        }
+        int moved = 0;
+        for (byte[] key : keys)
+        {
+            try
+            {
+                if ("OK".equals(client.command(Protocol.Command.MIGRATE,
+                        migrateArgs(owner, Collections.singletonList(key))).getStatusCodeReply()))
+                {
+                    moved++;
+                }
+            }
+            catch (JedisDataException e)
+            {
+                if (!e.getMessage().startsWith("BUSYKEY"))
+                {
+                    throw e;
+                }
+                client.command(Protocol.Command.DEL, key).getIntegerReply();
+            }
+        }
+        return moved;
+    }
+
+    private byte[][] migrateArgs(HostAndPort owner, List<byte[]> keys)
+    {
+        List<byte[]> args = new ArrayList<>(keys.size() + 8);
+        args.add(SafeEncoder.encode(owner.getHost()));
+        args.add(Protocol.toByteArray(owner.getPort()));
+        args.add(new byte[0]);
+        args.add(Protocol.toByteArray(config.getDatabase()));
+        args.add(Protocol.toByteArray(config.getSoTimeout()));
+        if (config.getPassword() != null)
+        {
+            args.add(SafeEncoder.encode("AUTH"));
+            args.add(SafeEncoder.encode(config.getPassword()));
+        }
+        args.add(SafeEncoder.encode("KEYS"));
+        args.addAll(keys);
+        return args.toArray(new byte[0][]);
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+        for (JedisPool pool : pools.values())
+        {
+            pool.close();
+        }
+        pools.clear();
+    }
+}
@@ -0,0 +1,276 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * redis连接配置,从application.properties中的redis.*读取,
+ * 同名的系统属性(-Dredis.host=...)优先于配置文件
+ */
+public class RedisConfig {
+    public static final String CONFIG_FILE = "application.properties";
+
+    /**
+     * redis连接地址
+     */
+    private final String host;
+    /**
+     * redis端口
+     */
+    private final int port;
+    /**
+     * 密码,为空时不认证
+     */
+    private final String password;
+    /**
+     * 数据库编号
+     */
+    private final int database;
+    /**
+     * 连接名称,为空时不设置
+     */
+    private final String clientName;
+    /**
+     * 建立连接的超时时间
+     */
+    private final int connectionTimeout;
+    /**
+     * 读写超时时间
+     */
+    private final int soTimeout;
+    /**
+     * 最大连接数量
+     */
+    private final int maxTotal;
+    /**
+     * 最大空闲连接数量
+     */
+    private final int maxIdle;
+    /**
+     * 最小空闲连接数量
+     */
+    private final int minIdle;
+    /**
+     * 获取连接的最大等待时间
+     */
+    private final long maxWaitMillis;
+    /**
+     * 借出连接时是否PING检测,会给每条命令多加一次往返,默认关闭
+     */
+    private final boolean testOnBorrow;
+    /**
+     * 空闲时由驱逐线程检测连接
+     */
+    private final boolean testWhileIdle;
+    /**
+     * 驱逐线程的运行间隔
+     */
+    private final long timeBetweenEvictionRunsMillis;
+    /**
+     * 连接空闲多久后可以被驱逐
+     */
+    private final long minEvictableIdleTimeMillis;
+    /**
+     * 每次驱逐检测的连接数,-1表示全部空闲连接
+     */
+    private final int numTestsPerEvictionRun;
+    /**
+     * 重新读取配置的间隔秒数,0表示不自动重新读取
+     */
+    private final int reloadSeconds;
+    /**
+     * sentinel中主节点的名称,不为空时通过sentinel查找主节点,忽略host和port
+     */
+    private final String sentinelMaster;
+    /**
+     * sentinel的地址,host:port以逗号分隔
+     */
+    private final String sentinelNodes;
+    /**
+     * 切换主节点时新连接池预先建立的连接数
+     */
+    private final int failoverWarmup;
+
+    RedisConfig(Properties properties)
+    {
+        host = get(properties, "redis.host", "localhost");
+        port = getInt(properties, "redis.port", 6379);
+        password = StringUtils.trimToNull(get(properties, "redis.pass", ""));
+        database = getInt(properties, "redis.database", 0);
+        clientName = StringUtils.trimToNull(get(properties, "redis.clientName", ""));
+        connectionTimeout = getInt(properties, "redis.connectionTimeout", 2000);
+        soTimeout = getInt(properties, "redis.soTimeout", 10000);
+        maxTotal = getInt(properties, "redis.maxTotal", 600);
+        maxIdle = getInt(properties, "redis.maxIdle", 300);
+        minIdle = getInt(properties, "redis.minIdle", 0);
+        maxWaitMillis = getLong(properties, "redis.maxWaitMillis", 1000);
+        testOnBorrow = Boolean.parseBoolean(get(properties, "redis.testOnBorrow", "false"));
+        testWhileIdle = Boolean.parseBoolean(get(properties, "redis.testWhileIdle", "true"));
+        timeBetweenEvictionRunsMillis = getLong(properties, "redis.timeBetweenEvictionRunsMillis", 30000);
+        minEvictableIdleTimeMillis = getLong(properties, "redis.minEvictableIdleTimeMillis", 60000);
+        numTestsPerEvictionRun = getInt(properties, "redis.numTestsPerEvictionRun", -1);
+        reloadSeconds = getInt(properties, "redis.config.reloadSeconds", 0);
+        sentinelMaster = StringUtils.trimToNull(get(properties, "redis.sentinel.master", ""));
+        sentinelNodes = get(properties, "redis.sentinel.nodes", "");
+        failoverWarmup = getInt(properties, "redis.sentinel.warmup", 8);
+    }
+
+    /**
+     * 读取配置文件
+     *
+     * @return RedisConfig
+     */
+    public static RedisConfig load()
+    {
+        return new RedisConfig(PropertiesUtils.getFile(CONFIG_FILE));
+    }
+
+    /**
+     * 根据配置生成连接池参数
+     *
+     * @return JedisPoolConfig
+     */
+    public JedisPoolConfig toPoolConfig()
+    {
+        JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
+        jedisPoolConfig.setMaxTotal(maxTotal);
+        jedisPoolConfig.setMaxIdle(maxIdle);
+        jedisPoolConfig.setMinIdle(minIdle);
+        jedisPoolConfig.setMaxWaitMillis(maxWaitMillis);
+        jedisPoolConfig.setTestOnBorrow(testOnBorrow);
+        jedisPoolConfig.setTestWhileIdle(testWhileIdle);
+        jedisPoolConfig.setTimeBetweenEvictionRunsMillis(timeBetweenEvictionRunsMillis);
+        jedisPoolConfig.setMinEvictableIdleTimeMillis(minEvictableIdleTimeMillis);
+        jedisPoolConfig.setNumTestsPerEvictionRun(numTestsPerEvictionRun);
+        return jedisPoolConfig;
+    }
+
+    /**
+     * 连接相关的配置(地址,认证,超时,检测方式)是否相同,不同时需要重建连接池,
+     * 相同时只需要调整连接池大小
+     *
+     * @param other 另一份配置
+     * @return boolean
+     */
+    public boolean sameConnection(RedisConfig other)
+    {
+        return host.equals(other.host) && port == other.port && Objects.equals(password, other.password)
+                && database == other.database && Objects.equals(clientName, other.clientName)
+                && connectionTimeout == other.connectionTimeout && soTimeout == other.soTimeout
+                && testOnBorrow == other.testOnBorrow && testWhileIdle == other.testWhileIdle
+                && timeBetweenEvictionRunsMillis == other.timeBetweenEvictionRunsMillis
+                && minEvictableIdleTimeMillis == other.minEvictableIdleTimeMillis
+                && numTestsPerEvictionRun == other.numTestsPerEvictionRun
+                && Objects.equals(sentinelMaster, other.sentinelMaster) && sentinelNodes.equals(other.sentinelNodes);
+    }
+
+    static String get(Properties properties, String key, String defaultValue)
+    {
+        String value = System.getProperty(key);
+        if (value == null)
+        {
+            value = PropertiesUtils.getProperty(properties, key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    static int getInt(Properties properties, String key, int defaultValue)
+    {
+        String value = get(properties, key, null);
+        return StringUtils.isEmpty(value) ? defaultValue : Integer.parseInt(value);
+    }
+
+    static long getLong(Properties properties, String key, long defaultValue)
+    {
+        String value = get(properties, key, null);
+        return StringUtils.isEmpty(value) ? defaultValue : Long.parseLong(value);
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    public String getPassword()
+    {
+        return password;
+    }
+
+    public int getDatabase()
+    {
+        return database;
+    }
+
+    public String getClientName()
+    {
+        return clientName;
+    }
+
+    public int getConnectionTimeout()
+    {
+        return connectionTimeout;
+    }
+
+    public int getSoTimeout()
+    {
+        return soTimeout;
+    }
+
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    public int getMaxIdle()
+    {
+        return maxIdle;
+    }
+
+    public int getMinIdle()
+    {
+        return minIdle;
+    }
+
+    public long getMaxWaitMillis()
+    {
+        return maxWaitMillis;
+    }
+
+    public int getReloadSeconds()
+    {
+        return reloadSeconds;
+    }
+
+    public String getSentinelMaster()
+    {
+        return sentinelMaster;
+    }
+
+    public String getSentinelNodes()
+    {
+        return sentinelNodes;
+    }
+
+    public int getFailoverWarmup()
+    {
+        return failoverWarmup;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RedisConfig{host=" + host + ", port=" + port + ", sentinelMaster=" + sentinelMaster
+                + ", sentinelNodes=" + sentinelNodes + ", database=" + database
+                + ", maxTotal=" + maxTotal + ", maxIdle=" + maxIdle + ", minIdle=" + minIdle
+                + ", maxWaitMillis=" + maxWaitMillis + ", connectionTimeout=" + connectionTimeout
+                + ", soTimeout=" + soTimeout + "}";
+    }
+}
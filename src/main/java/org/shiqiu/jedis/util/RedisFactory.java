@@ -1,63 +1,259 @@
 package org.shiqiu.jedis.util;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
 
 public class RedisFactory {
-    private static JedisPool jedisPool;
+    private static final Logger LOGGER = LogManager.getLogger(RedisFactory.class);
+
+    private static volatile ResizableJedisPool jedisPool;
+
+    private static volatile RedisConfig redisConfig;
+
+    /**
+     * 当前连接的主节点
+     */
+    private static volatile HostAndPort master;
+
+    /**
+     * 配置了redis.sentinel.master时跟踪主节点的变化
+     */
+    private static volatile SentinelWatcher sentinel;
+
+    private static volatile LongConsumer failoverListener = nanos -> {
+    };
 
     static
     {
         /**
-         * redis连接地址
-         */
-        String redisHost = "localhost";
-        /**
-         * redis端口
-         */
-        int redisPort = 6379;
-        /**
-         * 密码
+         * 连接池参数从application.properties中的redis.*读取
          */
-        String redisPass = "" ;
-        /**
-         * 最大等待连接中的数量
-         */
-        int redisMaxIdle = 300;
-        /**
-         * 最大连接数量
-         */
-        int redisMaxTotal = 600;
+        redisConfig = RedisConfig.load();
+        connect(redisConfig);
+        LOGGER.info("redis pool created: {}, master={}", redisConfig, master);
+
         /**
-         * 最大等待时间
+         * 配置了redis.config.reloadSeconds时定时重新读取配置
          */
-        int redisMaxWaitMillis =1000;
+        if (redisConfig.getReloadSeconds() > 0)
+        {
+            ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "redis-config-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloader.scheduleWithFixedDelay(RedisFactory::reloadQuietly, redisConfig.getReloadSeconds(),
+                    redisConfig.getReloadSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    public static Jedis getJedis()
+    {
+        try
+        {
+            return jedisPool.getResource();
+        }
+        catch (JedisConnectionException e)
+        {
+            // 主节点可能已经切换,不等sentinel的推送主动查询一次
+            SentinelWatcher watcher = sentinel;
+            if (watcher != null)
+            {
+                watcher.resolveAsync();
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * 当前连接的主节点,没有配置sentinel时就是redis.host和redis.port
+     *
+     * @return HostAndPort
+     */
+    public static HostAndPort getMaster()
+    {
+        return master;
+    }
 
-        /**
-         * 配置jedis连接池
-         */
-        JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
-        jedisPoolConfig.setMaxTotal(redisMaxTotal);
-        jedisPoolConfig.setMaxIdle(redisMaxIdle);
-        jedisPoolConfig.setMaxWaitMillis(redisMaxWaitMillis);
-        jedisPoolConfig.setTestOnBorrow(true);
-        if (StringUtils.isNotEmpty(redisPass))
+    /**
+     * 设置主节点切换完成时的回调,参数是从sentinel发现主节点下线到新连接池可用的纳秒数
+     *
+     * @param listener 回调
+     */
+    public static void setFailoverListener(LongConsumer listener)
+    {
+        failoverListener = listener;
+    }
+
+    /**
+     * 借出的连接数
+     *
+     * @return int
+     */
+    public static int getNumActive()
+    {
+        return jedisPool.getNumActive();
+    }
+
+    /**
+     * 空闲的连接数
+     *
+     * @return int
+     */
+    public static int getNumIdle()
+    {
+        return jedisPool.getNumIdle();
+    }
+
+    /**
+     * 正在等待连接的线程数
+     *
+     * @return int
+     */
+    public static int getNumWaiters()
+    {
+        return jedisPool.getNumWaiters();
+    }
+
+    /**
+     * 最大连接数
+     *
+     * @return int
+     */
+    public static int getMaxTotal()
+    {
+        return jedisPool.getMaxTotal();
+    }
+
+    /**
+     * 当前使用的配置
+     *
+     * @return RedisConfig
+     */
+    public static RedisConfig getConfig()
+    {
+        return redisConfig;
+    }
+
+    /**
+     * 重新读取配置文件
+     * 只有连接池大小变化时原地调整连接池,连接相关配置变化时新建连接池并替换,
+     * 旧连接池中借出的连接归还时关闭
+     */
+    public static synchronized void reload()
+    {
+        RedisConfig newConfig = RedisConfig.load();
+        if (newConfig.sameConnection(redisConfig))
         {
-            jedisPool = new JedisPool(jedisPoolConfig, redisHost, redisPort, 10000, redisPass);
+            jedisPool.resize(newConfig.getMaxTotal(), newConfig.getMaxIdle(), newConfig.getMinIdle(),
+                    newConfig.getMaxWaitMillis());
         }
         else
         {
-            jedisPool = new JedisPool(jedisPoolConfig, redisHost, redisPort, 10000);
+            ResizableJedisPool oldPool = jedisPool;
+            SentinelWatcher oldSentinel = sentinel;
+            connect(newConfig);
+            oldPool.close();
+            if (oldSentinel != null)
+            {
+                oldSentinel.close();
+            }
         }
+        redisConfig = newConfig;
+        LOGGER.info("redis pool reloaded: {}", newConfig);
     }
 
-    public static Jedis getJedis()
+    /**
+     * 在运行时调整连接池大小,不需要重启
+     * 开启了定时重新读取时,下次读取会以配置文件中的大小为准
+     *
+     * @param maxTotal 最大连接数量
+     * @param maxIdle  最大空闲连接数量
+     * @param minIdle  最小空闲连接数量
+     */
+    public static synchronized void resize(int maxTotal, int maxIdle, int minIdle)
+    {
+        jedisPool.resize(maxTotal, maxIdle, minIdle, redisConfig.getMaxWaitMillis());
+        LOGGER.info("redis pool resized: maxTotal={}, maxIdle={}, minIdle={}", maxTotal, maxIdle, minIdle);
+    }
+
+    /**
+     * sentinel通知主节点切换后新建连接池并替换,旧连接池中借出的连接归还时关闭
+     * 新连接池先建立redis.sentinel.warmup个连接,切换后的请求直接拿到空闲连接,不会同时去新主节点建立连接
+     *
+     * @param newMaster     新的主节点
+     * @param failoverStart 故障转移开始时的System.nanoTime(),0表示不知道
+     */
+    static synchronized void switchMaster(HostAndPort newMaster, long failoverStart)
+    {
+        if (newMaster.equals(master))
+        {
+            return;
+        }
+        ResizableJedisPool newPool = new ResizableJedisPool(redisConfig, newMaster);
+        warmUp(newPool, redisConfig);
+        ResizableJedisPool oldPool = jedisPool;
+        jedisPool = newPool;
+        master = newMaster;
+        oldPool.close();
+        LOGGER.warn("redis master switched to {}", newMaster);
+        if (failoverStart != 0)
+        {
+            failoverListener.accept(System.nanoTime() - failoverStart);
+        }
+    }
+
+    private static void connect(RedisConfig config)
+    {
+        if (config.getSentinelMaster() == null)
+        {
+            sentinel = null;
+            master = new HostAndPort(config.getHost(), config.getPort());
+            jedisPool = new ResizableJedisPool(config, master);
+            return;
+        }
+        SentinelWatcher watcher = new SentinelWatcher(config, RedisFactory::switchMaster);
+        master = watcher.resolve();
+        jedisPool = new ResizableJedisPool(config, master);
+        sentinel = watcher;
+        watcher.start();
+    }
+
+    private static void warmUp(ResizableJedisPool pool, RedisConfig config)
     {
-        return jedisPool.getResource();
+        int count = config.getMaxTotal() < 0 ? config.getFailoverWarmup()
+                : Math.min(config.getFailoverWarmup(), config.getMaxTotal());
+        try
+        {
+            pool.addObjects(count);
+        }
+        catch (JedisException e)
+        {
+            // 新主节点还没准备好时不预热,连接在使用时建立
+            LOGGER.warn("warm up redis pool fail: {}", e.getMessage());
+        }
+    }
+
+    private static void reloadQuietly()
+    {
+        try
+        {
+            reload();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("reload redis config fail !", e);
+        }
     }
 
     private RedisFactory()
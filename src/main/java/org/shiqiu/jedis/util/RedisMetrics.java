@@ -0,0 +1,267 @@
+package org.shiqiu.jedis.util;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import redis.clients.jedis.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis命令的监控指标,通过Micrometer输出(开启JMX时可以在JMX中查看)
+ * redis.command            每条命令的耗时,带p50/p99/p999
+ * redis.command.errors     按命令和异常类型统计的错误数
+ * redis.command.payload    请求值和返回值的大小(字符串为字符数,二进制为字节数)
+ * redis.pool.borrow        从连接池借连接的等待时间
+ * redis.pool.active/idle/waiters/max 连接池状态
+ * redis.compression        压缩和解压的耗时
+ * redis.compression.ratio  压缩前后的字节数之比
+ * 每条命令的Timer在第一次使用时创建并按命令缓存,之后记录时不再查找也不分配对象
+ */
+public class RedisMetrics {
+    /**
+     * 不记录任何指标
+     */
+    public static final RedisMetrics DISABLED = new RedisMetrics(null);
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    private static final String COMMAND_TAG = "command";
+
+    private final MeterRegistry registry;
+
+    private final Timer[] latency;
+
+    private final DistributionSummary[] requestPayload;
+
+    private final DistributionSummary[] replyPayload;
+
+    private final Timer borrowWait;
+
+    private final Timer compressTime;
+
+    private final Timer decompressTime;
+
+    private final DistributionSummary compressionRatio;
+
+    public RedisMetrics(MeterRegistry registry)
+    {
+        this.registry = registry;
+        int commands = Protocol.Command.values().length;
+        this.latency = new Timer[commands];
+        this.requestPayload = new DistributionSummary[commands];
+        this.replyPayload = new DistributionSummary[commands];
+        this.borrowWait = registry == null ? null : Timer.builder("redis.pool.borrow")
+                .description("time spent waiting for a pooled connection")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        this.compressTime = registry == null ? null : compressionTimer(registry, "compress");
+        this.decompressTime = registry == null ? null : compressionTimer(registry, "decompress");
+        this.compressionRatio = registry == null ? null : DistributionSummary.builder("redis.compression.ratio")
+                .description("original bytes / stored bytes")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    private static Timer compressionTimer(MeterRegistry registry, String operation)
+    {
+        return Timer.builder("redis.compression")
+                .tag("operation", operation)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    public boolean isEnabled()
+    {
+        return registry != null;
+    }
+
+    /**
+     * 注册连接池状态,连接池重建后读取的是新的连接池
+     */
+    public void bindPool()
+    {
+        if (registry == null)
+        {
+            return;
+        }
+        Gauge.builder("redis.pool.active", RedisFactory::getNumActive).register(registry);
+        Gauge.builder("redis.pool.idle", RedisFactory::getNumIdle).register(registry);
+        Gauge.builder("redis.pool.waiters", RedisFactory::getNumWaiters).register(registry);
+        Gauge.builder("redis.pool.max", RedisFactory::getMaxTotal).register(registry);
+        Timer failover = Timer.builder("redis.failover")
+                .description("time from sentinel reporting the master down to the pool switching to the new master")
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+        RedisFactory.setFailoverListener(nanos -> failover.record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 注册近端缓存的命中情况
+     *
+     * @param nearCache 近端缓存
+     */
+    public void bindNearCache(NearCache nearCache)
+    {
+        if (registry == null)
+        {
+            return;
+        }
+        FunctionCounter.builder("redis.nearCache.hits", nearCache, NearCache::getHitCount).register(registry);
+        FunctionCounter.builder("redis.nearCache.misses", nearCache, NearCache::getMissCount).register(registry);
+        FunctionCounter.builder("redis.nearCache.evictions", nearCache, NearCache::getEvictionCount).register(registry);
+        FunctionCounter.builder("redis.nearCache.invalidations", nearCache, NearCache::getInvalidationCount)
+                .register(registry);
+        Gauge.builder("redis.nearCache.size", nearCache, NearCache::size).register(registry);
+    }
+
+    /**
+     * 记录一条命令的耗时
+     *
+     * @param command 命令
+     * @param nanos   耗时
+     */
+    public void recordLatency(Protocol.Command command, long nanos)
+    {
+        if (registry == null)
+        {
+            return;
+        }
+        Timer timer = latency[command.ordinal()];
+        if (timer == null)
+        {
+            // 并发创建时registry返回同一个Timer
+            timer = Timer.builder("redis.command")
+                    .tag(COMMAND_TAG, command.name())
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            latency[command.ordinal()] = timer;
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录从连接池借连接的等待时间
+     *
+     * @param nanos 等待时间
+     */
+    public void recordBorrow(long nanos)
+    {
+        if (registry != null)
+        {
+            borrowWait.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 记录一次压缩
+     *
+     * @param originalBytes 压缩前的字节数
+     * @param storedBytes   压缩后的字节数
+     * @param nanos         耗时
+     */
+    public void recordCompression(int originalBytes, int storedBytes, long nanos)
+    {
+        if (registry != null)
+        {
+            compressTime.record(nanos, TimeUnit.NANOSECONDS);
+            compressionRatio.record((double) originalBytes / storedBytes);
+        }
+    }
+
+    /**
+     * 记录一次解压
+     *
+     * @param nanos 耗时
+     */
+    public void recordDecompression(long nanos)
+    {
+        if (registry != null)
+        {
+            decompressTime.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 按命令和异常类型记录错误,只在出错时查找计数器
+     *
+     * @param command 命令
+     * @param error   异常
+     */
+    public void recordError(Protocol.Command command, Throwable error)
+    {
+        if (registry != null)
+        {
+            registry.counter("redis.command.errors", COMMAND_TAG, command.name(),
+                    "exception", error.getClass().getSimpleName()).increment();
+        }
+    }
+
+    /**
+     * 记录写入的值的大小
+     *
+     * @param command 命令
+     * @param value   写入的值
+     */
+    public void recordRequest(Protocol.Command command, String value)
+    {
+        if (registry != null && value != null)
+        {
+            payload(requestPayload, command, "request").record(value.length());
+        }
+    }
+
+    /**
+     * 记录写入的二进制值的大小
+     *
+     * @param command 命令
+     * @param value   写入的值
+     */
+    public void recordRequest(Protocol.Command command, byte[] value)
+    {
+        if (registry != null && value != null)
+        {
+            payload(requestPayload, command, "request").record(value.length);
+        }
+    }
+
+    /**
+     * 记录返回值的大小,只统计字符串和二进制类型的返回值
+     *
+     * @param command 命令
+     * @param reply   返回值
+     */
+    public void recordReply(Protocol.Command command, Object reply)
+    {
+        if (registry == null)
+        {
+            return;
+        }
+        if (reply instanceof String)
+        {
+            payload(replyPayload, command, "reply").record(((String) reply).length());
+        }
+        else if (reply instanceof byte[])
+        {
+            payload(replyPayload, command, "reply").record(((byte[]) reply).length);
+        }
+    }
+
+    private DistributionSummary payload(DistributionSummary[] summaries, Protocol.Command command, String direction)
+    {
+        DistributionSummary summary = summaries[command.ordinal()];
+        if (summary == null)
+        {
+            summary = DistributionSummary.builder("redis.command.payload")
+                    .baseUnit("chars")
+                    .tag(COMMAND_TAG, command.name())
+                    .tag("direction", direction)
+                    .publishPercentiles(PERCENTILES)
+                    .register(registry);
+            summaries[command.ordinal()] = summary;
+        }
+        return summary;
+    }
+}
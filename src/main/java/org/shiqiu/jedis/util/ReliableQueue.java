@@ -0,0 +1,390 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.shiqiu.jedis.util.RedisFactory.getJedis;
+
+/**
+ * 基于RPOPLPUSH的可靠队列,取出的消息原子地移到本消费者的处理中列表,ack之后才删除,
+ * 消费者在ack之前挂掉时消息不会丢失
+ * name                       待处理的消息,push从头部写入,fetch从尾部取出
+ * name:processing:consumerId 消费者处理中的消息
+ * name:consumer:consumerId   消费者的心跳,visibilitySeconds后过期
+ * name:consumers             所有消费者
+ * name:dead                  nack的消息
+ * 后台线程定时刷新心跳,并把心跳过期的消费者的处理中消息放回队列
+ */
+public class ReliableQueue implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ReliableQueue.class);
+
+    /**
+     * 一次往返取出最多ARGV[1]条消息
+     */
+    private static final LuaScript FETCH = new LuaScript(
+            "local values = {} "
+                    + "for i = 1, tonumber(ARGV[1]) do "
+                    + "local value = redis.call('RPOPLPUSH', KEYS[1], KEYS[2]) "
+                    + "if not value then break end "
+                    + "values[i] = value "
+                    + "end "
+                    + "return values");
+
+    /**
+     * 心跳不存在时把处理中的消息按原来的顺序放回队列尾部(最先被取出),返回放回的条数,心跳存在时返回-1
+     */
+    private static final LuaScript RECLAIM = new LuaScript(
+            "if redis.call('EXISTS', KEYS[3]) == 1 then return -1 end "
+                    + "local count = 0 "
+                    + "while true do "
+                    + "local value = redis.call('LPOP', KEYS[2]) "
+                    + "if not value then break end "
+                    + "redis.call('RPUSH', KEYS[1], value) "
+                    + "count = count + 1 "
+                    + "end "
+                    + "redis.call('SREM', KEYS[4], ARGV[1]) "
+                    + "return count");
+
+    private final String name;
+
+    private final String consumerId;
+
+    private final String processingKey;
+
+    private final String heartbeatKey;
+
+    private final String consumersKey;
+
+    private final String deadKey;
+
+    private final int visibilitySeconds;
+
+    private final ScheduledExecutorService reclaimer;
+
+    /**
+     * @param name              队列名称,也是待处理消息的list
+     * @param consumerId        消费者id,每个进程(或每个消费者)唯一
+     * @param visibilitySeconds 消费者停止心跳多久之后,它处理中的消息被放回队列
+     */
+    public ReliableQueue(String name, String consumerId, int visibilitySeconds)
+    {
+        if (visibilitySeconds <= 0)
+        {
+            throw new IllegalArgumentException("visibilitySeconds must be positive");
+        }
+        this.name = name;
+        this.consumerId = consumerId;
+        this.processingKey = name + ":processing:" + consumerId;
+        this.heartbeatKey = consumerKey(consumerId);
+        this.consumersKey = name + ":consumers";
+        this.deadKey = name + ":dead";
+        this.visibilitySeconds = visibilitySeconds;
+        heartbeat();
+        this.reclaimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-reliable-queue-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, TimeUnit.SECONDS.toMillis(visibilitySeconds) / 3);
+        reclaimer.scheduleWithFixedDelay(this::heartbeatAndReclaim, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private String consumerKey(String id)
+    {
+        return name + ":consumer:" + id;
+    }
+
+    /**
+     * 写入消息
+     *
+     * @param values 消息
+     * @return 写入后队列的长度
+     */
+    public Long push(String... values)
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            return jedis.lpush(name, values);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 非阻塞地取出最多max条消息,一次往返
+     *
+     * @param max 最多取出的条数
+     * @return 队列为空时返回空的List
+     */
+    public List<String> fetch(int max)
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            return fetch(jedis, max);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 取出最多max条消息,队列为空时最多阻塞timeoutSeconds秒等待第一条
+     *
+     * @param max            最多取出的条数
+     * @param timeoutSeconds 等待的秒数
+     * @return 超时返回空的List
+     */
+    public List<String> fetch(int max, int timeoutSeconds)
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            List<String> values = fetch(jedis, max);
+            if (!values.isEmpty())
+            {
+                return values;
+            }
+            String first = jedis.brpoplpush(name, processingKey, timeoutSeconds);
+            if (first == null)
+            {
+                return Collections.emptyList();
+            }
+            values = new ArrayList<>(max);
+            values.add(first);
+            if (max > 1)
+            {
+                values.addAll(fetch(jedis, max - 1));
+            }
+            return values;
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> fetch(Jedis jedis, int max)
+    {
+        if (max <= 0)
+        {
+            return Collections.emptyList();
+        }
+        return (List<String>) FETCH.eval(jedis, Arrays.asList(name, processingKey),
+                Collections.singletonList(String.valueOf(max)));
+    }
+
+    /**
+     * 确认消息已经处理完成,从处理中列表删除,多条消息在一个pipeline中发送
+     *
+     * @param values 消息
+     */
+    public void ack(Collection<String> values)
+    {
+        move(values, null, false);
+    }
+
+    public void ack(String... values)
+    {
+        ack(Arrays.asList(values));
+    }
+
+    /**
+     * 放回队列尾部,下一次fetch时最先被取出
+     *
+     * @param values 消息
+     */
+    public void requeue(Collection<String> values)
+    {
+        move(values, name, false);
+    }
+
+    public void requeue(String... values)
+    {
+        requeue(Arrays.asList(values));
+    }
+
+    /**
+     * 处理失败且不再重试的消息,移到name:dead
+     *
+     * @param values 消息
+     */
+    public void nack(Collection<String> values)
+    {
+        move(values, deadKey, true);
+    }
+
+    public void nack(String... values)
+    {
+        nack(Arrays.asList(values));
+    }
+
+    /**
+     * 从处理中列表删除并写入target,在一个事务中执行,target为null时只删除
+     */
+    private void move(Collection<String> values, String target, boolean toHead)
+    {
+        if (values.isEmpty())
+        {
+            return;
+        }
+        Jedis jedis = getJedis();
+        try
+        {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.multi();
+            for (String value : values)
+            {
+                pipeline.lrem(processingKey, 1, value);
+                if (target != null)
+                {
+                    if (toHead)
+                    {
+                        pipeline.lpush(target, value);
+                    }
+                    else
+                    {
+                        pipeline.rpush(target, value);
+                    }
+                }
+            }
+            pipeline.exec();
+            pipeline.sync();
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 检查所有消费者,把心跳过期的消费者处理中的消息放回队列
+     *
+     * @return 放回的消息数
+     */
+    public long reclaim()
+    {
+        long reclaimed = 0;
+        Jedis jedis = getJedis();
+        try
+        {
+            for (String id : jedis.smembers(consumersKey))
+            {
+                Long count = (Long) RECLAIM.eval(jedis,
+                        Arrays.asList(name, name + ":processing:" + id, consumerKey(id), consumersKey),
+                        Collections.singletonList(id));
+                if (count > 0)
+                {
+                    LOGGER.warn("reclaimed {} stalled messages of consumer {} in queue {}", count, id, name);
+                    reclaimed += count;
+                }
+            }
+        }
+        finally
+        {
+            jedis.close();
+        }
+        return reclaimed;
+    }
+
+    private void heartbeat()
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.setex(heartbeatKey, visibilitySeconds, "1");
+            pipeline.sadd(consumersKey, consumerId);
+            pipeline.sync();
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    private void heartbeatAndReclaim()
+    {
+        try
+        {
+            heartbeat();
+            reclaim();
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.warn("reliable queue {} heartbeat fail", name, e);
+        }
+    }
+
+    /**
+     * 待处理的消息数
+     *
+     * @return Long
+     */
+    public Long size()
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            return jedis.llen(name);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    /**
+     * 本消费者处理中的消息数
+     *
+     * @return Long
+     */
+    public Long inFlight()
+    {
+        Jedis jedis = getJedis();
+        try
+        {
+            return jedis.llen(processingKey);
+        }
+        finally
+        {
+            jedis.close();
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public String getConsumerId()
+    {
+        return consumerId;
+    }
+
+    /**
+     * 停止心跳,处理中的消息在visibilitySeconds之后由其他消费者放回队列
+     */
+    @Override
+    public void close()
+    {
+        reclaimer.shutdownNow();
+    }
+}
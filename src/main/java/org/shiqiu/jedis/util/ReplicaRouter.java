@@ -0,0 +1,362 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 把只读命令分发到从节点,写命令和onMaster中的读取仍然发到主节点
+ * 定时检查每个从节点的INFO replication,和主节点断开或者复制落后超过maxLagBytes的从节点不参与分发,
+ * 没有可用的从节点,或者从节点连接失败时读取主节点
+ */
+public class ReplicaRouter implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ReplicaRouter.class);
+
+    /**
+     * 可以在从节点上执行的命令
+     */
+    private static final Set<Command> READ_COMMANDS = EnumSet.of(Command.GET, Command.MGET, Command.STRLEN,
+            Command.GETRANGE, Command.EXISTS, Command.TYPE, Command.HGET, Command.HMGET, Command.HGETALL,
+            Command.HKEYS, Command.HVALS, Command.HLEN, Command.HEXISTS, Command.LRANGE, Command.LLEN,
+            Command.LINDEX, Command.SMEMBERS, Command.SISMEMBER, Command.SCARD, Command.SRANDMEMBER,
+            Command.SINTER, Command.SUNION, Command.SDIFF, Command.ZRANGE, Command.ZREVRANGE,
+            Command.ZRANGEBYSCORE, Command.ZREVRANGEBYSCORE, Command.ZSCORE, Command.ZCARD, Command.ZCOUNT,
+            Command.ZRANK, Command.ZREVRANK);
+
+    /**
+     * 延迟的指数移动平均中新样本的权重
+     */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    /**
+     * 选择从节点的方式
+     */
+    public enum Policy {
+        /**
+         * 轮流
+         */
+        ROUND_ROBIN,
+        /**
+         * 正在执行的命令最少
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * 最近的平均延迟最低
+         */
+        LOWEST_LATENCY;
+
+        public static Policy of(String name)
+        {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * 一个从节点和它的状态
+     */
+    static final class Replica {
+        private final HostAndPort node;
+
+        private final JedisPool pool;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        /**
+         * 延迟的指数移动平均,纳秒,并发更新时丢失个别样本不影响
+         */
+        private volatile double latency;
+
+        private Replica(HostAndPort node, JedisPool pool)
+        {
+            this.node = node;
+            this.pool = pool;
+        }
+
+        private <T> T execute(Function<Jedis, T> action)
+        {
+            outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            try
+            {
+                Jedis jedis = pool.getResource();
+                try
+                {
+                    return action.apply(jedis);
+                }
+                finally
+                {
+                    jedis.close();
+                }
+            }
+            finally
+            {
+                outstanding.decrementAndGet();
+                sample(System.nanoTime() - start);
+            }
+        }
+
+        private void sample(long nanos)
+        {
+            double current = latency;
+            latency = current == 0 ? nanos : current + LATENCY_WEIGHT * (nanos - current);
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Supplier<Jedis> master;
+
+    private final Policy policy;
+
+    private final long maxLagBytes;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final ThreadLocal<int[]> masterSession = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final ScheduledExecutorService checker;
+
+    /**
+     * 最近一次检查时可用的从节点
+     */
+    private volatile List<Replica> eligible = Collections.emptyList();
+
+    /**
+     * @param config      超时,密码等连接配置
+     * @param nodes       从节点,host:port以逗号分隔
+     * @param policy      选择从节点的方式
+     * @param maxLagBytes 允许从节点落后主节点的复制偏移量,0表示不限制
+     * @param checkMillis 检查从节点状态的间隔
+     * @param master      借一个主节点的连接,用于读取主节点的复制偏移量
+     */
+    public ReplicaRouter(RedisConfig config, String nodes, Policy policy, long maxLagBytes, long checkMillis,
+            Supplier<Jedis> master)
+    {
+        for (String node : nodes.split(","))
+        {
+            if (!node.trim().isEmpty())
+            {
+                HostAndPort address = HostAndPort.parseString(node.trim());
+                replicas.add(new Replica(address, new JedisPool(config.toPoolConfig(), address.getHost(),
+                        address.getPort(), config.getConnectionTimeout(), config.getSoTimeout(), config.getPassword(),
+                        config.getDatabase(), config.getClientName(), false, null, null, null)));
+            }
+        }
+        if (replicas.isEmpty())
+        {
+            throw new IllegalArgumentException("redis.replica.nodes is empty");
+        }
+        this.policy = policy;
+        this.maxLagBytes = maxLagBytes;
+        this.master = master;
+        check();
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-replica-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 是否是只读命令
+     *
+     * @param command 命令
+     * @return boolean
+     */
+    public static boolean readOnly(Command command)
+    {
+        return READ_COMMANDS.contains(command);
+    }
+
+    /**
+     * command是只读命令并且当前线程不在onMaster中
+     *
+     * @param command 命令
+     * @return 可以在从节点上执行
+     */
+    public boolean routes(Command command)
+    {
+        return readOnly(command) && masterSession.get()[0] == 0;
+    }
+
+    /**
+     * routes(command)时在选出的从节点上执行,否则执行onMaster
+     *
+     * @param command  命令
+     * @param action   在连接上执行的操作
+     * @param onMaster 在主节点上执行
+     * @return 命令的返回值
+     */
+    public <T> T execute(Command command, Function<Jedis, T> action, Supplier<T> onMaster)
+    {
+        if (!routes(command))
+        {
+            return onMaster.get();
+        }
+        Replica replica = select();
+        if (replica == null)
+        {
+            return onMaster.get();
+        }
+        try
+        {
+            return replica.execute(action);
+        }
+        catch (JedisConnectionException e)
+        {
+            // 下次检查之前不再使用这个从节点
+            exclude(replica);
+            LOGGER.warn("read from replica {} fail, retry on master: {}", replica.node, e.getMessage());
+            return onMaster.get();
+        }
+    }
+
+    /**
+     * action中的所有命令都在主节点上执行,用于写入之后马上读取
+     *
+     * @param action 操作
+     * @return action的返回值
+     */
+    public <T> T onMaster(Supplier<T> action)
+    {
+        int[] depth = masterSession.get();
+        depth[0]++;
+        try
+        {
+            return action.get();
+        }
+        finally
+        {
+            depth[0]--;
+        }
+    }
+
+    Replica select()
+    {
+        List<Replica> candidates = eligible;
+        if (candidates.isEmpty())
+        {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), candidates.size());
+        if (policy == Policy.ROUND_ROBIN)
+        {
+            return candidates.get(start);
+        }
+        // 从轮流的位置开始比较,相同时分散到不同的从节点
+        Replica best = candidates.get(start);
+        for (int i = 1; i < candidates.size(); i++)
+        {
+            Replica replica = candidates.get((start + i) % candidates.size());
+            if (policy == Policy.LEAST_OUTSTANDING ? replica.outstanding.get() < best.outstanding.get()
+                    : replica.latency < best.latency)
+            {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    private synchronized void exclude(Replica replica)
+    {
+        List<Replica> remaining = new ArrayList<>(eligible);
+        if (remaining.remove(replica))
+        {
+            eligible = remaining;
+        }
+    }
+
+    /**
+     * 检查每个从节点是否可用,INFO的耗时也作为延迟的样本,没有流量的从节点也有延迟数据
+     */
+    synchronized void check()
+    {
+        long masterOffset = -1;
+        if (maxLagBytes > 0)
+        {
+            try (Jedis jedis = master.get())
+            {
+                masterOffset = offset(jedis.info("replication"), "master_repl_offset");
+            }
+            catch (JedisException e)
+            {
+                LOGGER.warn("read master replication offset fail: {}", e.getMessage());
+            }
+        }
+        List<Replica> available = new ArrayList<>();
+        for (Replica replica : replicas)
+        {
+            try
+            {
+                long start = System.nanoTime();
+                String info;
+                try (Jedis jedis = replica.pool.getResource())
+                {
+                    info = jedis.info("replication");
+                }
+                replica.sample(System.nanoTime() - start);
+                if (!info.contains("master_link_status:up"))
+                {
+                    LOGGER.debug("replica {} is not connected to master", replica.node);
+                    continue;
+                }
+                if (maxLagBytes > 0)
+                {
+                    long lag = masterOffset - offset(info, "slave_repl_offset");
+                    if (masterOffset < 0 || lag > maxLagBytes)
+                    {
+                        LOGGER.debug("replica {} lags {} bytes behind master", replica.node, lag);
+                        continue;
+                    }
+                }
+                available.add(replica);
+            }
+            catch (JedisException e)
+            {
+                LOGGER.warn("check replica {} fail: {}", replica.node, e.getMessage());
+            }
+        }
+        eligible = available;
+    }
+
+    private static long offset(String info, String field)
+    {
+        for (String line : info.split("\r\n"))
+        {
+            if (line.startsWith(field + ":"))
+            {
+                return Long.parseLong(line.substring(field.length() + 1).trim());
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close()
+    {
+        checker.shutdownNow();
+        for (Replica replica : replicas)
+        {
+            replica.pool.close();
+        }
+    }
+}
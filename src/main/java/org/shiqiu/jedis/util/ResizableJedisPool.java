@@ -0,0 +1,49 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 可以在运行时调整大小的连接池,调整不会断开已经建立的连接
+ */
+public class ResizableJedisPool extends JedisPool {
+
+    public ResizableJedisPool(RedisConfig config)
+    {
+        this(config, new HostAndPort(config.getHost(), config.getPort()));
+    }
+
+    /**
+     * 连接指定的节点,例如sentinel查到的主节点,其他参数使用config中的配置
+     *
+     * @param config 配置
+     * @param node   节点
+     */
+    public ResizableJedisPool(RedisConfig config, HostAndPort node)
+    {
+        super(config.toPoolConfig(), node.getHost(), node.getPort(), config.getConnectionTimeout(),
+                config.getSoTimeout(), config.getPassword(), config.getDatabase(), config.getClientName(),
+                false, null, null, null);
+    }
+
+    /**
+     * 调整连接池大小,缩小时多出的空闲连接会在归还或驱逐时关闭
+     *
+     * @param maxTotal      最大连接数量
+     * @param maxIdle       最大空闲连接数量
+     * @param minIdle       最小空闲连接数量
+     * @param maxWaitMillis 获取连接的最大等待时间
+     */
+    public void resize(int maxTotal, int maxIdle, int minIdle, long maxWaitMillis)
+    {
+        internalPool.setMaxTotal(maxTotal);
+        internalPool.setMaxIdle(maxIdle);
+        internalPool.setMinIdle(minIdle);
+        internalPool.setMaxWaitMillis(maxWaitMillis);
+    }
+
+    public int getMaxTotal()
+    {
+        return internalPool.getMaxTotal();
+    }
+}
@@ -0,0 +1,260 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisBusyException;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RESP协议的编码和解码,直接读写ByteBuffer
+ * 解码结果和jedis的Protocol.read一致(状态和字符串为byte[],整数为Long,数组为List,错误为JedisDataException),
+ * 错误按前缀转换成和Protocol.processError相同的子类(MOVED/ASK/CLUSTERDOWN/BUSY/NOSCRIPT),
+ * 因此可以直接交给jedis的Response/Builder转换
+ */
+public final class RespCodec {
+    /**
+     * 缓冲区中的数据还不够一个完整的回复
+     */
+    public static final Object INCOMPLETE = new Object();
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private RespCodec()
+    {
+    }
+
+    /**
+     * 命令编码后的字节数
+     *
+     * @param command 命令
+     * @param args    参数
+     * @return int
+     */
+    public static int encodedLength(byte[] command, byte[][] args)
+    {
+        int length = 1 + digits(args.length + 1) + 2 + bulkLength(command);
+        for (byte[] arg : args)
+        {
+            length += bulkLength(arg);
+        }
+        return length;
+    }
+
+    private static int bulkLength(byte[] value)
+    {
+        return 1 + digits(value.length) + 2 + value.length + 2;
+    }
+
+    /**
+     * 把命令写入buffer,调用方需要先通过encodedLength确认空间足够
+     *
+     * @param buffer  写入的位置
+     * @param command 命令
+     * @param args    参数
+     */
+    public static void encode(ByteBuffer buffer, byte[] command, byte[][] args)
+    {
+        buffer.put((byte) '*');
+        putInt(buffer, args.length + 1);
+        buffer.put(CRLF);
+        putBulk(buffer, command);
+        for (byte[] arg : args)
+        {
+            putBulk(buffer, arg);
+        }
+    }
+
+    private static void putBulk(ByteBuffer buffer, byte[] value)
+    {
+        buffer.put((byte) '$');
+        putInt(buffer, value.length);
+        buffer.put(CRLF);
+        buffer.put(value);
+        buffer.put(CRLF);
+    }
+
+    private static void putInt(ByteBuffer buffer, int value)
+    {
+        int divisor = 1;
+        while (value / divisor >= 10)
+        {
+            divisor *= 10;
+        }
+        while (divisor > 0)
+        {
+            buffer.put((byte) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+    }
+
+    private static int digits(int value)
+    {
+        int digits = 1;
+        while (value >= 10)
+        {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * 从buffer的position开始解码一个回复,数据不完整时返回INCOMPLETE,此时position的位置不确定,需要调用方恢复
+     *
+     * @param buffer 读取的位置
+     * @return 回复,nil回复为null
+     */
+    public static Object decode(ByteBuffer buffer)
+    {
+        if (!buffer.hasRemaining())
+        {
+            return INCOMPLETE;
+        }
+        byte type = buffer.get();
+        switch (type)
+        {
+            case '+':
+                byte[] status = readLine(buffer);
+                return status == null ? INCOMPLETE : status;
+            case '-':
+                byte[] message = readLine(buffer);
+                return message == null ? INCOMPLETE : error(SafeEncoder.encode(message));
+            case ':':
+                return readLong(buffer);
+            case '$':
+                return readBulk(buffer);
+            case '*':
+                return readArray(buffer);
+            default:
+                throw new JedisConnectionException("unknown reply type: " + (char) type);
+        }
+    }
+
+    private static JedisDataException error(String message)
+    {
+        if (message.startsWith("MOVED") || message.startsWith("ASK"))
+        {
+            // MOVED 3999 127.0.0.1:6381
+            String[] parts = message.split(" ");
+            int separator = parts[2].lastIndexOf(':');
+            HostAndPort target = new HostAndPort(parts[2].substring(0, separator),
+                    Integer.parseInt(parts[2].substring(separator + 1)));
+            int slot = Integer.parseInt(parts[1]);
+            return message.startsWith("MOVED") ? new JedisMovedDataException(message, target, slot)
+                    : new JedisAskDataException(message, target, slot);
+        }
+        if (message.startsWith("CLUSTERDOWN"))
+        {
+            return new JedisClusterException(message);
+        }
+        if (message.startsWith("BUSY"))
+        {
+            return new JedisBusyException(message);
+        }
+        if (message.startsWith("NOSCRIPT"))
+        {
+            return new JedisNoScriptException(message);
+        }
+        return new JedisDataException(message);
+    }
+
+    private static Object readBulk(ByteBuffer buffer)
+    {
+        Object length = readLong(buffer);
+        if (length == INCOMPLETE)
+        {
+            return INCOMPLETE;
+        }
+        int size = ((Long) length).intValue();
+        if (size < 0)
+        {
+            return null;
+        }
+        if (buffer.remaining() < size + 2)
+        {
+            return INCOMPLETE;
+        }
+        byte[] value = new byte[size];
+        buffer.get(value);
+        buffer.position(buffer.position() + 2);
+        return value;
+    }
+
+    private static Object readArray(ByteBuffer buffer)
+    {
+        Object length = readLong(buffer);
+        if (length == INCOMPLETE)
+        {
+            return INCOMPLETE;
+        }
+        int size = ((Long) length).intValue();
+        if (size < 0)
+        {
+            return null;
+        }
+        List<Object> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            Object value = decode(buffer);
+            if (value == INCOMPLETE)
+            {
+                return INCOMPLETE;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    private static byte[] readLine(ByteBuffer buffer)
+    {
+        int end = findLineEnd(buffer);
+        if (end < 0)
+        {
+            return null;
+        }
+        byte[] line = new byte[end - buffer.position()];
+        buffer.get(line);
+        buffer.position(end + 2);
+        return line;
+    }
+
+    private static Object readLong(ByteBuffer buffer)
+    {
+        int end = findLineEnd(buffer);
+        if (end < 0)
+        {
+            return INCOMPLETE;
+        }
+        int position = buffer.position();
+        boolean negative = buffer.get(position) == '-';
+        long value = 0;
+        for (int i = negative ? position + 1 : position; i < end; i++)
+        {
+            value = value * 10 + (buffer.get(i) - '0');
+        }
+        buffer.position(end + 2);
+        return negative ? -value : value;
+    }
+
+    private static int findLineEnd(ByteBuffer buffer)
+    {
+        int limit = buffer.limit() - 1;
+        for (int i = buffer.position(); i < limit; i++)
+        {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
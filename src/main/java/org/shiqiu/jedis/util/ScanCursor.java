@@ -0,0 +1,129 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 基于SCAN/HSCAN/SSCAN/ZSCAN的惰性迭代器
+ * 每次只取一页(数量由COUNT决定),取页时才借用连接,取完立即归还,停止迭代即可提前结束
+ * 和SCAN命令一样,迭代期间被修改的元素可能重复返回或者不返回
+ * 有多个节点时(集群的SCAN)依次遍历每个节点
+ *
+ * @param <T> 元素类型
+ */
+public class ScanCursor<T> implements Iterator<T> {
+    private final BiFunction<Jedis, String, ScanResult<T>> scanner;
+
+    private final List<Supplier<Jedis>> nodes;
+
+    private int node;
+
+    private String cursor = ScanParams.SCAN_POINTER_START;
+
+    private Iterator<T> page = Collections.emptyIterator();
+
+    private boolean finished;
+
+    /**
+     * @param scanner 根据游标取一页数据,例如 (jedis, cursor) -> jedis.scan(cursor, params)
+     */
+    public ScanCursor(BiFunction<Jedis, String, ScanResult<T>> scanner)
+    {
+        this(Collections.singletonList(RedisFactory::getJedis), scanner);
+    }
+
+    /**
+     * @param nodes   每个节点借连接的方式,按顺序遍历
+     * @param scanner 根据游标取一页数据
+     */
+    public ScanCursor(List<Supplier<Jedis>> nodes, BiFunction<Jedis, String, ScanResult<T>> scanner)
+    {
+        this.nodes = nodes;
+        this.scanner = scanner;
+        this.finished = nodes.isEmpty();
+    }
+
+    /**
+     * 生成SCAN参数
+     *
+     * @param pattern 通配符,为null时不过滤
+     * @param count   每页大约返回的数量
+     * @return ScanParams
+     */
+    public static ScanParams params(String pattern, int count)
+    {
+        ScanParams params = new ScanParams().count(count);
+        if (pattern != null)
+        {
+            params.match(pattern);
+        }
+        return params;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!page.hasNext())
+        {
+            if (finished)
+            {
+                return false;
+            }
+            fetch();
+        }
+        return true;
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    private void fetch()
+    {
+        ScanResult<T> result;
+        Jedis jedis = nodes.get(node).get();
+        try
+        {
+            result = scanner.apply(jedis, cursor);
+        }
+        finally
+        {
+            jedis.close();
+        }
+        cursor = result.getStringCursor();
+        if (ScanParams.SCAN_POINTER_START.equals(cursor))
+        {
+            node++;
+            finished = node == nodes.size();
+        }
+        page = result.getResult().iterator();
+    }
+
+    /**
+     * 转成顺序流,可以配合limit/filter等提前结束
+     *
+     * @return Stream
+     */
+    public Stream<T> stream()
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false);
+    }
+}
@@ -0,0 +1,87 @@
+package org.shiqiu.jedis.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按名称注册的lua脚本,每个脚本第一次执行时加载,之后通过EVALSHA执行,收到NOSCRIPT时重新加载
+ * 内置了几个常用的组合操作,一次往返完成,并且是原子的
+ */
+public class ScriptRegistry {
+    /**
+     * HSET多个field后EXPIRE,KEYS[1]=key,ARGV[1]=秒,之后field和value交替,返回新增的field数
+     */
+    public static final String HSET_EX = "hsetex";
+
+    /**
+     * LPUSH后LTRIM只保留头部的cap个,KEYS[1]=key,ARGV[1]=cap,之后是值,返回修剪后的长度
+     */
+    public static final String CAPPED_LPUSH = "capped-lpush";
+
+    /**
+     * ZADD后只保留分数最高的cap个,KEYS[1]=key,ARGV[1]=cap,ARGV[2]=分数,ARGV[3]=成员,返回新增的成员数
+     */
+    public static final String CAPPED_ZADD = "capped-zadd";
+
+    /**
+     * 当前值等于期望值时设置新值并保留过期时间,KEYS[1]=key,
+     * ARGV[1]=1表示有期望值,0表示期望key不存在,ARGV[2]=期望值,ARGV[3]=新值,成功返回1
+     */
+    public static final String COMPARE_AND_SET = "compare-and-set";
+
+    private final ConcurrentHashMap<String, LuaScript> scripts = new ConcurrentHashMap<>();
+
+    public ScriptRegistry()
+    {
+        register(HSET_EX, "local n = redis.call('hset', KEYS[1], unpack(ARGV, 2))\n"
+                + "redis.call('expire', KEYS[1], ARGV[1])\n"
+                + "return n");
+        register(CAPPED_LPUSH, "local n = redis.call('lpush', KEYS[1], unpack(ARGV, 2))\n"
+                + "local cap = tonumber(ARGV[1])\n"
+                + "redis.call('ltrim', KEYS[1], 0, cap - 1)\n"
+                + "return math.min(n, cap)");
+        register(CAPPED_ZADD, "local n = redis.call('zadd', KEYS[1], ARGV[2], ARGV[3])\n"
+                + "redis.call('zremrangebyrank', KEYS[1], 0, -tonumber(ARGV[1]) - 1)\n"
+                + "return n");
+        register(COMPARE_AND_SET, "local current = redis.call('get', KEYS[1])\n"
+                + "if ARGV[1] == '1' then\n"
+                + "  if current ~= ARGV[2] then return 0 end\n"
+                + "elseif current then return 0 end\n"
+                + "local ttl = redis.call('pttl', KEYS[1])\n"
+                + "redis.call('set', KEYS[1], ARGV[3])\n"
+                + "if ttl > 0 then redis.call('pexpire', KEYS[1], ttl) end\n"
+                + "return 1");
+    }
+
+    /**
+     * 注册一个脚本,同名的脚本已经存在并且内容不同时抛出IllegalArgumentException
+     *
+     * @param name   名称
+     * @param script lua脚本
+     * @return LuaScript
+     */
+    public LuaScript register(String name, String script)
+    {
+        LuaScript registered = scripts.computeIfAbsent(name, n -> new LuaScript(script));
+        if (!registered.getScript().equals(script))
+        {
+            throw new IllegalArgumentException("lua script " + name + " is already registered");
+        }
+        return registered;
+    }
+
+    /**
+     * 按名称取脚本,没有注册时抛出IllegalArgumentException
+     *
+     * @param name 名称
+     * @return LuaScript
+     */
+    public LuaScript get(String name)
+    {
+        LuaScript script = scripts.get(name);
+        if (script == null)
+        {
+            throw new IllegalArgumentException("unknown lua script: " + name);
+        }
+        return script;
+    }
+}
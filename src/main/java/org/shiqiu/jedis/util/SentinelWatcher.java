@@ -0,0 +1,253 @@
+package org.shiqiu.jedis.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 通过sentinel发现和跟踪主节点
+ * 每个sentinel一个订阅线程,收到+switch-master时通知新的主节点;
+ * 订阅断开重连后重新查询一次主节点,防止断开期间错过切换;
+ * +sdown/+odown/+try-failover中最早的一个作为故障转移的开始时间,-sdown表示主节点恢复,不再计时
+ */
+public class SentinelWatcher implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(SentinelWatcher.class);
+
+    private static final String[] CHANNELS = {"+sdown", "-sdown", "+odown", "+try-failover", "+switch-master"};
+
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * 主节点变化的通知
+     */
+    public interface MasterListener {
+        /**
+         * @param master        新的主节点
+         * @param failoverStart 故障转移开始时的System.nanoTime(),不知道开始时间时为0
+         */
+        void onSwitch(HostAndPort master, long failoverStart);
+    }
+
+    private final String masterName;
+
+    private final List<HostAndPort> sentinels = new ArrayList<>();
+
+    private final int timeout;
+
+    private final MasterListener listener;
+
+    private final List<Jedis> subscribers = new ArrayList<>();
+
+    private final AtomicBoolean resolving = new AtomicBoolean();
+
+    private final AtomicLong failoverStart = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public SentinelWatcher(RedisConfig config, MasterListener listener)
+    {
+        this.masterName = config.getSentinelMaster();
+        for (String node : config.getSentinelNodes().split(","))
+        {
+            if (!node.trim().isEmpty())
+            {
+                sentinels.add(HostAndPort.parseString(node.trim()));
+            }
+        }
+        if (masterName == null || sentinels.isEmpty())
+        {
+            throw new IllegalArgumentException("redis.sentinel.master and redis.sentinel.nodes are required");
+        }
+        this.timeout = config.getConnectionTimeout();
+        this.listener = listener;
+    }
+
+    /**
+     * 依次询问sentinel,返回第一个查到的主节点地址
+     *
+     * @return HostAndPort
+     */
+    public HostAndPort resolve()
+    {
+        for (HostAndPort sentinel : sentinels)
+        {
+            try (Jedis jedis = new Jedis(sentinel.getHost(), sentinel.getPort(), timeout, timeout))
+            {
+                List<String> address = jedis.sentinelGetMasterAddrByName(masterName);
+                if (address != null && address.size() == 2)
+                {
+                    return new HostAndPort(address.get(0), Integer.parseInt(address.get(1)));
+                }
+            }
+            catch (JedisException e)
+            {
+                LOGGER.warn("ask sentinel {} for master {} fail: {}", sentinel, masterName, e.getMessage());
+            }
+        }
+        throw new JedisConnectionException("can not resolve master " + masterName + " from sentinels " + sentinels);
+    }
+
+    /**
+     * 在后台重新查询主节点并通知,已经有查询在进行时直接返回
+     * 用于连接主节点失败时,不等sentinel的推送
+     */
+    public void resolveAsync()
+    {
+        if (!running || !resolving.compareAndSet(false, true))
+        {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try
+            {
+                listener.onSwitch(resolve(), failoverStart.get());
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.warn("resolve master {} fail: {}", masterName, e.getMessage());
+            }
+            finally
+            {
+                resolving.set(false);
+            }
+        }, "redis-sentinel-resolver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 启动订阅线程
+     */
+    public void start()
+    {
+        for (HostAndPort sentinel : sentinels)
+        {
+            Thread thread = new Thread(() -> subscribe(sentinel), "redis-sentinel-" + sentinel);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void subscribe(HostAndPort sentinel)
+    {
+        long backoff = 0;
+        boolean reconnect = false;
+        while (running)
+        {
+            Jedis jedis = new Jedis(sentinel.getHost(), sentinel.getPort(), timeout, 0);
+            synchronized (subscribers)
+            {
+                if (!running)
+                {
+                    return;
+                }
+                subscribers.add(jedis);
+            }
+            long started = System.nanoTime();
+            try
+            {
+                if (reconnect)
+                {
+                    // 断开期间可能错过了+switch-master
+                    resolveAsync();
+                }
+                jedis.subscribe(new JedisPubSub() {
+                    @Override
+                    public void onMessage(String channel, String message)
+                    {
+                        handle(channel, message);
+                    }
+                }, CHANNELS);
+            }
+            catch (JedisException e)
+            {
+                if (running)
+                {
+                    LOGGER.warn("sentinel {} disconnected: {}", sentinel, e.getMessage());
+                }
+            }
+            finally
+            {
+                synchronized (subscribers)
+                {
+                    subscribers.remove(jedis);
+                }
+                jedis.close();
+            }
+            reconnect = true;
+            if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) > MAX_BACKOFF_MILLIS)
+            {
+                backoff = 0;
+            }
+            // 加上随机时间,多个sentinel断开时不会同时重连
+            backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2 + 100);
+            sleep(backoff + ThreadLocalRandom.current().nextLong(backoff));
+        }
+    }
+
+    void handle(String channel, String message)
+    {
+        String[] parts = message.split(" ");
+        if ("+switch-master".equals(channel))
+        {
+            // <master name> <old ip> <old port> <new ip> <new port>
+            if (parts.length >= 5 && masterName.equals(parts[0]))
+            {
+                LOGGER.warn("sentinel switched master {} from {}:{} to {}:{}", masterName, parts[1], parts[2],
+                        parts[3], parts[4]);
+                listener.onSwitch(new HostAndPort(parts[3], Integer.parseInt(parts[4])), failoverStart.getAndSet(0));
+            }
+        }
+        // master <master name> <ip> <port>
+        else if (parts.length >= 2 && "master".equals(parts[0]) && masterName.equals(parts[1]))
+        {
+            if ("-sdown".equals(channel))
+            {
+                failoverStart.set(0);
+            }
+            else
+            {
+                failoverStart.compareAndSet(0, System.nanoTime());
+            }
+        }
+    }
+
+    private void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (subscribers)
+        {
+            running = false;
+            for (Jedis jedis : subscribers)
+            {
+                // 断开连接让阻塞在subscribe中的线程退出
+                jedis.getClient().disconnect();
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.shiqiu.jedis.util;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 字符串值的压缩,只压缩UTF-8编码后不小于threshold字节的值
+ * 压缩后的值以一个头开始: 0xC1 + 算法(1字节) + 原始长度(4字节) [+ zstd字典id(4字节)],
+ * 0xC1不会出现在合法的UTF-8中,据此区分压缩和未压缩的值,两者可以在redis中共存,
+ * 读取时按头中的算法解压,与当前配置的算法无关
+ */
+public class ValueCompressor {
+    public static final String LZ4 = "lz4";
+
+    public static final String ZSTD = "zstd";
+
+    private static final byte MAGIC = (byte) 0xC1;
+
+    private static final byte ALGORITHM_LZ4 = 1;
+
+    private static final byte ALGORITHM_ZSTD = 2;
+
+    private static final byte ALGORITHM_ZSTD_DICT = 3;
+
+    private static final int HEADER_LENGTH = 6;
+
+    private static final int DICT_HEADER_LENGTH = HEADER_LENGTH + 4;
+
+    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final byte algorithm;
+
+    private final int threshold;
+
+    private final int level;
+
+    private final int dictionaryId;
+
+    private final ZstdDictCompress dictCompress;
+
+    private final ZstdDictDecompress dictDecompress;
+
+    private final RedisMetrics metrics;
+
+    /**
+     * @param algorithm  lz4或zstd
+     * @param threshold  UTF-8编码后达到多少字节才压缩
+     * @param level      zstd的压缩级别
+     * @param dictionary zstd的字典,可以用trainDictionary生成,为null时不使用字典
+     * @param metrics    记录压缩率和耗时
+     */
+    public ValueCompressor(String algorithm, int threshold, int level, byte[] dictionary, RedisMetrics metrics)
+    {
+        if (LZ4.equals(algorithm))
+        {
+            if (dictionary != null)
+            {
+                throw new IllegalArgumentException("dictionary is only supported by zstd");
+            }
+            this.algorithm = ALGORITHM_LZ4;
+        }
+        else if (ZSTD.equals(algorithm))
+        {
+            this.algorithm = dictionary == null ? ALGORITHM_ZSTD : ALGORITHM_ZSTD_DICT;
+        }
+        else
+        {
+            throw new IllegalArgumentException("unknown compression algorithm: " + algorithm);
+        }
+        this.threshold = threshold;
+        this.level = level;
+        this.dictionaryId = dictionary == null ? 0 : (int) Zstd.getDictIdFromDict(dictionary);
+        this.dictCompress = dictionary == null ? null : new ZstdDictCompress(dictionary, level);
+        this.dictDecompress = dictionary == null ? null : new ZstdDictDecompress(dictionary);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 用样本值训练zstd字典,适合大量结构相似的小json
+     *
+     * @param samples 样本值
+     * @param size    字典的最大字节数
+     * @return 字典
+     */
+    public static byte[] trainDictionary(List<String> samples, int size)
+    {
+        byte[][] buffers = new byte[samples.size()][];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = samples.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] dictionary = new byte[size];
+        long length = Zstd.trainFromBuffer(buffers, dictionary);
+        if (Zstd.isError(length))
+        {
+            throw new IllegalArgumentException("train zstd dictionary fail: " + Zstd.getErrorName(length));
+        }
+        byte[] result = new byte[(int) length];
+        System.arraycopy(dictionary, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * 转换成写入redis的字节,达到阈值且压缩后更小时压缩
+     *
+     * @param value 值
+     * @return byte[]
+     */
+    public byte[] encode(String value)
+    {
+        byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+        if (plain.length < threshold)
+        {
+            return plain;
+        }
+        long start = System.nanoTime();
+        byte[] compressed = compress(plain);
+        metrics.recordCompression(plain.length, compressed.length, System.nanoTime() - start);
+        return compressed.length < plain.length ? compressed : plain;
+    }
+
+    /**
+     * 从redis读出的字节转换成字符串,有压缩头时先解压
+     *
+     * @param stored 读出的字节
+     * @return String
+     */
+    public String decode(byte[] stored)
+    {
+        if (stored == null)
+        {
+            return null;
+        }
+        if (stored.length < HEADER_LENGTH || stored[0] != MAGIC)
+        {
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        long start = System.nanoTime();
+        byte[] plain = decompress(stored);
+        metrics.recordDecompression(System.nanoTime() - start);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    private byte[] compress(byte[] plain)
+    {
+        int headerLength = algorithm == ALGORITHM_ZSTD_DICT ? DICT_HEADER_LENGTH : HEADER_LENGTH;
+        int bound = algorithm == ALGORITHM_LZ4 ? LZ4_COMPRESSOR.maxCompressedLength(plain.length)
+                : (int) Zstd.compressBound(plain.length);
+        byte[] buffer = new byte[headerLength + bound];
+        buffer[0] = MAGIC;
+        buffer[1] = algorithm;
+        writeInt(buffer, 2, plain.length);
+        int length;
+        if (algorithm == ALGORITHM_LZ4)
+        {
+            length = LZ4_COMPRESSOR.compress(plain, 0, plain.length, buffer, headerLength, bound);
+        }
+        else if (algorithm == ALGORITHM_ZSTD)
+        {
+            length = (int) check(Zstd.compressByteArray(buffer, headerLength, bound, plain, 0, plain.length, level));
+        }
+        else
+        {
+            writeInt(buffer, HEADER_LENGTH, dictionaryId);
+            length = (int) check(Zstd.compressFastDict(buffer, headerLength, plain, 0, plain.length, dictCompress));
+        }
+        byte[] result = new byte[headerLength + length];
+        System.arraycopy(buffer, 0, result, 0, result.length);
+        return result;
+    }
+
+    private byte[] decompress(byte[] stored)
+    {
+        byte[] plain = new byte[readInt(stored, 2)];
+        switch (stored[1])
+        {
+            case ALGORITHM_LZ4:
+                LZ4_DECOMPRESSOR.decompress(stored, HEADER_LENGTH, plain, 0, plain.length);
+                break;
+            case ALGORITHM_ZSTD:
+                check(Zstd.decompressByteArray(plain, 0, plain.length, stored, HEADER_LENGTH,
+                        stored.length - HEADER_LENGTH));
+                break;
+            case ALGORITHM_ZSTD_DICT:
+                int id = readInt(stored, HEADER_LENGTH);
+                if (dictDecompress == null || id != dictionaryId)
+                {
+                    throw new IllegalStateException("value is compressed with unknown zstd dictionary " + id);
+                }
+                check(Zstd.decompressFastDict(plain, 0, stored, DICT_HEADER_LENGTH,
+                        stored.length - DICT_HEADER_LENGTH, dictDecompress));
+                break;
+            default:
+                throw new IllegalStateException("unknown compression algorithm in header: " + stored[1]);
+        }
+        return plain;
+    }
+
+    private static long check(long result)
+    {
+        if (Zstd.isError(result))
+        {
+            throw new IllegalStateException("zstd fail: " + Zstd.getErrorName(result));
+        }
+        return result;
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value)
+    {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+    }
+}
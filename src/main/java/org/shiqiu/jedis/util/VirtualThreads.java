@@ -0,0 +1,90 @@
+package org.shiqiu.jedis.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 创建虚拟线程的执行器,需要运行在JDK 21及以上
+ * 项目仍然以1.8为编译目标(spring boot 2.4无法扫描更高版本的class文件),所以通过MethodHandle调用新的API,
+ * 在低版本JDK上isSupported返回false
+ */
+public class VirtualThreads {
+    private static final MethodHandle OF_VIRTUAL;
+
+    private static final MethodHandle NAME;
+
+    private static final MethodHandle FACTORY;
+
+    static
+    {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle factory = null;
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(builder));
+            name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class, long.class));
+            factory = lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class));
+        }
+        catch (ReflectiveOperationException e)
+        {
+            // JDK 21以下没有虚拟线程
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads()
+    {
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     *
+     * @return boolean
+     */
+    public static boolean isSupported()
+    {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器,线程名称为 prefix + 序号
+     *
+     * @param prefix 线程名称前缀
+     * @return ExecutorService
+     */
+    public static ExecutorService newExecutor(String prefix)
+    {
+        if (!isSupported())
+        {
+            throw new UnsupportedOperationException("virtual threads require JDK 21+, current is "
+                    + System.getProperty("java.version"));
+        }
+        try
+        {
+            Object builder = OF_VIRTUAL.invoke();
+            builder = NAME.invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) FACTORY.invoke(builder);
+            return (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(Executors.class, "newThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class, ThreadFactory.class))
+                    .invoke(factory);
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException("create virtual thread executor fail", e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.shiqiu.jedis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.shiqiu.jedis.service.AsyncRedisService;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.LocalRedisCluster;
+import org.shiqiu.jedis.util.RedisCluster;
+import org.springframework.boot.test.context.SpringBootTest;
+import redis.clients.jedis.Jedis;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+@SpringBootTest(properties = {"redis.transport=cluster", "redis.cluster.nodes=127.0.0.1:7100"})
+class ClusterRedisServiceTests {
+    private static final int MASTERS = 3;
+
+    private static LocalRedisCluster cluster;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private AsyncRedisService asyncRedisService;
+
+    @BeforeAll
+    static void startCluster() throws InterruptedException {
+        try {
+            cluster = LocalRedisCluster.start(7100, MASTERS);
+        } catch (IOException e) {
+            Assumptions.assumeTrue(false, "redis-server is not available: " + e.getMessage());
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    void multiKeyAcrossSlots() {
+        String[] keysValues = new String[400];
+        String[] keys = new String[200];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "testCluster:" + i;
+            keysValues[i * 2] = keys[i];
+            keysValues[i * 2 + 1] = String.valueOf(i);
+        }
+        Assertions.assertEquals("OK", redisService.mSet(keysValues));
+        List<String> values = redisService.mGet(keys);
+        for (int i = 0; i < keys.length; i++) {
+            Assertions.assertEquals(String.valueOf(i), values.get(i));
+        }
+        Assertions.assertEquals(200, redisService.keys("testCluster:*").size());
+        Assertions.assertEquals(200L, redisService.del(keys));
+        Assertions.assertEquals(1L, redisService.mSetNx("{testTag}:a", "1", "{testTag}:b", "2"));
+        Assertions.assertEquals(RedisCluster.slot("{testTag}:a"), RedisCluster.slot("{testTag}:b"));
+        Assertions.assertEquals(2L, redisService.unlink("{testTag}:a", "{testTag}:b"));
+    }
+
+    @Test
+    void setOperationsAcrossSlots() {
+        redisService.del("testClusterSetA", "testClusterSetB", "testClusterSetC", "testClusterSetDst");
+        redisService.sAdd("testClusterSetA", "1", "2", "3");
+        redisService.sAdd("testClusterSetB", "2", "3", "4");
+        redisService.sAdd("testClusterSetC", "3", "5");
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("3")),
+                redisService.sInter("testClusterSetA", "testClusterSetB", "testClusterSetC"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("1", "2", "3", "4", "5")),
+                redisService.sUnion("testClusterSetA", "testClusterSetB", "testClusterSetC"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("1")),
+                redisService.sDiff("testClusterSetA", "testClusterSetB", "testClusterSetC"));
+        Assertions.assertEquals(4L, redisService.sUnionStore("testClusterSetDst", "testClusterSetA", "testClusterSetB"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("1", "2", "3", "4")),
+                redisService.sMembers("testClusterSetDst"));
+        Assertions.assertEquals(4L, redisService.del("testClusterSetA", "testClusterSetB", "testClusterSetC",
+                "testClusterSetDst"));
+    }
+
+    @Test
+    void scanAndDeleteAcrossNodes() {
+        String[] keysValues = new String[600];
+        for (int i = 0; i < 300; i++) {
+            keysValues[i * 2] = "testClusterScan:" + i;
+            keysValues[i * 2 + 1] = "v";
+        }
+        redisService.mSet(keysValues);
+        Assertions.assertEquals(300L, redisService.scanKeys("testClusterScan:*", 100).stream().count());
+        Assertions.assertEquals(300L, redisService.deleteByPattern("testClusterScan:*", 100, 0));
+        Assertions.assertEquals(0, redisService.keys("testClusterScan:*").size());
+    }
+
+    @Test
+    void followsMovedAndAsk() {
+        String movedKey = keyOnFirstNode("testClusterMoved:");
+        int movedSlot = RedisCluster.slot(movedKey);
+        Assertions.assertEquals("OK", redisService.setString(movedKey, "before"));
+        redisService.del(movedKey);
+        // 空的slot直接交给第二个节点,客户端缓存的映射仍然指向第一个节点
+        String target = cluster.nodeId(1);
+        for (int i = 0; i < MASTERS; i++) {
+            try (Jedis jedis = cluster.jedis(i)) {
+                jedis.clusterSetSlotNode(movedSlot, target);
+            }
+        }
+        Assertions.assertEquals("OK", redisService.setString(movedKey, "moved"));
+        try (Jedis jedis = cluster.jedis(1)) {
+            Assertions.assertEquals("moved", jedis.get(movedKey));
+        }
+
+        String askKey = keyOnFirstNode("testClusterAsk:");
+        int askSlot = RedisCluster.slot(askKey);
+        try (Jedis source = cluster.jedis(0); Jedis destination = cluster.jedis(1)) {
+            destination.clusterSetSlotImporting(askSlot, cluster.nodeId(0));
+            source.clusterSetSlotMigrating(askSlot, target);
+            // 第一个节点上没有这个key,回复ASK,客户端在第二个节点上ASKING后写入
+            Assertions.assertEquals("OK", redisService.setString(askKey, "asked"));
+            destination.asking();
+            Assertions.assertEquals("asked", destination.get(askKey));
+            destination.clusterSetSlotNode(askSlot, target);
+            source.clusterSetSlotNode(askSlot, target);
+        }
+        Assertions.assertEquals("asked", redisService.getString(askKey));
+        Assertions.assertEquals(2L, redisService.del(movedKey, askKey));
+    }
+
+    @Test
+    void getOrLoadLocksOnOwningNode() {
+        redisService.del("testClusterLoad");
+        Assertions.assertEquals("loaded", redisService.getOrLoad("testClusterLoad", 60, () -> "loaded"));
+        Assertions.assertEquals("loaded", redisService.getString("testClusterLoad"));
+        Assertions.assertFalse(redisService.exists("testClusterLoad:lock"));
+        Assertions.assertEquals(1L, redisService.del("testClusterLoad"));
+    }
+
+    private static String keyOnFirstNode(String prefix) {
+        for (int i = 0; ; i++) {
+            String key = prefix + i;
+            if (RedisCluster.slot(key) < RedisCluster.SLOTS / MASTERS) {
+                return key;
+            }
+        }
+    }
+
+    @Test
+    void rejectsSingleNodeOnlyApis() {
+        // 不能按slot路由的接口直接失败,而不是读写redis.host
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> asyncRedisService.getString("testCluster"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> redisService.batch());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> redisService.reliableQueue("testClusterQueue"));
+    }
+}
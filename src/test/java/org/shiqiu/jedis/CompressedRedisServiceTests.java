@@ -0,0 +1,108 @@
+package org.shiqiu.jedis;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.shiqiu.jedis.service.AsyncRedisService;
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.RedisFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+@SpringBootTest(properties = {"redis.compression.enabled=true", "redis.compression.threshold=64"})
+class CompressedRedisServiceTests {
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private AsyncRedisService asyncRedisService;
+
+    @Resource
+    private BinaryRedisService binaryRedisService;
+
+    private static String large(String prefix) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append(prefix).append(i).append(',');
+        }
+        return builder.toString();
+    }
+
+    private static boolean storedCompressed(String key) {
+        try (Jedis jedis = RedisFactory.getJedis()) {
+            return jedis.getrange(key.getBytes(), 0, 0)[0] == (byte) 0xC1;
+        }
+    }
+
+    @Test
+    void decodesEveryStringRead() {
+        String first = large("first");
+        String second = large("second");
+        redisService.setString("testCompressed", first);
+        Assertions.assertTrue(storedCompressed("testCompressed"));
+        Assertions.assertEquals(first, redisService.getSet("testCompressed", second));
+        Assertions.assertTrue(storedCompressed("testCompressed"));
+        Assertions.assertEquals(second, redisService.getString("testCompressed"));
+
+        redisService.hSet("testCompressedHash", "field", first);
+        Assertions.assertEquals(Collections.singletonList(first), redisService.hVals("testCompressedHash"));
+        Assertions.assertEquals(2L, redisService.del("testCompressed", "testCompressedHash"));
+    }
+
+    @Test
+    void rejectsByteRangeCommandsOnCompressedValues() {
+        redisService.setString("testCompressed", large("value"));
+        Assertions.assertThrows(JedisDataException.class, () -> redisService.appendString("testCompressed", "tail"));
+        Assertions.assertThrows(JedisDataException.class, () -> redisService.setRange("testCompressed", 0, "head"));
+        Assertions.assertThrows(JedisDataException.class, () -> redisService.getRange("testCompressed", 0, 3));
+        Assertions.assertThrows(JedisDataException.class, () -> redisService.strLen("testCompressed"));
+        Assertions.assertEquals(large("value"), redisService.getString("testCompressed"));
+
+        // 没有压缩的小值仍然可以按字节操作
+        redisService.setString("testCompressedSmall", "small");
+        Assertions.assertEquals(9L, redisService.appendString("testCompressedSmall", "tail"));
+        Assertions.assertEquals(9L, redisService.setRange("testCompressedSmall", 0, "S"));
+        Assertions.assertEquals("Small", redisService.getRange("testCompressedSmall", 0, 4));
+        Assertions.assertEquals(9L, redisService.strLen("testCompressedSmall"));
+        Assertions.assertEquals(Arrays.asList(large("value"), "Smalltail"),
+                redisService.mGet("testCompressed", "testCompressedSmall"));
+        Assertions.assertEquals(2L, redisService.del("testCompressed", "testCompressedSmall"));
+    }
+
+    @Test
+    void asyncAndBinaryShareTheStoredFormat() {
+        String value = large("async");
+        Map<String, String> hash = Collections.singletonMap("field", value);
+        asyncRedisService.setString("testCompressedAsync", value).join();
+        asyncRedisService.hmSet("testCompressedAsyncHash", hash).join();
+        Assertions.assertTrue(storedCompressed("testCompressedAsync"));
+        Assertions.assertEquals(value, redisService.getString("testCompressedAsync"));
+        Assertions.assertEquals(value, redisService.hGet("testCompressedAsyncHash", "field"));
+
+        redisService.setString("testCompressedSync", value);
+        Assertions.assertEquals(value, asyncRedisService.getString("testCompressedSync").join());
+        Assertions.assertEquals(Arrays.asList(value, value),
+                asyncRedisService.mGet("testCompressedSync", "testCompressedAsync").join());
+        Assertions.assertEquals(value, asyncRedisService.hGet("testCompressedAsyncHash", "field").join());
+        Assertions.assertEquals(Collections.singletonList(value),
+                asyncRedisService.hmGet("testCompressedAsyncHash", "field").join());
+        Assertions.assertEquals(hash, asyncRedisService.hGetAll("testCompressedAsyncHash").join());
+
+        Assertions.assertEquals(value, binaryRedisService.get("testCompressedSync", Codecs.STRING));
+        Assertions.assertEquals(Arrays.asList(value, value),
+                binaryRedisService.mGet(Codecs.STRING, "testCompressedSync", "testCompressedAsync"));
+        Assertions.assertEquals(hash, binaryRedisService.hGetAll("testCompressedAsyncHash", Codecs.STRING));
+        binaryRedisService.set("testCompressedBinary", value, Codecs.STRING);
+        Assertions.assertTrue(storedCompressed("testCompressedBinary"));
+        Assertions.assertEquals(value, redisService.getString("testCompressedBinary"));
+        Assertions.assertEquals(4L, redisService.del("testCompressedAsync", "testCompressedAsyncHash",
+                "testCompressedSync", "testCompressedBinary"));
+    }
+}
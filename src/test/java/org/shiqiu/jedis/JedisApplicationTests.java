@@ -1,19 +1,300 @@
 package org.shiqiu.jedis;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.shiqiu.jedis.service.AsyncRedisService;
+import org.shiqiu.jedis.service.BatchResponse;
+import org.shiqiu.jedis.service.BinaryRedisService;
+import org.shiqiu.jedis.service.QueueConsumer;
+import org.shiqiu.jedis.service.RedisBatch;
 import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.Codecs;
+import org.shiqiu.jedis.util.RedisFactory;
+import org.shiqiu.jedis.util.ReliableQueue;
 import org.springframework.boot.test.context.SpringBootTest;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
 import javax.annotation.Resource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootTest
 class JedisApplicationTests {
 
     @Resource
     private RedisService redisService;
+
+    @Resource
+    private BinaryRedisService binaryRedisService;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private AsyncRedisService asyncRedisService;
     @Test
     void contextLoads() {
         redisService.setString("testKey","testValue");
     }
 
+    @Test
+    void batch() {
+        RedisBatch batch = redisService.batch();
+        batch.del("testBatchKey");
+        BatchResponse<Long> incr = batch.incrBy("testBatchKey", 5);
+        batch.expire("testBatchKey", 60);
+        BatchResponse<String> value = batch.getString("testBatchKey");
+        batch.execute();
+        Assertions.assertEquals(5L, incr.get());
+        Assertions.assertEquals("5", value.get());
+    }
+
+    @Test
+    void failedBatch() {
+        RedisBatch batch = redisService.batch();
+        BatchResponse<String> sent = batch.getString("testBatchKey");
+        batch.add(p -> {
+            throw new JedisConnectionException("testing");
+        });
+        BatchResponse<String> unsent = batch.getString("testBatchKey");
+        Assertions.assertThrows(JedisConnectionException.class, batch::execute);
+        // 没有拿到结果的命令以执行时的错误失败
+        Assertions.assertTrue(sent.isFailed());
+        Assertions.assertThrows(JedisConnectionException.class, unsent::get);
+        Assertions.assertEquals(0, batch.size());
+    }
+
+    @Test
+    void scan() {
+        RedisBatch batch = redisService.batch();
+        for (int i = 0; i < 250; i++) {
+            batch.setEx("testScan:" + i, 60, String.valueOf(i));
+            batch.hSet("testScanHash", "field" + i, String.valueOf(i));
+        }
+        batch.execute();
+        Assertions.assertEquals(250, redisService.scanKeys("testScan:*", 100).stream().distinct().count());
+        Assertions.assertEquals(10, redisService.hScan("testScanHash", null, 100).stream().limit(10).count());
+        redisService.del("testScanHash");
+    }
+
+    @Test
+    void metrics() {
+        redisService.setString("testMetricsKey", "testValue");
+        redisService.getString("testMetricsKey");
+        Timer timer = meterRegistry.find("redis.command").tag("command", "GET").timer();
+        Assertions.assertNotNull(timer);
+        Assertions.assertTrue(timer.count() > 0);
+        Assertions.assertNotNull(meterRegistry.find("redis.pool.active").gauge());
+        redisService.del("testMetricsKey");
+    }
+
+    @Test
+    void queueConsumer() throws InterruptedException {
+        redisService.del("testQueue:high", "testQueue:low");
+        redisService.rPush("testQueue:high", "1", "2", "3");
+        Assertions.assertEquals(Arrays.asList("1", "2"), redisService.lPop("testQueue:high", 2));
+        Assertions.assertEquals(Collections.singletonList("3"), redisService.rPop("testQueue:high", 5));
+        Assertions.assertTrue(redisService.lPop("testQueue:high", 5).isEmpty());
+
+        int total = 1000;
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(total);
+        try (QueueConsumer consumer = redisService.consume((key, values) -> {
+            received.addAll(values);
+            values.forEach(value -> latch.countDown());
+        }, true, 4, 50, "testQueue:high", "testQueue:low")) {
+            RedisBatch batch = redisService.batch();
+            for (int i = 0; i < total; i++) {
+                batch.rPush(i % 2 == 0 ? "testQueue:high" : "testQueue:low", String.valueOf(i));
+            }
+            batch.execute();
+            Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        Assertions.assertEquals(total, received.size());
+    }
+
+    @Test
+    void async() {
+        redisService.hSet("testAsyncHash", "field", "value");
+        redisService.zAdd("testAsyncZSet", 1, "a");
+        redisService.zAdd("testAsyncZSet", 2, "b");
+        redisService.setString("testAsyncKey", "value");
+        CompletableFuture<Map<String, String>> hash = asyncRedisService.hGetAll("testAsyncHash");
+        CompletableFuture<Set<String>> range = asyncRedisService.zRevRange("testAsyncZSet", 0, -1);
+        CompletableFuture<List<String>> values = asyncRedisService.mGet("testAsyncKey", "testAsyncMissing");
+        CompletableFuture.allOf(hash, range, values).join();
+        Assertions.assertEquals("value", hash.join().get("field"));
+        Assertions.assertEquals(Arrays.asList("b", "a"), new ArrayList<>(range.join()));
+        Assertions.assertEquals(Arrays.asList("value", null), values.join());
+        Assertions.assertEquals(3L, asyncRedisService.del("testAsyncHash", "testAsyncZSet", "testAsyncKey").join());
+    }
+
+    @Test
+    void largeMultiKey() {
+        String[] keysValues = new String[4000];
+        String[] keys = new String[2001];
+        for (int i = 0; i < 2000; i++) {
+            keysValues[i * 2] = "testLargeMultiKey:" + i;
+            keysValues[i * 2 + 1] = String.valueOf(i);
+            keys[i] = keysValues[i * 2];
+        }
+        keys[2000] = "testLargeMultiKey:missing";
+        Assertions.assertEquals("OK", redisService.mSet(keysValues));
+        List<String> values = redisService.mGet(keys);
+        Assertions.assertEquals(2001, values.size());
+        Assertions.assertEquals("1999", values.get(1999));
+        Assertions.assertNull(values.get(2000));
+        Map<String, String> map = redisService.mGetMap(keys);
+        Assertions.assertEquals(2000, map.size());
+        Assertions.assertEquals("0", map.values().iterator().next());
+        Assertions.assertEquals(2001, redisService.mGetStream(keys).count());
+        Assertions.assertEquals("testLargeMultiKey:600",
+                redisService.mGetStream(keys).skip(600).findFirst().get().getKey());
+        Assertions.assertEquals(2000L, redisService.del(Arrays.copyOf(keys, 2000)));
+    }
+
+    @Test
+    void binary() {
+        byte[] key = "testBinary".getBytes();
+        byte[] value = {0, -1, 2, -128, 127};
+        binaryRedisService.set(key, value);
+        Assertions.assertArrayEquals(value, binaryRedisService.get(key));
+        binaryRedisService.hSet("testBinaryHash", "field", Arrays.asList(1, 2), Codecs.json(List.class));
+        Assertions.assertEquals(Arrays.asList(1, 2),
+                binaryRedisService.hGetAll("testBinaryHash", Codecs.json(List.class)).get("field"));
+        binaryRedisService.rPush("testBinaryList", "a", Codecs.kryo(String.class));
+        binaryRedisService.rPush("testBinaryList", "b", Codecs.kryo(String.class));
+        Assertions.assertEquals(Arrays.asList("a", "b"),
+                binaryRedisService.lRange("testBinaryList", 0, -1, Codecs.kryo(String.class)));
+        binaryRedisService.set("testBinaryString", "中文", Codecs.STRING);
+        Assertions.assertEquals("中文", redisService.getString("testBinaryString"));
+        Assertions.assertEquals(Arrays.asList("中文", null),
+                binaryRedisService.mGet(Codecs.STRING, "testBinaryString", "testBinaryMissing"));
+        Assertions.assertEquals(4L, redisService.del("testBinary", "testBinaryHash", "testBinaryList", "testBinaryString"));
+    }
+
+    @Test
+    void largeValues() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"值").append(i).append("\"}");
+        }
+        String large = builder.toString();
+        redisService.setString("testLargeValue", large);
+        redisService.setEx("testLargeValueEx", 60, "small");
+        redisService.hSet("testLargeValueHash", "field", large);
+        Assertions.assertEquals(large, redisService.getString("testLargeValue"));
+        Assertions.assertEquals(Arrays.asList(large, "small"), redisService.mGet("testLargeValue", "testLargeValueEx"));
+        Assertions.assertEquals(large, redisService.hGet("testLargeValueHash", "field"));
+        Assertions.assertEquals(large, redisService.hGetAll("testLargeValueHash").get("field"));
+        Assertions.assertEquals(3L, redisService.del("testLargeValue", "testLargeValueEx", "testLargeValueHash"));
+    }
+
+    @Test
+    void getOrLoad() {
+        redisService.del("testGetOrLoad");
+        Assertions.assertEquals("loaded", redisService.getOrLoad("testGetOrLoad", 60, () -> "loaded"));
+        Assertions.assertEquals("loaded", redisService.getOrLoad("testGetOrLoad", 60, () -> "reloaded"));
+        Assertions.assertNull(redisService.getOrLoad("testGetOrLoadMissing", 60, () -> null));
+        Assertions.assertFalse(redisService.exists("testGetOrLoadMissing"));
+        Assertions.assertEquals(1L, redisService.del("testGetOrLoad"));
+    }
+
+    @Test
+    void deleteByPattern() {
+        String[] keysValues = new String[2400];
+        for (int i = 0; i < 1200; i++) {
+            keysValues[i * 2] = "testDeletePattern:" + i;
+            keysValues[i * 2 + 1] = String.valueOf(i);
+        }
+        redisService.mSet(keysValues);
+        redisService.setString("testDeletePatternOther", "keep");
+        Assertions.assertEquals(1200L, redisService.deleteByPattern("testDeletePattern:*", 300, 0));
+        Assertions.assertEquals(0L, redisService.scanKeys("testDeletePattern:*", 500).stream().count());
+        Assertions.assertEquals("keep", redisService.getString("testDeletePatternOther"));
+        Assertions.assertEquals(1L, redisService.unlink("testDeletePatternOther"));
+    }
+
+    @Test
+    void reliableQueueConsumerIdIsUnique() {
+        ReliableQueue first = redisService.reliableQueue("testReliableId");
+        ReliableQueue second = redisService.reliableQueue("testReliableId");
+        try {
+            // 重启后pid@host相同的进程不能续上旧进程的心跳
+            Assertions.assertTrue(first.getConsumerId().startsWith(ManagementFactory.getRuntimeMXBean().getName() + ":"));
+            Assertions.assertNotEquals(first.getConsumerId(), second.getConsumerId());
+        } finally {
+            first.close();
+            second.close();
+            redisService.deleteByPattern("testReliableId*", 100, 0);
+        }
+    }
+
+    @Test
+    void incrementLater() {
+        redisService.del("testLaterCounter", "testLaterHash");
+        // 没有开启redis.counterBuffer时马上写入
+        redisService.incrByLater("testLaterCounter", 3);
+        redisService.hIncrByLater("testLaterHash", "views", 2);
+        redisService.flushCounters();
+        Assertions.assertEquals("3", redisService.getString("testLaterCounter"));
+        Assertions.assertEquals("2", redisService.hGet("testLaterHash", "views"));
+        Assertions.assertEquals(2L, redisService.del("testLaterCounter", "testLaterHash"));
+    }
+
+    @Test
+    void compoundScripts() {
+        redisService.del("testScriptHash", "testScriptList", "testScriptBoard", "testScriptCas");
+        Map<String, String> hash = new HashMap<>();
+        hash.put("a", "1");
+        hash.put("b", "2");
+        Assertions.assertEquals(2L, redisService.hSetEx("testScriptHash", 60, hash));
+        Assertions.assertEquals(hash, redisService.hGetAll("testScriptHash"));
+        try (Jedis jedis = RedisFactory.getJedis()) {
+            Assertions.assertTrue(jedis.ttl("testScriptHash") > 0);
+        }
+
+        redisService.lPushCapped("testScriptList", 3, "1", "2");
+        Assertions.assertEquals(3L, redisService.lPushCapped("testScriptList", 3, "3", "4"));
+        Assertions.assertEquals(Arrays.asList("4", "3", "2"), redisService.lRange("testScriptList", 0, -1));
+
+        for (int i = 0; i < 5; i++) {
+            redisService.zAddCapped("testScriptBoard", 3, i, "player" + i);
+        }
+        Assertions.assertEquals(3L, redisService.zCard("testScriptBoard"));
+        Assertions.assertNull(redisService.zScore("testScriptBoard", "player1"));
+
+        Assertions.assertTrue(redisService.compareAndSet("testScriptCas", null, "v1"));
+        Assertions.assertFalse(redisService.compareAndSet("testScriptCas", null, "v2"));
+        redisService.expire("testScriptCas", 60);
+        Assertions.assertFalse(redisService.compareAndSet("testScriptCas", "v0", "v2"));
+        Assertions.assertTrue(redisService.compareAndSet("testScriptCas", "v1", "v2"));
+        Assertions.assertEquals("v2", redisService.getString("testScriptCas"));
+        try (Jedis jedis = RedisFactory.getJedis()) {
+            Assertions.assertTrue(jedis.ttl("testScriptCas") > 0);
+        }
+
+        redisService.registerScript("testIncrTwice", "return redis.call('incrby', KEYS[1], ARGV[1] * 2)");
+        Assertions.assertEquals(4L, redisService.evalScript("testIncrTwice", Collections.singletonList("testScriptCounter"),
+                Collections.singletonList("2")));
+        // SCRIPT FLUSH之后通过NOSCRIPT重新加载
+        try (Jedis jedis = RedisFactory.getJedis()) {
+            jedis.scriptFlush();
+        }
+        Assertions.assertEquals(8L, redisService.evalScript("testIncrTwice", Collections.singletonList("testScriptCounter"),
+                Collections.singletonList("2")));
+        Assertions.assertEquals(5L, redisService.del("testScriptHash", "testScriptList", "testScriptBoard", "testScriptCas",
+                "testScriptCounter"));
+    }
 }
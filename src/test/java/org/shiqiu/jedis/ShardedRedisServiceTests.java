@@ -0,0 +1,128 @@
+package org.shiqiu.jedis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.shiqiu.jedis.service.RedisService;
+import org.shiqiu.jedis.util.LocalRedisServers;
+import org.springframework.boot.test.context.SpringBootTest;
+import redis.clients.jedis.Jedis;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.util.List;
+
+@SpringBootTest(properties = {"redis.transport=sharded",
+        "redis.sharded.nodes=127.0.0.1:7200,127.0.0.1:7201,127.0.0.1:7202", "redis.sharded.migrateBatch=50",
+        "redis.counterBuffer.enabled=true"})
+class ShardedRedisServiceTests {
+    private static final int FIRST_PORT = 7200;
+
+    private static final int SHARDS = 3;
+
+    private static LocalRedisServers servers;
+
+    @Resource
+    private RedisService redisService;
+
+    @BeforeAll
+    static void startShards() throws IOException, InterruptedException {
+        servers = new LocalRedisServers();
+        try {
+            // 多启动一个,用于addShard
+            for (int i = 0; i <= SHARDS; i++) {
+                servers.launch(FIRST_PORT + i);
+            }
+        } catch (IOException e) {
+            servers.close();
+            Assumptions.assumeTrue(false, "redis-server is not available: " + e.getMessage());
+        }
+    }
+
+    @AfterAll
+    static void stopShards() {
+        servers.close();
+    }
+
+    private static long dbSize(int index) {
+        try (Jedis jedis = new Jedis(LocalRedisServers.HOST, FIRST_PORT + index)) {
+            return jedis.dbSize();
+        }
+    }
+
+    @Test
+    void fansOutAcrossShards() {
+        String[] keysValues = new String[600];
+        String[] keys = new String[300];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "testSharded:" + i;
+            keysValues[i * 2] = keys[i];
+            keysValues[i * 2 + 1] = String.valueOf(i);
+        }
+        Assertions.assertEquals("OK", redisService.mSet(keysValues));
+        for (int i = 0; i < SHARDS; i++) {
+            Assertions.assertTrue(dbSize(i) > 0, "shard " + i + " is empty");
+        }
+        List<String> values = redisService.mGet(keys);
+        for (int i = 0; i < keys.length; i++) {
+            Assertions.assertEquals(String.valueOf(i), values.get(i));
+        }
+        Assertions.assertEquals(300, redisService.keys("testSharded:*").size());
+        Assertions.assertEquals(1L, redisService.mSetNx("{testShardTag}:a", "1", "{testShardTag}:b", "2"));
+        Assertions.assertEquals(302L, redisService.deleteByPattern("*", 100, 0));
+    }
+
+    @Test
+    void addShardMigratesKeys() {
+        for (int i = 0; i < 500; i++) {
+            redisService.setString("testShardMove:" + i, String.valueOf(i));
+        }
+        long moved = redisService.addShard(LocalRedisServers.HOST + ":" + (FIRST_PORT + SHARDS));
+        Assertions.assertTrue(moved > 0 && moved < 500, "moved " + moved);
+        Assertions.assertEquals(moved, dbSize(SHARDS));
+        long total = 0;
+        for (int i = 0; i <= SHARDS; i++) {
+            total += dbSize(i);
+        }
+        Assertions.assertEquals(500, total);
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertEquals(String.valueOf(i), redisService.getString("testShardMove:" + i));
+        }
+        Assertions.assertEquals(500L, redisService.deleteByPattern("testShardMove:*", 100, 0));
+    }
+
+    @Test
+    void buffersCounters() {
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                redisService.incrByLater("testShardCounter:" + i, i + 1);
+                redisService.hIncrByLater("testShardHashCounter", "field" + i, 1);
+            }
+        }
+        redisService.flushCounters();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(String.valueOf((i + 1) * 10), redisService.getString("testShardCounter:" + i));
+            Assertions.assertEquals("10", redisService.hGet("testShardHashCounter", "field" + i));
+        }
+        Assertions.assertEquals(101L, redisService.deleteByPattern("testShard*Counter*", 100, 0));
+    }
+
+    @Test
+    void dropsCountersThatCannotBeIncremented() {
+        redisService.setString("testShardPoison", "abc");
+        for (int i = 0; i < 20; i++) {
+            redisService.incrByLater("testShardPoisonCounter:" + i, 1);
+        }
+        redisService.incrByLater("testShardPoison", 1);
+        redisService.flushCounters();
+        // 值不是整数的计数器只记录错误,其他计数器只写入一次,之后的flush不会重复写入
+        redisService.flushCounters();
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals("1", redisService.getString("testShardPoisonCounter:" + i));
+        }
+        Assertions.assertEquals("abc", redisService.getString("testShardPoison"));
+        Assertions.assertEquals(21L, redisService.deleteByPattern("testShardPoison*", 100, 0));
+    }
+}
@@ -0,0 +1,76 @@
+package org.shiqiu.jedis.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.shiqiu.jedis.service.RedisService;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Bean;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest(properties = "redis.cache.enabled=true")
+class RedisCacheTests {
+
+    @Resource
+    private RedisCacheManager cacheManager;
+
+    @Resource
+    private RedisService redisService;
+
+    @Resource
+    private UserLoader userLoader;
+
+    @Test
+    void cacheableLoadsOnce() {
+        cacheManager.getCache("testUsers").clear();
+        Assertions.assertEquals("user-1", userLoader.load(1));
+        Assertions.assertEquals("user-1", userLoader.load(1));
+        Assertions.assertNull(userLoader.load(-1));
+        Assertions.assertNull(userLoader.load(-1));
+        Assertions.assertEquals(2, userLoader.getCalls());
+        Assertions.assertTrue(redisService.exists("cache:testUsers::1"));
+    }
+
+    @Test
+    void getAllAndClear() {
+        RedisCache cache = (RedisCache) cacheManager.getCache("testCache");
+        cache.put("a", Arrays.asList(1, 2));
+        cache.put("b", null);
+        Assertions.assertNull(cache.putIfAbsent("c", "c"));
+        Assertions.assertEquals("c", cache.putIfAbsent("c", "other").get());
+        Map<Object, Object> values = cache.getAll(Arrays.asList("a", "b", "c", "missing"));
+        Assertions.assertEquals(3, values.size());
+        Assertions.assertEquals(Arrays.asList(1, 2), values.get("a"));
+        Assertions.assertTrue(values.containsKey("b"));
+        Assertions.assertNull(values.get("b"));
+        cache.clear();
+        Assertions.assertTrue(cache.getAll(Arrays.asList("a", "b", "c")).isEmpty());
+    }
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        UserLoader userLoader() {
+            return new UserLoader();
+        }
+    }
+
+    static class UserLoader {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Cacheable("testUsers")
+        public String load(int id) {
+            calls.incrementAndGet();
+            return id < 0 ? null : "user-" + id;
+        }
+
+        public int getCalls() {
+            return calls.get();
+        }
+    }
+}
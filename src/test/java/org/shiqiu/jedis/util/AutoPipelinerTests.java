@@ -0,0 +1,50 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class AutoPipelinerTests {
+
+    @Test
+    void concurrentCallersShareConnections() throws Exception {
+        String key = "testAutoPipelineKey";
+        AutoPipeliner autoPipeliner = new AutoPipeliner(2, 64, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            autoPipeliner.execute(p -> p.del(key));
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(executor.submit(() -> autoPipeliner.execute(p -> p.incr(key))));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+            Assertions.assertEquals("1000", autoPipeliner.execute(p -> p.get(key)));
+        } finally {
+            executor.shutdownNow();
+            autoPipeliner.close();
+        }
+    }
+
+    @Test
+    void closeFailsCommandsWaitingForABatch() throws Exception {
+        // 凑批窗口10秒,发送线程拿到命令后在collect中等待
+        AutoPipeliner autoPipeliner = new AutoPipeliner(1, 64, 10000000);
+        CompletableFuture<Long> future = autoPipeliner.submit(p -> p.incr("testAutoPipelineClosed"), 1000);
+        Thread.sleep(300);
+        autoPipeliner.close();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause() instanceof JedisException);
+        Assertions.assertThrows(JedisException.class, () -> autoPipeliner.execute(p -> p.get("testAutoPipelineClosed")));
+    }
+}
@@ -0,0 +1,91 @@
+package org.shiqiu.jedis.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class CodecsTests {
+
+    @Test
+    void jsonAndKryoRoundTrip() {
+        Item item = new Item("book", 3, Arrays.asList("a", "b"));
+
+        Item fromJson = Codecs.json(Item.class).decode(Codecs.json(Item.class).encode(item));
+        Assertions.assertEquals(item, fromJson);
+
+        Codec<Item> kryo = Codecs.kryo(Item.class);
+        byte[] bytes = kryo.encode(item);
+        Assertions.assertEquals(item, kryo.decode(bytes));
+
+        Codec<List<Item>> list = Codecs.json(new TypeReference<List<Item>>() {
+        });
+        Assertions.assertEquals(Arrays.asList(item, item), list.decode(list.encode(Arrays.asList(item, item))));
+    }
+
+    @Test
+    void registeredKryoRejectsUnknownClasses() {
+        Item item = new Item("book", 3, Arrays.asList("a", "b"));
+        Codec<Object> registered = Codecs.kryo(Collections.singletonList(Item.class));
+        Assertions.assertEquals(item, registered.decode(registered.encode(item)));
+        Assertions.assertEquals(Arrays.asList(1, 2), registered.decode(registered.encode(Arrays.asList(1, 2))));
+
+        // 写入类名的数据和没有注册的类都不能读写
+        Codec<Object> jdkOnly = Codecs.kryo(Collections.emptyList());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> jdkOnly.encode(item));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> jdkOnly.decode(Codecs.kryo().encode(item)));
+    }
+
+    @Test
+    void stringAndBytes() {
+        Assertions.assertEquals("中文", Codecs.STRING.decode(Codecs.STRING.encode("中文")));
+        byte[] raw = {0, -1, 2};
+        Assertions.assertSame(raw, Codecs.BYTES.encode(raw));
+    }
+
+    static class Item {
+        private String name;
+
+        private int count;
+
+        private List<String> tags;
+
+        Item() {
+        }
+
+        Item(String name, int count, List<String> tags) {
+            this.name = name;
+            this.count = count;
+            this.tags = tags;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Item)) {
+                return false;
+            }
+            Item other = (Item) o;
+            return name.equals(other.name) && count == other.count && tags.equals(other.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
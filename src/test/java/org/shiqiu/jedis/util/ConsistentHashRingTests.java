@@ -0,0 +1,48 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class ConsistentHashRingTests {
+    private static final List<HostAndPort> NODES = Arrays.asList(new HostAndPort("127.0.0.1", 7200),
+            new HostAndPort("127.0.0.1", 7201), new HostAndPort("127.0.0.1", 7202));
+
+    @Test
+    void spreadsSlotsEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+        Map<HostAndPort, Integer> counts = new HashMap<>();
+        for (int slot = 0; slot < RedisCluster.SLOTS; slot++) {
+            counts.merge(ring.node(slot), 1, Integer::sum);
+        }
+        Assertions.assertEquals(NODES.size(), counts.size());
+        for (int count : counts.values()) {
+            Assertions.assertTrue(Math.abs(count - RedisCluster.SLOTS / 3) < RedisCluster.SLOTS / 10,
+                    "unbalanced ring: " + counts);
+        }
+        Assertions.assertEquals(ring.node(RedisCluster.slot("{user:1}:name")),
+                ring.node(RedisCluster.slot("{user:1}:age")));
+    }
+
+    @Test
+    void addingNodeOnlyMovesSlotsToIt() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES, 160);
+        HostAndPort added = new HostAndPort("127.0.0.1", 7203);
+        ConsistentHashRing after = before.with(added);
+        int moved = 0;
+        for (int slot = 0; slot < RedisCluster.SLOTS; slot++) {
+            if (!before.node(slot).equals(after.node(slot))) {
+                Assertions.assertEquals(added, after.node(slot));
+                moved++;
+            }
+        }
+        Assertions.assertTrue(Math.abs(moved - RedisCluster.SLOTS / 4) < RedisCluster.SLOTS / 10,
+                "moved " + moved + " slots");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> after.with(added));
+    }
+}
@@ -0,0 +1,104 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CounterBufferTests {
+
+    @Test
+    void aggregatesConcurrentIncrements() throws InterruptedException {
+        Map<CounterBuffer.Counter, Long> written = new ConcurrentHashMap<>();
+        AtomicInteger writes = new AtomicInteger();
+        CounterBuffer buffer = new CounterBuffer(deltas -> {
+            writes.incrementAndGet();
+            deltas.forEach((counter, delta) -> written.merge(counter, delta, Long::sum));
+            return Collections.emptyMap();
+        }, 1, 1000, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    buffer.add("testViews", null, 1);
+                    buffer.add("testEvents", "click", 2);
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        buffer.close();
+        // 定时写入和add并发进行,增量既不丢失也不重复
+        Assertions.assertEquals(160000L, written.get(new CounterBuffer.Counter("testViews", null)).longValue());
+        Assertions.assertEquals(320000L, written.get(new CounterBuffer.Counter("testEvents", "click")).longValue());
+        Assertions.assertTrue(writes.get() < 320000);
+        Assertions.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void flushesAtMaxKeysAndRetriesFailedWrites() throws InterruptedException {
+        Map<CounterBuffer.Counter, Long> written = new ConcurrentHashMap<>();
+        AtomicBoolean failing = new AtomicBoolean(true);
+        CounterBuffer buffer = new CounterBuffer(deltas -> {
+            if (failing.get()) {
+                throw new JedisConnectionException("testing");
+            }
+            deltas.forEach((counter, delta) -> written.merge(counter, delta, Long::sum));
+            return Collections.emptyMap();
+        }, 60000, 3, 1);
+        buffer.add("testA", null, 1);
+        buffer.add("testB", null, 1);
+        Assertions.assertThrows(JedisConnectionException.class, buffer::flush);
+        Assertions.assertEquals(2, buffer.size());
+        failing.set(false);
+        buffer.add("testC", null, 1);
+        for (int i = 0; i < 50 && written.size() < 3; i++) {
+            Thread.sleep(100);
+        }
+        Assertions.assertEquals(3, written.size());
+        Assertions.assertEquals(0, buffer.size());
+        buffer.add("testA", null, 5);
+        buffer.close();
+        Assertions.assertEquals(6L, written.get(new CounterBuffer.Counter("testA", null)).longValue());
+    }
+
+    @Test
+    void retriesOnlyUnwrittenCounters() {
+        Map<CounterBuffer.Counter, Long> written = new HashMap<>();
+        CounterBuffer.Counter rejected = new CounterBuffer.Counter("testB", null);
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        CounterBuffer buffer = new CounterBuffer(deltas -> {
+            Map<CounterBuffer.Counter, Long> unwritten = new HashMap<>();
+            deltas.forEach((counter, delta) -> {
+                if (rejecting.get() && counter.equals(rejected)) {
+                    unwritten.put(counter, delta);
+                } else {
+                    written.merge(counter, delta, Long::sum);
+                }
+            });
+            return unwritten;
+        }, 60000, 100, 1);
+        buffer.add("testA", null, 1);
+        buffer.add("testB", null, 2);
+        buffer.add("testC", "field", 3);
+        buffer.flush();
+        // 只有没有写入的testB放回缓冲,已经写入的不会重复写
+        Assertions.assertEquals(1, buffer.size());
+        Assertions.assertEquals(2, written.size());
+        rejecting.set(false);
+        buffer.add("testA", null, 1);
+        buffer.close();
+        Assertions.assertEquals(2L, written.get(new CounterBuffer.Counter("testA", null)).longValue());
+        Assertions.assertEquals(2L, written.get(rejected).longValue());
+        Assertions.assertEquals(3L, written.get(new CounterBuffer.Counter("testC", "field")).longValue());
+    }
+}
@@ -0,0 +1,78 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+class HashMapperTests {
+
+    @Test
+    void roundTripIncludesSuperclassAndSkipsNulls() {
+        User user = new User();
+        user.id = 7L;
+        user.name = "shiqiu";
+        user.age = 18;
+        user.balance = new BigDecimal("12.50");
+        user.status = Status.ACTIVE;
+
+        Map<String, String> hash = HashMapper.toHash(user);
+        Assertions.assertEquals("7", hash.get("id"));
+        Assertions.assertEquals("18", hash.get("age"));
+        Assertions.assertEquals("ACTIVE", hash.get("status"));
+        Assertions.assertFalse(hash.containsKey("nickname"));
+        Assertions.assertFalse(hash.containsKey("cache"));
+        Assertions.assertFalse(hash.containsKey("TYPE"));
+
+        User copy = HashMapper.fromHash(hash, User.class);
+        Assertions.assertEquals(7L, copy.id);
+        Assertions.assertEquals("shiqiu", copy.name);
+        Assertions.assertEquals(18, copy.age);
+        Assertions.assertEquals(new BigDecimal("12.50"), copy.balance);
+        Assertions.assertEquals(Status.ACTIVE, copy.status);
+        Assertions.assertNull(copy.nickname);
+    }
+
+    @Test
+    void diffReturnsOnlyChangedFields() {
+        User before = new User();
+        before.id = 1L;
+        before.name = "a";
+        before.nickname = "n";
+        User after = new User();
+        after.id = 1L;
+        after.name = "b";
+
+        HashMapper.Changes changes = HashMapper.diff(before, after);
+        Assertions.assertEquals(1, changes.getUpdated().size());
+        Assertions.assertEquals("b", changes.getUpdated().get("name"));
+        Assertions.assertEquals(1, changes.getRemoved().size());
+        Assertions.assertEquals("nickname", changes.getRemoved().get(0));
+    }
+
+    enum Status {
+        ACTIVE, LOCKED
+    }
+
+    static class Entity {
+        Long id;
+    }
+
+    static class User extends Entity {
+        static final String TYPE = "user";
+
+        private String name;
+
+        private String nickname;
+
+        private int age;
+
+        private BigDecimal balance;
+
+        private Status status;
+
+        private transient Object cache = new Object();
+    }
+
+}
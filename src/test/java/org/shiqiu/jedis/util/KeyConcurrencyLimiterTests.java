@@ -0,0 +1,40 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class KeyConcurrencyLimiterTests {
+
+    @Test
+    void limitsConcurrentCallsPerKey() throws InterruptedException {
+        KeyConcurrencyLimiter limiter = new KeyConcurrencyLimiter(1000, 1, 50);
+        Assertions.assertEquals(1024, limiter.getStripes());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> limiter.call("hot", () -> {
+                started.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+            Assertions.assertThrows(JedisException.class, () -> limiter.call("hot", () -> "blocked"));
+            Assertions.assertEquals("free", limiter.call(null, () -> "free"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        Assertions.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("done", limiter.call("hot", () -> "done"));
+    }
+}
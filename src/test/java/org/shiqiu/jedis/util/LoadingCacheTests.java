@@ -0,0 +1,101 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class LoadingCacheTests {
+
+    @Test
+    void concurrentMissesLoadOnceAcrossCaches() throws Exception {
+        MemoryStore store = new MemoryStore();
+        // 两个实例模拟两个进程,共用redis锁
+        LoadingCache first = new LoadingCache(store, 3000, 10, 0.1, 0, 1);
+        LoadingCache second = new LoadingCache(store, 3000, 10, 0.1, 0, 1);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            Future<?>[] results = new Future<?>[64];
+            for (int i = 0; i < results.length; i++) {
+                LoadingCache cache = i % 2 == 0 ? first : second;
+                results[i] = executor.submit(() -> {
+                    start.await();
+                    return cache.get("testLoadingCache:hot", 100, () -> {
+                        loads.incrementAndGet();
+                        sleep(200);
+                        return "value";
+                    });
+                });
+            }
+            start.countDown();
+            for (Future<?> result : results) {
+                Assertions.assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            Assertions.assertEquals(1, loads.get());
+            int ttl = store.ttls.get("testLoadingCache:hot");
+            Assertions.assertTrue(ttl >= 100 && ttl <= 110);
+        } finally {
+            executor.shutdownNow();
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    void refreshesAheadOfExpiry() throws Exception {
+        MemoryStore store = new MemoryStore();
+        LoadingCache cache = new LoadingCache(store, 0, 10, 0, 1e9, 1);
+        AtomicInteger loads = new AtomicInteger();
+        try {
+            Assertions.assertEquals("v1", cache.get("testLoadingCache:refresh", 60, () -> {
+                sleep(5);
+                return "v" + loads.incrementAndGet();
+            }));
+            // 上次加载耗时不为0且beta很大,命中时一定会提前刷新,返回的仍然是旧值
+            Assertions.assertEquals("v1", cache.get("testLoadingCache:refresh", 60,
+                    () -> "v" + loads.incrementAndGet()));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!"v2".equals(store.values.get("testLoadingCache:refresh")) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("v2", store.values.get("testLoadingCache:refresh"));
+        } finally {
+            cache.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class MemoryStore implements LoadingCache.Store {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+
+        private final Map<String, Integer> ttls = new ConcurrentHashMap<>();
+
+        @Override
+        public LoadingCache.Cached read(String key) {
+            String value = values.get(key);
+            return value == null ? null : new LoadingCache.Cached(value, ttls.get(key) * 1000L);
+        }
+
+        @Override
+        public void setEx(String key, int seconds, String value) {
+            ttls.put(key, seconds);
+            values.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 测试用的本地集群: 在127.0.0.1上启动若干个redis-server进程,平均分配slot并互相MEET
+ */
+public class LocalRedisCluster implements Closeable {
+    private static final String HOST = "127.0.0.1";
+
+    private final int firstPort;
+
+    private final Path dir;
+
+    private final List<Process> processes = new ArrayList<>();
+
+    private LocalRedisCluster(int firstPort) throws IOException {
+        this.firstPort = firstPort;
+        this.dir = Files.createTempDirectory("redis-cluster");
+    }
+
+    /**
+     * 启动masters个主节点,端口从firstPort开始
+     *
+     * @return 所有slot都分配好,cluster_state:ok的集群
+     * @throws IOException 找不到redis-server时
+     */
+    public static LocalRedisCluster start(int firstPort, int masters) throws IOException, InterruptedException {
+        LocalRedisCluster cluster = new LocalRedisCluster(firstPort);
+        try {
+            for (int i = 0; i < masters; i++) {
+                cluster.launch(firstPort + i);
+            }
+            int perNode = RedisCluster.SLOTS / masters;
+            for (int i = 0; i < masters; i++) {
+                int from = i * perNode;
+                int to = i == masters - 1 ? RedisCluster.SLOTS : from + perNode;
+                try (Jedis jedis = cluster.jedis(i)) {
+                    jedis.clusterAddSlots(IntStream.range(from, to).toArray());
+                    if (i > 0) {
+                        jedis.clusterMeet(HOST, firstPort);
+                    }
+                }
+            }
+            cluster.awaitState(masters);
+            return cluster;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            cluster.close();
+            throw e;
+        }
+    }
+
+    private void launch(int port) throws IOException, InterruptedException {
+        processes.add(new ProcessBuilder("redis-server", "--port", String.valueOf(port), "--bind", HOST,
+                "--cluster-enabled", "yes", "--cluster-config-file", "nodes-" + port + ".conf",
+                "--cluster-node-timeout", "5000", "--dir", dir.toString(), "--save", "", "--appendonly", "no")
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir.toFile(), port + ".log"))
+                .start());
+        for (int i = 0; ; i++) {
+            try (Jedis jedis = new Jedis(HOST, port)) {
+                jedis.ping();
+                return;
+            } catch (RuntimeException e) {
+                if (i == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private void awaitState(int masters) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            boolean ready = true;
+            for (int node = 0; node < masters && ready; node++) {
+                try (Jedis jedis = jedis(node)) {
+                    ready = jedis.clusterInfo().contains("cluster_state:ok")
+                            && jedis.clusterNodes().split("\n").length == masters;
+                }
+            }
+            if (ready) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("local cluster is not ready");
+    }
+
+    /**
+     * 直接连接第index个节点
+     */
+    public Jedis jedis(int index) {
+        return new Jedis(HOST, firstPort + index);
+    }
+
+    /**
+     * 第index个节点的id
+     */
+    public String nodeId(int index) {
+        try (Jedis jedis = jedis(index)) {
+            for (String line : jedis.clusterNodes().split("\n")) {
+                if (line.contains("myself")) {
+                    return line.substring(0, line.indexOf(' '));
+                }
+            }
+        }
+        throw new IllegalStateException("node id not found");
+    }
+
+    /**
+     * 用于redis.cluster.nodes的第一个节点地址
+     */
+    public String seed() {
+        return HOST + ":" + firstPort;
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // 临时目录删不掉不影响测试
+        }
+    }
+}
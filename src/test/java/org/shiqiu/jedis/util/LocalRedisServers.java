@@ -0,0 +1,110 @@
+package org.shiqiu.jedis.util;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 测试用的本地redis-server进程,数据目录是一个临时目录,close时停止进程并删除目录
+ */
+public class LocalRedisServers implements Closeable {
+    public static final String HOST = "127.0.0.1";
+
+    private final Path dir;
+
+    private final List<Process> processes = new ArrayList<>();
+
+    public LocalRedisServers() throws IOException {
+        this.dir = Files.createTempDirectory("redis-servers");
+    }
+
+    public Path dir() {
+        return dir;
+    }
+
+    /**
+     * 启动一个redis-server并等到可以连接
+     *
+     * @param port 端口
+     * @param args 额外的参数,例如--replicaof
+     * @throws IOException 找不到redis-server时
+     */
+    public void launch(int port, String... args) throws IOException, InterruptedException {
+        launch(null, port, args);
+    }
+
+    /**
+     * @param conf 配置文件,redis-server要求它是第一个参数
+     */
+    public void launch(Path conf, int port, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Collections.singletonList("redis-server"));
+        if (conf != null) {
+            command.add(conf.toString());
+        }
+        command.addAll(Arrays.asList("--port", String.valueOf(port), "--bind", HOST, "--dir", dir.toString(),
+                "--save", "", "--appendonly", "no"));
+        command.addAll(Arrays.asList(args));
+        processes.add(new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(dir.toFile(), port + ".log"))
+                .start());
+        for (int i = 0; ; i++) {
+            try (Jedis jedis = new Jedis(HOST, port)) {
+                jedis.ping();
+                return;
+            } catch (RuntimeException e) {
+                if (i == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * 等从节点和主节点同步完成
+     */
+    public static void awaitReplication(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Jedis replica = new Jedis(HOST, port)) {
+                if (replica.info("replication").contains("master_link_status:up")) {
+                    return;
+                }
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("replica " + port + " is not in sync");
+    }
+
+    @Override
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // 临时目录删不掉不影响测试
+        }
+    }
+}
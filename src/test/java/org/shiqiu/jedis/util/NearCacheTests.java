@@ -0,0 +1,55 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.TimeUnit;
+
+class NearCacheTests {
+
+    @Test
+    void invalidatedByTrackingWhenAnotherClientWrites() throws Exception {
+        String key = "testNearCache:key";
+        NearCache nearCache = new NearCache(100, 60, "testNearCache:*");
+        try (Jedis writer = RedisFactory.getJedis()) {
+            // 在开启tracking之前写入,避免这次写入的失效消息在缓存可用之后才到达
+            writer.set(key, "v1");
+        }
+        NearCacheInvalidator invalidator = new NearCacheInvalidator(nearCache, NearCacheInvalidator.MODE_TRACKING,
+                null, "testNearCache:*");
+        try (Jedis jedis = RedisFactory.getJedis()) {
+            awaitAvailable(nearCache);
+
+            Assertions.assertEquals("v1", nearCache.get(key, NearCache.STRING, () -> jedis.get(key)));
+            Assertions.assertEquals("v1", nearCache.get(key, NearCache.STRING, () -> "not cached"));
+            Assertions.assertEquals(1, nearCache.getHitCount());
+
+            jedis.set(key, "v2");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (nearCache.size() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals("v2", nearCache.get(key, NearCache.STRING, () -> jedis.get(key)));
+        } finally {
+            invalidator.close();
+        }
+    }
+
+    @Test
+    void notAcceptedKeysAreNotCached() {
+        NearCache nearCache = new NearCache(100, 60, "user:*", "config:?");
+        Assertions.assertTrue(nearCache.accepts("user:1"));
+        Assertions.assertTrue(nearCache.accepts("config:a"));
+        Assertions.assertFalse(nearCache.accepts("order:1"));
+    }
+
+    private static void awaitAvailable(NearCache nearCache) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!nearCache.isAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(nearCache.isAvailable());
+    }
+
+}
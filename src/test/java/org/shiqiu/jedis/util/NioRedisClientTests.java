@@ -0,0 +1,84 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class NioRedisClientTests {
+
+    @Test
+    void concurrentCallersShareFewConnections() throws Exception {
+        String key = "testNioCounter";
+        NioRedisClient client = new NioRedisClient(RedisFactory.getConfig(), 2, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            client.execute(p -> p.del(key));
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                futures.add(executor.submit(() -> client.execute(p -> p.incr(key))));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+            Assertions.assertEquals("2000", client.execute(p -> p.get(key)));
+            client.execute(p -> p.del(key));
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+
+    @Test
+    void errorsAreTypedLikeJedis() {
+        NioRedisClient client = new NioRedisClient(RedisFactory.getConfig(), 1, 64);
+        try {
+            Assertions.assertThrows(JedisNoScriptException.class,
+                    () -> client.execute(p -> p.evalsha("0000000000000000000000000000000000000000")));
+        } finally {
+            client.close();
+        }
+        Object moved = RespCodec.decode(ByteBuffer.wrap(SafeEncoder.encode("-MOVED 3999 127.0.0.1:6381\r\n")));
+        Assertions.assertTrue(moved instanceof JedisMovedDataException);
+        Assertions.assertEquals(3999, ((JedisMovedDataException) moved).getSlot());
+        Assertions.assertEquals(new HostAndPort("127.0.0.1", 6381), ((JedisMovedDataException) moved).getTargetNode());
+        Assertions.assertTrue(RespCodec.decode(ByteBuffer.wrap(SafeEncoder.encode("-ASK 1 127.0.0.1:6381\r\n")))
+                instanceof JedisAskDataException);
+    }
+
+    @Test
+    void repliesLargerThanBuffers() {
+        NioRedisClient client = new NioRedisClient(RedisFactory.getConfig(), 1, 64);
+        try {
+            char[] chars = new char[100000];
+            Arrays.fill(chars, 'x');
+            String large = new String(chars);
+            Assertions.assertEquals("OK", client.execute(p -> p.set("testNioLarge", large)));
+            Assertions.assertEquals(large, client.execute(p -> p.get("testNioLarge")));
+            Assertions.assertNull(client.execute(p -> p.get("testNioMissing")));
+
+            client.execute(p -> p.hset("testNioHash", "field", "value"));
+            Map<String, String> hash = client.execute(p -> p.hgetAll("testNioHash"));
+            Assertions.assertEquals("value", hash.get("field"));
+            Assertions.assertEquals(Arrays.asList(large, null), client.execute(p -> p.mget("testNioLarge", "testNioMissing")));
+
+            Assertions.assertThrows(JedisDataException.class, () -> client.execute(p -> p.incr("testNioHash")));
+            Assertions.assertEquals(Long.valueOf(2), client.execute(p -> p.del("testNioLarge", "testNioHash")));
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class ReliableQueueTests {
+
+    private static void clear(String name) {
+        Jedis jedis = RedisFactory.getJedis();
+        try {
+            Set<String> keys = jedis.keys(name + "*");
+            if (!keys.isEmpty()) {
+                jedis.del(keys.toArray(new String[0]));
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Test
+    void fetchAckAndRequeue() {
+        String name = "testReliableQueue";
+        clear(name);
+        try (ReliableQueue queue = new ReliableQueue(name, "consumer-1", 30)) {
+            for (int i = 0; i < 1000; i++) {
+                queue.push(String.valueOf(i));
+            }
+            Set<String> received = new HashSet<>();
+            List<String> batch;
+            while (!(batch = queue.fetch(100, 1)).isEmpty()) {
+                Assertions.assertTrue(batch.size() <= 100);
+                received.addAll(batch);
+                queue.ack(batch);
+            }
+            Assertions.assertEquals(1000, received.size());
+            Assertions.assertEquals(0L, queue.inFlight().longValue());
+
+            queue.push("a", "b");
+            Assertions.assertEquals("a", queue.fetch(1).get(0));
+            queue.requeue("a");
+            Assertions.assertEquals("a", queue.fetch(1).get(0));
+            queue.nack("a");
+            Assertions.assertEquals(0L, queue.inFlight().longValue());
+            Assertions.assertEquals(1L, queue.size().longValue());
+        } finally {
+            clear(name);
+        }
+    }
+
+    @Test
+    void reclaimStalledConsumer() throws InterruptedException {
+        String name = "testReliableQueueReclaim";
+        clear(name);
+        try (ReliableQueue survivor = new ReliableQueue(name, "survivor", 30)) {
+            ReliableQueue stalled = new ReliableQueue(name, "stalled", 1);
+            stalled.push("1", "2", "3");
+            Assertions.assertEquals(3, stalled.fetch(10).size());
+            stalled.close();
+            Thread.sleep(1500);
+            Assertions.assertEquals(3L, survivor.reclaim());
+            Assertions.assertEquals("1", survivor.fetch(1).get(0));
+        } finally {
+            clear(name);
+        }
+    }
+}
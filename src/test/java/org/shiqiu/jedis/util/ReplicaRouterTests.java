@@ -0,0 +1,109 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Protocol.Command;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+class ReplicaRouterTests {
+    private static final String HOST = LocalRedisServers.HOST;
+
+    private static final int MASTER_PORT = 6392;
+
+    private static final int REPLICA_PORT = 6393;
+
+    private static final int OTHER_REPLICA_PORT = 6394;
+
+    private static final String NODES = HOST + ":" + REPLICA_PORT + "," + HOST + ":" + OTHER_REPLICA_PORT;
+
+    private static LocalRedisServers servers;
+
+    @BeforeAll
+    static void startReplicas() throws IOException, InterruptedException {
+        servers = new LocalRedisServers();
+        try {
+            servers.launch(MASTER_PORT);
+            servers.launch(REPLICA_PORT, "--replicaof", HOST, String.valueOf(MASTER_PORT));
+            servers.launch(OTHER_REPLICA_PORT, "--replicaof", HOST, String.valueOf(MASTER_PORT));
+        } catch (IOException e) {
+            servers.close();
+            Assumptions.assumeTrue(false, "redis-server is not available: " + e.getMessage());
+        }
+        try (Jedis master = master()) {
+            master.set("testReplica", "replicated");
+        }
+        LocalRedisServers.awaitReplication(REPLICA_PORT);
+        LocalRedisServers.awaitReplication(OTHER_REPLICA_PORT);
+    }
+
+    @AfterAll
+    static void stopReplicas() {
+        servers.close();
+    }
+
+    private static Jedis master() {
+        return new Jedis(HOST, MASTER_PORT);
+    }
+
+    private static ReplicaRouter router(ReplicaRouter.Policy policy) {
+        return new ReplicaRouter(new RedisConfig(new Properties()), NODES, policy, 1024 * 1024, 100,
+                ReplicaRouterTests::master);
+    }
+
+    @Test
+    void routesReadsToReplicas() {
+        try (ReplicaRouter router = router(ReplicaRouter.Policy.ROUND_ROBIN)) {
+            Set<Integer> ports = new HashSet<>();
+            for (int i = 0; i < 4; i++) {
+                ports.add(router.execute(Command.GET, jedis -> {
+                    Assertions.assertEquals("replicated", jedis.get("testReplica"));
+                    return jedis.getClient().getPort();
+                }, () -> MASTER_PORT));
+            }
+            Assertions.assertEquals(new HashSet<>(Arrays.asList(REPLICA_PORT, OTHER_REPLICA_PORT)), ports);
+            Assertions.assertEquals(MASTER_PORT, (int) router.execute(Command.SET,
+                    jedis -> jedis.getClient().getPort(), () -> MASTER_PORT));
+            Assertions.assertEquals(MASTER_PORT, (int) router.onMaster(() -> router.execute(Command.GET,
+                    jedis -> jedis.getClient().getPort(), () -> MASTER_PORT)));
+        }
+    }
+
+    @Test
+    void prefersIdleReplica() {
+        try (ReplicaRouter router = router(ReplicaRouter.Policy.LEAST_OUTSTANDING)) {
+            for (int i = 0; i < 4; i++) {
+                // 外层的命令还没有结束,里层应该选另一个从节点
+                int[] ports = router.execute(Command.GET, outer -> new int[]{outer.getClient().getPort(),
+                        router.execute(Command.GET, inner -> inner.getClient().getPort(), () -> MASTER_PORT)},
+                        () -> null);
+                Assertions.assertNotEquals(ports[0], ports[1]);
+                Assertions.assertNotEquals(MASTER_PORT, ports[1]);
+            }
+        }
+    }
+
+    @Test
+    void skipsDetachedReplica() throws InterruptedException {
+        try (ReplicaRouter router = router(ReplicaRouter.Policy.LOWEST_LATENCY)) {
+            try (Jedis replica = new Jedis(HOST, OTHER_REPLICA_PORT)) {
+                replica.slaveofNoOne();
+                router.check();
+                for (int i = 0; i < 4; i++) {
+                    Assertions.assertEquals(REPLICA_PORT, (int) router.execute(Command.GET,
+                            jedis -> jedis.getClient().getPort(), () -> MASTER_PORT));
+                }
+                replica.slaveof(HOST, MASTER_PORT);
+            }
+            LocalRedisServers.awaitReplication(OTHER_REPLICA_PORT);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class SentinelWatcherTests {
+    private static final String HOST = LocalRedisServers.HOST;
+
+    private static final String MASTER_NAME = "testmaster";
+
+    private static final int MASTER_PORT = 6390;
+
+    private static final int REPLICA_PORT = 6391;
+
+    private static final int SENTINEL_PORT = 26390;
+
+    private static LocalRedisServers servers;
+
+    @BeforeAll
+    static void startSentinel() throws IOException, InterruptedException {
+        servers = new LocalRedisServers();
+        try {
+            servers.launch(MASTER_PORT);
+            servers.launch(REPLICA_PORT, "--replicaof", HOST, String.valueOf(MASTER_PORT));
+            Path conf = servers.dir().resolve("sentinel.conf");
+            Files.write(conf, Arrays.asList(
+                    "sentinel monitor " + MASTER_NAME + " " + HOST + " " + MASTER_PORT + " 1",
+                    "sentinel down-after-milliseconds " + MASTER_NAME + " 1000",
+                    "sentinel failover-timeout " + MASTER_NAME + " 10000"), StandardCharsets.UTF_8);
+            servers.launch(conf, SENTINEL_PORT, "--sentinel");
+        } catch (IOException e) {
+            servers.close();
+            Assumptions.assumeTrue(false, "redis-server is not available: " + e.getMessage());
+        }
+    }
+
+    @AfterAll
+    static void stopSentinel() {
+        servers.close();
+    }
+
+    private static RedisConfig config() {
+        Properties properties = new Properties();
+        properties.setProperty("redis.sentinel.master", MASTER_NAME);
+        properties.setProperty("redis.sentinel.nodes", HOST + ":" + SENTINEL_PORT);
+        return new RedisConfig(properties);
+    }
+
+    @Test
+    void followsFailover() throws InterruptedException {
+        BlockingQueue<long[]> switches = new ArrayBlockingQueue<>(10);
+        try (SentinelWatcher watcher = new SentinelWatcher(config(), (master, failoverStart) ->
+                switches.add(new long[]{master.getPort(), failoverStart}))) {
+            Assertions.assertEquals(new HostAndPort(HOST, MASTER_PORT), watcher.resolve());
+            watcher.start();
+            awaitSubscribed();
+            awaitReplica();
+            try (Jedis sentinel = new Jedis(HOST, SENTINEL_PORT)) {
+                Assertions.assertEquals("OK", sentinel.sentinelFailover(MASTER_NAME));
+            }
+            long[] switched = switches.poll(30, TimeUnit.SECONDS);
+            Assertions.assertNotNull(switched, "no +switch-master received");
+            Assertions.assertEquals(REPLICA_PORT, switched[0]);
+            // 手动故障转移也会发布+try-failover,可以算出故障转移的时间
+            Assertions.assertNotEquals(0L, switched[1]);
+            Assertions.assertEquals(new HostAndPort(HOST, REPLICA_PORT), watcher.resolve());
+            try (Jedis jedis = new Jedis(HOST, REPLICA_PORT)) {
+                Assertions.assertEquals("OK", jedis.set("testSentinel", "written"));
+                Assertions.assertEquals(1L, jedis.del("testSentinel").longValue());
+            }
+        }
+    }
+
+    @Test
+    void tracksFailoverStart() {
+        List<Long> starts = new ArrayList<>();
+        SentinelWatcher watcher = new SentinelWatcher(config(), (master, failoverStart) -> starts.add(failoverStart));
+        watcher.handle("+sdown", "slave 127.0.0.1:6391 127.0.0.1 6391 @ " + MASTER_NAME + " 127.0.0.1 6390");
+        watcher.handle("+switch-master", MASTER_NAME + " 127.0.0.1 6390 127.0.0.1 6391");
+        watcher.handle("+sdown", "master " + MASTER_NAME + " 127.0.0.1 6391");
+        watcher.handle("+odown", "master " + MASTER_NAME + " 127.0.0.1 6391 #quorum 1/1");
+        watcher.handle("+switch-master", "othermaster 127.0.0.1 6391 127.0.0.1 6390");
+        watcher.handle("+switch-master", MASTER_NAME + " 127.0.0.1 6391 127.0.0.1 6390");
+        watcher.handle("+sdown", "master " + MASTER_NAME + " 127.0.0.1 6390");
+        watcher.handle("-sdown", "master " + MASTER_NAME + " 127.0.0.1 6390");
+        watcher.handle("+switch-master", MASTER_NAME + " 127.0.0.1 6390 127.0.0.1 6391");
+        Assertions.assertEquals(3, starts.size());
+        Assertions.assertEquals(0L, starts.get(0).longValue());
+        Assertions.assertNotEquals(0L, starts.get(1).longValue());
+        Assertions.assertEquals(0L, starts.get(2).longValue());
+    }
+
+    /**
+     * 订阅在后台线程中进行,等订阅完成,否则可能错过+try-failover
+     */
+    private static void awaitSubscribed() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Jedis sentinel = new Jedis(HOST, SENTINEL_PORT)) {
+                if (sentinel.clientList().contains(" sub=5 ")) {
+                    return;
+                }
+            }
+            Thread.sleep(50);
+        }
+        throw new IllegalStateException("watcher did not subscribe");
+    }
+
+    /**
+     * 等sentinel发现从节点并且从节点同步完成,否则SENTINEL FAILOVER会返回NOGOODSLAVE
+     */
+    private static void awaitReplica() throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            try (Jedis sentinel = new Jedis(HOST, SENTINEL_PORT); Jedis replica = new Jedis(HOST, REPLICA_PORT)) {
+                List<Map<String, String>> replicas = sentinel.sentinelSlaves(MASTER_NAME);
+                if (!replicas.isEmpty() && "slave".equals(replicas.get(0).get("flags"))
+                        && "ok".equals(replicas.get(0).get("master-link-status"))
+                        && replica.info("replication").contains("master_link_status:up")) {
+                    return;
+                }
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("sentinel did not discover the replica");
+    }
+}
@@ -0,0 +1,53 @@
+package org.shiqiu.jedis.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class ValueCompressorTests {
+
+    @Test
+    void compressesOnlyAboveThreshold() {
+        String large = json(0, 200);
+        for (String algorithm : new String[]{ValueCompressor.LZ4, ValueCompressor.ZSTD}) {
+            ValueCompressor compressor = new ValueCompressor(algorithm, 256, 3, null, RedisMetrics.DISABLED);
+            byte[] stored = compressor.encode(large);
+            Assertions.assertTrue(stored.length < large.length() / 2, algorithm);
+            Assertions.assertEquals(large, compressor.decode(stored));
+            Assertions.assertArrayEquals("短值".getBytes(StandardCharsets.UTF_8), compressor.encode("短值"));
+        }
+        ValueCompressor lz4 = new ValueCompressor(ValueCompressor.LZ4, 256, 3, null, RedisMetrics.DISABLED);
+        ValueCompressor zstd = new ValueCompressor(ValueCompressor.ZSTD, 256, 3, null, RedisMetrics.DISABLED);
+        Assertions.assertEquals(large, zstd.decode(lz4.encode(large)));
+        Assertions.assertEquals("plain", lz4.decode("plain".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void zstdDictionary() {
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(json(i, 3));
+        }
+        byte[] dictionary = ValueCompressor.trainDictionary(samples, 4096);
+        ValueCompressor withDictionary = new ValueCompressor(ValueCompressor.ZSTD, 64, 3, dictionary,
+                RedisMetrics.DISABLED);
+        ValueCompressor plain = new ValueCompressor(ValueCompressor.ZSTD, 64, 3, null, RedisMetrics.DISABLED);
+        String value = json(5000, 3);
+        byte[] stored = withDictionary.encode(value);
+        Assertions.assertTrue(stored.length < plain.encode(value).length);
+        Assertions.assertEquals(value, withDictionary.decode(stored));
+        Assertions.assertThrows(IllegalStateException.class, () -> plain.decode(stored));
+    }
+
+    private static String json(int id, int items) {
+        StringBuilder builder = new StringBuilder("{\"id\":").append(id).append(",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"name\":\"item").append(id + i)
+                    .append("\",\"price\":").append((id * 31 + i) % 997).append(",\"currency\":\"CNY\"}");
+        }
+        return builder.append("]}").toString();
+    }
+}